@@ -0,0 +1,26 @@
+package wu.myrpc.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/*
+ * 基准测试入口：和org.openjdk.jmh.Main接受相同的命令行参数，默认附加GC profiler，
+ * 结果中除了吞吐量、平均时间，还有分配速率gc.alloc.rate和每次操作分配的字节数gc.alloc.rate.norm
+ * 例：java -jar target/benchmarks.jar RpcBenchmark -p serializer=KRYO -rf json
+ * */
+public class Benchmarks {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions options = new CommandLineOptions(args);
+        if (options.shouldHelp() || options.shouldList() || options.shouldListProfilers()) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+        new Runner(new OptionsBuilder()
+                .parent(options)
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,74 @@
+package wu.myrpc.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import wu.myrpc.common.protocol.MethodId;
+import wu.myrpc.server.register.DispatchTable;
+import wu.myrpc.server.register.MethodInvoker;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * 服务方法分发的对比：
+ * - reflection：每次调用都getMethod查找再Method.invoke，即分发表之前RequestHandler的做法
+ * - dispatchTable：在注册时生成的分发表中按方法名、参数类型查找MethodInvoker再调用
+ * - dispatchTableById：按消息帧首部中的方法id查找MethodInvoker再调用
+ * */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DispatchBenchmark {
+
+    public interface Calculator {
+        int add(int a, int b);
+
+        String concat(String a, String b);
+    }
+
+    public static class CalculatorImpl implements Calculator {
+        @Override
+        public int add(int a, int b) {
+            return a + b;
+        }
+
+        @Override
+        public String concat(String a, String b) {
+            return a + b;
+        }
+    }
+
+    private final Calculator target = new CalculatorImpl();
+    private final String methodName = "add";
+    private final Class<?>[] parameterTypes = {int.class, int.class};
+    private final Object[] parameters = {1, 2};
+
+    private int methodId;
+
+    private DispatchTable dispatchTable;
+
+    @Setup
+    public void setup() throws Exception {
+        dispatchTable = new DispatchTable(Calculator.class.getName(), Calculator.class, target);
+        methodId = MethodId.of(Calculator.class.getMethod(methodName, parameterTypes));
+    }
+
+    @Benchmark
+    public Object reflection() throws Exception {
+        Method m = Calculator.class.getMethod(methodName, parameterTypes);
+        return m.invoke(target, parameters);
+    }
+
+    @Benchmark
+    public Object dispatchTable() throws Exception {
+        MethodInvoker invoker = dispatchTable.lookup(methodName, parameterTypes);
+        return invoker.invoke(parameters);
+    }
+
+    @Benchmark
+    public Object dispatchTableById() throws Exception {
+        return dispatchTable.lookup(methodId).invoke(parameters);
+    }
+}
@@ -0,0 +1,84 @@
+package wu.myrpc.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import wu.myrpc.client.balance.LoadBalancer;
+import wu.myrpc.client.balance.LoadBalancers;
+import wu.myrpc.client.balance.ProviderStats;
+import wu.myrpc.common.service.Service;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * 负载均衡对尾延迟的影响：4个模拟的服务提供方，其中1个慢
+ * - 每个提供方同时只能处理CONCURRENCY个请求，超出的排队，模拟服务端的业务线程池
+ * - 快的提供方每个请求耗时FAST_NANOS，慢的耗时SLOW_NANOS
+ * 16个调用线程不停地选择提供方并"调用"，调用前后按代理对象的做法记录ProviderStats
+ * 以SampleTime模式运行，结果中的p0.99、p0.999就是各负载均衡器下的尾延迟
+ * */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(16)
+@State(Scope.Benchmark)
+public class LoadBalancerBenchmark {
+
+    private static final int PROVIDERS = 4;
+    private static final int CONCURRENCY = 4;
+    private static final long FAST_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+    private static final long SLOW_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    public interface Echo {
+        String echo(String s);
+    }
+
+    @Param({"random", "round-robin", "least-active", "p2c"})
+    public String balancer;
+
+    private LoadBalancer loadBalancer;
+    private List<Service> services;
+    private Map<String, Semaphore> slots;
+    private Method method;
+    private final Object[] args = {"hello"};
+
+    @Setup
+    public void setup() throws Exception {
+        loadBalancer = LoadBalancers.of(balancer);
+        method = Echo.class.getMethod("echo", String.class);
+        List<Service> list = new ArrayList<>();
+        slots = new HashMap<>();
+        for (int i = 0; i < PROVIDERS; i++) {
+            Service service = new Service();
+            service.setName(Echo.class.getName());
+            service.setAddress("10.0.0." + i + ":19000");
+            list.add(service);
+            slots.put(service.getAddress(), new Semaphore(CONCURRENCY, true));
+        }
+        services = Collections.unmodifiableList(list);
+    }
+
+    @Benchmark
+    public Service call() throws InterruptedException {
+        Service service = loadBalancer.select(services, method, args);
+        ProviderStats stats = ProviderStats.of(service.getAddress());
+        long start = stats.begin();
+        Semaphore slot = slots.get(service.getAddress());
+        slot.acquire();
+        try {
+            LockSupport.parkNanos(service.getAddress().startsWith("10.0.0.0:") ? SLOW_NANOS : FAST_NANOS);
+        } finally {
+            slot.release();
+            stats.end(start);
+        }
+        return service;
+    }
+}
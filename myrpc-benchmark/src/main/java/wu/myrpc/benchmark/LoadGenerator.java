@@ -0,0 +1,371 @@
+package wu.myrpc.benchmark;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import wu.myrpc.client.ClientProxyFactory;
+import wu.myrpc.client.discovery.LocalServiceDiscoverer;
+import wu.myrpc.client.net.NettyNetClient;
+import wu.myrpc.common.metrics.RpcMetrics;
+import wu.myrpc.common.protocol.MessageProtocol;
+import wu.myrpc.common.protocol.MessageProtocolSerialize;
+import wu.myrpc.common.serializer.Serializer;
+import wu.myrpc.common.service.Service;
+import wu.myrpc.server.NettyRpcServer;
+import wu.myrpc.server.RequestHandler;
+import wu.myrpc.server.register.LocalServiceRegister;
+import wu.myrpc.server.register.ServiceObject;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * 压测工具：通过ClientProxyFactory生成的代理调用指定接口的指定方法，结束时输出延迟分位数、吞吐量和按状态码统计的错误
+ * 参数形如key=value：
+ * - interface / method：被调用的接口全限定名和方法名，默认是内置的EchoService.echo
+ * - impl：本地服务端使用的实现类，interface是EchoService时默认EchoServiceImpl
+ * - address：服务提供方地址ip:port，多个用逗号分隔；不指定时在本进程内启动NettyRpcServer，服务发现使用内存中的LocalServiceDiscoverer
+ * - protocol / serializer：提供方注册的协议名和序列化算法，默认myprotocol、java
+ * - qps：目标每秒请求数，按固定的时间表发出请求（开环），不因为响应变慢而少发；0表示闭环，每个并发线程收到响应后立即发下一个
+ * - concurrency：调用线程数，开环时是同时等待响应的最大请求数，来不及发出的请求排队，排队时间计入延迟
+ * - payload：byte[]、String参数的大小（字节数），arg：数值参数的值，如EchoService.work的服务端耗时（微秒）
+ * - duration / warmup：测量时间、预热时间，单位秒；timeout：调用超时时间，单位ms
+ * 开环模式下延迟从请求计划发出的时刻开始计算，避免coordinated omission：服务端变慢时，
+ * 闭环压测会少发请求，看不到本该在这段时间发出的请求的等待时间；同时输出从实际发出开始计算的服务时间作为对比
+ * 例：java -cp target/benchmarks.jar wu.myrpc.benchmark.LoadGenerator qps=20000 concurrency=128 payload=1024 duration=60
+ * */
+public class LoadGenerator {
+
+    private static final double[] PERCENTILES = {50, 75, 90, 95, 99, 99.9, 99.99};
+
+    public interface EchoService {
+        byte[] echo(byte[] payload);
+
+        //模拟服务端耗时：忙等micros微秒后返回
+        byte[] work(byte[] payload, long micros);
+    }
+
+    public static class EchoServiceImpl implements EchoService {
+        @Override
+        public byte[] echo(byte[] payload) {
+            return payload;
+        }
+
+        @Override
+        public byte[] work(byte[] payload, long micros) {
+            long end = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(micros);
+            while (System.nanoTime() < end) {
+                Thread.onSpinWait();
+            }
+            return payload;
+        }
+    }
+
+    private final Map<String, String> options;
+    private final Recorder latency = new Recorder(3);
+    private final Recorder serviceTime = new Recorder(3);
+    private final LongAdder succeeded = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    //key=异常类名，value=次数
+    private final Map<String, LongAdder> failures = new ConcurrentHashMap<>();
+    private final AtomicLong outstanding = new AtomicLong();
+    private volatile boolean recording;
+
+    private Object proxy;
+    private Method method;
+    private Object[] args;
+
+    LoadGenerator(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int i = arg.indexOf('=');
+            if (i <= 0) {
+                System.err.println("Usage: LoadGenerator [key=value]..., see the class comment for keys");
+                System.exit(1);
+            }
+            options.put(arg.substring(0, i), arg.substring(i + 1));
+        }
+        new LoadGenerator(options).run();
+        System.exit(0);
+    }
+
+    void run() throws Exception {
+        Class<?> iface = Class.forName(option("interface", EchoService.class.getName()));
+        Serializer serializer = Serializer.of(option("serializer", "java"));
+        String protocolName = MessageProtocolSerialize.protocolName(option("protocol", "myprotocol"), serializer);
+        String address = option("address", "");
+        NettyRpcServer server = address.isEmpty() ? startServer(iface, serializer) : null;
+        if (server != null) {
+            address = "127.0.0.1:" + server.getPort();
+        }
+
+        // 客户端：内存中的服务发现，其余组件和实际部署相同
+        LocalServiceDiscoverer discoverer = new LocalServiceDiscoverer();
+        for (String provider : address.split(",")) {
+            Service service = new Service();
+            service.setName(iface.getName());
+            service.setAddress(provider.trim());
+            service.setProtocol(protocolName);
+            discoverer.register(service);
+        }
+        Map<String, MessageProtocol> protocols = new HashMap<>();
+        protocols.put(protocolName, new MessageProtocolSerialize(serializer));
+        NettyNetClient netClient = new NettyNetClient();
+        ClientProxyFactory factory = new ClientProxyFactory();
+        factory.setServiceDiscoverer(discoverer);
+        factory.setSupportMessageProtocols(protocols);
+        factory.setNetClient(netClient);
+        factory.setTimeout(Long.parseLong(option("timeout", "5000")));
+        proxy = factory.getProxy(iface);
+        method = findMethod(iface, option("method", "echo"));
+        args = arguments(method, Integer.parseInt(option("payload", "128")), Long.parseLong(option("arg", "0")));
+
+        int concurrency = Integer.parseInt(option("concurrency", "64"));
+        double qps = Double.parseDouble(option("qps", "0"));
+        long warmup = Long.parseLong(option("warmup", "5"));
+        long duration = Long.parseLong(option("duration", "30"));
+        System.out.printf("Target %s.%s at %s, %s, concurrency %d, payload %s bytes, warmup %ds, duration %ds%n",
+                iface.getSimpleName(), method.getName(), address,
+                qps > 0 ? "open loop " + qps + " req/s" : "closed loop", concurrency, option("payload", "128"), warmup, duration);
+
+        ExecutorService callers = Executors.newFixedThreadPool(concurrency);
+        try {
+            // 预热：同样的负载，不记录
+            drive(callers, concurrency, qps, TimeUnit.SECONDS.toNanos(warmup));
+            awaitOutstanding();
+            latency.reset();
+            serviceTime.reset();
+            String statusPrefix = "client.method." + iface.getName() + "." + method.getName() + ".status.";
+            Map<String, Number> statusBefore = RpcMetrics.snapshot(statusPrefix);
+
+            // 测量
+            recording = true;
+            long start = System.nanoTime();
+            Histogram total = drive(callers, concurrency, qps, TimeUnit.SECONDS.toNanos(duration));
+            awaitOutstanding();
+            long elapsed = System.nanoTime() - start;
+            recording = false;
+            total.add(latency.getIntervalHistogram());
+            report(total, serviceTime.getIntervalHistogram(), elapsed, statusPrefix, statusBefore);
+        } finally {
+            callers.shutdownNow();
+            netClient.close();
+            if (server != null) {
+                server.stop();
+            }
+        }
+    }
+
+    /*
+     * 按开环或闭环方式发出请求，持续durationNanos，每秒输出一行进度
+     * @return 测量期间每秒取出的延迟直方图的累计
+     * */
+    private Histogram drive(ExecutorService callers, int concurrency, double qps, long durationNanos) {
+        Histogram total = new Histogram(3);
+        long start = System.nanoTime();
+        long end = start + durationNanos;
+        long nextReport = start + TimeUnit.SECONDS.toNanos(1);
+        if (qps > 0) {
+            // 开环：第i个请求计划在start + i/qps发出，落后时立即补发
+            for (long i = 0; ; i++) {
+                long intended = start + (long) (i * 1e9 / qps);
+                if (intended - end >= 0) {
+                    break;
+                }
+                long now;
+                while ((now = System.nanoTime()) < intended) {
+                    LockSupport.parkNanos(intended - now);
+                }
+                outstanding.incrementAndGet();
+                callers.execute(() -> call(intended));
+                if (now - nextReport >= 0) {
+                    progress(total);
+                    nextReport += TimeUnit.SECONDS.toNanos(1);
+                }
+            }
+        } else {
+            // 闭环：每个调用线程收到响应后立即发下一个
+            for (int t = 0; t < concurrency; t++) {
+                callers.execute(() -> {
+                    while (System.nanoTime() - end < 0) {
+                        outstanding.incrementAndGet();
+                        call(System.nanoTime());
+                    }
+                });
+            }
+            while (System.nanoTime() - end < 0) {
+                LockSupport.parkNanos(Math.min(end, nextReport) - System.nanoTime());
+                if (System.nanoTime() - nextReport >= 0) {
+                    progress(total);
+                    nextReport += TimeUnit.SECONDS.toNanos(1);
+                }
+            }
+        }
+        return total;
+    }
+
+    //一次调用：intended是计划发出的时刻，延迟从这里开始计算；服务时间从实际发出开始计算
+    private void call(long intended) {
+        long sent = System.nanoTime();
+        Throwable error = null;
+        try {
+            Object result = method.invoke(proxy, args);
+            if (result instanceof CompletableFuture) {
+                ((CompletableFuture<?>) result).join();
+            }
+        } catch (InvocationTargetException e) {
+            error = e.getCause();
+        } catch (CompletionException e) {
+            error = e.getCause() != null ? e.getCause() : e;
+        } catch (Throwable e) {
+            error = e;
+        } finally {
+            outstanding.decrementAndGet();
+        }
+        long now = System.nanoTime();
+        latency.recordValue(Math.max(now - intended, 0));
+        serviceTime.recordValue(Math.max(now - sent, 0));
+        if (!recording) {
+            return;
+        }
+        if (error == null) {
+            succeeded.increment();
+        } else {
+            failed.increment();
+            failures.computeIfAbsent(error.getClass().getSimpleName(), k -> new LongAdder()).increment();
+        }
+    }
+
+    //每秒一行：这一秒完成的请求数、p50、p99，在途请求数（开环时包括排队的）
+    private void progress(Histogram total) {
+        Histogram interval = latency.getIntervalHistogram();
+        if (recording) {
+            total.add(interval);
+        }
+        System.out.printf("  %s %8d req/s  p50 %8.3f ms  p99 %8.3f ms  outstanding %d%n",
+                recording ? "measure" : "warmup ", interval.getTotalCount(),
+                interval.getValueAtPercentile(50) / 1e6, interval.getValueAtPercentile(99) / 1e6, outstanding.get());
+    }
+
+    //测量结束后等待已发出的请求完成，最多等待超时时间再加1秒
+    private void awaitOutstanding() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Long.parseLong(option("timeout", "5000")) + 1000);
+        while (outstanding.get() > 0 && System.nanoTime() - deadline < 0) {
+            Thread.sleep(10);
+        }
+    }
+
+    private void report(Histogram latency, Histogram serviceTime, long elapsedNanos,
+                        String statusPrefix, Map<String, Number> statusBefore) {
+        double seconds = elapsedNanos / 1e9;
+        long ok = succeeded.sum();
+        long errors = failed.sum();
+        System.out.println();
+        System.out.printf("Requests: %d succeeded, %d failed in %.1f s%n", ok, errors, seconds);
+        System.out.printf("Throughput: %.1f req/s (succeeded %.1f req/s)%n", (ok + errors) / seconds, ok / seconds);
+        System.out.println();
+        System.out.printf("%-12s %14s %14s%n", "Percentile", "Latency(ms)", "Service(ms)");
+        for (double p : PERCENTILES) {
+            System.out.printf("%-12s %14.3f %14.3f%n", p + "%",
+                    latency.getValueAtPercentile(p) / 1e6, serviceTime.getValueAtPercentile(p) / 1e6);
+        }
+        System.out.printf("%-12s %14.3f %14.3f%n", "max", latency.getMaxValue() / 1e6, serviceTime.getMaxValue() / 1e6);
+        System.out.printf("%-12s %14.3f %14.3f%n", "mean", latency.getMean() / 1e6, serviceTime.getMean() / 1e6);
+        System.out.println();
+        System.out.println("Status codes:");
+        Map<String, Number> statusAfter = RpcMetrics.snapshot(statusPrefix);
+        statusAfter.forEach((name, count) -> {
+            long before = statusBefore.getOrDefault(name, 0L).longValue();
+            System.out.printf("  %-20s %d%n", name.substring(statusPrefix.length()), count.longValue() - before);
+        });
+        if (!failures.isEmpty()) {
+            System.out.println("Failures:");
+            new TreeMap<>(failures).forEach((name, count) -> System.out.printf("  %-30s %d%n", name, count.sum()));
+        }
+    }
+
+    //在本进程内启动服务端，端口可以用port指定，默认随机选择一个空闲端口
+    private NettyRpcServer startServer(Class<?> iface, Serializer serializer) throws Exception {
+        String implName = option("impl", iface == EchoService.class ? EchoServiceImpl.class.getName() : "");
+        if (implName.isEmpty()) {
+            throw new IllegalArgumentException("impl= is required to serve " + iface.getName() + " locally, or use address=");
+        }
+        Object impl = Class.forName(implName).getDeclaredConstructor().newInstance();
+        int port = Integer.parseInt(option("port", "0"));
+        if (port == 0) {
+            try (ServerSocket socket = new ServerSocket(0)) {
+                port = socket.getLocalPort();
+            }
+        }
+        LocalServiceRegister register = new LocalServiceRegister();
+        register.register(new ServiceObject(iface.getName(), iface, impl));
+        NettyRpcServer server = new NettyRpcServer(port, option("protocol", "myprotocol"),
+                new RequestHandler(new MessageProtocolSerialize(serializer), register));
+        Thread thread = new Thread(server::start, "rpc-server");
+        thread.setDaemon(true);
+        thread.start();
+        // 等待端口开始监听
+        for (int i = 0; i < 100; i++) {
+            try (java.net.Socket socket = new java.net.Socket("127.0.0.1", port)) {
+                return server;
+            } catch (java.io.IOException e) {
+                Thread.sleep(50);
+            }
+        }
+        throw new IllegalStateException("Server did not start on port " + port);
+    }
+
+    private static Method findMethod(Class<?> iface, String name) {
+        return Arrays.stream(iface.getMethods())
+                .filter(m -> m.getName().equals(name))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("No method " + name + " in " + iface.getName()));
+    }
+
+    //按参数类型生成参数：byte[]、String使用payload大小，数值使用arg，其余为null
+    private static Object[] arguments(Method method, int payload, long arg) {
+        Class<?>[] types = method.getParameterTypes();
+        Object[] values = new Object[types.length];
+        for (int i = 0; i < types.length; i++) {
+            Class<?> type = types[i];
+            if (type == byte[].class) {
+                byte[] bytes = new byte[payload];
+                Arrays.fill(bytes, (byte) 'x');
+                values[i] = bytes;
+            } else if (type == String.class) {
+                values[i] = "x".repeat(payload);
+            } else if (type == long.class || type == Long.class) {
+                values[i] = arg;
+            } else if (type == int.class || type == Integer.class) {
+                values[i] = (int) arg;
+            } else if (type == boolean.class) {
+                values[i] = false;
+            } else if (type == double.class || type == Double.class) {
+                values[i] = (double) arg;
+            }
+        }
+        return values;
+    }
+
+    private String option(String key, String defaultValue) {
+        return options.getOrDefault(key, defaultValue);
+    }
+}
@@ -0,0 +1,126 @@
+package wu.myrpc.benchmark;
+
+import wu.myrpc.common.protocol.RequestDatagram;
+import wu.myrpc.common.protocol.ResponseDatagram;
+import wu.myrpc.common.protocol.StatusCode;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * 基准测试共用的服务接口和典型的请求、响应报文：
+ * - small：一个短字符串和一个int参数，返回短字符串，代表大多数简单调用
+ * - pojo：一个带列表和map的业务对象参数，返回同样的对象，代表一般的业务调用
+ * */
+public final class Payloads {
+    private Payloads() {
+    }
+
+    public interface OrderService {
+        String hello(String name, int times);
+
+        Order save(Order order);
+    }
+
+    public static class OrderServiceImpl implements OrderService {
+        @Override
+        public String hello(String name, int times) {
+            return "hello " + name;
+        }
+
+        @Override
+        public Order save(Order order) {
+            return order;
+        }
+    }
+
+    public static class Order implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private long id;
+        private String customer;
+        private double amount;
+        private List<String> items = new ArrayList<>();
+        private Map<String, String> tags = new LinkedHashMap<>();
+
+        public long getId() {
+            return id;
+        }
+
+        public void setId(long id) {
+            this.id = id;
+        }
+
+        public String getCustomer() {
+            return customer;
+        }
+
+        public void setCustomer(String customer) {
+            this.customer = customer;
+        }
+
+        public double getAmount() {
+            return amount;
+        }
+
+        public void setAmount(double amount) {
+            this.amount = amount;
+        }
+
+        public List<String> getItems() {
+            return items;
+        }
+
+        public void setItems(List<String> items) {
+            this.items = items;
+        }
+
+        public Map<String, String> getTags() {
+            return tags;
+        }
+
+        public void setTags(Map<String, String> tags) {
+            this.tags = tags;
+        }
+    }
+
+    public static Order newOrder() {
+        Order order = new Order();
+        order.setId(20210618L);
+        order.setCustomer("wuhomecat");
+        order.setAmount(199.9);
+        for (int i = 0; i < 10; i++) {
+            order.getItems().add("item-" + i);
+        }
+        order.getTags().put("channel", "app");
+        order.getTags().put("region", "cn-east");
+        return order;
+    }
+
+    //按名称构造请求报文：small或pojo
+    public static RequestDatagram request(String payload) {
+        RequestDatagram req = new RequestDatagram();
+        req.setServiceName(OrderService.class.getName());
+        req.getHeaders().put("timeout", "5000");
+        if ("pojo".equals(payload)) {
+            req.setMethodName("save");
+            req.setParameterTypes(new Class<?>[]{Order.class});
+            req.setParameters(new Object[]{newOrder()});
+        } else {
+            req.setMethodName("hello");
+            req.setParameterTypes(new Class<?>[]{String.class, int.class});
+            req.setParameters(new Object[]{"world", 3});
+        }
+        return req;
+    }
+
+    //按名称构造响应报文：small或pojo
+    public static ResponseDatagram response(String payload) {
+        ResponseDatagram rsp = new ResponseDatagram(StatusCode.SUCCESS);
+        rsp.setReturnValue("pojo".equals(payload) ? newOrder() : "hello world");
+        return rsp;
+    }
+}
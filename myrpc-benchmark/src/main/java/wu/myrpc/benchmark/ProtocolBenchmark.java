@@ -0,0 +1,87 @@
+package wu.myrpc.benchmark;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.openjdk.jmh.annotations.*;
+import wu.myrpc.common.protocol.MessageProtocolSerialize;
+import wu.myrpc.common.protocol.RequestDatagram;
+import wu.myrpc.common.protocol.ResponseDatagram;
+import wu.myrpc.common.serializer.Serializer;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * 协议层的编组、解组：和网络层一样直接读写池化的缓冲区
+ * - marshalling*：编组到新分配的池化缓冲区后释放，包括分配、释放缓冲区的开销
+ * - unmarshalling*：从预先编组好的缓冲区解组，每次重置读位置
+ * */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ProtocolBenchmark {
+
+    @Param({"JAVA", "FASTJSON", "KRYO"})
+    public String serializer;
+
+    @Param({"small", "pojo"})
+    public String payload;
+
+    private final PooledByteBufAllocator allocator = PooledByteBufAllocator.DEFAULT;
+    private MessageProtocolSerialize protocol;
+    private RequestDatagram request;
+    private ResponseDatagram response;
+    private ByteBuf requestBuf;
+    private ByteBuf responseBuf;
+
+    @Setup
+    public void setup() throws Exception {
+        protocol = new MessageProtocolSerialize(Serializer.of(serializer));
+        request = Payloads.request(payload);
+        response = Payloads.response(payload);
+        requestBuf = allocator.buffer();
+        protocol.marshallingRequest(request, requestBuf);
+        responseBuf = allocator.buffer();
+        protocol.marshallingResponse(response, responseBuf);
+    }
+
+    @TearDown
+    public void tearDown() {
+        requestBuf.release();
+        responseBuf.release();
+    }
+
+    @Benchmark
+    public int marshallingRequest() throws Exception {
+        ByteBuf out = allocator.buffer();
+        try {
+            protocol.marshallingRequest(request, out);
+            return out.readableBytes();
+        } finally {
+            out.release();
+        }
+    }
+
+    @Benchmark
+    public RequestDatagram unmarshallingRequest() throws Exception {
+        return protocol.unmarshallingRequest(requestBuf.duplicate());
+    }
+
+    @Benchmark
+    public int marshallingResponse() throws Exception {
+        ByteBuf out = allocator.buffer();
+        try {
+            protocol.marshallingResponse(response, out);
+            return out.readableBytes();
+        } finally {
+            out.release();
+        }
+    }
+
+    @Benchmark
+    public ResponseDatagram unmarshallingResponse() throws Exception {
+        return protocol.unmarshallingResponse(responseBuf.duplicate());
+    }
+}
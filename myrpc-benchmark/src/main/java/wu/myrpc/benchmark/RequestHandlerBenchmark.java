@@ -0,0 +1,69 @@
+package wu.myrpc.benchmark;
+
+import io.netty.buffer.ByteBuf;
+import org.openjdk.jmh.annotations.*;
+import wu.myrpc.common.protocol.MessageProtocolSerialize;
+import wu.myrpc.common.protocol.MethodId;
+import wu.myrpc.common.protocol.RequestDatagram;
+import wu.myrpc.common.serializer.Serializer;
+import wu.myrpc.server.RequestHandler;
+import wu.myrpc.server.register.LocalServiceRegister;
+import wu.myrpc.server.register.MethodInvoker;
+import wu.myrpc.server.register.ServiceObject;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * 服务端请求处理：不经过网络层
+ * - handleRequest：字节数组进、字节数组出，包括解组请求、按服务名和方法名分发、调用服务方法、编组响应
+ * - handleRequestById：网络层带id的请求路径，方法已由id解析得到，响应编组到池化缓冲区
+ * */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RequestHandlerBenchmark {
+
+    @Param({"JAVA", "KRYO"})
+    public String serializer;
+
+    @Param({"small", "pojo"})
+    public String payload;
+
+    private RequestHandler handler;
+    private MessageProtocolSerialize protocol;
+    private byte[] requestBytes;
+    private RequestDatagram request;
+    private MethodInvoker invoker;
+
+    @Setup
+    public void setup() throws Exception {
+        LocalServiceRegister register = new LocalServiceRegister();
+        register.register(new ServiceObject(Payloads.OrderService.class.getName(),
+                Payloads.OrderService.class, new Payloads.OrderServiceImpl()));
+        protocol = new MessageProtocolSerialize(Serializer.of(serializer));
+        handler = new RequestHandler(protocol, register);
+        request = Payloads.request(payload);
+        requestBytes = protocol.marshallingRequest(request);
+        invoker = handler.resolve(request.getServiceName(),
+                MethodId.signature(request.getMethodName(), request.getParameterTypes()));
+    }
+
+    @Benchmark
+    public byte[] handleRequest() throws Exception {
+        return handler.handleRequest(requestBytes);
+    }
+
+    @Benchmark
+    public int handleRequestById() throws Exception {
+        long now = System.nanoTime();
+        ByteBuf rsp = handler.handleRequestAsync(protocol, invoker, request, now, now, -1).join();
+        try {
+            return rsp.readableBytes();
+        } finally {
+            rsp.release();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package wu.myrpc.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import wu.myrpc.client.ClientProxyFactory;
+import wu.myrpc.client.discovery.LocalServiceDiscoverer;
+import wu.myrpc.client.net.NettyNetClient;
+import wu.myrpc.common.protocol.MessageProtocol;
+import wu.myrpc.common.protocol.MessageProtocolSerialize;
+import wu.myrpc.common.serializer.Serializer;
+import wu.myrpc.common.service.Service;
+import wu.myrpc.server.NettyRpcServer;
+import wu.myrpc.server.RequestHandler;
+import wu.myrpc.server.register.LocalServiceRegister;
+import wu.myrpc.server.register.ServiceObject;
+
+import java.net.ServerSocket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * 端到端调用：ClientProxyFactory生成的代理通过回环地址调用同一进程内的NettyRpcServer
+ * 服务发现使用内存中的LocalServiceDiscoverer代替zookeeper，其余组件和实际部署相同
+ * - call：单个调用线程，平均时间就是一次调用的往返延迟
+ * - callConcurrent：8个调用线程共享连接池，多个请求在连接上多路复用
+ * */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RpcBenchmark {
+
+    private static final String PROTOCOL = "myprotocol";
+
+    @Param({"JAVA", "KRYO"})
+    public String serializer;
+
+    @Param({"small", "pojo"})
+    public String payload;
+
+    private NettyRpcServer server;
+    private NettyNetClient netClient;
+    private Payloads.OrderService orderService;
+    private Payloads.Order order;
+    private boolean pojo;
+
+    @Setup
+    public void setup() throws Exception {
+        Serializer codec = Serializer.of(serializer);
+        MessageProtocolSerialize protocol = new MessageProtocolSerialize(codec);
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+
+        // 服务端
+        LocalServiceRegister register = new LocalServiceRegister();
+        register.register(new ServiceObject(Payloads.OrderService.class.getName(),
+                Payloads.OrderService.class, new Payloads.OrderServiceImpl()));
+        server = new NettyRpcServer(port, PROTOCOL, new RequestHandler(protocol, register));
+        Thread thread = new Thread(server::start, "rpc-server");
+        thread.setDaemon(true);
+        thread.start();
+
+        // 客户端
+        String protocolName = MessageProtocolSerialize.protocolName(PROTOCOL, codec);
+        Service service = new Service();
+        service.setName(Payloads.OrderService.class.getName());
+        service.setAddress("127.0.0.1:" + port);
+        service.setProtocol(protocolName);
+        LocalServiceDiscoverer discoverer = new LocalServiceDiscoverer();
+        discoverer.register(service);
+        Map<String, MessageProtocol> protocols = new HashMap<>();
+        protocols.put(protocolName, protocol);
+        netClient = new NettyNetClient();
+        ClientProxyFactory factory = new ClientProxyFactory();
+        factory.setServiceDiscoverer(discoverer);
+        factory.setSupportMessageProtocols(protocols);
+        factory.setNetClient(netClient);
+        orderService = factory.getProxy(Payloads.OrderService.class);
+        order = Payloads.newOrder();
+        pojo = "pojo".equals(payload);
+
+        // 等待服务端启动完成
+        for (int i = 0; ; i++) {
+            try {
+                orderService.hello("warmup", 1);
+                break;
+            } catch (Exception e) {
+                if (i >= 50) {
+                    throw e;
+                }
+                Thread.sleep(100);
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        netClient.close();
+        server.stop();
+    }
+
+    @Benchmark
+    public Object call() {
+        return pojo ? orderService.save(order) : orderService.hello("world", 3);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Object callConcurrent() {
+        return pojo ? orderService.save(order) : orderService.hello("world", 3);
+    }
+}
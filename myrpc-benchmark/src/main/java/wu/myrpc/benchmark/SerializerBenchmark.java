@@ -0,0 +1,62 @@
+package wu.myrpc.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import wu.myrpc.common.protocol.RequestDatagram;
+import wu.myrpc.common.protocol.ResponseDatagram;
+import wu.myrpc.common.serializer.Serializer;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * 各序列化算法对请求、响应报文的序列化和反序列化（字节数组版本）
+ * 配合GC profiler（见Benchmarks）可以看到每次操作分配的字节数gc.alloc.rate.norm
+ * */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SerializerBenchmark {
+
+    @Param({"JAVA", "FASTJSON", "KRYO"})
+    public String serializer;
+
+    @Param({"small", "pojo"})
+    public String payload;
+
+    private Serializer codec;
+    private RequestDatagram request;
+    private ResponseDatagram response;
+    private byte[] requestBytes;
+    private byte[] responseBytes;
+
+    @Setup
+    public void setup() {
+        codec = Serializer.of(serializer);
+        request = Payloads.request(payload);
+        response = Payloads.response(payload);
+        requestBytes = codec.serialize(request);
+        responseBytes = codec.serialize(response);
+    }
+
+    @Benchmark
+    public byte[] serializeRequest() {
+        return codec.serialize(request);
+    }
+
+    @Benchmark
+    public RequestDatagram deserializeRequest() {
+        return codec.deserialize(RequestDatagram.class, requestBytes);
+    }
+
+    @Benchmark
+    public byte[] serializeResponse() {
+        return codec.serialize(response);
+    }
+
+    @Benchmark
+    public ResponseDatagram deserializeResponse() {
+        return codec.deserialize(ResponseDatagram.class, responseBytes);
+    }
+}
@@ -0,0 +1,283 @@
+package wu.myrpc.benchmark;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.socket.SocketChannel;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import wu.myrpc.common.protocol.FrameDecoder;
+import wu.myrpc.common.protocol.MessageProtocol;
+import wu.myrpc.common.protocol.MessageProtocolSerialize;
+import wu.myrpc.common.protocol.RpcFrame;
+import wu.myrpc.common.serializer.Serializer;
+import wu.myrpc.common.transport.Transport;
+import wu.myrpc.server.record.TrafficReader;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * 流量回放工具：读取服务端TrafficRecorder录制的请求帧，原样发送到目标服务端，输出延迟分位数、吞吐量和按状态码统计的响应
+ * 参数形如key=value：
+ * - dir：录制文件所在目录，默认myrpc-traffic
+ * - address：目标服务端地址ip:port，必须指定；目标服务端需要提供录制时的服务
+ * - speed：回放速度，1表示按录制时的请求间隔发送，N表示N倍速，max表示不等待、尽快发送
+ * - connections：连接数，请求轮流使用各条连接
+ * - maxInflight：最多同时等待响应的请求数，达到时暂停发送，默认1000
+ * - timeout：等待响应的时间，单位ms，默认5000；超时的请求按TIMEOUT计入状态统计并归还在途名额，回放结束后最多再等待这么久
+ * 连接断开时，该连接上等待响应的请求按CONNECTION_CLOSED计入状态统计；服务端丢弃请求、连接断开都不会让回放一直等待
+ * 请求帧只改写请求id，序列化算法、消息体等保持录制时的原样，压测的是真实流量的解码和分发开销
+ * 按时间间隔回放时延迟从请求计划发出的时刻开始计算，和LoadGenerator的开环模式一样避免coordinated omission
+ * 例：java -cp target/benchmarks.jar wu.myrpc.benchmark.TrafficReplayer dir=/data/myrpc-traffic address=127.0.0.1:19000 speed=4
+ * */
+public class TrafficReplayer {
+
+    private static final double[] PERCENTILES = {50, 75, 90, 95, 99, 99.9, 99.99};
+
+    private final Map<String, String> options;
+    private final Recorder latency = new Recorder(3);
+    private final Recorder serviceTime = new Recorder(3);
+    private final AtomicLong nextRequestId = new AtomicLong();
+    //key=请求id，value=等待响应的请求
+    private final Map<Long, Pending> pending = new ConcurrentHashMap<>();
+    //key=状态名，value=次数
+    private final Map<String, LongAdder> statuses = new ConcurrentHashMap<>();
+    private Semaphore inflight;
+    //等待响应的时间，单位ns
+    private long timeoutNanos;
+
+    TrafficReplayer(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int i = arg.indexOf('=');
+            if (i <= 0) {
+                System.err.println("Usage: TrafficReplayer address=ip:port [key=value]..., see the class comment for keys");
+                System.exit(1);
+            }
+            options.put(arg.substring(0, i), arg.substring(i + 1));
+        }
+        if (!options.containsKey("address")) {
+            System.err.println("address=ip:port of the target server is required");
+            System.exit(1);
+        }
+        new TrafficReplayer(options).run();
+        System.exit(0);
+    }
+
+    void run() throws Exception {
+        String speedOption = option("speed", "1");
+        double speed = "max".equalsIgnoreCase(speedOption) ? 0 : Double.parseDouble(speedOption);
+        int connections = Integer.parseInt(option("connections", "4"));
+        inflight = new Semaphore(Integer.parseInt(option("maxInflight", "1000")));
+        long timeoutMillis = Long.parseLong(option("timeout", "5000"));
+        timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        String[] address = option("address", "").split(":");
+        TrafficReader reader = new TrafficReader(Paths.get(option("dir", "myrpc-traffic")));
+
+        EventLoopGroup group = Transport.NIO.newEventLoopGroup(0);
+        try {
+            Bootstrap bootstrap = new Bootstrap()
+                    .group(group)
+                    .channel(Transport.NIO.socketChannelClass())
+                    .handler(new ChannelInitializer<SocketChannel>() {
+                        @Override
+                        protected void initChannel(SocketChannel ch) {
+                            //请求帧已经是网络格式，直接写出ByteBuf；只需要解码响应帧
+                            ch.pipeline().addLast(new FrameDecoder());
+                            ch.pipeline().addLast(new ResponseHandler());
+                        }
+                    });
+            List<Channel> channels = new ArrayList<>(connections);
+            for (int i = 0; i < connections; i++) {
+                channels.add(bootstrap.connect(address[0], Integer.parseInt(address[1])).sync().channel());
+            }
+            System.out.printf("Replaying %s to %s at %s, %d connections%n", option("dir", "myrpc-traffic"),
+                    option("address", ""), speed > 0 ? speed + "x" : "max speed", connections);
+
+            Histogram total = new Histogram(3);
+            long start = System.nanoTime();
+            long nextReport = start + TimeUnit.SECONDS.toNanos(1);
+            long first = 0;
+            long last = 0;
+            long sent = 0;
+            TrafficReader.Record record;
+            while ((record = reader.next()) != null) {
+                if (sent == 0) {
+                    first = record.getTimestampNanos();
+                }
+                last = record.getTimestampNanos();
+                //按录制时的间隔计算计划发出的时刻，间隔为负（跨进程的录制文件）时立即发送
+                long intended = speed > 0 ? start + (long) (Math.max(last - first, 0) / speed) : System.nanoTime();
+                long now;
+                while ((now = System.nanoTime()) < intended) {
+                    LockSupport.parkNanos(intended - now);
+                }
+                //在途请求达到上限：等待响应，等待超时说明有请求的响应丢了，清理超时的请求后继续等待
+                while (!inflight.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                    expire();
+                }
+                send(channels.get((int) (sent % connections)), record, intended);
+                sent++;
+                if (System.nanoTime() - nextReport >= 0) {
+                    expire();
+                    progress(total);
+                    nextReport += TimeUnit.SECONDS.toNanos(1);
+                }
+            }
+            long deadline = System.nanoTime() + timeoutNanos;
+            while (!pending.isEmpty() && System.nanoTime() - deadline < 0) {
+                Thread.sleep(10);
+            }
+            long elapsed = System.nanoTime() - start;
+            total.add(latency.getIntervalHistogram());
+            report(sent, last - first, elapsed, total, serviceTime.getIntervalHistogram());
+            for (Channel channel : channels) {
+                channel.close().sync();
+            }
+        } finally {
+            group.shutdownGracefully();
+        }
+    }
+
+    //改写请求id后写出录制的请求帧，写出失败（如连接已断开）时按SEND_FAILED结束
+    private void send(Channel channel, TrafficReader.Record record, long intended) {
+        long requestId = nextRequestId.incrementAndGet();
+        byte[] frame = record.getFrame();
+        ByteBuf buf = Unpooled.buffer(frame.length).writeBytes(frame);
+        buf.setLong(TrafficReader.Record.REQUEST_ID_OFFSET, requestId);
+        Pending request = new Pending(channel, intended, System.nanoTime());
+        pending.put(requestId, request);
+        channel.writeAndFlush(buf).addListener((ChannelFutureListener) f -> {
+            if (!f.isSuccess()) {
+                fail(requestId, request, "SEND_FAILED");
+            }
+        });
+    }
+
+    //清理等待响应超时的请求：服务端丢弃了请求帧时响应不会到达
+    private void expire() {
+        long now = System.nanoTime();
+        pending.forEach((requestId, request) -> {
+            if (now - request.sent > timeoutNanos) {
+                fail(requestId, request, "TIMEOUT");
+            }
+        });
+    }
+
+    //没有收到响应就结束请求：归还在途名额，按原因计入状态统计；响应、超时、连接断开只有一个会生效
+    private void fail(long requestId, Pending request, String status) {
+        if (pending.remove(requestId, request)) {
+            inflight.release();
+            statuses.computeIfAbsent(status, k -> new LongAdder()).increment();
+        }
+    }
+
+    //每秒一行：这一秒完成的请求数、p50、p99、等待响应的请求数
+    private void progress(Histogram total) {
+        Histogram interval = latency.getIntervalHistogram();
+        total.add(interval);
+        System.out.printf("  %8d req/s  p50 %8.3f ms  p99 %8.3f ms  pending %d%n", interval.getTotalCount(),
+                interval.getValueAtPercentile(50) / 1e6, interval.getValueAtPercentile(99) / 1e6, pending.size());
+    }
+
+    private void report(long sent, long recordedNanos, long elapsedNanos, Histogram latency, Histogram serviceTime) {
+        double seconds = elapsedNanos / 1e9;
+        System.out.println();
+        System.out.printf("Requests: %d sent, %d responses, %d without response%n", sent, latency.getTotalCount(), pending.size());
+        System.out.printf("Recorded span: %.1f s (%.1f req/s), replayed in %.1f s (%.1f req/s)%n",
+                recordedNanos / 1e9, recordedNanos > 0 ? sent / (recordedNanos / 1e9) : 0, seconds, sent / seconds);
+        System.out.println();
+        System.out.printf("%-12s %14s %14s%n", "Percentile", "Latency(ms)", "Service(ms)");
+        for (double p : PERCENTILES) {
+            System.out.printf("%-12s %14.3f %14.3f%n", p + "%",
+                    latency.getValueAtPercentile(p) / 1e6, serviceTime.getValueAtPercentile(p) / 1e6);
+        }
+        System.out.printf("%-12s %14.3f %14.3f%n", "max", latency.getMaxValue() / 1e6, serviceTime.getMaxValue() / 1e6);
+        System.out.println();
+        System.out.println("Status codes:");
+        new TreeMap<>(statuses).forEach((name, count) -> System.out.printf("  %-20s %d%n", name, count.sum()));
+    }
+
+    private String option(String key, String defaultValue) {
+        return options.getOrDefault(key, defaultValue);
+    }
+
+    /*
+     * 读取响应帧：按请求id找到发出时刻记录延迟，解组响应报文得到状态码
+     * */
+    private class ResponseHandler extends SimpleChannelInboundHandler<RpcFrame> {
+        //key=序列化算法id，value=协议，只在IO线程上访问
+        private final Map<Byte, MessageProtocol> protocols = new HashMap<>();
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, RpcFrame frame) {
+            Pending request = pending.remove(frame.getRequestId());
+            if (request == null) {
+                return;
+            }
+            inflight.release();
+            long now = System.nanoTime();
+            latency.recordValue(Math.max(now - request.intended, 0));
+            serviceTime.recordValue(Math.max(now - request.sent, 0));
+            String status;
+            try {
+                MessageProtocol protocol = protocols.computeIfAbsent(frame.getSerializerId(),
+                        id -> new MessageProtocolSerialize(Serializer.valueOf(id)));
+                status = protocol.unmarshallingResponse(frame.getBody()).getStatus().name();
+            } catch (Exception e) {
+                status = "UNREADABLE";
+            }
+            if (frame.isRejected()) {
+                status += " (rejected)";
+            }
+            statuses.computeIfAbsent(status, k -> new LongAdder()).increment();
+        }
+
+        //连接断开：该连接上等待响应的请求不会再有响应
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            pending.forEach((requestId, request) -> {
+                if (request.channel == ctx.channel()) {
+                    fail(requestId, request, "CONNECTION_CLOSED");
+                }
+            });
+            super.channelInactive(ctx);
+        }
+    }
+
+    /*
+     * 等待响应的请求：所在的连接、计划发出的时刻、实际发出的时刻
+     * */
+    private static class Pending {
+        private final Channel channel;
+        private final long intended;
+        private final long sent;
+
+        Pending(Channel channel, long intended, long sent) {
+            this.channel = channel;
+            this.intended = intended;
+            this.sent = sent;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package wu.myrpc.annotation;
+
+import java.lang.annotation.*;
+
+/*
+* 一致性哈希负载均衡的路由键，在客户端的服务接口上使用：
+* - 标记在方法参数上：按该参数路由
+* - 标记在方法上：按value指定下标的参数路由
+* 都没有标记时按负载均衡器配置的参数下标（默认第一个参数）路由
+* */
+@Target({ElementType.PARAMETER, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface HashKey {
+    int value() default 0;
+}
@@ -0,0 +1,15 @@
+package wu.myrpc.annotation;
+
+import java.lang.annotation.*;
+
+/*
+* 幂等方法：重复调用和调用一次的效果相同，在客户端的服务接口上使用
+* - 标记在方法上：该方法幂等
+* - 标记在接口上：接口所有方法都幂等
+* 幂等方法在响应慢时可以向另一个服务提供方再发送一次请求（对冲请求），见Hedger
+* */
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface Idempotent {
+}
@@ -0,0 +1,17 @@
+package wu.myrpc.annotation;
+
+import java.lang.annotation.*;
+
+/*
+* 调用超时时间，单位ms，在客户端的服务接口上使用：
+* - 标记在方法上：该方法的超时时间
+* - 标记在接口上：接口所有方法的默认超时时间
+* 配置文件中的my.rpc.timeouts优先于注解，都没有配置时使用my.rpc.client-timeout
+* <=0表示不限制
+* */
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface Timeout {
+    long value();
+}
@@ -1,22 +1,58 @@
 package wu.myrpc.client;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import wu.myrpc.annotation.Idempotent;
+import wu.myrpc.annotation.Timeout;
+import wu.myrpc.client.balance.LoadBalancer;
+import wu.myrpc.client.balance.ProviderStats;
+import wu.myrpc.client.balance.RandomLoadBalancer;
 import wu.myrpc.client.discovery.ServiceDiscoverer;
+import wu.myrpc.client.hedge.Hedger;
+import wu.myrpc.client.limit.ConcurrencyLimiter;
+import wu.myrpc.client.limit.ConcurrencyLimits;
 import wu.myrpc.client.net.NetClient;
+import wu.myrpc.client.outlier.OutlierDetector;
+import wu.myrpc.client.retry.Retrier;
+import wu.myrpc.common.context.RpcContext;
+import wu.myrpc.common.metrics.AccessLog;
+import wu.myrpc.common.metrics.MethodStats;
+import wu.myrpc.common.metrics.SlowCallLog;
 import wu.myrpc.common.protocol.MessageProtocol;
+import wu.myrpc.common.protocol.MethodId;
 import wu.myrpc.common.protocol.RequestDatagram;
 import wu.myrpc.common.protocol.ResponseDatagram;
+import wu.myrpc.common.protocol.RpcFrame;
+import wu.myrpc.common.protocol.StatusCode;
 import wu.myrpc.common.service.Service;
 import wu.myrpc.exception.MyRpcException;
+import wu.myrpc.exception.RpcLimitExceededException;
+import wu.myrpc.exception.RpcRejectedException;
+import wu.myrpc.exception.RpcTimeoutException;
 import wu.myrpc.server.register.ZookeeperServiceRegister;
 
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static wu.myrpc.common.constants.RpcConstant.HEADER_SERVER_TIMING;
+import static wu.myrpc.common.constants.RpcConstant.HEADER_TIMEOUT;
 
 /*
 * 客户端代理工厂：用于创建代理对象 （配置时再做初始化）
@@ -25,6 +61,18 @@ import java.util.Random;
 * - 根据Service对象构造请求报文：服务名、方法名\方法参数类型\方法参数（反射而来）；
 * - 根据协议将报文编码为字节数组data，连同service对象一起提交给Netty Net Client
 * - 获取Netty Net Client返回的响应字节数组，根据协议解码，得到响应报文，返回处理结果。
+* - 接口方法返回CompletableFuture时走异步调用：不阻塞调用线程，响应到达时在网络线程上解码并完成future
+* 请求报文直接编组到池化的缓冲区，响应报文直接从网络层的缓冲区解组，解组后释放
+* 服务提供方由负载均衡器选择，可按服务名指定；每次调用前后在ProviderStats中记录在途请求数和响应时间
+* 每次调用都有超时时间（见timeoutOf），剩余的时间放在请求首部中传给服务端；
+* 在服务方法中发起的嵌套调用只能使用上游请求剩余的时间（见RpcContext）
+* @Idempotent标记的方法在设置了hedger时可以发送对冲请求：第一个请求迟迟没有响应时向另一个提供方再发送一次（见Hedger）
+* 设置了retrier时，连接失败、服务端拒绝以及幂等方法的网络失败会换一个提供方重试（见Retrier）
+* 设置了outlierDetector时，负载均衡前先去掉被摘除的异常提供方，每次请求的结果也记录到检测器中（见OutlierDetector）
+* 设置了concurrencyLimits时，每个服务（以及每个提供方）的在途请求数受自适应并发限制，超过时快速拒绝（见ConcurrencyLimiter）
+* 设置了slowCalls时记录每次调用各阶段的时间点（见Trace），耗时超过阈值的调用输出慢调用日志
+* 设置了accessLog时，每次调用结束时写入一条访问日志记录，由后台线程采样输出
+* 服务发现的提供方列表变化时，清理已下线提供方的连接池、负载均衡统计、并发限制器等按地址保留的状态（见onProviders）
 * */
 public class ClientProxyFactory {
     private static final Logger logger = LoggerFactory.getLogger(ZookeeperServiceRegister.class);
@@ -36,8 +84,98 @@ public class ClientProxyFactory {
 
     private NetClient netClient;
 
+    //默认的负载均衡器
+    private LoadBalancer loadBalancer = new RandomLoadBalancer();
+    //按服务名指定的负载均衡器
+    private Map<String, LoadBalancer> serviceLoadBalancers = new HashMap<>();
+
+    //默认的超时时间，单位ms，<=0表示不限制
+    private long timeout;
+    //按服务名或"服务名.方法名"指定的超时时间，单位ms
+    private Map<String, Long> timeouts = new HashMap<>();
+
+    //对冲请求，null表示不对冲
+    private Hedger hedger;
+    //重试，null表示不重试
+    private Retrier retrier;
+    //异常提供方检测，null表示不检测
+    private OutlierDetector outlierDetector;
+    //自适应并发限制，null表示不限制
+    private ConcurrencyLimits concurrencyLimits;
+    //慢调用日志，null表示不记录
+    private SlowCallLog slowCalls;
+    //访问日志，null表示不记录
+    private AccessLog accessLog;
+
+    //请求缓冲区的分配器
+    private ByteBufAllocator allocator = PooledByteBufAllocator.DEFAULT;
+
+    //key=服务名，value=最近一次看到的提供方列表（服务发现的不可变快照）
+    private final ConcurrentMap<String, List<Service>> snapshots = new ConcurrentHashMap<>();
+    //所有服务的提供方地址，只在evict的锁内修改
+    private Set<String> liveProviders = Collections.emptySet();
+
     //private Map<Class<?>, Object> objectCache = new HashMap<>();
 
+    /*
+    * 关闭访问日志（输出缓冲区中剩余的记录）、停止异常提供方检测、释放负载均衡统计的引用，容器关闭时调用
+    * 网络层、服务发现者由各自的bean关闭
+    * */
+    public synchronized void close() {
+        ProviderStats.release(liveProviders);
+        liveProviders = Collections.emptySet();
+        snapshots.clear();
+        if (accessLog != null) {
+            accessLog.close();
+        }
+        if (outlierDetector != null) {
+            outlierDetector.close();
+        }
+    }
+
+    /*
+    * 每次调用前传入服务发现得到的提供方列表，列表和上次的不是同一个快照时清理已下线的提供方
+    * 列表没有变化时只是一次map读取
+    * */
+    private void onProviders(String serviceName, List<Service> list) {
+        if (snapshots.get(serviceName) != list) {
+            evict(serviceName, list);
+        }
+    }
+
+    /*
+    * 清理不在任何服务的提供方列表中的提供方：连接池、负载均衡统计、并发限制器；之后还有请求发往这个地址时重新创建
+    * 异常检测不再跟踪离开该服务的提供方
+    * 连接池和并发限制器清理的是这个工厂的地址；负载均衡统计是进程内共享的，按引用数清理（见ProviderStats.release），
+    * 其他工厂还在使用的地址保留统计
+    * */
+    private synchronized void evict(String serviceName, List<Service> list) {
+        snapshots.put(serviceName, list);
+        //异常检测按服务跟踪提供方：提供方离开这个服务时就不再跟踪，即使它还在其他服务的列表中
+        if (outlierDetector != null) {
+            outlierDetector.forService(serviceName).retain(list);
+        }
+        Set<String> live = new HashSet<>();
+        for (List<Service> services : snapshots.values()) {
+            for (Service service : services) {
+                live.add(service.getAddress());
+            }
+        }
+        Set<String> arrived = new HashSet<>(live);
+        arrived.removeAll(liveProviders);
+        Set<String> departed = new HashSet<>(liveProviders);
+        departed.removeAll(live);
+        liveProviders = live;
+        ProviderStats.retain(arrived);
+        if (departed.isEmpty()) {
+            return;
+        }
+        netClient.evict(departed);
+        ProviderStats.release(departed);
+        if (concurrencyLimits != null) {
+            concurrencyLimits.evict(departed);
+        }
+    }
 
     public ServiceDiscoverer getServiceDiscoverer() {
         return serviceDiscoverer;
@@ -55,6 +193,94 @@ public class ClientProxyFactory {
         this.supportMessageProtocols = supportMessageProtocols;
     }
 
+    public LoadBalancer getLoadBalancer() {
+        return loadBalancer;
+    }
+
+    public void setLoadBalancer(LoadBalancer loadBalancer) {
+        this.loadBalancer = loadBalancer;
+    }
+
+    public Map<String, LoadBalancer> getServiceLoadBalancers() {
+        return serviceLoadBalancers;
+    }
+
+    public void setServiceLoadBalancers(Map<String, LoadBalancer> serviceLoadBalancers) {
+        this.serviceLoadBalancers = serviceLoadBalancers;
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    public Map<String, Long> getTimeouts() {
+        return timeouts;
+    }
+
+    public void setTimeouts(Map<String, Long> timeouts) {
+        this.timeouts = timeouts;
+    }
+
+    public Hedger getHedger() {
+        return hedger;
+    }
+
+    public void setHedger(Hedger hedger) {
+        this.hedger = hedger;
+    }
+
+    public Retrier getRetrier() {
+        return retrier;
+    }
+
+    public void setRetrier(Retrier retrier) {
+        this.retrier = retrier;
+    }
+
+    public OutlierDetector getOutlierDetector() {
+        return outlierDetector;
+    }
+
+    public void setOutlierDetector(OutlierDetector outlierDetector) {
+        this.outlierDetector = outlierDetector;
+    }
+
+    public ConcurrencyLimits getConcurrencyLimits() {
+        return concurrencyLimits;
+    }
+
+    public void setConcurrencyLimits(ConcurrencyLimits concurrencyLimits) {
+        this.concurrencyLimits = concurrencyLimits;
+    }
+
+    public SlowCallLog getSlowCalls() {
+        return slowCalls;
+    }
+
+    public void setSlowCalls(SlowCallLog slowCalls) {
+        this.slowCalls = slowCalls;
+    }
+
+    public AccessLog getAccessLog() {
+        return accessLog;
+    }
+
+    public void setAccessLog(AccessLog accessLog) {
+        this.accessLog = accessLog;
+    }
+
+    public ByteBufAllocator getAllocator() {
+        return allocator;
+    }
+
+    public void setAllocator(ByteBufAllocator allocator) {
+        this.allocator = allocator;
+    }
+
     public NetClient getNetClient() {
         return netClient;
     }
@@ -89,11 +315,28 @@ public class ClientProxyFactory {
     private class ClientInvocationHandler implements InvocationHandler {
         private Class<?> clazz;
 
-        private Random random = new Random();
+        //该服务使用的负载均衡器
+        private final LoadBalancer balancer;
+        //该服务的重试预算，不重试时为null
+        private final Retrier.ServiceRetry retry;
+        //该服务的异常提供方检测，不检测时为null
+        private final OutlierDetector.ServiceOutliers outliers;
+        //该服务的并发限制器，不限制时为null
+        private final ConcurrencyLimiter limiter;
+
+        //服务id：由接口名计算，见MethodId
+        private final int serviceId;
+        //key=接口方法，value=方法签名、方法id和超时时间，第一次调用时计算
+        private final Map<Method, MethodMeta> methodMetas = new ConcurrentHashMap<>();
 
         public ClientInvocationHandler(Class<?> clazz) {
             super();
             this.clazz = clazz;
+            this.serviceId = MethodId.ofService(clazz.getName());
+            this.balancer = serviceLoadBalancers.getOrDefault(clazz.getName(), loadBalancer);
+            this.retry = retrier == null ? null : retrier.forService(clazz.getName());
+            this.outliers = outlierDetector == null ? null : outlierDetector.forService(clazz.getName());
+            this.limiter = concurrencyLimits == null ? null : concurrencyLimits.forService(clazz.getName());
         }
 
         @Override
@@ -107,6 +350,50 @@ public class ClientProxyFactory {
                 return 0;
             }
 
+            // 记录调用统计：在途调用数、状态码、响应时间，异步方法在返回的future完成时记录
+            MethodMeta meta = methodMetas.computeIfAbsent(method, this::newMethodMeta);
+            boolean async = method.getReturnType() == CompletableFuture.class;
+            long begin = meta.stats.begin();
+            Trace trace = slowCalls == null && accessLog == null ? null : new Trace(begin);
+            Object result;
+            try {
+                result = doInvoke(method, args, meta, async, trace);
+            } catch (Exception e) {
+                StatusCode status = statusOf(e);
+                meta.stats.end(begin, status);
+                completed(trace, method, status);
+                throw e;
+            }
+            if (async) {
+                ((CompletableFuture<?>) result).whenComplete((value, cause) -> {
+                    StatusCode status = cause == null ? StatusCode.SUCCESS : statusOf(unwrap(cause));
+                    meta.stats.end(begin, status);
+                    completed(trace, method, status);
+                });
+            } else {
+                meta.stats.end(begin, StatusCode.SUCCESS);
+                completed(trace, method, StatusCode.SUCCESS);
+            }
+            return result;
+        }
+
+        //调用结束：写入访问日志，耗时超过阈值时输出慢调用日志
+        private void completed(Trace trace, Method method, StatusCode status) {
+            if (trace == null) {
+                return;
+            }
+            long now = System.nanoTime();
+            if (accessLog != null) {
+                accessLog.log(clazz.getName(), method.getName(), trace.address, status, now - trace.begin,
+                        trace.encoded != 0 ? trace.requestBytes : -1, trace.decoded != 0 ? trace.responseBytes : -1);
+            }
+            if (slowCalls != null && slowCalls.isSlow(now - trace.begin)) {
+                slowCalls.log(() -> trace.describe(clazz.getName() + "." + method.getName(), status, now));
+            }
+        }
+
+        //选择提供方、发送请求并等待（或异步返回）结果
+        private Object doInvoke(Method method, Object[] args, MethodMeta meta, boolean async, Trace trace) throws Exception {
             // 1、获得服务信息（this表示当前动态代理对象，即接口实现类对象）
             String serviceName = this.clazz.getName();//获取接口名：全限定名
 
@@ -116,34 +403,424 @@ public class ClientProxyFactory {
             if (services == null || services.isEmpty()) {
                 throw new MyRpcException("No provider available!");
             }
+            //提供方列表变化时清理已下线提供方的连接池、负载均衡统计、并发限制器
+            onProviders(serviceName, services);
+            //去掉被摘除的异常提供方
+            if (outliers != null) {
+                services = outliers.filter(services);
+            }
 
-            // 随机选择一个服务提供者（软负载均衡）
-            Service service = services.get(random.nextInt(services.size()));
+            // 可用的超时时间：自身配置的超时时间和上游请求剩余时间中较小的一个
+            long timeoutMillis = RpcContext.timeoutMillis(meta.timeout);
+            if (timeoutMillis < 0) {
+                throw new RpcTimeoutException("Deadline exceeded before calling " + serviceName + "." + method.getName());
+            }
 
-            // 2、构造request对象
-            RequestDatagram req = new RequestDatagram();
-            req.setServiceName(service.getName());
-            req.setMethodName(method.getName());
-            req.setParameterTypes(method.getParameterTypes());
-            req.setParameters(args);
+            // 并发限制：超过限制时快速拒绝，同步调用可以等待一小段时间
+            int inflight = 0;
+            long start = System.nanoTime();
+            if (limiter != null) {
+                inflight = limiter.acquire(async ? 0 : concurrencyLimits.maxWaitNanos());
+                if (inflight < 0) {
+                    throw new RpcLimitExceededException("Concurrency limit of " + serviceName + " exceeded: " + limiter.getLimit());
+                }
+            }
 
-            // 3、协议层编组
-            // 获得该方法对应的协议
-            MessageProtocol protocol = supportMessageProtocols.get(service.getProtocol());
-            // 编组请求
-            byte[] data = protocol.marshallingRequest(req);
+            // 2~4、选择提供方、编组请求并发送，失败时按重试策略换一个提供方重新发送
+            Call call = new Call(method, args, meta, services, timeoutMillis, trace);
+            CompletableFuture<ByteBuf> future;
+            try {
+                future = retry == null
+                        ? call.attempt()
+                        : retrier.call(retry, meta.idempotent, call.deadline, call::attempt);
+            } catch (Exception e) {
+                if (limiter != null) {
+                    limiter.release(start, inflight, e);
+                }
+                throw e;
+            }
+            if (limiter != null) {
+                int acquired = inflight;
+                future.whenComplete((rsp, cause) -> limiter.release(start, acquired, unwrap(cause)));
+            }
 
-            // 4、调用网络层发送请求：启动客户端
-            byte[] repData = netClient.start(data, service);
+            // 异步方法：响应到达后解组并完成返回的future
+            if (async) {
+                return future.thenApply(repData -> {
+                    int size = repData.readableBytes();
+                    meta.stats.responseBytes(size);
+                    try {
+                        ResponseDatagram rsp = call.protocol.unmarshallingResponse(repData);
+                        decoded(trace, rsp, size);
+                        return returnValue(rsp);
+                    } catch (Exception e) {
+                        throw new CompletionException(e);
+                    } finally {
+                        repData.release();
+                    }
+                });
+            }
+
+            // 同步方法：等待响应
+            ByteBuf repData;
+            try {
+                repData = future.get();
+            } catch (InterruptedException e) {
+                //不再等待响应：取消后到达的响应消息体由网络层释放
+                future.cancel(false);
+                throw e;
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RpcTimeoutException) {
+                    throw (RpcTimeoutException) e.getCause();
+                }
+                throw new MyRpcException("Request to " + call.service.getAddress() + " failed", e.getCause());
+            }
+            int size = repData.readableBytes();
+            meta.stats.responseBytes(size);
             //logger.info("收到响应字节：" + repData.length);
-            // 5解组响应消息
-            ResponseDatagram rsp = protocol.unmarshallingResponse(repData);
+            // 5解组响应消息：使用最后一次尝试的协议
+            ResponseDatagram rsp;
+            try {
+                rsp = call.protocol.unmarshallingResponse(repData);
+            } finally {
+                repData.release();
+            }
+            decoded(trace, rsp, size);
             //logger.info("转换成报文：" + rsp.getReturnValue());
             // 6、结果处理
+            return returnValue(rsp);
+        }
+
+        //响应解组完成：记下时刻、响应大小和服务端带回的阶段耗时
+        private void decoded(Trace trace, ResponseDatagram rsp, int responseBytes) {
+            if (trace == null) {
+                return;
+            }
+            trace.decoded = System.nanoTime();
+            trace.responseBytes = responseBytes;
+            trace.serverTiming = rsp.getHeaders() == null ? null : rsp.getHeaders().get(HEADER_SERVER_TIMING);
+        }
+
+        /*
+        * 一次调用：记录已经尝试过的提供方，重试时只从其余的提供方中选择
+        * 各次尝试是依次进行的，protocol、service是最后一次尝试使用的协议和提供方
+        * */
+        private class Call {
+            private final Method method;
+            private final Object[] args;
+            private final MethodMeta meta;
+            private final List<Service> services;
+            private final long timeoutMillis;
+            private final Trace trace;
+            private final long start = System.nanoTime();
+            //截止时间，0表示没有
+            private final long deadline;
+            //已经尝试过的提供方（不含最后一次），第一次重试时创建
+            private List<Service> tried;
+            private volatile Service service;
+            private volatile MessageProtocol protocol;
+
+            Call(Method method, Object[] args, MethodMeta meta, List<Service> services, long timeoutMillis, Trace trace) {
+                this.method = method;
+                this.args = args;
+                this.meta = meta;
+                this.services = services;
+                this.timeoutMillis = timeoutMillis;
+                this.trace = trace;
+                this.deadline = timeoutMillis > 0 ? start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis) : 0;
+            }
+
+            CompletableFuture<ByteBuf> attempt() throws Exception {
+                // 重试：排除已经尝试过的提供方，超时时间是剩余的时间
+                List<Service> candidates = services;
+                long remaining = timeoutMillis;
+                if (service != null) {
+                    if (tried == null) {
+                        tried = new ArrayList<>(2);
+                    }
+                    tried.add(service);
+                    candidates = new ArrayList<>(services);
+                    candidates.removeAll(tried);
+                    if (candidates.isEmpty()) {
+                        throw new MyRpcException("No other provider to retry");
+                    }
+                    if (timeoutMillis > 0) {
+                        remaining -= TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                        if (remaining <= 0) {
+                            throw new RpcTimeoutException("Deadline exceeded before retrying " + clazz.getName() + "." + method.getName());
+                        }
+                    }
+                }
+
+                // 由负载均衡器选择一个服务提供者（软负载均衡）
+                Service service = balancer.select(candidates, method, args);
+
+                // 2、构造request对象：服务名、方法名、参数类型不放进请求报文，由请求帧首部中的id代替
+                RequestDatagram req = new RequestDatagram();
+                req.setParameters(args);
+                if (remaining > 0) {
+                    req.getHeaders().put(HEADER_TIMEOUT, Long.toString(remaining));
+                }
+
+                // 3、协议层编组
+                // 获得服务提供方注册的协议：协议名-序列化算法名
+                MessageProtocol protocol = supportMessageProtocols.get(service.getProtocol());
+                if (protocol == null) {
+                    throw new MyRpcException("Unsupported protocol: " + service.getProtocol());
+                }
+                // 编组请求：直接写入池化的缓冲区
+                long encodeStart = trace == null ? 0 : System.nanoTime();
+                ByteBuf data = allocator.buffer();
+                try {
+                    protocol.marshallingRequest(req, data);
+                } catch (Exception e) {
+                    data.release();
+                    throw e;
+                }
+                meta.stats.requestBytes(data.readableBytes());
+                this.service = service;
+                this.protocol = protocol;
+                // 构造请求帧：带上服务id、方法id，并附带服务名、方法签名，由网络层决定是否需要发送名称
+                RpcFrame frame = newFrame(protocol, meta, data);
+                if (trace != null) {
+                    trace.attempt(encodeStart, data.readableBytes(), service.getAddress(), frame);
+                }
+
+                // 4、调用网络层异步发送请求，幂等方法可以对冲
+                return meta.latency == null
+                        ? send(frame, service, remaining)
+                        : hedge(frame, protocol, meta, service, candidates, method, args, remaining);
+            }
+        }
+
+        //构造请求帧
+        private RpcFrame newFrame(MessageProtocol protocol, MethodMeta meta, ByteBuf data) {
+            RpcFrame frame = new RpcFrame(protocol.getSerializerId(), 0, (byte) 0, data);
+            frame.setServiceId(serviceId);
+            frame.setMethodId(meta.methodId);
+            frame.attachNames(clazz.getName(), meta.signature);
+            return frame;
+        }
+
+        /*
+        * 对冲发送：样本不足或只有一个提供方时只发送一次
+        * 对冲请求的消息体是第一个请求消息体的副本（共享内存、独立读写位置），不再需要时释放
+        * 对冲请求由负载均衡器从其余提供方中选择，超时时间是整个调用剩余的时间
+        * */
+        private CompletableFuture<ByteBuf> hedge(RpcFrame frame, MessageProtocol protocol, MethodMeta meta, Service service,
+                                                 List<Service> services, Method method, Object[] args, long timeoutMillis) {
+            long delay = meta.latency.delayNanos();
+            if (delay < 0 || services.size() < 2) {
+                return hedger.track(meta.latency, send(frame, service, timeoutMillis));
+            }
+            long start = System.nanoTime();
+            ByteBuf spare = frame.getBody().retainedDuplicate();
+            return hedger.hedge(meta.latency, delay,
+                    () -> send(frame, service, timeoutMillis),
+                    () -> {
+                        long remaining = timeoutMillis;
+                        if (timeoutMillis > 0) {
+                            remaining -= TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                            if (remaining <= 0) {
+                                spare.release();
+                                return null;
+                            }
+                        }
+                        List<Service> others = new ArrayList<>(services);
+                        others.remove(service);
+                        return send(newFrame(protocol, meta, spare), balancer.select(others, method, args), remaining);
+                    },
+                    spare::release);
+        }
+
+        //发送请求帧，记录该提供方的在途请求数和响应时间，以及请求的结果；超过提供方的并发限制时不发送
+        private CompletableFuture<ByteBuf> send(RpcFrame frame, Service service, long timeoutMillis) {
+            ConcurrencyLimiter providerLimiter = concurrencyLimits == null ? null : concurrencyLimits.forProvider(service.getAddress());
+            int inflight = 0;
+            if (providerLimiter != null) {
+                inflight = providerLimiter.acquire(0);
+                if (inflight < 0) {
+                    frame.release();
+                    CompletableFuture<ByteBuf> rejected = new CompletableFuture<>();
+                    rejected.completeExceptionally(new RpcLimitExceededException(
+                            "Concurrency limit of " + service.getAddress() + " exceeded: " + providerLimiter.getLimit()));
+                    return rejected;
+                }
+            }
+            ProviderStats stats = ProviderStats.of(service.getAddress());
+            long start = stats.begin();
+            CompletableFuture<ByteBuf> future = netClient.sendAsync(frame, service, timeoutMillis);
+            int acquired = inflight;
+            future.whenComplete((rsp, cause) -> {
+                stats.end(start);
+                if (outliers != null) {
+                    outliers.record(service.getAddress(), System.nanoTime() - start, cause);
+                }
+                if (providerLimiter != null) {
+                    providerLimiter.release(start, acquired, cause);
+                }
+            });
+            return future;
+        }
+
+        //调用失败时统计用的状态码：超时、被拒绝（包括超过并发限制），同步调用的网络失败被包装在MyRpcException中
+        private StatusCode statusOf(Throwable cause) {
+            if (cause instanceof MyRpcException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof RpcTimeoutException) {
+                return StatusCode.DEADLINE_EXCEEDED;
+            }
+            if (cause instanceof RpcRejectedException) {
+                return StatusCode.OVERLOADED;
+            }
+            return StatusCode.ERROR;
+        }
+
+        //CompletableFuture的依赖阶段中异常被包装成CompletionException
+        private Throwable unwrap(Throwable cause) {
+            return cause instanceof CompletionException && cause.getCause() != null ? cause.getCause() : cause;
+        }
+
+        //从响应报文中取出返回值，服务端抛出异常时重新抛出，未成功处理（如服务不存在、服务端过载）时抛出MyRpcException
+        private Object returnValue(ResponseDatagram rsp) throws Exception {
             if (rsp.getException() != null) {
                 throw rsp.getException();
             }
+            if (rsp.getStatus() == StatusCode.DEADLINE_EXCEEDED) {
+                throw new RpcTimeoutException("Request failed: " + rsp.getStatus().getMessage());
+            }
+            if (rsp.getStatus() != StatusCode.SUCCESS) {
+                throw new MyRpcException("Request failed: " + rsp.getStatus().getMessage());
+            }
             return rsp.getReturnValue();
         }
+
+        //第一次调用方法时计算方法签名、方法id、超时时间、是否幂等，幂等方法创建响应时间统计
+        private MethodMeta newMethodMeta(Method method) {
+            boolean idempotent = method.isAnnotationPresent(Idempotent.class) || clazz.isAnnotationPresent(Idempotent.class);
+            return new MethodMeta(method, timeoutOf(method), idempotent,
+                    idempotent && hedger != null ? hedger.newMethodLatency() : null,
+                    MethodStats.of("client.method." + clazz.getName() + "." + method.getName()));
+        }
+
+        /*
+        * 方法的超时时间，按以下顺序查找，第一个找到的生效：
+        * 配置的"服务名.方法名" -> 方法上的@Timeout -> 配置的服务名 -> 接口上的@Timeout -> 默认超时时间
+        * */
+        private long timeoutOf(Method method) {
+            String serviceName = clazz.getName();
+            Long configured = timeouts.get(serviceName + "." + method.getName());
+            if (configured != null) {
+                return configured;
+            }
+            Timeout annotation = method.getAnnotation(Timeout.class);
+            if (annotation != null) {
+                return annotation.value();
+            }
+            configured = timeouts.get(serviceName);
+            if (configured != null) {
+                return configured;
+            }
+            annotation = clazz.getAnnotation(Timeout.class);
+            return annotation != null ? annotation.value() : timeout;
+        }
+    }
+
+    /*
+    * 一次调用各阶段的时间点（System.nanoTime()）和消息大小，只在设置了slowCalls或accessLog时创建，重试时记录最后一次尝试：
+    * - route：从调用开始到编组请求之前，包括服务发现、并发限制、负载均衡以及之前的尝试
+    * - encode：编组请求
+    * - connect：从编组完成到获取到连接，包括等待连接池（见NettyNetClient）
+    * - remote：从获取到连接到收到响应，服务端带回了阶段耗时时拆分出network和服务端的queue、decode、service
+    * - decode：从收到响应到解组完成，同步调用还包括唤醒调用线程的时间
+    * 对冲请求只记录第一个请求；没有到达的阶段（如超时）不输出
+    * */
+    private static class Trace {
+        private final long begin;
+        private volatile long encodeStart;
+        private volatile long encoded;
+        private volatile int requestBytes;
+        private volatile String address;
+        private volatile RpcFrame frame;
+        private volatile long decoded;
+        private volatile int responseBytes;
+        private volatile String serverTiming;
+
+        Trace(long begin) {
+            this.begin = begin;
+        }
+
+        //一次尝试的请求已编组，准备发送
+        void attempt(long encodeStart, int requestBytes, String address, RpcFrame frame) {
+            this.encodeStart = encodeStart;
+            this.encoded = System.nanoTime();
+            this.requestBytes = requestBytes;
+            this.address = address;
+            this.frame = frame;
+        }
+
+        String describe(String name, StatusCode status, long end) {
+            StringBuilder sb = new StringBuilder("Slow call ").append(name);
+            if (address != null) {
+                sb.append(" to ").append(address);
+            }
+            sb.append(" took ").append(String.format("%.3f", (end - begin) / 1e6))
+                    .append("ms [").append(status).append("], phases(ms):");
+            if (encodeStart == 0) {
+                SlowCallLog.phase(sb, "route", end - begin);
+                return sb.toString();
+            }
+            SlowCallLog.phase(sb, "route", encodeStart - begin);
+            SlowCallLog.phase(sb, "encode", encoded - encodeStart);
+            long acquired = frame.getAcquiredNanos();
+            long responded = frame.getRespondedNanos();
+            if (acquired == 0) {
+                SlowCallLog.phase(sb, "connect", end - encoded);
+            } else {
+                SlowCallLog.phase(sb, "connect", acquired - encoded);
+                if (responded == 0) {
+                    SlowCallLog.phase(sb, "remote", end - acquired);
+                } else {
+                    SlowCallLog.phase(sb, "remote", responded - acquired);
+                    if (serverTiming != null) {
+                        StringBuilder server = new StringBuilder();
+                        long serverNanos = SlowCallLog.appendTiming(server, serverTiming);
+                        sb.append(" (network=").append(String.format("%.3f", (responded - acquired - serverNanos) / 1e6))
+                                .append(server).append(')');
+                    }
+                    if (decoded != 0) {
+                        SlowCallLog.phase(sb, "decode", decoded - responded);
+                    }
+                }
+            }
+            sb.append(", request=").append(requestBytes).append(" bytes");
+            if (decoded != 0) {
+                sb.append(", response=").append(responseBytes).append(" bytes");
+            }
+            return sb.toString();
+        }
+    }
+
+    /*
+    * 接口方法的签名、方法id、超时时间、是否幂等，幂等方法的响应时间统计（用于计算对冲延迟，不对冲时为null），
+    * 以及方法的调用统计（指标前缀client.method.服务名.方法名）
+    * */
+    private static class MethodMeta {
+        private final String signature;
+        private final int methodId;
+        private final long timeout;
+        private final boolean idempotent;
+        private final Hedger.MethodLatency latency;
+        private final MethodStats stats;
+
+        MethodMeta(Method method, long timeout, boolean idempotent, Hedger.MethodLatency latency, MethodStats stats) {
+            this.signature = MethodId.signature(method);
+            this.methodId = MethodId.hash(signature);
+            this.timeout = timeout;
+            this.idempotent = idempotent;
+            this.latency = latency;
+            this.stats = stats;
+        }
     }
 }
@@ -0,0 +1,59 @@
+package wu.myrpc.client;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * 额度桶：限制额外请求（重试、对冲）占正常请求的比例
+ * - 每次正常请求存入ratio个额度，每个额外请求消耗1个额度，额外请求数不超过正常请求数的ratio倍
+ * - 额度有上限maxTokens：允许短时间的突发，长时间空闲后也不会积攒出大量的额外请求
+ * 额度以1/1000为单位用整数记录，CAS更新，不加锁
+ * */
+public class TokenBudget {
+    private static final long TOKEN = 1000;
+
+    private final long deposit;
+    private final long maxTokens;
+    private final AtomicLong tokens = new AtomicLong();
+
+    public TokenBudget(double ratio, int maxTokens) {
+        this.deposit = Math.round(ratio * TOKEN);
+        this.maxTokens = maxTokens * TOKEN;
+    }
+
+    /*
+     * 正常请求：存入额度
+     * */
+    public void deposit() {
+        long current;
+        do {
+            current = tokens.get();
+            if (current >= maxTokens) {
+                return;
+            }
+        } while (!tokens.compareAndSet(current, Math.min(current + deposit, maxTokens)));
+    }
+
+    /*
+     * 额外请求：消耗1个额度，额度不足时返回false
+     * */
+    public boolean tryAcquire() {
+        long current;
+        do {
+            current = tokens.get();
+            if (current < TOKEN) {
+                return false;
+            }
+        } while (!tokens.compareAndSet(current, current - TOKEN));
+        return true;
+    }
+
+    /*
+     * 额外请求最终没有发出：退还tryAcquire消耗的1个额度
+     * */
+    public void refund() {
+        long current;
+        do {
+            current = tokens.get();
+        } while (!tokens.compareAndSet(current, Math.min(current + TOKEN, maxTokens)));
+    }
+}
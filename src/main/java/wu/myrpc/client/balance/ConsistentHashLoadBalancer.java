@@ -0,0 +1,267 @@
+package wu.myrpc.client.balance;
+
+import wu.myrpc.annotation.HashKey;
+import wu.myrpc.common.service.Service;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+ * 一致性哈希：按调用参数把同一个键的请求路由到同一个提供方，提高提供方本地缓存的命中率
+ * - 每个提供方在哈希环上有virtualNodes个虚拟节点，键落在顺时针方向的第一个虚拟节点上
+ * - 路由参数：方法参数上的@HashKey、方法上的@HashKey(下标)，都没有时使用构造参数指定的下标
+ * - 没有路由参数（无参方法、下标越界）或路由参数为null时随机选择，不把这些调用都集中到"null"所在的一个提供方
+ * - 提供方列表变化时增量更新哈希环：只计算新增提供方的虚拟节点，下线提供方的虚拟节点直接去掉，
+ *   其余的键不受影响，增减一个提供方只有约1/N的键换到别的提供方
+ * 每个服务的哈希环是不可变的，通过volatile变量发布，选择时只是一次二分查找
+ * 哈希环按提供方地址集合重建，与列表对象无关：重试、对冲、异常检测传入的是排除了部分提供方的新列表，
+ * 列表中的提供方都在环上时不重建，顺时针跳过不在列表中的提供方的虚拟节点，结果和去掉这些提供方后重建的环一样
+ * 只有列表中出现环上没有的地址时才重建
+ * */
+public class ConsistentHashLoadBalancer implements LoadBalancer {
+    //默认每个提供方的虚拟节点数
+    public static final int DEFAULT_VIRTUAL_NODES = 160;
+
+    private final int virtualNodes;
+    //没有@HashKey时的路由参数下标
+    private final int defaultArgument;
+
+    //key=服务名，value=该服务的哈希环
+    private final Map<String, RingHolder> rings = new ConcurrentHashMap<>();
+    //key=接口方法，value=路由参数下标
+    private final Map<Method, Integer> keyArguments = new ConcurrentHashMap<>();
+
+    public ConsistentHashLoadBalancer() {
+        this(DEFAULT_VIRTUAL_NODES, 0);
+    }
+
+    public ConsistentHashLoadBalancer(int virtualNodes, int defaultArgument) {
+        this.virtualNodes = virtualNodes;
+        this.defaultArgument = defaultArgument;
+    }
+
+    @Override
+    public Service select(List<Service> services, Method method, Object[] args) {
+        if (services.size() == 1) {
+            return services.get(0);
+        }
+        Object key = routingKey(method, args);
+        if (key == null) {
+            return services.get(ThreadLocalRandom.current().nextInt(services.size()));
+        }
+        RingHolder holder = rings.computeIfAbsent(services.get(0).getName(), name -> new RingHolder());
+        long hash = hash(key.toString());
+        Ring ring = holder.ring;
+        if (ring.services == services) {
+            return ring.locate(hash);
+        }
+        int[] positions = ring.positionsOf(services);
+        if (positions == null) {
+            ring = holder.update(services);
+            positions = ring.positionsOf(services);
+        } else if (positions.length == services.size() && covers(positions)) {
+            //地址集合相同的新列表（如服务发现的新快照）：换上新列表，之后走快速路径，不重新排序
+            holder.ring = ring = ring.rebind(services, positions);
+            return ring.locate(hash);
+        }
+        return ring.locate(hash, services, positions);
+    }
+
+    //环上的每个提供方都在列表中
+    private static boolean covers(int[] positions) {
+        for (int position : positions) {
+            if (position < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Object routingKey(Method method, Object[] args) {
+        if (args == null || args.length == 0) {
+            return null;
+        }
+        int index = keyArguments.computeIfAbsent(method, this::keyArgument);
+        return index < args.length ? args[index] : null;
+    }
+
+    //查找路由参数下标：参数上的@HashKey优先，其次是方法上的@HashKey
+    private int keyArgument(Method method) {
+        Annotation[][] annotations = method.getParameterAnnotations();
+        for (int i = 0; i < annotations.length; i++) {
+            for (Annotation annotation : annotations[i]) {
+                if (annotation instanceof HashKey) {
+                    return i;
+                }
+            }
+        }
+        HashKey hashKey = method.getAnnotation(HashKey.class);
+        return hashKey != null ? hashKey.value() : defaultArgument;
+    }
+
+    /*
+     * 64位FNV-1a再做一次murmur3的混淆，虚拟节点名相近时也能在环上均匀分布
+     * */
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /*
+     * 单个服务的哈希环，以及每个提供方虚拟节点的哈希值（提供方上下线时复用，不重新计算）
+     * */
+    private class RingHolder {
+        private volatile Ring ring = new Ring(null, new long[0], new int[0], new Service[0], Map.of());
+        private final Map<String, long[]> nodeHashes = new HashMap<>();
+
+        //用列表中的提供方重建哈希环；其它线程已经重建出包含这些提供方的环时直接返回
+        synchronized Ring update(List<Service> services) {
+            if (ring.positionsOf(services) != null) {
+                return ring;
+            }
+            //新增的提供方计算虚拟节点，已有的直接复用，下线的去掉
+            Map<String, long[]> current = new LinkedHashMap<>();
+            Map<String, Service> byAddress = new HashMap<>();
+            for (Service service : services) {
+                String address = service.getAddress();
+                if (byAddress.putIfAbsent(address, service) != null) {
+                    continue;
+                }
+                long[] hashes = nodeHashes.get(address);
+                if (hashes == null) {
+                    hashes = new long[virtualNodes];
+                    for (int i = 0; i < virtualNodes; i++) {
+                        hashes[i] = hash(address + "#" + i);
+                    }
+                }
+                current.put(address, hashes);
+            }
+            nodeHashes.clear();
+            nodeHashes.putAll(current);
+
+            //按哈希值排序所有虚拟节点，哈希值相同时按地址排序，保证各个调用方的环一致
+            Service[] providers = new Service[current.size()];
+            Map<String, Integer> indexes = new HashMap<>();
+            Node[] nodes = new Node[current.size() * virtualNodes];
+            int n = 0;
+            for (Map.Entry<String, long[]> entry : current.entrySet()) {
+                int index = indexes.size();
+                providers[index] = byAddress.get(entry.getKey());
+                indexes.put(entry.getKey(), index);
+                for (long h : entry.getValue()) {
+                    nodes[n++] = new Node(h, index, entry.getKey());
+                }
+            }
+            Arrays.sort(nodes, 0, n, (a, b) -> a.hash != b.hash ? Long.compare(a.hash, b.hash)
+                    : a.address.compareTo(b.address));
+            long[] hashes = new long[n];
+            int[] owners = new int[n];
+            for (int i = 0; i < n; i++) {
+                hashes[i] = nodes[i].hash;
+                owners[i] = nodes[i].owner;
+            }
+            ring = new Ring(services, hashes, owners, providers, indexes);
+            return ring;
+        }
+    }
+
+    private static class Node {
+        private final long hash;
+        private final int owner;
+        private final String address;
+
+        Node(long hash, int owner, String address) {
+            this.hash = hash;
+            this.owner = owner;
+            this.address = address;
+        }
+    }
+
+    /*
+     * 不可变的哈希环：虚拟节点的哈希值升序排列，owners[i]是hashes[i]所属的提供方在providers中的下标
+     * services是最近一次发布这个环时的提供方列表，providers中的提供方取自这个列表
+     * */
+    private static class Ring {
+        private final List<Service> services;
+        private final long[] hashes;
+        private final int[] owners;
+        private final Service[] providers;
+        //key=提供方地址，value=在providers中的下标
+        private final Map<String, Integer> indexes;
+
+        Ring(List<Service> services, long[] hashes, int[] owners, Service[] providers, Map<String, Integer> indexes) {
+            this.services = services;
+            this.hashes = hashes;
+            this.owners = owners;
+            this.providers = providers;
+            this.indexes = indexes;
+        }
+
+        /*
+         * 环上每个提供方在列表中的下标，不在列表中为-1
+         * @return 列表中有环上没有的地址时返回null
+         * */
+        int[] positionsOf(List<Service> services) {
+            int[] positions = new int[providers.length];
+            Arrays.fill(positions, -1);
+            for (int i = 0; i < services.size(); i++) {
+                Integer index = indexes.get(services.get(i).getAddress());
+                if (index == null) {
+                    return null;
+                }
+                positions[index] = i;
+            }
+            return positions;
+        }
+
+        //换成地址集合相同的另一个列表，共用虚拟节点
+        Ring rebind(List<Service> services, int[] positions) {
+            Service[] rebound = new Service[providers.length];
+            for (int i = 0; i < rebound.length; i++) {
+                rebound[i] = services.get(positions[i]);
+            }
+            return new Ring(services, hashes, owners, rebound, indexes);
+        }
+
+        Service locate(long hash) {
+            return providers[owners[start(hash)]];
+        }
+
+        //顺时针找到第一个属于列表中提供方的虚拟节点
+        Service locate(long hash, List<Service> services, int[] positions) {
+            int i = start(hash);
+            for (int n = 0; n < hashes.length; n++, i = i + 1 == hashes.length ? 0 : i + 1) {
+                int position = positions[owners[i]];
+                if (position >= 0) {
+                    return services.get(position);
+                }
+            }
+            return services.get(0);
+        }
+
+        private int start(long hash) {
+            int i = Arrays.binarySearch(hashes, hash);
+            if (i < 0) {
+                i = -i - 1;
+            }
+            return i == hashes.length ? 0 : i;
+        }
+    }
+}
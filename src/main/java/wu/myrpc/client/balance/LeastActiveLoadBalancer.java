@@ -0,0 +1,37 @@
+package wu.myrpc.client.balance;
+
+import wu.myrpc.common.service.Service;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+ * 最少活跃：选在途请求数最少的提供方，多个提供方并列时随机选一个
+ * 慢提供方的请求完成得慢，在途请求数高，自然分到更少的流量
+ * */
+public class LeastActiveLoadBalancer implements LoadBalancer {
+    @Override
+    public Service select(List<Service> services, Method method, Object[] args) {
+        int size = services.size();
+        if (size == 1) {
+            return services.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Service selected = null;
+        int least = Integer.MAX_VALUE;
+        int ties = 0;
+        for (Service service : services) {
+            int active = ProviderStats.of(service.getAddress()).getActive();
+            if (active < least) {
+                least = active;
+                selected = service;
+                ties = 1;
+            } else if (active == least && random.nextInt(++ties) == 0) {
+                //并列时按蓄水池抽样随机选择，每个并列的提供方概率相同
+                selected = service;
+            }
+        }
+        return selected;
+    }
+}
@@ -0,0 +1,24 @@
+package wu.myrpc.client.balance;
+
+import wu.myrpc.common.service.Service;
+
+import java.lang.reflect.Method;
+import java.util.List;
+
+/*
+ * 负载均衡器：从服务提供方列表中为一次调用选择一个提供方
+ * 实现需要是线程安全的，一个实例被所有调用方线程共享；
+ * 需要延迟、在途请求数的实现从ProviderStats读取，代理对象在每次调用前后记录
+ * 可通过LoadBalancers.of按名称或实现类的全限定名创建
+ * */
+public interface LoadBalancer {
+    /**
+     * 选择服务提供方
+     *
+     * @param services 服务提供方列表，不为空，不可修改
+     * @param method   调用的接口方法
+     * @param args     调用参数
+     * @return 选中的服务提供方
+     */
+    Service select(List<Service> services, Method method, Object[] args);
+}
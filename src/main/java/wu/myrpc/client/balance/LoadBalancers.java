@@ -0,0 +1,36 @@
+package wu.myrpc.client.balance;
+
+/*
+ * 负载均衡器工厂：按名称创建内置的负载均衡器
+ * - random：随机
+ * - p2c：二选一 + 响应时间EWMA + 在途请求数
+ * - least-active：最少活跃
+ * - round-robin：平滑加权轮询
+ * - consistent-hash：按调用参数一致性哈希，见ConsistentHashLoadBalancer
+ * 其他名称当作LoadBalancer实现类的全限定名，通过无参构造器创建
+ * */
+public class LoadBalancers {
+    //构造器设为私有：只通过静态方法使用
+    private LoadBalancers(){}
+
+    public static LoadBalancer of(String name) {
+        switch (name.trim().toLowerCase()) {
+            case "random":
+                return new RandomLoadBalancer();
+            case "p2c":
+                return new P2cLoadBalancer();
+            case "least-active":
+                return new LeastActiveLoadBalancer();
+            case "round-robin":
+                return new RoundRobinLoadBalancer();
+            case "consistent-hash":
+                return new ConsistentHashLoadBalancer();
+            default:
+                try {
+                    return (LoadBalancer) Class.forName(name.trim()).getDeclaredConstructor().newInstance();
+                } catch (ReflectiveOperationException | ClassCastException e) {
+                    throw new IllegalArgumentException("Unknown load balancer: " + name, e);
+                }
+        }
+    }
+}
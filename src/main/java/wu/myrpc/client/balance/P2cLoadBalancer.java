@@ -0,0 +1,36 @@
+package wu.myrpc.client.balance;
+
+import wu.myrpc.common.service.Service;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+ * 二选一（power of two choices）：随机取两个不同的提供方，选负载更低的一个
+ * 负载 = 响应时间的EWMA * (在途请求数 + 1)，变慢或积压的提供方很快失去流量，
+ * 又因为只比较随机的两个，不会所有调用方同时涌向同一个"最快"的提供方
+ * */
+public class P2cLoadBalancer implements LoadBalancer {
+    @Override
+    public Service select(List<Service> services, Method method, Object[] args) {
+        int size = services.size();
+        if (size == 1) {
+            return services.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int a = random.nextInt(size);
+        int b = random.nextInt(size - 1);
+        if (b >= a) {
+            b++;
+        }
+        Service first = services.get(a);
+        Service second = services.get(b);
+        return cost(first) <= cost(second) ? first : second;
+    }
+
+    private static double cost(Service service) {
+        ProviderStats stats = ProviderStats.of(service.getAddress());
+        return (stats.getEwma() + 1) * (stats.getActive() + 1);
+    }
+}
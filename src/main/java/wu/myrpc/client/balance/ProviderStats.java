@@ -0,0 +1,118 @@
+package wu.myrpc.client.balance;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * 服务提供方的调用统计，按地址ip:port区分，所有代理对象共享：
+ * - active：在途请求数
+ * - ewma：响应时间的指数加权移动平均（单位ns），按距上次更新的时间衰减，DECAY_NANOS内的样本权重最大；
+ *   新样本大于平均值时直接取新样本（peak EWMA），提供方变慢时能立即反映出来
+ * 所有字段都用原子变量或volatile变量，调用方线程并发更新时不加锁；
+ * ewma和上次更新时间不是一起原子更新的，并发时可能有很小的偏差，不影响负载均衡
+ * 统计是进程内共享的，多个ClientProxyFactory可能同时使用同一个地址：每个工厂在看到新地址时retain、地址离开它的
+ * 所有服务时release，引用数归零时才移除统计，提供方频繁上下线时不会无限增长，也不会清掉其他工厂还在用的统计
+ * */
+public class ProviderStats {
+    //衰减时间常数
+    private static final long DECAY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    //key=服务提供方地址，value=统计
+    private static final ConcurrentMap<String, ProviderStats> STATS = new ConcurrentHashMap<>();
+    //key=服务提供方地址，value=正在使用这个地址的工厂数，只在retain/release的锁内修改
+    private static final Map<String, Integer> REFS = new HashMap<>();
+
+    private final String address;
+    private final AtomicInteger active = new AtomicInteger();
+    //ewma的double值的二进制表示
+    private final AtomicLong ewmaBits = new AtomicLong(Double.doubleToRawLongBits(0));
+    private volatile long lastUpdate = System.nanoTime();
+
+    private ProviderStats(String address) {
+        this.address = address;
+    }
+
+    /*
+     * 获取指定地址的统计，不存在时创建
+     * */
+    public static ProviderStats of(String address) {
+        ProviderStats stats = STATS.get(address);
+        return stats != null ? stats : STATS.computeIfAbsent(address, ProviderStats::new);
+    }
+
+    /*
+     * 工厂开始使用这些地址：引用数+1
+     * */
+    public static synchronized void retain(Collection<String> addresses) {
+        for (String address : addresses) {
+            REFS.merge(address, 1, Integer::sum);
+        }
+    }
+
+    /*
+     * 工厂不再使用这些地址：引用数-1，归零时移除统计；
+     * 还在途的调用结束时更新的是已经移除的对象，不影响之后重新创建的统计
+     * */
+    public static synchronized void release(Collection<String> addresses) {
+        for (String address : addresses) {
+            Integer refs = REFS.get(address);
+            if (refs == null || refs <= 1) {
+                REFS.remove(address);
+                STATS.remove(address);
+            } else {
+                REFS.put(address, refs - 1);
+            }
+        }
+    }
+
+    /*
+     * 调用开始：在途请求数+1
+     * @return 开始时间，调用结束时传给end
+     * */
+    public long begin() {
+        active.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    /*
+     * 调用结束：在途请求数-1，更新响应时间
+     * */
+    public void end(long startNanos) {
+        active.decrementAndGet();
+        long now = System.nanoTime();
+        double rtt = now - startNanos;
+        long elapsed = Math.max(now - lastUpdate, 0);
+        lastUpdate = now;
+        double w = Math.exp(-(double) elapsed / DECAY_NANOS);
+        long prevBits;
+        double next;
+        do {
+            prevBits = ewmaBits.get();
+            double prev = Double.longBitsToDouble(prevBits);
+            next = rtt > prev ? rtt : prev * w + rtt * (1 - w);
+        } while (!ewmaBits.compareAndSet(prevBits, Double.doubleToRawLongBits(next)));
+    }
+
+    public int getActive() {
+        return active.get();
+    }
+
+    /*
+     * 响应时间平均值，单位ns；长时间没有调用时按衰减后的值计算，慢提供方不会一直得不到流量
+     * */
+    public double getEwma() {
+        double ewma = Double.longBitsToDouble(ewmaBits.get());
+        long elapsed = System.nanoTime() - lastUpdate;
+        return elapsed > DECAY_NANOS ? ewma * Math.exp(-(double) (elapsed - DECAY_NANOS) / DECAY_NANOS) : ewma;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+}
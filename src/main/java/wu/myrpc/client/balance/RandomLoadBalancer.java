@@ -0,0 +1,17 @@
+package wu.myrpc.client.balance;
+
+import wu.myrpc.common.service.Service;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+ * 随机：每个提供方的概率相同
+ * */
+public class RandomLoadBalancer implements LoadBalancer {
+    @Override
+    public Service select(List<Service> services, Method method, Object[] args) {
+        return services.get(ThreadLocalRandom.current().nextInt(services.size()));
+    }
+}
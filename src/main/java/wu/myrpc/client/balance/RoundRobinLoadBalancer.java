@@ -0,0 +1,62 @@
+package wu.myrpc.client.balance;
+
+import wu.myrpc.common.service.Service;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * 平滑加权轮询（同nginx）：按Service.weight分配流量，且同一提供方的请求均匀穿插，不会连续集中
+ * 每次选择时每个提供方的当前权重加上自己的权重，选当前权重最大的，再减去总权重
+ * 当前权重按服务名保存，一次选择要同时更新所有提供方，所以对单个服务的选择加锁
+ * 当前权重按提供方地址保存，与列表对象无关：重试、对冲、异常检测传入排除了部分提供方的新列表时，
+ * 被排除的提供方保留当前权重；很久没有出现在列表中的提供方（已下线）定期清理
+ * */
+public class RoundRobinLoadBalancer implements LoadBalancer {
+    //key=服务名，value=该服务各提供方的当前权重
+    private final Map<String, RoundRobinState> states = new ConcurrentHashMap<>();
+
+    @Override
+    public Service select(List<Service> services, Method method, Object[] args) {
+        if (services.size() == 1) {
+            return services.get(0);
+        }
+        RoundRobinState state = states.computeIfAbsent(services.get(0).getName(), key -> new RoundRobinState());
+        return state.select(services);
+    }
+
+    //每隔这么多次选择检查一次已下线的提供方，超过这么多次选择没有出现在列表中的提供方被清理
+    private static final int STALE_SELECTIONS = 1024;
+
+    private static class RoundRobinState {
+        //key=提供方地址，value=[当前权重, 最近一次出现在列表中时的选择次数]
+        private final Map<String, long[]> current = new ConcurrentHashMap<>();
+        //选择次数
+        private long selections;
+
+        synchronized Service select(List<Service> services) {
+            long now = ++selections;
+            long total = 0;
+            Service selected = null;
+            long[] selectedWeight = null;
+            for (Service service : services) {
+                int weight = Math.max(service.getWeight(), 0);
+                long[] cw = current.computeIfAbsent(service.getAddress(), key -> new long[2]);
+                cw[0] += weight;
+                cw[1] = now;
+                total += weight;
+                if (selectedWeight == null || cw[0] > selectedWeight[0]) {
+                    selected = service;
+                    selectedWeight = cw;
+                }
+            }
+            selectedWeight[0] -= total;
+            if (now % STALE_SELECTIONS == 0 && current.size() > services.size()) {
+                current.values().removeIf(cw -> now - cw[1] > STALE_SELECTIONS);
+            }
+            return selected;
+        }
+    }
+}
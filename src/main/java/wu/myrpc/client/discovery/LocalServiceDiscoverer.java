@@ -0,0 +1,51 @@
+package wu.myrpc.client.discovery;
+
+import wu.myrpc.common.service.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/*
+ * 本地服务发现器：提供方列表保存在内存中，不依赖zookeeper
+ * 用于直连指定的提供方、基准测试和本地调试，提供方由调用方手动注册、注销
+ * 和ZookeeperServiceDiscoverer一样，每次变化生成一个新的不可变列表，查找时不加锁
+ * */
+public class LocalServiceDiscoverer implements ServiceDiscoverer {
+
+    //key=服务名，value=该服务的提供方列表，不可修改
+    private final ConcurrentMap<String, List<Service>> services = new ConcurrentHashMap<>();
+
+    /*
+     * 注册一个服务提供方，按服务名归类
+     * */
+    public void register(Service service) {
+        services.compute(service.getName(), (name, current) -> {
+            List<Service> list = current == null ? new ArrayList<>() : new ArrayList<>(current);
+            list.add(service);
+            return Collections.unmodifiableList(list);
+        });
+    }
+
+    /*
+     * 注销一个服务提供方，按服务名和地址匹配
+     * */
+    public void unregister(Service service) {
+        services.computeIfPresent(service.getName(), (name, current) -> {
+            List<Service> list = new ArrayList<>(current);
+            list.removeIf(s -> s.getAddress().equals(service.getAddress()));
+            return list.isEmpty() ? null : Collections.unmodifiableList(list);
+        });
+    }
+
+    /*
+     * 获取服务方法：根据服务名获取服务提供方列表
+     * @return 返回服务列表，不可修改，没有提供方时返回空列表
+     * */
+    @Override
+    public List<Service> getServices(String name) {
+        return services.getOrDefault(name, Collections.emptyList());
+    }
+}
@@ -4,19 +4,27 @@ import com.alibaba.fastjson.JSON;
 import org.apache.curator.RetryPolicy;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.recipes.cache.ChildData;
 import org.apache.curator.framework.recipes.cache.PathChildrenCache;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
 import org.apache.curator.retry.ExponentialBackoffRetry;
+import org.apache.curator.utils.ZKPaths;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import wu.myrpc.common.service.Service;
-import wu.myrpc.server.register.ZookeeperServiceRegister;
+import wu.myrpc.exception.MyRpcException;
 
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 import static wu.myrpc.common.constants.RpcConstant.*;
 
@@ -24,17 +32,18 @@ import static wu.myrpc.common.constants.RpcConstant.*;
 
 /*
  * zookeeper服务发现器：以zookeeper作为注册中心，负责：
- * 1. 根据服务接口名，在zookeeper中查找对应的节点：getChildren
- * 2. getChildren查找指定节点的所有子节点，子节点表示该接口的所有实现的服务信息对象，
- *    返回的是List<String>
- *
+ * 1. 根据服务接口名，在zookeeper中查找对应的节点：/myrpc/service/服务名
+ * 2. 该节点的子节点表示该接口的所有服务提供方，子节点名是服务信息对象的json字符串（URL编码）
+ * 每个服务名在第一次查找时创建一个PathChildrenCache监听子节点变化，之后一直复用：
+ * - 监听到子节点增加、删除时，只解析变化的那个子节点，增量更新该服务的提供方列表
+ * - 每次更新生成一个新的不可变列表，通过volatile变量发布；调用方查找时只是一次volatile读，不加锁
  * */
 public class ZookeeperServiceDiscoverer implements ServiceDiscoverer {
 
-    private static final Logger logger = LoggerFactory.getLogger(ZookeeperServiceRegister.class);
+    private static final Logger logger = LoggerFactory.getLogger(ZookeeperServiceDiscoverer.class);
 
-    //引入一个本地map，存放查找过的<服务名，Service对象列表>
-    private Map<String, List<Service>> registerMap;
+    //key=服务名，value=创建该服务的提供方缓存的任务，完成后就是该服务的提供方缓存
+    private final ConcurrentMap<String, FutureTask<ProviderCache>> caches = new ConcurrentHashMap<>();
 
     private CuratorFramework zkClient;
     //zookeeper客户端重连策略:间隔3s重试一次，最多重试10次
@@ -48,68 +57,136 @@ public class ZookeeperServiceDiscoverer implements ServiceDiscoverer {
         //zookeeper客户端连接zookeeper服务器端
         zkClient = CuratorFrameworkFactory.newClient(zkAddress, retry);
         zkClient.start();
-        this.registerMap = new HashMap<>();
     }
 
     /*
-     * 获取服务方法，使用zookeeper客户端，根据服务名获取服务列表
-     * @return 返回服务列表
+     * 获取服务方法：根据服务名获取服务提供方列表
+     * 第一次查找某个服务时创建并启动它的监听缓存，之后直接读取缓存的快照
+     * @return 返回服务列表，不可修改
      * */
     @Override
     public List<Service> getServices(String name) {
+        FutureTask<ProviderCache> task = caches.get(name);
+        if (task == null) {
+            //创建时同步构建初始列表，同时第一次查找同一服务的线程等待它完成
+            //构建在map之外进行，不会阻塞其它服务的查找；启动失败时从map中移除，下次查找重试
+            FutureTask<ProviderCache> created = new FutureTask<>(() -> new ProviderCache(name));
+            task = caches.putIfAbsent(name, created);
+            if (task == null) {
+                task = created;
+                created.run();
+            }
+        }
+        try {
+            return task.get().services;
+        } catch (ExecutionException e) {
+            caches.remove(name, task);
+            if (e.getCause() instanceof MyRpcException) {
+                throw (MyRpcException) e.getCause();
+            }
+            throw new MyRpcException("Failed to watch " + name, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MyRpcException("Interrupted while watching " + name, e);
+        }
+    }
+
+    /*
+     * 关闭所有监听缓存和zookeeper客户端
+     * */
+    public void close() {
+        for (FutureTask<ProviderCache> task : caches.values()) {
+            if (!task.isDone()) {
+                continue;
+            }
+            try {
+                task.get().close();
+            } catch (ExecutionException | InterruptedException e) {
+                //启动失败的缓存已经关闭
+            }
+        }
+        caches.clear();
+        zkClient.close();
+    }
+
+    //子节点名：URL解码->json转Service对象
+    private static Service parse(String path) {
+        String child = URLDecoder.decode(ZKPaths.getNodeFromPath(path), StandardCharsets.UTF_8);
+        return JSON.parseObject(child, Service.class);
+    }
+
+    /*
+     * 单个服务的提供方缓存
+     * - providers：key=子节点路径，value=解析好的服务信息对象，只在加锁后修改
+     * - services：对外发布的不可变快照
+     * */
+    private class ProviderCache {
         //key=/myrpc/service/服务名
-        String key = ZK_SERVICE_PATH + PATH_DELIMITER + "service" + PATH_DELIMITER + name;
+        private final String path;
+        private final PathChildrenCache pathChildrenCache;
+        private final Map<String, Service> providers = new LinkedHashMap<>();
+        private volatile List<Service> services = Collections.emptyList();
+
+        //创建监听缓存并同步构建初始的提供方列表
+        ProviderCache(String name) {
+            this.path = ZK_SERVICE_PATH + PATH_DELIMITER + "service" + PATH_DELIMITER + name;
+            //服务信息在子节点名里，不需要缓存节点数据
+            this.pathChildrenCache = new PathChildrenCache(zkClient, path, false);
+            this.pathChildrenCache.getListenable().addListener((client, event) -> onEvent(event));
+            try {
+                pathChildrenCache.start(PathChildrenCache.StartMode.BUILD_INITIAL_CACHE);
+            } catch (Exception e) {
+                close();
+                throw new MyRpcException("Failed to watch " + path, e);
+            }
+            rebuild();
+        }
 
         /*
-        * 为服务发现增加watcher机制：当zookeeper上的服务发生修改时，就会重新获取一次key的所有子节点
-        * */
-        //为指定节点创建监听对象
-        PathChildrenCache pathChildrenCache = new PathChildrenCache(zkClient, key, true);
-        //绑定监听器
-        /*
-        * 当事件发生时，直接重新获取一次key节点的所有子节点，写入一个新的service列表
-        * */
-        pathChildrenCache.getListenable().addListener((curatorFramework, event) -> {
-            System.out.println("子节点变化了...更新map");
-            //开辟新的Service对象列表存放更新后的service对象列表
-            List<Service> newServices = new ArrayList<>();
-
-            //直接重新获取key的所有子节点
-            List<String> children = zkClient.getChildren().forPath(key);
-            //解析每个字符串元素：URL解码->json转Service对象
-            for(String child : children){
-                String deChild = URLDecoder.decode(child, StandardCharsets.UTF_8);
-                Service service = JSON.parseObject(deChild, Service.class);
-                newServices.add(service);
+         * 子节点变化事件：只处理变化的子节点
+         * 重连后PathChildrenCache重新拉取子节点，和缓存比较后补发增加、删除事件，这里不需要重建
+         * */
+        private synchronized void onEvent(PathChildrenCacheEvent event) {
+            switch (event.getType()) {
+                case CHILD_ADDED:
+                case CHILD_UPDATED:
+                    String added = event.getData().getPath();
+                    providers.put(added, parse(added));
+                    publish();
+                    break;
+                case CHILD_REMOVED:
+                    providers.remove(event.getData().getPath());
+                    publish();
+                    break;
+                default:
+                    break;
             }
-            registerMap.put(key, newServices);
-        });
-        try {
-            pathChildrenCache.start();
-        } catch (Exception e) {
-            logger.info("监听器启动失败");
         }
 
-        //根据key获取对应的service对列表
-        if(registerMap.containsKey(key)){
-            return registerMap.get(key);
+        //初始构建：按缓存中的全部子节点重建，已由事件解析过的子节点直接复用
+        private synchronized void rebuild() {
+            Map<String, Service> current = new LinkedHashMap<>();
+            for (ChildData data : pathChildrenCache.getCurrentData()) {
+                Service service = providers.get(data.getPath());
+                current.put(data.getPath(), service != null ? service : parse(data.getPath()));
+            }
+            providers.clear();
+            providers.putAll(current);
+            publish();
         }
-        else{
-            List<Service> services = new ArrayList<>();
+
+        //发布新的不可变快照
+        private void publish() {
+            services = Collections.unmodifiableList(new ArrayList<>(providers.values()));
+            logger.info("Providers of {} changed: {}", path, services.size());
+        }
+
+        void close() {
             try {
-                //获取key下所有子节点，返回的是List<String>
-                List<String> children = zkClient.getChildren().forPath(key);
-                //解析每个字符串元素：URL解码->json转Service对象
-                for (String child : children) {
-                    String deChild = URLDecoder.decode(child, StandardCharsets.UTF_8);
-                    Service service = JSON.parseObject(deChild, Service.class);
-                    services.add(service);
-                }
-                registerMap.put(key, services);
+                pathChildrenCache.close();
             } catch (Exception e) {
-                e.printStackTrace();
+                logger.warn("Failed to close cache of {}", path, e);
             }
-            return registerMap.get(key);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,57 @@
+package wu.myrpc.client.hedge;
+
+/*
+ * 对冲请求配置
+ * - enabled：是否启用，启用后只对@Idempotent标记的方法生效
+ * - percentile：对冲延迟取该方法响应时间的百分位，如95表示第一个请求超过p95还没有响应时发送对冲请求
+ * - budget：对冲请求最多占请求数的比例，如0.05表示最多增加5%的请求
+ * - minSamples：方法的响应时间样本数达到这个数之前不发送对冲请求
+ * */
+public class HedgeConfig {
+    private Boolean enabled = true;
+    private Double percentile = 95.0;
+    private Double budget = 0.05;
+    private Integer minSamples = 100;
+
+    public HedgeConfig() {
+    }
+
+    public HedgeConfig(Boolean enabled, Double percentile, Double budget, Integer minSamples) {
+        this.enabled = enabled;
+        this.percentile = percentile;
+        this.budget = budget;
+        this.minSamples = minSamples;
+    }
+
+    public Boolean getEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(Boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Double getPercentile() {
+        return percentile;
+    }
+
+    public void setPercentile(Double percentile) {
+        this.percentile = percentile;
+    }
+
+    public Double getBudget() {
+        return budget;
+    }
+
+    public void setBudget(Double budget) {
+        this.budget = budget;
+    }
+
+    public Integer getMinSamples() {
+        return minSamples;
+    }
+
+    public void setMinSamples(Integer minSamples) {
+        this.minSamples = minSamples;
+    }
+}
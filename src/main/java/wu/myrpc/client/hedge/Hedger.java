@@ -0,0 +1,257 @@
+package wu.myrpc.client.hedge;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import wu.myrpc.client.TokenBudget;
+import wu.myrpc.common.metrics.LatencyHistogram;
+import wu.myrpc.common.metrics.RpcMetrics;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/*
+ * 对冲请求：幂等方法的请求超过对冲延迟还没有响应时，向另一个服务提供方再发送一次请求
+ * - 对冲延迟：该方法近期响应时间的百分位（如p95），见MethodLatency
+ * - 先到达的成功响应生效，另一个请求被取消，之后到达的响应直接丢弃
+ * - 一个请求失败时等待另一个请求，都失败才失败；对冲请求还没有发送时第一个请求失败就直接失败
+ * - 对冲预算：每次调用存入budget个额度，每次对冲消耗1个额度，对冲请求数不超过调用数的budget比例；
+ *   额度有上限，空闲一段时间后不会积攒出大量的对冲请求
+ * 延迟检测使用网络层共享的时间轮，不为每次调用创建线程
+ * 指标：client.hedge.calls（可对冲的调用数）、sent（对冲请求数）、wins（对冲请求先响应的次数）、
+ *      exhausted（预算不足没有发送的次数）、rate（对冲比例）、win-rate（对冲请求的胜率）
+ * */
+public class Hedger {
+    private final HedgeConfig config;
+    private final Timer timer;
+    //对冲预算：最多积攒10个对冲请求
+    private final TokenBudget budget;
+
+    private final LongAdder calls = RpcMetrics.counter("client.hedge.calls");
+    private final LongAdder sent = RpcMetrics.counter("client.hedge.sent");
+    private final LongAdder wins = RpcMetrics.counter("client.hedge.wins");
+    private final LongAdder exhausted = RpcMetrics.counter("client.hedge.exhausted");
+
+    public Hedger(HedgeConfig config, Timer timer) {
+        this.config = config;
+        this.timer = timer;
+        this.budget = new TokenBudget(config.getBudget(), 10);
+        RpcMetrics.gauge("client.hedge.rate", () -> ratio(sent.sum(), calls.sum()));
+        RpcMetrics.gauge("client.hedge.win-rate", () -> ratio(wins.sum(), sent.sum()));
+    }
+
+    /*
+     * 为一个方法创建响应时间统计
+     * */
+    public MethodLatency newMethodLatency() {
+        return new MethodLatency();
+    }
+
+    /*
+     * 不对冲的调用：只记录响应时间，存入额度
+     * */
+    public CompletableFuture<ByteBuf> track(MethodLatency latency, CompletableFuture<ByteBuf> future) {
+        calls.increment();
+        budget.deposit();
+        long start = System.nanoTime();
+        future.whenComplete((rsp, cause) -> {
+            if (cause == null) {
+                latency.histogram.record(System.nanoTime() - start);
+            }
+        });
+        return future;
+    }
+
+    /*
+     * 对冲调用
+     * @param latency    方法的响应时间统计
+     * @param delayNanos 对冲延迟，由latency.delayNanos()得到
+     * @param primary    发送第一个请求
+     * @param backup     发送对冲请求，没有可用的提供方或时间时返回null
+     * @param discard    对冲请求不再需要发送时调用，释放为它保留的资源；和backup只会调用其中一个
+     * @return 先到达的成功响应，由调用方释放
+     * */
+    public CompletableFuture<ByteBuf> hedge(MethodLatency latency, long delayNanos,
+                                            Supplier<CompletableFuture<ByteBuf>> primary,
+                                            Supplier<CompletableFuture<ByteBuf>> backup,
+                                            Runnable discard) {
+        calls.increment();
+        budget.deposit();
+        return new HedgedCall(latency, backup, discard).start(primary, delayNanos);
+    }
+
+    private static double ratio(long a, long b) {
+        return b == 0 ? 0 : (double) a / b;
+    }
+
+    /*
+     * 方法的响应时间统计，计算对冲延迟：
+     * 每100ms按直方图重新计算一次百分位，样本数超过阈值时衰减，使延迟跟随近期的响应时间变化
+     * */
+    public class MethodLatency {
+        private static final long REFRESH_NANOS = 100_000_000L;
+        private static final long DECAY_THRESHOLD = 10_000;
+
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private volatile long delayNanos = -1;
+        private volatile long nextRefresh = System.nanoTime();
+
+        /*
+         * 对冲延迟，单位ns；-1表示不对冲（样本不足）
+         * */
+        public long delayNanos() {
+            long now = System.nanoTime();
+            if (now - nextRefresh >= 0) {
+                nextRefresh = now + REFRESH_NANOS;
+                long count = histogram.count();
+                delayNanos = count < config.getMinSamples() ? -1 : histogram.percentile(config.getPercentile());
+                if (count > DECAY_THRESHOLD) {
+                    histogram.decay();
+                }
+            }
+            return delayNanos;
+        }
+    }
+
+    /*
+     * 一次对冲调用的状态，状态变化加锁（只有两个请求竞争，不会有明显的锁竞争）
+     * */
+    private class HedgedCall {
+        private final CompletableFuture<ByteBuf> result = new CompletableFuture<>();
+        private final MethodLatency latency;
+        private final Supplier<CompletableFuture<ByteBuf>> backup;
+        private final Runnable discard;
+
+        private CompletableFuture<ByteBuf> first;
+        private CompletableFuture<ByteBuf> second;
+        private Timeout timeout;
+        //对冲请求已发送或不再发送
+        private boolean backupClaimed;
+        //已发送（含正在发送）的请求数、失败的请求数
+        private int attempts = 1;
+        private int failures;
+        //最近一次失败的原因，对冲请求最终没有发出时用它结束调用
+        private Throwable failure;
+
+        HedgedCall(MethodLatency latency, Supplier<CompletableFuture<ByteBuf>> backup, Runnable discard) {
+            this.latency = latency;
+            this.backup = backup;
+            this.discard = discard;
+        }
+
+        CompletableFuture<ByteBuf> start(Supplier<CompletableFuture<ByteBuf>> primary, long delayNanos) {
+            long start = System.nanoTime();
+            first = primary.get();
+            timeout = timer.newTimeout(t -> sendBackup(), delayNanos, TimeUnit.NANOSECONDS);
+            first.whenComplete((rsp, cause) -> onComplete(rsp, cause, start, false));
+            //调用方取消或超时：取消所有请求
+            result.whenComplete((rsp, cause) -> {
+                if (cause != null) {
+                    cancelAll();
+                }
+            });
+            return result;
+        }
+
+        private void sendBackup() {
+            synchronized (this) {
+                if (backupClaimed || result.isDone()) {
+                    return;
+                }
+                backupClaimed = true;
+                //发送前计入请求数：发送期间第一个请求失败时要等待对冲请求，不能直接失败
+                attempts++;
+            }
+            if (!budget.tryAcquire()) {
+                exhausted.increment();
+                discard.run();
+                unclaim();
+                return;
+            }
+            long start = System.nanoTime();
+            CompletableFuture<ByteBuf> future = backup.get();
+            if (future == null) {
+                //没有可用的时间或提供方，对冲请求没有发出：退还额度
+                budget.refund();
+                unclaim();
+                return;
+            }
+            sent.increment();
+            synchronized (this) {
+                second = future;
+            }
+            future.whenComplete((rsp, cause) -> onComplete(rsp, cause, start, true));
+            if (result.isDone()) {
+                future.cancel(false);
+            }
+        }
+
+        //对冲请求没有发出：撤销计入的请求数，第一个请求已经失败时结束调用
+        private void unclaim() {
+            Throwable cause;
+            synchronized (this) {
+                attempts--;
+                cause = failures >= attempts ? failure : null;
+            }
+            if (cause != null) {
+                result.completeExceptionally(cause);
+            }
+        }
+
+        private void onComplete(ByteBuf rsp, Throwable cause, long start, boolean isBackup) {
+            if (cause == null) {
+                latency.histogram.record(System.nanoTime() - start);
+                if (result.complete(rsp)) {
+                    if (isBackup) {
+                        wins.increment();
+                    }
+                    cancelAll();
+                } else {
+                    rsp.release();
+                }
+                return;
+            }
+            boolean discardBackup = false;
+            boolean fail;
+            synchronized (this) {
+                failures++;
+                failure = cause;
+                if (!backupClaimed) {
+                    backupClaimed = true;
+                    discardBackup = true;
+                }
+                fail = failures >= attempts;
+            }
+            if (discardBackup) {
+                timeout.cancel();
+                discard.run();
+            }
+            if (fail) {
+                result.completeExceptionally(cause);
+            }
+        }
+
+        //结果已确定：取消未完成的请求，不再发送对冲请求
+        private void cancelAll() {
+            boolean discardBackup = false;
+            CompletableFuture<ByteBuf> other;
+            synchronized (this) {
+                if (!backupClaimed) {
+                    backupClaimed = true;
+                    discardBackup = true;
+                }
+                other = second;
+            }
+            if (discardBackup) {
+                timeout.cancel();
+                discard.run();
+            }
+            first.cancel(false);
+            if (other != null) {
+                other.cancel(false);
+            }
+        }
+    }
+}
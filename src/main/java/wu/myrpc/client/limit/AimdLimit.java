@@ -0,0 +1,24 @@
+package wu.myrpc.client.limit;
+
+/*
+ * AIMD：请求超时或被拒绝时限制乘以backoffRatio；请求成功且在途请求数达到限制的一半以上时限制加1
+ * 在途请求数很少时调用方没有用满限制，成功也不增加，避免限制无限增长
+ * */
+public class AimdLimit implements LimitAlgorithm {
+    private final double backoffRatio;
+
+    public AimdLimit(double backoffRatio) {
+        this.backoffRatio = backoffRatio;
+    }
+
+    @Override
+    public double update(double limit, long rttNanos, int inflight, boolean dropped) {
+        if (dropped) {
+            return limit * backoffRatio;
+        }
+        if (inflight * 2 >= limit) {
+            return limit + 1;
+        }
+        return limit;
+    }
+}
@@ -0,0 +1,125 @@
+package wu.myrpc.client.limit;
+
+import wu.myrpc.common.metrics.RpcMetrics;
+import wu.myrpc.exception.RpcLimitExceededException;
+import wu.myrpc.exception.RpcRejectedException;
+import wu.myrpc.exception.RpcTimeoutException;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * 自适应并发限制器：在途请求数不超过limit，limit由LimitAlgorithm按每个请求的结果调整
+ * - 获取：CAS增加在途请求数，超过限制时直接拒绝或等待一小段时间（只有同步调用等待）
+ * - 释放：减少在途请求数，有等待者时唤醒一个；成功、超时、被服务端拒绝的请求作为样本调整限制，其他失败和取消不作为样本
+ *   被调用方自己的限制器（如提供方级别的限制）拒绝的请求没有发出，和取消一样不作为样本，不因本地限制降低服务级别的限制
+ * 指标：前缀.limit（当前限制）、前缀.inflight（在途请求数）、前缀.rejected（拒绝次数）
+ * */
+public class ConcurrencyLimiter {
+    private final LimitAlgorithm algorithm;
+    private final int minLimit;
+    private final int maxLimit;
+    private final AtomicInteger inflight = new AtomicInteger();
+    private final LongAdder rejected;
+    //调整限制时加锁，读取不加锁
+    private volatile double limit;
+    //等待者
+    private final Object lock = new Object();
+    private volatile int waiters;
+
+    public ConcurrencyLimiter(String prefix, LimitAlgorithm algorithm, int initialLimit, int minLimit, int maxLimit) {
+        this.algorithm = algorithm;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = initialLimit;
+        this.rejected = RpcMetrics.counter(prefix + ".rejected");
+        RpcMetrics.gauge(prefix + ".limit", this::getLimit);
+        RpcMetrics.gauge(prefix + ".inflight", inflight::get);
+    }
+
+    /*
+     * 获取一个并发额度
+     * @param maxWaitNanos 超过限制时最多等待的时间，<=0表示不等待
+     * @return 获取后的在途请求数，释放时传给release；-1表示被拒绝
+     * */
+    public int acquire(long maxWaitNanos) {
+        int acquired = tryAcquire();
+        if (acquired > 0 || maxWaitNanos <= 0) {
+            return reject(acquired);
+        }
+        long deadline = System.nanoTime() + maxWaitNanos;
+        synchronized (lock) {
+            waiters++;
+            try {
+                while ((acquired = tryAcquire()) < 0) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                waiters--;
+            }
+        }
+        return reject(acquired);
+    }
+
+    /*
+     * 释放并发额度，按请求的结果调整限制
+     * @param startNanos 请求开始时间
+     * @param inflight   acquire的返回值
+     * @param cause      失败原因，null表示成功
+     * */
+    public void release(long startNanos, int inflight, Throwable cause) {
+        this.inflight.decrementAndGet();
+        if (waiters > 0) {
+            synchronized (lock) {
+                lock.notify();
+            }
+        }
+        if (cause instanceof CancellationException || cause instanceof RpcLimitExceededException) {
+            return;
+        }
+        boolean dropped = cause instanceof RpcTimeoutException || cause instanceof RpcRejectedException;
+        if (cause != null && !dropped) {
+            return;
+        }
+        long rtt = System.nanoTime() - startNanos;
+        synchronized (this) {
+            double next = algorithm.update(limit, rtt, inflight, dropped);
+            limit = Math.max(minLimit, Math.min(maxLimit, next));
+        }
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInflight() {
+        return inflight.get();
+    }
+
+    //在途请求数没有达到限制时加1，返回加1后的值，否则返回-1
+    private int tryAcquire() {
+        int current;
+        do {
+            current = inflight.get();
+            if (current >= (int) limit) {
+                return -1;
+            }
+        } while (!inflight.compareAndSet(current, current + 1));
+        return current + 1;
+    }
+
+    private int reject(int acquired) {
+        if (acquired < 0) {
+            rejected.increment();
+        }
+        return acquired;
+    }
+}
@@ -0,0 +1,77 @@
+package wu.myrpc.client.limit;
+
+import wu.myrpc.common.metrics.RpcMetrics;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * 客户端的并发限制器集合：每个服务一个，开启perProvider时每个提供方地址再一个（所有服务共享）
+ * 指标前缀：client.limit.服务名、client.limit.provider.地址
+ * 提供方下线时由ClientProxyFactory清理它的限制器和指标（见evict），提供方频繁上下线（扩缩容、换端口重新部署）时不会无限增长
+ * */
+public class ConcurrencyLimits {
+    private static final String PROVIDER_PREFIX = "client.limit.provider.";
+
+    private final LimitConfig config;
+    private final ConcurrentMap<String, ConcurrencyLimiter> services = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ConcurrencyLimiter> providers = new ConcurrentHashMap<>();
+
+    public ConcurrencyLimits(LimitConfig config) {
+        this.config = config;
+    }
+
+    /*
+     * 获取服务的并发限制器，不存在时创建
+     * */
+    public ConcurrencyLimiter forService(String serviceName) {
+        ConcurrencyLimiter limiter = services.get(serviceName);
+        return limiter != null ? limiter : services.computeIfAbsent(serviceName, name -> newLimiter("client.limit." + name));
+    }
+
+    /*
+     * 获取提供方的并发限制器，没有开启perProvider时返回null
+     * */
+    public ConcurrencyLimiter forProvider(String address) {
+        if (!config.getPerProvider()) {
+            return null;
+        }
+        ConcurrencyLimiter limiter = providers.get(address);
+        return limiter != null ? limiter : providers.computeIfAbsent(address, name -> newLimiter(PROVIDER_PREFIX + name));
+    }
+
+    /*
+     * 移除已下线的提供方的限制器及其指标；之后还有请求发往这些地址时重新创建
+     * */
+    public void evict(Collection<String> addresses) {
+        for (String address : addresses) {
+            if (providers.remove(address) != null) {
+                RpcMetrics.remove(PROVIDER_PREFIX + address + ".");
+            }
+        }
+    }
+
+    /*
+     * 同步调用超过限制时最多等待的时间，单位ns
+     * */
+    public long maxWaitNanos() {
+        return TimeUnit.MILLISECONDS.toNanos(config.getMaxWaitMillis());
+    }
+
+    private ConcurrencyLimiter newLimiter(String prefix) {
+        LimitAlgorithm algorithm;
+        switch (config.getAlgorithm().toLowerCase()) {
+            case "aimd":
+                algorithm = new AimdLimit(config.getBackoffRatio());
+                break;
+            case "gradient":
+                algorithm = new GradientLimit(config.getTolerance());
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown limit algorithm: " + config.getAlgorithm());
+        }
+        return new ConcurrencyLimiter(prefix, algorithm, config.getInitialLimit(), config.getMinLimit(), config.getMaxLimit());
+    }
+}
@@ -0,0 +1,46 @@
+package wu.myrpc.client.limit;
+
+/*
+ * 梯度算法（参考TCP Vegas）：比较本次响应时间和无负载时的响应时间
+ * - 无负载响应时间：样本中的最小响应时间，代表没有排队时的响应时间
+ * - 梯度 = tolerance * 无负载响应时间 / 本次响应时间，限制在[0.5, 1]：没有明显排队时为1，排队越严重越小
+ * - 新限制 = 限制 * 梯度 + 排队余量（限制的平方根，至少4），再和原限制做平滑；梯度为1时限制逐步增长
+ * - 请求超时或被拒绝时梯度取0.5
+ * - 在途请求数不到限制的一半时不增长，调用方没有用满限制时样本说明不了容量
+ * - 每PROBE_INTERVAL个样本重新测量一次无负载响应时间：限制先降到排队余量，让随后的请求在低并发下完成，
+ *   服务端本身变慢（或变快）后基线能跟上，也避免在持续排队时用排队后的响应时间作为基线
+ * */
+public class GradientLimit implements LimitAlgorithm {
+    //重新测量无负载响应时间的样本间隔
+    private static final int PROBE_INTERVAL = 1000;
+    //平滑系数
+    private static final double SMOOTHING = 0.2;
+
+    private final double tolerance;
+    //无负载响应时间，0表示还没有样本
+    private long minRtt;
+    private int updates;
+
+    public GradientLimit(double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    @Override
+    public double update(double limit, long rttNanos, int inflight, boolean dropped) {
+        double queueSize = Math.max(4, Math.sqrt(limit));
+        if (++updates >= PROBE_INTERVAL) {
+            updates = 0;
+            minRtt = 0;
+            return queueSize;
+        }
+        if (!dropped && (minRtt == 0 || rttNanos < minRtt)) {
+            minRtt = rttNanos;
+        }
+        if (!dropped && inflight < limit / 2) {
+            return limit;
+        }
+        double gradient = dropped ? 0.5 : Math.max(0.5, Math.min(1.0, tolerance * minRtt / rttNanos));
+        double newLimit = limit * gradient + queueSize;
+        return limit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+    }
+}
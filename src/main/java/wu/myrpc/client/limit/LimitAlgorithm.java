@@ -0,0 +1,16 @@
+package wu.myrpc.client.limit;
+
+/*
+ * 并发限制算法：每个请求结束时根据样本计算新的限制
+ * 实现类不需要考虑并发，ConcurrencyLimiter加锁后调用
+ * */
+public interface LimitAlgorithm {
+    /*
+     * @param limit    当前限制
+     * @param rttNanos 请求的响应时间
+     * @param inflight 请求开始时的在途请求数（含该请求）
+     * @param dropped  请求是否超时或被拒绝
+     * @return 新的限制，由调用方限制在[minLimit, maxLimit]内
+     */
+    double update(double limit, long rttNanos, int inflight, boolean dropped);
+}
@@ -0,0 +1,95 @@
+package wu.myrpc.client.limit;
+
+/*
+ * 自适应并发限制配置
+ * - enabled：是否启用，默认不启用
+ * - algorithm：限制算法，gradient（按响应时间的变化调整）或aimd（加性增、乘性减）
+ * - initialLimit / minLimit / maxLimit：初始、最小、最大并发数
+ * - maxWaitMillis：超过限制时同步调用最多等待的时间，单位ms，0表示直接拒绝；异步调用总是直接拒绝
+ * - perProvider：是否同时按提供方地址限制，超过某个提供方的限制时重试会换一个提供方
+ * - backoffRatio：aimd算法中请求超时、被拒绝时限制乘以的比例
+ * - tolerance：gradient算法中允许的响应时间增长倍数，响应时间超过最小响应时间的这么多倍时开始降低限制
+ * */
+public class LimitConfig {
+    private Boolean enabled = false;
+    private String algorithm = "gradient";
+    private Integer initialLimit = 20;
+    private Integer minLimit = 1;
+    private Integer maxLimit = 1000;
+    private Long maxWaitMillis = 0L;
+    private Boolean perProvider = false;
+    private Double backoffRatio = 0.9;
+    private Double tolerance = 1.5;
+
+    public Boolean getEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(Boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    public void setAlgorithm(String algorithm) {
+        this.algorithm = algorithm;
+    }
+
+    public Integer getInitialLimit() {
+        return initialLimit;
+    }
+
+    public void setInitialLimit(Integer initialLimit) {
+        this.initialLimit = initialLimit;
+    }
+
+    public Integer getMinLimit() {
+        return minLimit;
+    }
+
+    public void setMinLimit(Integer minLimit) {
+        this.minLimit = minLimit;
+    }
+
+    public Integer getMaxLimit() {
+        return maxLimit;
+    }
+
+    public void setMaxLimit(Integer maxLimit) {
+        this.maxLimit = maxLimit;
+    }
+
+    public Long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    public void setMaxWaitMillis(Long maxWaitMillis) {
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    public Boolean getPerProvider() {
+        return perProvider;
+    }
+
+    public void setPerProvider(Boolean perProvider) {
+        this.perProvider = perProvider;
+    }
+
+    public Double getBackoffRatio() {
+        return backoffRatio;
+    }
+
+    public void setBackoffRatio(Double backoffRatio) {
+        this.backoffRatio = backoffRatio;
+    }
+
+    public Double getTolerance() {
+        return tolerance;
+    }
+
+    public void setTolerance(Double tolerance) {
+        this.tolerance = tolerance;
+    }
+}
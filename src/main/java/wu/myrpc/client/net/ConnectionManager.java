@@ -0,0 +1,318 @@
+package wu.myrpc.client.net;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.handler.logging.LogLevel;
+import io.netty.handler.logging.LoggingHandler;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+import io.netty.util.concurrent.ScheduledFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import wu.myrpc.client.net.handler.ClientHandler;
+import wu.myrpc.client.net.handler.MethodIdHandler;
+import wu.myrpc.common.protocol.FrameDecoder;
+import wu.myrpc.common.protocol.FrameEncoder;
+import wu.myrpc.common.transport.FlushConfig;
+import wu.myrpc.common.transport.FlushConsolidationHandler;
+import wu.myrpc.common.transport.FlushStats;
+import wu.myrpc.common.transport.Transport;
+
+import java.net.InetSocketAddress;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*
+ * 客户端连接管理器，负责：
+ * 1. 整个客户端共享一个EventLoopGroup，避免每次调用都创建、销毁线程；传输实现可选nio或Linux原生epoll
+ * 2. 按服务提供方地址(ip:port)维护一个有界的连接池，复用已建立的TCP连接
+ * 3. 获取连接时做健康检查，不活跃的连接直接丢弃重建
+ * 4. 空闲超过指定时间的连接会被主动关闭（空闲驱逐），关闭的连接在下次获取时被健康检查淘汰
+ * 5. 提供方下线时移除它的连接池，连接在在途请求结束后关闭（见evict），提供方频繁上下线时连接池不会无限增长
+ * 请求通过请求id在连接上多路复用，连接不需要独占，所以连接池不做借出/归还：
+ * 每个地址固定若干个连接槽位，按轮询选择槽位，槽位上的连接不可用时重新建立
+ * */
+public class ConnectionManager {
+    private static Logger logger = LoggerFactory.getLogger(ConnectionManager.class);
+
+    //每个地址的最大连接数
+    private final int maxConnections;
+    //获取连接的超时时间，单位ms
+    private final long acquireTimeoutMillis;
+    //连接空闲超时时间，单位s，<=0表示不驱逐
+    private final int idleTimeoutSeconds;
+    //建立连接的超时时间，单位ms
+    private final int connectTimeoutMillis;
+
+    //传输实现
+    private final Transport transport;
+    //刷新合并配置，连接建立时读取
+    private volatile FlushConfig flushConfig = new FlushConfig();
+    //是否在pipeline中加入LoggingHandler，以DEBUG级别输出收发的原始字节，连接建立时读取，只用于排查问题
+    private volatile boolean wireLog;
+    //所有连接共享的刷新统计
+    private final FlushStats flushStats = new FlushStats("client.flush");
+    //客户端共享的线程组
+    private final EventLoopGroup group;
+    private final Bootstrap bootstrap;
+
+    //key=服务提供方地址ip:port，value=该地址的连接池
+    private final ConcurrentMap<String, ChannelPool> pools = new ConcurrentHashMap<>();
+
+    public ConnectionManager() {
+        this(8, 3000, 60, 3000);
+    }
+
+    public ConnectionManager(int maxConnections, long acquireTimeoutMillis,
+                             int idleTimeoutSeconds, int connectTimeoutMillis) {
+        this(Transport.NIO, 0, maxConnections, acquireTimeoutMillis, idleTimeoutSeconds, connectTimeoutMillis);
+    }
+
+    /*
+     * @param transport 传输实现
+     * @param ioThreads IO线程数，0表示使用netty的默认值
+     * */
+    public ConnectionManager(Transport transport, int ioThreads, int maxConnections, long acquireTimeoutMillis,
+                             int idleTimeoutSeconds, int connectTimeoutMillis) {
+        this.maxConnections = maxConnections;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.idleTimeoutSeconds = idleTimeoutSeconds;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.transport = transport;
+        this.group = transport.newEventLoopGroup(ioThreads);
+        this.bootstrap = new Bootstrap()
+                .group(group)
+                .channel(transport.socketChannelClass())
+                .option(ChannelOption.TCP_NODELAY, true)
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMillis)
+                .handler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        initPipeline(ch.pipeline());
+                    }
+                });
+    }
+
+    /*
+     * 从指定地址的连接池中获取一个连接，连接池不存在时创建
+     * 获取到的连接是共享的，不需要归还
+     * @param address 服务提供方地址，格式：IP:Port
+     * */
+    public Future<Channel> acquire(String address) {
+        ChannelPool pool = pools.get(address);
+        if (pool == null) {
+            pool = pools.computeIfAbsent(address, ChannelPool::new);
+        }
+        return pool.acquire();
+    }
+
+    /*
+     * 移除已下线的提供方的连接池：没有在途请求的连接立即关闭，其余的在最后一个在途请求结束后关闭
+     * 之后还有请求发往这些地址时重新创建连接池
+     * */
+    public void evict(Collection<String> addresses) {
+        for (String address : addresses) {
+            ChannelPool pool = pools.remove(address);
+            if (pool != null) {
+                logger.info("Evict channel pool for {}", address);
+                pool.drain();
+            }
+        }
+    }
+
+    /*
+     * 关闭所有连接和共享的线程组
+     * */
+    public void close() {
+        for (ChannelPool pool : pools.values()) {
+            pool.close();
+        }
+        pools.clear();
+        group.shutdownGracefully();
+    }
+
+    public Transport getTransport() {
+        return transport;
+    }
+
+    public FlushConfig getFlushConfig() {
+        return flushConfig;
+    }
+
+    public void setFlushConfig(FlushConfig flushConfig) {
+        this.flushConfig = flushConfig;
+    }
+
+    public boolean isWireLog() {
+        return wireLog;
+    }
+
+    public void setWireLog(boolean wireLog) {
+        this.wireLog = wireLog;
+    }
+
+    public EventLoopGroup getGroup() {
+        return group;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public long getAcquireTimeoutMillis() {
+        return acquireTimeoutMillis;
+    }
+
+    public int getIdleTimeoutSeconds() {
+        return idleTimeoutSeconds;
+    }
+
+    public int getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    /*
+     * 新建连接时初始化pipeline
+     * - 开启wireLog时：LoggingHandler
+     * - 帧编解码器
+     * - 刷新合并
+     * - 请求帧中服务名、方法签名的精简
+     * - 空闲检测
+     * - ClientHandler：维护该连接上的在途请求
+     * */
+    private void initPipeline(ChannelPipeline pipeline) {
+        if (wireLog) {
+            pipeline.addLast(new LoggingHandler(LogLevel.DEBUG));
+        }
+        pipeline.addLast(new FrameDecoder());
+        pipeline.addLast(new FrameEncoder());
+        pipeline.addLast(new FlushConsolidationHandler(flushConfig, flushStats));
+        pipeline.addLast(new MethodIdHandler());
+        if (idleTimeoutSeconds > 0) {
+            pipeline.addLast(new IdleStateHandler(0, 0, idleTimeoutSeconds, TimeUnit.SECONDS));
+            pipeline.addLast(new IdleEvictHandler());
+        }
+        pipeline.addLast(new ClientHandler());
+    }
+
+    /*
+     * 单个地址的连接池：固定maxConnections个槽位，轮询选择
+     * */
+    private class ChannelPool {
+        private final String address;
+        private final Bootstrap poolBootstrap;
+        private final AtomicReferenceArray<ChannelFuture> slots = new AtomicReferenceArray<>(maxConnections);
+        private final AtomicInteger next = new AtomicInteger();
+
+        ChannelPool(String address) {
+            String[] addInfoArray = address.split(":");
+            this.address = address;
+            this.poolBootstrap = bootstrap.clone().remoteAddress(
+                    InetSocketAddress.createUnresolved(addInfoArray[0], Integer.parseInt(addInfoArray[1])));
+            logger.info("Create channel pool for {}", address);
+        }
+
+        Future<Channel> acquire() {
+            int index = (next.getAndIncrement() & Integer.MAX_VALUE) % maxConnections;
+            ChannelFuture cf = slots.get(index);
+            //健康检查：槽位为空、连接失败或已断开时重新建立
+            if (cf == null || (cf.isDone() && !cf.channel().isActive())) {
+                cf = connect(index, cf);
+            }
+            //连接可用时直接返回
+            if (cf.isSuccess()) {
+                return cf.channel().eventLoop().newSucceededFuture(cf.channel());
+            }
+            Promise<Channel> promise = group.next().newPromise();
+            ChannelFuture connecting = cf;
+            connecting.addListener((ChannelFutureListener) f -> {
+                if (f.isSuccess()) {
+                    promise.trySuccess(f.channel());
+                } else {
+                    promise.tryFailure(f.cause());
+                }
+            });
+            //连接还在建立中，超过获取超时时间则失败
+            if (!promise.isDone()) {
+                ScheduledFuture<?> timeout = group.schedule(() -> {
+                    promise.tryFailure(new TimeoutException("Acquire channel to " + address + " timeout"));
+                }, acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+                promise.addListener(f -> timeout.cancel(false));
+            }
+            return promise;
+        }
+
+        //重建连接只在连接不可用时发生，加锁避免多个线程同时为一个槽位建立连接
+        private synchronized ChannelFuture connect(int index, ChannelFuture stale) {
+            ChannelFuture current = slots.get(index);
+            if (current != stale) {
+                return current;
+            }
+            ChannelFuture cf = poolBootstrap.connect();
+            slots.set(index, cf);
+            return cf;
+        }
+
+        //连接池已经移除：在途请求结束后关闭各个连接，还没建立完成的连接建立后立即关闭
+        void drain() {
+            for (int i = 0; i < slots.length(); i++) {
+                ChannelFuture cf = slots.getAndSet(i, null);
+                if (cf != null) {
+                    cf.addListener((ChannelFutureListener) f -> {
+                        ClientHandler handler = f.channel().pipeline().get(ClientHandler.class);
+                        if (handler != null) {
+                            handler.closeWhenDrained(f.channel());
+                        } else {
+                            f.channel().close();
+                        }
+                    });
+                }
+            }
+        }
+
+        void close() {
+            for (int i = 0; i < slots.length(); i++) {
+                ChannelFuture cf = slots.getAndSet(i, null);
+                if (cf != null) {
+                    cf.channel().close();
+                }
+            }
+        }
+    }
+
+    /*
+     * 空闲驱逐：读写都空闲超时，且没有在途请求时关闭连接
+     * */
+    private static class IdleEvictHandler extends ChannelDuplexHandler {
+        @Override
+        public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+            if (evt instanceof IdleStateEvent) {
+                ClientHandler clientHandler = ctx.pipeline().get(ClientHandler.class);
+                if (clientHandler != null && clientHandler.inflightCount() > 0) {
+                    return;
+                }
+                logger.info("Close idle channel: {}", ctx.channel());
+                ctx.close();
+            } else {
+                super.userEventTriggered(ctx, evt);
+            }
+        }
+    }
+}
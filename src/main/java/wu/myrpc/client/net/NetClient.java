@@ -1,12 +1,33 @@
 package wu.myrpc.client.net;
 
+import io.netty.buffer.ByteBuf;
+import wu.myrpc.common.protocol.RpcFrame;
 import wu.myrpc.common.service.Service;
 
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * 网络请求客户端，定义网络请求规范
- *  - 客户端发送请求报文的方法
+ *  - 客户端发送请求报文的方法：同步、异步两种
  */
 public interface NetClient {
-    //启动客户端：发送请求数据给服务器端
+    //启动客户端：发送请求数据给服务器端，阻塞等待响应数据
     byte[] start(byte[] data, Service service);
+
+    //异步发送请求数据给服务器端，不阻塞调用线程，响应数据到达时在网络线程上完成返回的future
+    CompletableFuture<byte[]> sendAsync(byte[] data, Service service);
+
+    //异步发送请求帧，请求id由网络层分配；帧首部可以带服务id、方法id，代替请求报文中的服务名、方法名、参数类型
+    //请求帧发送后由网络层释放；返回的响应消息体是网络层的缓冲区，由调用方解组后释放
+    default CompletableFuture<ByteBuf> sendAsync(RpcFrame frame, Service service) {
+        return sendAsync(frame, service, 0);
+    }
+
+    //异步发送请求帧，超过timeoutMillis没有收到响应时返回的future以RpcTimeoutException失败，<=0表示不限制
+    CompletableFuture<ByteBuf> sendAsync(RpcFrame frame, Service service, long timeoutMillis);
+
+    //提供方已经下线：释放为这些地址保留的连接等资源，之后还有请求发往这些地址时重新建立
+    default void evict(Collection<String> addresses) {
+    }
 }
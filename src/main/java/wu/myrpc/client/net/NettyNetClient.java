@@ -1,32 +1,58 @@
 package wu.myrpc.client.net;
 
-import io.netty.bootstrap.Bootstrap;
-import io.netty.channel.ChannelInitializer;
-import io.netty.channel.ChannelOption;
-import io.netty.channel.ChannelPipeline;
-import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.Future;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import wu.myrpc.client.net.handler.ClientHandler;
+import wu.myrpc.common.protocol.MessageProtocolSerialize;
+import wu.myrpc.common.protocol.RpcFrame;
 import wu.myrpc.common.service.Service;
+import wu.myrpc.exception.MyRpcException;
+import wu.myrpc.exception.RpcConnectException;
+import wu.myrpc.exception.RpcTimeoutException;
+
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /*
  * netty客户端，提供netty网络通信能力，包括：
- * 1. 根据注册中心获得的"提供服务的服务器地址"建立netty连接
- * 2. 向服务器端发送请求字节数组：data
- * 3. 从服务器端读取响应字节数组：start()的返回值
+ * 1. 根据注册中心获得的"提供服务的服务器地址"从连接池获取连接
+ * 2. 将请求字节数组封装成请求帧发送给服务器端，一条连接上可以同时有多个在途请求
+ * 3. 按请求id匹配响应帧，读取响应字节数组：start()的返回值，或sendAsync()返回的future
+ * 4. 超时检测：超过超时时间没有收到响应时让返回的future失败
+ * 获取到连接、收到响应的时刻记在请求帧上，调用方据此拆分慢调用的耗时
  * */
 public class NettyNetClient implements NetClient {
     private static Logger logger = LoggerFactory.getLogger(NettyNetClient.class);
 
+    //请求id生成器
+    private static final AtomicLong REQUEST_ID = new AtomicLong();
+
+    //连接管理器：共享线程组 + 按地址划分的连接池
+    private final ConnectionManager connectionManager;
+    //超时检测的时间轮：整个客户端共享一个线程，精度10ms
+    private final HashedWheelTimer timer = new HashedWheelTimer(
+            new DefaultThreadFactory("myrpc-timeout", true), 10, TimeUnit.MILLISECONDS, 512);
+
+    public NettyNetClient() {
+        this(new ConnectionManager());
+    }
+
+    public NettyNetClient(ConnectionManager connectionManager) {
+        this.connectionManager = connectionManager;
+    }
+
     /**
-     * 启动netty客户端，完成：
-     * 1. 根据service对象提取服务器端地址,端口
-     * 2. 配置netty客户端，与指定服务器端地址建立连接
-     * 3. ClientHandler负责：发送请求字节数组，接收响应字节数组
+     * 同步发送请求：异步发送后等待响应
      *
      * @param data    请求数据，由代理对象传递而来
      * @param service 服务信息，从zookeeper上获取而来
@@ -34,41 +60,136 @@ public class NettyNetClient implements NetClient {
      */
     @Override
     public byte[] start(byte[] data, Service service){
-        //1. 根据service对象提取服务器端地址,端口
-        String[] addInfoArray = service.getAddress().split(":");
-        String serverAddress = addInfoArray[0];
-        String serverPort = addInfoArray[1];
-
-        ClientHandler clientHandler = new ClientHandler(data);
-        //SendHandler sendHandler = new SendHandler(data);
-        byte[] respData = null;
-        //2. 配置netty客户端，与指定服务器端地址建立连接
-        EventLoopGroup group = new NioEventLoopGroup();
+        CompletableFuture<byte[]> future = sendAsync(data, service);
         try {
-            Bootstrap b = new Bootstrap();
-            b.group(group).channel(NioSocketChannel.class).option(ChannelOption.TCP_NODELAY, true)
-                    .handler(new ChannelInitializer<SocketChannel>() {
-                        @Override
-                        public void initChannel(SocketChannel ch) {
-                            ChannelPipeline p = ch.pipeline();
-                            //3. ClientHandler负责：发送请求字节数组，接收响应字节数组
-                            p.addLast(clientHandler);
-                        }
-                    });
-
-            // 启动客户端连接
-            b.connect(serverAddress, Integer.parseInt(serverPort)).sync();
-            //从handler中获取响应字节数组
-            respData = (byte[]) clientHandler.rspData();
-            logger.info("SendRequest get reply: {}", respData);
+            return future.get();
         } catch (InterruptedException e) {
-            logger.info("netty连接失败");
-            e.printStackTrace();
-        } finally {
-            // 释放线程组资源
-            group.shutdownGracefully();
+            //不再等待响应，保留中断状态交给调用方处理
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new MyRpcException("Interrupted while waiting for " + service.getAddress(), e);
+        } catch (ExecutionException e) {
+            throw new MyRpcException("Request to " + service.getAddress() + " failed", e.getCause());
         }
+    }
+
+    /**
+     * 异步发送请求，完成：
+     * 1. 根据service对象提取服务器端地址，从连接池获取该地址的连接（异步获取）
+     * 2. 由连接上的ClientHandler登记在途请求并发送请求帧，连接由多个请求共享
+     * 3. ClientHandler按请求id匹配到响应时，在网络线程上完成返回的future
+     *
+     * @param data    请求数据，由代理对象传递而来
+     * @param service 服务信息，从zookeeper上获取而来
+     * @return 响应数据
+     */
+    @Override
+    public CompletableFuture<byte[]> sendAsync(byte[] data, Service service) {
+        return sendAsync(new RpcFrame(MessageProtocolSerialize.SERIALIZER.getId(), 0, (byte) 0, data), service)
+                .thenApply(rsp -> {
+                    try {
+                        byte[] bytes = new byte[rsp.readableBytes()];
+                        rsp.readBytes(bytes);
+                        return bytes;
+                    } finally {
+                        rsp.release();
+                    }
+                });
+    }
+
+    /**
+     * 异步发送请求帧，分配请求id后发送，过程同sendAsync(byte[], Service)
+     * 超时由整个客户端共享的时间轮检测，不需要为每次调用创建线程或定时任务；
+     * 超时、取消时从连接的在途请求表中移除该请求，之后到达的响应直接丢弃
+     *
+     * @param frame         请求帧，由代理对象构造，发送后释放
+     * @param service       服务信息，从zookeeper上获取而来
+     * @param timeoutMillis 超时时间，从调用时开始计算，包括获取连接的时间，<=0表示不限制
+     * @return 响应消息体，由调用方释放
+     */
+    @Override
+    public CompletableFuture<ByteBuf> sendAsync(RpcFrame frame, Service service, long timeoutMillis) {
+        String address = service.getAddress();
+        long requestId = REQUEST_ID.incrementAndGet();
+        frame.setRequestId(requestId);
+        CompletableFuture<ByteBuf> result = new CompletableFuture<>();
+        if (timeoutMillis > 0) {
+            Timeout timeout = timer.newTimeout(t -> result.completeExceptionally(new RpcTimeoutException(
+                    "Request to " + address + " timed out after " + timeoutMillis + "ms")), timeoutMillis, TimeUnit.MILLISECONDS);
+            result.whenComplete((rsp, cause) -> timeout.cancel());
+        }
+        //1. 从连接池获取连接
+        connectionManager.acquire(address).addListener((Future<Channel> acquired) -> {
+            if (!acquired.isSuccess()) {
+                frame.release();
+                result.completeExceptionally(new RpcConnectException("Failed to connect to " + address, acquired.cause()));
+                return;
+            }
+            //获取连接期间已经超时或被取消：不再发送
+            if (result.isDone()) {
+                frame.release();
+                return;
+            }
+            frame.setAcquiredNanos(System.nanoTime());
+            Channel channel = acquired.getNow();
+            ClientHandler handler = channel.pipeline().get(ClientHandler.class);
+            if (handler == null) {
+                //健康检查之后连接已经关闭、pipeline已被拆除：请求没有发出，按连接失败处理（任何方法都可以重试），
+                //关闭连接让连接池在下次获取时重新建立这个槽位
+                frame.release();
+                channel.close();
+                result.completeExceptionally(new RpcConnectException("Connection to " + address + " is closed", null));
+                return;
+            }
+            CompletableFuture<ByteBuf> future;
+            try {
+                //2. 发送请求帧，写出后由编码器释放
+                future = handler.send(channel, frame);
+            } catch (Throwable t) {
+                frame.release();
+                result.completeExceptionally(t);
+                return;
+            }
+            //3. 响应到达时完成result，调用方已经不再等待（如取消）时释放响应消息体
+            future.whenComplete((rsp, cause) -> {
+                frame.setRespondedNanos(System.nanoTime());
+                if (cause != null) {
+                    result.completeExceptionally(cause);
+                } else if (!result.complete(rsp)) {
+                    rsp.release();
+                }
+            });
+            //超时或取消：移除在途请求
+            result.whenComplete((rsp, cause) -> {
+                if (cause != null) {
+                    handler.cancel(requestId);
+                }
+            });
+        });
+        return result;
+    }
+
+    @Override
+    public void evict(Collection<String> addresses) {
+        connectionManager.evict(addresses);
+    }
+
+    /*
+     * 关闭客户端：释放所有连接和线程组资源
+     * */
+    public void close() {
+        connectionManager.close();
+        timer.stop();
+    }
+
+    /*
+     * 客户端共享的时间轮，其他需要定时的组件（如对冲请求）也可以使用
+     * */
+    public Timer getTimer() {
+        return timer;
+    }
 
-        return respData;
+    public ConnectionManager getConnectionManager() {
+        return connectionManager;
     }
 }
@@ -1,85 +1,143 @@
 package wu.myrpc.client.net.handler;
 
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.SimpleChannelInboundHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import wu.myrpc.common.protocol.RpcFrame;
+import wu.myrpc.exception.MyRpcException;
+import wu.myrpc.exception.RpcRejectedException;
 
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /*
-* 客户端handler，ChannelInboundHandler，负责：
-* 1. 请求报文的发送：连接建立成功便发送，channelActive
-* 2. 响应报文的接收与解码：read事件发生才接收，channelRead
-*     提供一个获取响应结果的方法rspData()供外部调用，使用countdownLatch来同步channelRead，
+* 客户端handler，每条连接一个实例，负责：
+* 1. 请求帧的发送：登记到在途请求表后写出，send
+* 2. 响应帧的接收：按请求id从在途请求表中找到对应的请求并完成它，channelRead
+*     一条连接上可以同时有多个在途请求，响应可以乱序返回
+* 3. 连接断开时，让该连接上所有的在途请求失败，避免调用方一直等待
+* 4. 调用方超时或取消时移除在途请求，之后到达的响应直接丢弃
+* 5. 连接所属的提供方下线时，在最后一个在途请求结束后关闭连接（见closeWhenDrained）
+* 响应消息体是接收缓冲区的切片，完成future时转交给调用方，由调用方解组后释放；没有调用方接收时在这里释放
 * */
-public class ClientHandler extends ChannelInboundHandlerAdapter {
+public class ClientHandler extends SimpleChannelInboundHandler<RpcFrame> {
     private static Logger logger = LoggerFactory.getLogger(ClientHandler.class);
 
-    private CountDownLatch countDown;
-    private Object readMsg = null;//读取到的响应字节数组
-    private byte[] data;//待发送的请求字节数组
+    //在途请求表：key=请求id，value=等待响应消息体的future
+    private final ConcurrentMap<Long, CompletableFuture<ByteBuf>> inflight = new ConcurrentHashMap<>();
+    //不为null时，在途请求全部结束后关闭该连接
+    private volatile Channel draining;
 
-    public ClientHandler(byte[] data) {
-        countDown = new CountDownLatch(1);
-        this.data = data;
+    /**
+     * 发送请求帧，返回等待响应消息体的future
+     *
+     * @param channel 请求所在的连接
+     * @param frame   请求帧
+     * @return 响应消息体，由调用方释放
+     */
+    public CompletableFuture<ByteBuf> send(Channel channel, RpcFrame frame) {
+        long requestId = frame.getRequestId();
+        CompletableFuture<ByteBuf> future = new CompletableFuture<>();
+        inflight.put(requestId, future);
+        channel.writeAndFlush(frame).addListener((ChannelFutureListener) cf -> {
+            if (!cf.isSuccess()) {
+                inflight.remove(requestId);
+                future.completeExceptionally(cf.cause());
+            }
+        });
+        return future;
     }
 
     /**
-     * 当连接服务端成功后，发送请求数据
+     * 读取到响应帧时触发：按请求id完成对应的在途请求
      *
-     * @param ctx 通道上下文
+     * @param ctx   上下文
+     * @param frame 响应帧
      */
     @Override
-    public void channelActive(ChannelHandlerContext ctx) {
-        logger.info("Successful connection to server：{}", ctx);
-        ByteBuf reqBuf = Unpooled.buffer(data.length);
-        reqBuf.writeBytes(data);
-        logger.info("Client sends message：{}", reqBuf);
-        ctx.writeAndFlush(reqBuf);
+    protected void channelRead0(ChannelHandlerContext ctx, RpcFrame frame) {
+        CompletableFuture<ByteBuf> future = inflight.remove(frame.getRequestId());
+        closeIfDrained();
+        if (future == null) {
+            //调用方已经超时或取消
+            logger.debug("Discard response of unknown request: {}", frame.getRequestId());
+            return;
+        }
+        //请求没有执行就被拒绝：以异常结束，调用方可以换一个提供方重试
+        if (frame.isRejected()) {
+            future.completeExceptionally(new RpcRejectedException("Request rejected by " + ctx.channel().remoteAddress()));
+            return;
+        }
+        //帧在返回后自动释放，转交给调用方的消息体需要多持有一个引用
+        ByteBuf body = frame.getBody().retain();
+        if (!future.complete(body)) {
+            body.release();
+        }
     }
 
     /**
-     * 当读事件发生，也就是读取到响应数据时触发：
-     *     读取数据，数据读取完毕释放CD锁
+     * 取消在途请求：调用方超时或取消时调用，之后到达的响应直接丢弃
      *
-     * @param ctx 上下文
-     * @param msg ByteBuf，读取到的数据就存放在msg
+     * @param requestId 请求id
      */
-    @Override
-    public void channelRead(ChannelHandlerContext ctx, Object msg) {
-        logger.info("Client reads message: {}", msg);
-        ByteBuf msgBuf = (ByteBuf) msg;
-        //将读取到的数据转存到readMsg上，对外部公开
-        byte[] resp = new byte[msgBuf.readableBytes()];
-        msgBuf.readBytes(resp);
-        readMsg = resp;
-        countDown.countDown();
+    public void cancel(long requestId) {
+        CompletableFuture<ByteBuf> future = inflight.remove(requestId);
+        if (future != null) {
+            future.cancel(false);
+        }
+        closeIfDrained();
     }
 
     /**
-     * 等待读取数据完成，才能获取到响应数据（响应字节数组）
+     * 在途请求全部结束后关闭连接，没有在途请求时立即关闭：连接所属的提供方已经下线，连接池不再使用这个连接
      *
-     * @return 响应数据
-     * @throws InterruptedException 异常
+     * @param channel 该handler所在的连接
      */
-    public Object rspData() throws InterruptedException {
-        countDown.await();
-        return readMsg;
+    public void closeWhenDrained(Channel channel) {
+        draining = channel;
+        closeIfDrained();
+    }
+
+    private void closeIfDrained() {
+        Channel channel = draining;
+        if (channel != null && inflight.isEmpty()) {
+            channel.close();
+        }
     }
 
+    /**
+     * 连接断开时，让所有在途请求失败
+     *
+     * @param ctx 上下文
+     */
     @Override
-    public void channelReadComplete(ChannelHandlerContext ctx) {
-        ctx.flush();
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        MyRpcException cause = new MyRpcException("Channel closed: " + ctx.channel());
+        for (Long requestId : inflight.keySet()) {
+            CompletableFuture<ByteBuf> future = inflight.remove(requestId);
+            if (future != null) {
+                future.completeExceptionally(cause);
+            }
+        }
+        super.channelInactive(ctx);
     }
 
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
         // Close the connection when an exception is raised.
-        cause.printStackTrace();
-        logger.error("Exception occurred：{}", cause.getMessage());
+        logger.error("Exception occurred：{}", cause.getMessage(), cause);
         ctx.close();
     }
+
+    /*
+    * 当前在途请求数
+    * */
+    public int inflightCount() {
+        return inflight.size();
+    }
 }
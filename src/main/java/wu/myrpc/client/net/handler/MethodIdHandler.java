@@ -0,0 +1,38 @@
+package wu.myrpc.client.net.handler;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import wu.myrpc.common.protocol.RpcFrame;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * 客户端出站handler，每条连接一个实例，负责精简请求帧中的服务名和方法签名：
+ * - 一条连接上第一次使用某个服务id、方法id时，保留帧中附带的服务名、方法签名，服务端据此记住id对应的方法
+ * - 之后同一个id只发送id，去掉服务名、方法签名
+ * - 两个不同的方法id冲突时，后出现的方法始终附带服务名、方法签名
+ * 写事件按写出顺序在IO线程上执行，保证附带名称的帧一定先于只带id的帧发出
+ * */
+public class MethodIdHandler extends ChannelOutboundHandlerAdapter {
+    //当前连接上已发送过名称的id：key=服务id<<32|方法id，value={服务名，方法签名}，只在IO线程上访问
+    private final Map<Long, String[]> announced = new HashMap<>();
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (msg instanceof RpcFrame) {
+            RpcFrame frame = (RpcFrame) msg;
+            if (frame.hasNames() && (frame.getServiceId() != 0 || frame.getMethodId() != 0)) {
+                long key = ((long) frame.getServiceId() << 32) | (frame.getMethodId() & 0xffffffffL);
+                String[] names = announced.get(key);
+                if (names == null) {
+                    announced.put(key, new String[]{frame.getServiceName(), frame.getMethodSignature()});
+                } else if (names[0].equals(frame.getServiceName()) && names[1].equals(frame.getMethodSignature())) {
+                    frame.detachNames();
+                }
+            }
+        }
+        super.write(ctx, msg, promise);
+    }
+}
@@ -0,0 +1,111 @@
+package wu.myrpc.client.outlier;
+
+/*
+ * 异常提供方检测配置
+ * - enabled：是否启用
+ * - intervalMillis：检测间隔，单位ms，也是滑动窗口中一个桶的时长
+ * - windowBuckets：滑动窗口的桶数，窗口时长 = intervalMillis * windowBuckets
+ * - minRequests：窗口内的请求数达到这个数才参与检测
+ * - errorRate：窗口内的失败率达到这个值时摘除
+ * - latencyFactor：窗口内的平均响应时间超过所有提供方平均响应时间中位数的这么多倍时摘除，<=0表示不按响应时间摘除；
+ *   至少3个提供方参与检测时才比较
+ * - baseEjectionMillis：第一次摘除的时长，单位ms，之后每次连续摘除时长翻倍
+ * - maxEjectionMillis：摘除时长上限，单位ms
+ * - maxEjectionPercent：一个服务最多摘除的提供方比例，如50表示最多摘除一半，至少保留一个
+ * - probeRequests：摘除到期后试探的请求数，都成功时恢复，有一个失败就重新摘除
+ * */
+public class OutlierConfig {
+    private Boolean enabled = true;
+    private Long intervalMillis = 1000L;
+    private Integer windowBuckets = 10;
+    private Integer minRequests = 20;
+    private Double errorRate = 0.5;
+    private Double latencyFactor = 3.0;
+    private Long baseEjectionMillis = 5000L;
+    private Long maxEjectionMillis = 60000L;
+    private Integer maxEjectionPercent = 50;
+    private Integer probeRequests = 3;
+
+    public Boolean getEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(Boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    public void setIntervalMillis(Long intervalMillis) {
+        this.intervalMillis = intervalMillis;
+    }
+
+    public Integer getWindowBuckets() {
+        return windowBuckets;
+    }
+
+    public void setWindowBuckets(Integer windowBuckets) {
+        this.windowBuckets = windowBuckets;
+    }
+
+    public Integer getMinRequests() {
+        return minRequests;
+    }
+
+    public void setMinRequests(Integer minRequests) {
+        this.minRequests = minRequests;
+    }
+
+    public Double getErrorRate() {
+        return errorRate;
+    }
+
+    public void setErrorRate(Double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    public Double getLatencyFactor() {
+        return latencyFactor;
+    }
+
+    public void setLatencyFactor(Double latencyFactor) {
+        this.latencyFactor = latencyFactor;
+    }
+
+    public Long getBaseEjectionMillis() {
+        return baseEjectionMillis;
+    }
+
+    public void setBaseEjectionMillis(Long baseEjectionMillis) {
+        this.baseEjectionMillis = baseEjectionMillis;
+    }
+
+    public Long getMaxEjectionMillis() {
+        return maxEjectionMillis;
+    }
+
+    public void setMaxEjectionMillis(Long maxEjectionMillis) {
+        this.maxEjectionMillis = maxEjectionMillis;
+    }
+
+    public Integer getMaxEjectionPercent() {
+        return maxEjectionPercent;
+    }
+
+    public void setMaxEjectionPercent(Integer maxEjectionPercent) {
+        if (maxEjectionPercent == null || maxEjectionPercent < 0 || maxEjectionPercent > 100) {
+            throw new IllegalArgumentException("maxEjectionPercent must be between 0 and 100: " + maxEjectionPercent);
+        }
+        this.maxEjectionPercent = maxEjectionPercent;
+    }
+
+    public Integer getProbeRequests() {
+        return probeRequests;
+    }
+
+    public void setProbeRequests(Integer probeRequests) {
+        this.probeRequests = probeRequests;
+    }
+}
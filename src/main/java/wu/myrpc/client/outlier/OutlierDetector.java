@@ -0,0 +1,341 @@
+package wu.myrpc.client.outlier;
+
+import io.netty.util.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import wu.myrpc.client.balance.ProviderStats;
+import wu.myrpc.common.metrics.RpcMetrics;
+import wu.myrpc.common.service.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * 异常提供方检测：注册中心只在提供方的临时节点过期后才把它去掉，提供方还连着但已经变慢、出错时，
+ * 调用方在这里根据自己观察到的结果把它暂时摘除，不需要服务端配合
+ * - 每个服务的每个提供方地址一个滑动窗口，记录请求数、失败数（网络失败、超时、服务端拒绝，取消不算）和响应时间
+ * - 每隔intervalMillis检测一次：失败率过高，或平均响应时间远高于同一服务其他提供方的中位数时摘除
+ * - 摘除期间负载均衡跳过该提供方；到期后进入试探状态，同一时刻只放行一个请求，
+ *   连续probeRequests个请求成功后恢复，有一个失败就重新摘除，连续摘除的时长指数增长
+ * - 一个服务最多摘除maxEjectionPercent比例的提供方，避免整个服务不可用
+ * - 提供方从服务发现的列表中消失时不再跟踪，无论它处于什么状态（见ServiceOutliers.retain）
+ * 记录结果只是累加LongAdder；检测在网络层共享的时间轮上进行，不占用调用线程
+ * 指标：client.outlier.ejections（摘除次数）、client.outlier.ejected（当前摘除和试探中的提供方数）
+ * */
+public class OutlierDetector {
+    private static final Logger logger = LoggerFactory.getLogger(OutlierDetector.class);
+
+    private enum State { HEALTHY, EJECTED, PROBING }
+
+    private final OutlierConfig config;
+    private final Timer timer;
+    //key=服务名，value=该服务的提供方检测
+    private final ConcurrentMap<String, ServiceOutliers> services = new ConcurrentHashMap<>();
+    private final LongAdder ejections = RpcMetrics.counter("client.outlier.ejections");
+    private volatile boolean closed;
+
+    public OutlierDetector(OutlierConfig config, Timer timer) {
+        this.config = config;
+        this.timer = timer;
+        RpcMetrics.gauge("client.outlier.ejected", () -> {
+            int ejected = 0;
+            for (ServiceOutliers outliers : services.values()) {
+                ejected += outliers.unhealthy.get();
+            }
+            return ejected;
+        });
+        schedule();
+    }
+
+    /*
+     * 获取服务的提供方检测，不存在时创建
+     * */
+    public ServiceOutliers forService(String serviceName) {
+        ServiceOutliers outliers = services.get(serviceName);
+        return outliers != null ? outliers : services.computeIfAbsent(serviceName, ServiceOutliers::new);
+    }
+
+    /*
+     * 停止检测
+     * */
+    public void close() {
+        closed = true;
+    }
+
+    private void schedule() {
+        timer.newTimeout(t -> {
+            if (closed) {
+                return;
+            }
+            try {
+                long now = System.nanoTime();
+                for (ServiceOutliers outliers : services.values()) {
+                    outliers.sweep(now);
+                }
+            } catch (Throwable e) {
+                logger.warn("Outlier detection failed", e);
+            }
+            schedule();
+        }, config.getIntervalMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /*
+     * 一个服务的提供方检测
+     * */
+    public class ServiceOutliers {
+        private final String serviceName;
+        //key=提供方地址
+        private final ConcurrentMap<String, Provider> providers = new ConcurrentHashMap<>();
+        //摘除和试探中的提供方数，为0时filter直接返回原列表
+        private final AtomicInteger unhealthy = new AtomicInteger();
+
+        ServiceOutliers(String serviceName) {
+            this.serviceName = serviceName;
+        }
+
+        /*
+         * 记录一次请求的结果
+         * @param cause 失败原因，null表示成功；取消（如对冲请求中输的一方）不记录
+         * */
+        public void record(String address, long latencyNanos, Throwable cause) {
+            if (cause instanceof CancellationException) {
+                return;
+            }
+            Provider provider = providers.get(address);
+            if (provider == null) {
+                provider = providers.computeIfAbsent(address, Provider::new);
+            }
+            provider.record(latencyNanos, cause != null);
+        }
+
+        /*
+         * 去掉摘除的提供方和正在试探中的提供方（已有试探请求在途时），最多去掉maxEjectionPercent比例，至少保留一个
+         * 没有摘除任何提供方时直接返回原列表，不分配内存
+         * */
+        public List<Service> filter(List<Service> list) {
+            if (unhealthy.get() == 0) {
+                return list;
+            }
+            //maxEjectionPercent为100时也至少保留一个，负载均衡器要求列表不为空
+            int allowed = Math.min(list.size() * config.getMaxEjectionPercent() / 100, list.size() - 1);
+            List<Service> result = null;
+            int skipped = 0;
+            for (int i = 0; i < list.size(); i++) {
+                Service service = list.get(i);
+                Provider provider = providers.get(service.getAddress());
+                if (skipped < allowed && provider != null && !provider.admits()) {
+                    if (result == null) {
+                        result = new ArrayList<>(list.subList(0, i));
+                    }
+                    skipped++;
+                } else if (result != null) {
+                    result.add(service);
+                }
+            }
+            return result == null ? list : result;
+        }
+
+        /*
+         * 服务发现的提供方列表变化时调用：不再跟踪已经下线的提供方
+         * 摘除、试探中的提供方下线后收不到请求，不会自己恢复，需要在这里移除并从摘除数中减去，
+         * 否则filter会一直走分配内存的路径
+         * */
+        public void retain(List<Service> list) {
+            Set<String> live = new HashSet<>();
+            for (Service service : list) {
+                live.add(service.getAddress());
+            }
+            for (Provider provider : providers.values()) {
+                if (!live.contains(provider.address)) {
+                    provider.remove();
+                }
+            }
+        }
+
+        //检测：滚动所有提供方的窗口，按失败率、响应时间决定是否摘除，摘除到期的进入试探
+        private void sweep(long now) {
+            double[] latencies = new double[providers.size()];
+            int n = 0;
+            for (Provider provider : providers.values()) {
+                provider.roll();
+                if (provider.state == State.HEALTHY && provider.totalRequests >= config.getMinRequests() && n < latencies.length) {
+                    latencies[n++] = provider.meanLatency();
+                }
+            }
+            double median = 0;
+            if (n >= 3) {
+                Arrays.sort(latencies, 0, n);
+                median = latencies[n / 2];
+            }
+            for (Provider provider : providers.values()) {
+                provider.evaluate(now, median);
+                //长时间没有请求的提供方（如已经下线）不再跟踪
+                if (provider.idle()) {
+                    providers.remove(provider.address, provider);
+                }
+            }
+        }
+
+        /*
+         * 单个提供方的滑动窗口和摘除状态
+         * - 当前桶用LongAdder累加，检测时取出放入环形数组，环形数组和窗口合计只在检测线程上访问
+         * - 状态变化加锁：检测线程（摘除、进入试探）和网络线程（试探结果）都可能修改
+         * */
+        private class Provider {
+            private final String address;
+            private final LongAdder requests = new LongAdder();
+            private final LongAdder failures = new LongAdder();
+            private final LongAdder latency = new LongAdder();
+            private final long[] bucketRequests = new long[config.getWindowBuckets()];
+            private final long[] bucketFailures = new long[config.getWindowBuckets()];
+            private final long[] bucketLatency = new long[config.getWindowBuckets()];
+            private int cursor;
+            private long totalRequests;
+            private long totalFailures;
+            private long totalLatency;
+
+            private volatile State state = State.HEALTHY;
+            private long ejectedUntil;
+            //连续摘除次数，决定摘除时长；恢复后健康超过最大摘除时长时清零
+            private int ejectionCount;
+            private long healthySince;
+            private int probeSuccesses;
+            //已经从providers中移除，不再改变状态
+            private boolean removed;
+
+            Provider(String address) {
+                this.address = address;
+            }
+
+            void record(long latencyNanos, boolean failure) {
+                if (state == State.PROBING) {
+                    probe(failure);
+                }
+                requests.increment();
+                latency.add(latencyNanos);
+                if (failure) {
+                    failures.increment();
+                }
+            }
+
+            //是否放行：健康时放行；试探时只在没有在途请求时放行，同一时刻只有一个试探请求
+            boolean admits() {
+                State s = state;
+                return s == State.HEALTHY || (s == State.PROBING && ProviderStats.of(address).getActive() == 0);
+            }
+
+            boolean idle() {
+                return state == State.HEALTHY && ejectionCount == 0 && totalRequests == 0;
+            }
+
+            double meanLatency() {
+                return totalRequests == 0 ? 0 : (double) totalLatency / totalRequests;
+            }
+
+            void roll() {
+                cursor = (cursor + 1) % bucketRequests.length;
+                totalRequests -= bucketRequests[cursor];
+                totalFailures -= bucketFailures[cursor];
+                totalLatency -= bucketLatency[cursor];
+                bucketRequests[cursor] = requests.sumThenReset();
+                bucketFailures[cursor] = failures.sumThenReset();
+                bucketLatency[cursor] = latency.sumThenReset();
+                totalRequests += bucketRequests[cursor];
+                totalFailures += bucketFailures[cursor];
+                totalLatency += bucketLatency[cursor];
+            }
+
+            //从providers中移除，摘除、试探中的提供方不再计入摘除数
+            synchronized void remove() {
+                if (removed || !providers.remove(address, this)) {
+                    return;
+                }
+                removed = true;
+                if (state != State.HEALTHY) {
+                    state = State.HEALTHY;
+                    unhealthy.decrementAndGet();
+                }
+                logger.info("Stop tracking provider {} of {}: left discovery", address, serviceName);
+            }
+
+            synchronized void evaluate(long now, double medianLatency) {
+                if (removed) {
+                    return;
+                }
+                switch (state) {
+                    case HEALTHY:
+                        if (ejectionCount > 0 && now - healthySince > TimeUnit.MILLISECONDS.toNanos(config.getMaxEjectionMillis())) {
+                            ejectionCount = 0;
+                        }
+                        if (totalRequests < config.getMinRequests()) {
+                            return;
+                        }
+                        double errorRate = (double) totalFailures / totalRequests;
+                        if (errorRate >= config.getErrorRate()) {
+                            eject(now, String.format("error rate %.2f", errorRate));
+                        } else if (config.getLatencyFactor() > 0 && medianLatency > 0
+                                && meanLatency() > medianLatency * config.getLatencyFactor()) {
+                            eject(now, String.format("mean latency %.2fms, median %.2fms", meanLatency() / 1e6, medianLatency / 1e6));
+                        }
+                        break;
+                    case EJECTED:
+                        if (now - ejectedUntil >= 0) {
+                            //进入试探：清空窗口，恢复后按新的结果检测
+                            resetWindow();
+                            probeSuccesses = 0;
+                            state = State.PROBING;
+                            logger.info("Probe provider {} of {}", address, serviceName);
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+
+            private synchronized void probe(boolean failure) {
+                if (state != State.PROBING) {
+                    return;
+                }
+                if (failure) {
+                    eject(System.nanoTime(), "probe failed");
+                } else if (++probeSuccesses >= config.getProbeRequests()) {
+                    state = State.HEALTHY;
+                    healthySince = System.nanoTime();
+                    unhealthy.decrementAndGet();
+                    logger.info("Provider {} of {} recovered", address, serviceName);
+                }
+            }
+
+            //摘除：时长按连续摘除次数指数增长
+            private void eject(long now, String reason) {
+                if (state == State.HEALTHY) {
+                    unhealthy.incrementAndGet();
+                }
+                ejectionCount++;
+                long duration = Math.min(config.getBaseEjectionMillis() << Math.min(ejectionCount - 1, 20), config.getMaxEjectionMillis());
+                ejectedUntil = now + TimeUnit.MILLISECONDS.toNanos(duration);
+                state = State.EJECTED;
+                ejections.increment();
+                logger.warn("Eject provider {} of {} for {}ms: {}", address, serviceName, duration, reason);
+            }
+
+            private void resetWindow() {
+                Arrays.fill(bucketRequests, 0);
+                Arrays.fill(bucketFailures, 0);
+                Arrays.fill(bucketLatency, 0);
+                totalRequests = 0;
+                totalFailures = 0;
+                totalLatency = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package wu.myrpc.client.retry;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.Timer;
+import wu.myrpc.client.TokenBudget;
+import wu.myrpc.common.metrics.RpcMetrics;
+import wu.myrpc.exception.RpcConnectException;
+import wu.myrpc.exception.RpcRejectedException;
+import wu.myrpc.exception.RpcTimeoutException;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * 重试：调用失败时换一个服务提供方重新发送（由Attempt负责选择没有尝试过的提供方）
+ * - 可以重试的失败：
+ *   1. 没有获取到连接（RpcConnectException）、服务端过载拒绝（RpcRejectedException）：请求没有执行，任何方法都可以重试
+ *   2. 幂等方法的其他网络失败，如连接断开；超时和取消不重试，调用的时间已经用完
+ *   服务方法抛出的异常在响应报文中，不是调用失败，不重试
+ * - 退避：第n次重试前等待[0, min(backoffMillis*2^(n-1), maxBackoffMillis)]内的随机时间（full jitter），
+ *   在网络层共享的时间轮上等待，不阻塞调用线程；等待后会超过调用的截止时间时不再重试
+ * - 重试预算：每个服务一个额度桶，重试请求数不超过调用数的budget比例，故障期间不会因为重试放大请求量
+ * 指标：client.retry.服务名.calls（调用数）、retries（重试数）、exhausted（预算不足没有重试的次数）、ratio（重试比例）
+ * */
+public class Retrier {
+    private final RetryConfig config;
+    private final Timer timer;
+    //key=服务名，value=该服务的重试预算和统计
+    private final ConcurrentMap<String, ServiceRetry> services = new ConcurrentHashMap<>();
+
+    public Retrier(RetryConfig config, Timer timer) {
+        this.config = config;
+        this.timer = timer;
+    }
+
+    /*
+     * 获取服务的重试预算，不存在时创建
+     * */
+    public ServiceRetry forService(String serviceName) {
+        ServiceRetry retry = services.get(serviceName);
+        return retry != null ? retry : services.computeIfAbsent(serviceName, ServiceRetry::new);
+    }
+
+    /*
+     * 调用，失败时按策略重试
+     * @param retry         服务的重试预算
+     * @param idempotent    方法是否幂等
+     * @param deadlineNanos 调用的截止时间（System.nanoTime()的时刻），0表示没有
+     * @param attempt       一次尝试：选择一个没有尝试过的提供方发送请求；第一次尝试抛出的异常直接抛给调用方
+     * @return 响应消息体，由调用方释放
+     * */
+    public CompletableFuture<ByteBuf> call(ServiceRetry retry, boolean idempotent, long deadlineNanos, Attempt attempt) throws Exception {
+        retry.calls.increment();
+        retry.budget.deposit();
+        return new RetryCall(retry, idempotent, deadlineNanos, attempt).start();
+    }
+
+    private boolean retriable(Throwable cause, boolean idempotent) {
+        if (cause instanceof RpcConnectException || cause instanceof RpcRejectedException) {
+            return true;
+        }
+        return idempotent && !(cause instanceof RpcTimeoutException) && !(cause instanceof CancellationException);
+    }
+
+    //第retries次重试前的退避时间，单位ms
+    private long backoffMillis(int retries) {
+        long max = Math.min(config.getBackoffMillis() << Math.min(retries - 1, 20), config.getMaxBackoffMillis());
+        return max <= 0 ? 0 : ThreadLocalRandom.current().nextLong(max + 1);
+    }
+
+    /*
+     * 一次尝试：选择提供方并发送请求
+     * */
+    @FunctionalInterface
+    public interface Attempt {
+        CompletableFuture<ByteBuf> send() throws Exception;
+    }
+
+    /*
+     * 服务的重试预算和统计
+     * */
+    public class ServiceRetry {
+        private final TokenBudget budget = new TokenBudget(config.getBudget(), 10);
+        private final LongAdder calls;
+        private final LongAdder retries;
+        private final LongAdder exhausted;
+
+        ServiceRetry(String serviceName) {
+            String prefix = "client.retry." + serviceName;
+            this.calls = RpcMetrics.counter(prefix + ".calls");
+            this.retries = RpcMetrics.counter(prefix + ".retries");
+            this.exhausted = RpcMetrics.counter(prefix + ".exhausted");
+            RpcMetrics.gauge(prefix + ".ratio", () -> {
+                long c = calls.sum();
+                return c == 0 ? 0 : (double) retries.sum() / c;
+            });
+        }
+    }
+
+    /*
+     * 一次调用的重试状态：尝试是依次进行的，同一时刻只有一个尝试在途
+     * */
+    private class RetryCall {
+        private final CompletableFuture<ByteBuf> result = new CompletableFuture<>();
+        private final ServiceRetry retry;
+        private final boolean idempotent;
+        private final long deadlineNanos;
+        private final Attempt attempt;
+        private volatile CompletableFuture<ByteBuf> current;
+        private int retries;
+
+        RetryCall(ServiceRetry retry, boolean idempotent, long deadlineNanos, Attempt attempt) {
+            this.retry = retry;
+            this.idempotent = idempotent;
+            this.deadlineNanos = deadlineNanos;
+            this.attempt = attempt;
+        }
+
+        CompletableFuture<ByteBuf> start() throws Exception {
+            run(attempt.send());
+            //调用方取消或不再等待：取消在途的尝试
+            result.whenComplete((rsp, cause) -> {
+                CompletableFuture<ByteBuf> f = current;
+                if (cause != null && f != null) {
+                    f.cancel(false);
+                }
+            });
+            return result;
+        }
+
+        private void run(CompletableFuture<ByteBuf> future) {
+            current = future;
+            future.whenComplete((rsp, cause) -> {
+                if (cause == null) {
+                    if (!result.complete(rsp)) {
+                        rsp.release();
+                    }
+                } else {
+                    onFailure(cause instanceof CompletionException && cause.getCause() != null ? cause.getCause() : cause);
+                }
+            });
+        }
+
+        private void onFailure(Throwable cause) {
+            if (result.isDone() || !retriable(cause, idempotent) || retries >= config.getMaxRetries()) {
+                result.completeExceptionally(cause);
+                return;
+            }
+            long backoff = backoffMillis(retries + 1);
+            if (deadlineNanos != 0 && System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoff) - deadlineNanos >= 0) {
+                result.completeExceptionally(cause);
+                return;
+            }
+            if (!retry.budget.tryAcquire()) {
+                retry.exhausted.increment();
+                result.completeExceptionally(cause);
+                return;
+            }
+            retries++;
+            retry.retries.increment();
+            timer.newTimeout(t -> {
+                if (result.isDone()) {
+                    return;
+                }
+                try {
+                    run(attempt.send());
+                } catch (Throwable t2) {
+                    //没有可以重试的提供方、时间用完等：以原来的失败结束
+                    cause.addSuppressed(t2);
+                    result.completeExceptionally(cause);
+                }
+            }, backoff, TimeUnit.MILLISECONDS);
+        }
+    }
+}
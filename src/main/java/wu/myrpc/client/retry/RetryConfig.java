@@ -0,0 +1,57 @@
+package wu.myrpc.client.retry;
+
+/*
+ * 重试配置
+ * - maxRetries：最多重试次数（不含第一次调用），<=0表示不重试
+ * - backoffMillis：第一次重试前的最大退避时间，单位ms，之后每次翻倍
+ * - maxBackoffMillis：退避时间上限，单位ms
+ * - budget：重试请求最多占调用数的比例，每个服务独立计算，如0.1表示重试请求不超过调用数的10%
+ * */
+public class RetryConfig {
+    private Integer maxRetries = 2;
+    private Long backoffMillis = 10L;
+    private Long maxBackoffMillis = 200L;
+    private Double budget = 0.1;
+
+    public RetryConfig() {
+    }
+
+    public RetryConfig(Integer maxRetries, Long backoffMillis, Long maxBackoffMillis, Double budget) {
+        this.maxRetries = maxRetries;
+        this.backoffMillis = backoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.budget = budget;
+    }
+
+    public Integer getMaxRetries() {
+        return maxRetries;
+    }
+
+    public void setMaxRetries(Integer maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    public Long getBackoffMillis() {
+        return backoffMillis;
+    }
+
+    public void setBackoffMillis(Long backoffMillis) {
+        this.backoffMillis = backoffMillis;
+    }
+
+    public Long getMaxBackoffMillis() {
+        return maxBackoffMillis;
+    }
+
+    public void setMaxBackoffMillis(Long maxBackoffMillis) {
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    public Double getBudget() {
+        return budget;
+    }
+
+    public void setBudget(Double budget) {
+        this.budget = budget;
+    }
+}
@@ -20,4 +20,15 @@ public class RpcConstant {
     * 路径分隔符
     * */
     public static final String PATH_DELIMITER = "/";
+
+    /*
+    * 请求首部：调用剩余的超时时间，单位ms
+    * 传递相对时间而不是绝对时间，服务端按收到请求的时刻换算成本机的截止时间，不受两端时钟偏差影响
+    * */
+    public static final String HEADER_TIMEOUT = "timeout";
+
+    /*
+    * 响应首部：服务端各阶段的耗时，只在服务端处理时间超过慢调用阈值时带回，见SlowCallLog
+    * */
+    public static final String HEADER_SERVER_TIMING = "server-timing";
 }
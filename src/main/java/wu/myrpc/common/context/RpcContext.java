@@ -0,0 +1,54 @@
+package wu.myrpc.common.context;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * 调用上下文：保存当前线程正在处理的请求的截止时间（System.nanoTime()的时刻）
+ * - 服务端调用服务方法前设置为请求的截止时间，返回后恢复
+ * - 服务方法中再发起的调用（嵌套调用）只能使用剩余的时间：超时时间取自身配置和剩余时间中较小的一个
+ * 异步服务方法在其他线程上发起的调用看不到上下文，需要自行调用setDeadline
+ * */
+public class RpcContext {
+    //构造器设为私有：只通过静态方法使用
+    private RpcContext(){}
+
+    //0表示没有截止时间；用可变的数组保存，设置时不需要创建对象
+    private static final ThreadLocal<long[]> DEADLINE = ThreadLocal.withInitial(() -> new long[1]);
+
+    /*
+     * 当前线程的截止时间，0表示没有
+     * */
+    public static long getDeadline() {
+        return DEADLINE.get()[0];
+    }
+
+    /*
+     * 设置当前线程的截止时间，0表示清除
+     * @return 原来的截止时间，用于恢复
+     * */
+    public static long setDeadline(long deadlineNanos) {
+        long[] holder = DEADLINE.get();
+        long previous = holder[0];
+        holder[0] = deadlineNanos;
+        return previous;
+    }
+
+    /*
+     * 计算一次调用可用的超时时间
+     * @param timeoutMillis 调用自身配置的超时时间，<=0表示不限制
+     * @return 可用的超时时间，单位ms：0表示不限制，-1表示截止时间已过
+     * */
+    public static long timeoutMillis(long timeoutMillis) {
+        long deadline = getDeadline();
+        if (deadline == 0) {
+            return Math.max(timeoutMillis, 0);
+        }
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+            return -1;
+        }
+        //不足1ms按1ms计算
+        long remainingMillis = Math.max(TimeUnit.NANOSECONDS.toMillis(remaining), 1);
+        return timeoutMillis > 0 ? Math.min(timeoutMillis, remainingMillis) : remainingMillis;
+    }
+}
@@ -0,0 +1,175 @@
+package wu.myrpc.common.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import wu.myrpc.common.protocol.StatusCode;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * 访问日志：每次调用结束时把一条定长记录（时刻、服务、方法、对端、状态码、耗时、请求和响应大小）写入环形缓冲区，
+ * 由一个后台线程取出、格式化后输出到名为myrpc.access.<name>的logger，调用线程不做格式化和IO
+ * 环形缓冲区：
+ * - 各字段按槽位存放在预先分配的数组中，记录本身不分配对象（服务名、方法名、对端地址是已有字符串的引用）
+ * - 多个调用线程通过CAS分配序号，写完字段后在槽位上发布序号；后台线程按序号依次读取已发布的槽位，读完后让出槽位
+ * - 缓冲区满（后台线程来不及输出）时丢弃新的记录，不阻塞调用
+ * 成功的调用按sampleRate采样，失败的调用总是记录
+ * 指标：<name>.access.logged（输出的记录数）、dropped（缓冲区满丢弃的记录数）、backlog（缓冲区中等待输出的记录数）
+ * */
+public class AccessLog {
+    //缓冲区为空时后台线程的等待时间
+    private static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final StatusCode[] STATUSES = StatusCode.values();
+    private static final DateTimeFormatter TIME_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+    private final Logger logger;
+    private final String prefix;
+    private final double sampleRate;
+    private final int mask;
+
+    //记录的各个字段，按槽位存放
+    private final long[] timestamps;
+    private final String[] services;
+    private final String[] methods;
+    private final String[] peers;
+    private final byte[] statuses;
+    private final long[] latencies;
+    private final int[] requestBytes;
+    private final int[] responseBytes;
+    //槽位上已发布记录的序号，后台线程据此判断记录是否写完
+    private final AtomicLongArray published;
+    //下一个分配给调用线程的序号
+    private final AtomicLong claimed = new AtomicLong();
+    //下一个由后台线程读取的序号，小于它的槽位可以重用
+    private volatile long consumed;
+
+    private final LongAdder logged;
+    private final LongAdder dropped;
+    private final Thread drainer;
+    private volatile boolean closed;
+
+    /*
+     * @param name 访问日志的名称，如client、server，用于logger名、指标名和后台线程名
+     * */
+    public AccessLog(String name, AccessLogConfig config) {
+        this.logger = LoggerFactory.getLogger("myrpc.access." + name);
+        this.prefix = name + ".access";
+        this.sampleRate = config.getSampleRate();
+        int capacity = Integer.highestOneBit(Math.max(config.getBufferSize(), 2) - 1) << 1;
+        this.mask = capacity - 1;
+        this.timestamps = new long[capacity];
+        this.services = new String[capacity];
+        this.methods = new String[capacity];
+        this.peers = new String[capacity];
+        this.statuses = new byte[capacity];
+        this.latencies = new long[capacity];
+        this.requestBytes = new int[capacity];
+        this.responseBytes = new int[capacity];
+        long[] initial = new long[capacity];
+        Arrays.fill(initial, -1);
+        this.published = new AtomicLongArray(initial);
+        this.logged = RpcMetrics.counter(prefix + ".logged");
+        this.dropped = RpcMetrics.counter(prefix + ".dropped");
+        RpcMetrics.gauge(prefix + ".backlog", () -> claimed.get() - consumed);
+        this.drainer = new Thread(this::drain, "myrpc-access-" + name);
+        this.drainer.setDaemon(true);
+        this.drainer.start();
+    }
+
+    /*
+     * 记录一次调用，按采样比例决定是否记录，缓冲区满时丢弃
+     * @param peer          对端地址，未知时为null
+     * @param latencyNanos  调用耗时，单位纳秒
+     * @param requestBytes  请求消息体大小，<0表示未知
+     * @param responseBytes 响应消息体大小，<0表示未知
+     * */
+    public void log(String service, String method, String peer, StatusCode status,
+                    long latencyNanos, int requestBytes, int responseBytes) {
+        if (status == StatusCode.SUCCESS && sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return;
+        }
+        long seq;
+        do {
+            seq = claimed.get();
+            if (seq - consumed > mask) {
+                dropped.increment();
+                return;
+            }
+        } while (!claimed.compareAndSet(seq, seq + 1));
+        int slot = (int) seq & mask;
+        timestamps[slot] = System.currentTimeMillis();
+        services[slot] = service;
+        methods[slot] = method;
+        peers[slot] = peer;
+        statuses[slot] = (byte) status.ordinal();
+        latencies[slot] = latencyNanos;
+        this.requestBytes[slot] = requestBytes;
+        this.responseBytes[slot] = responseBytes;
+        //发布：之前对字段的写入对读到这个序号的后台线程可见
+        published.set(slot, seq);
+    }
+
+    /*
+     * 停止后台线程，输出缓冲区中剩余的记录，移除指标
+     * */
+    public void close() {
+        closed = true;
+        LockSupport.unpark(drainer);
+        try {
+            drainer.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        RpcMetrics.remove(prefix + ".");
+    }
+
+    //后台线程：按序号依次输出已发布的记录，缓冲区为空时等待一小段时间
+    private void drain() {
+        StringBuilder sb = new StringBuilder(256);
+        while (true) {
+            long seq = consumed;
+            int slot = (int) seq & mask;
+            if (published.get(slot) == seq) {
+                if (logger.isInfoEnabled()) {
+                    sb.setLength(0);
+                    logger.info(format(sb, slot).toString());
+                }
+                logged.increment();
+                consumed = seq + 1;
+                continue;
+            }
+            if (closed && claimed.get() == seq) {
+                return;
+            }
+            LockSupport.parkNanos(POLL_NANOS);
+        }
+    }
+
+    //格式化一条记录：时刻 服务.方法 key=value...
+    private StringBuilder format(StringBuilder sb, int slot) {
+        TIME_FORMAT.formatTo(Instant.ofEpochMilli(timestamps[slot]), sb);
+        sb.append(' ').append(services[slot]).append('.').append(methods[slot]);
+        if (peers[slot] != null) {
+            sb.append(" peer=").append(peers[slot]);
+        }
+        sb.append(" status=").append(STATUSES[statuses[slot]].name())
+                .append(" latency-us=").append(TimeUnit.NANOSECONDS.toMicros(latencies[slot]));
+        if (requestBytes[slot] >= 0) {
+            sb.append(" request-bytes=").append(requestBytes[slot]);
+        }
+        if (responseBytes[slot] >= 0) {
+            sb.append(" response-bytes=").append(responseBytes[slot]);
+        }
+        return sb;
+    }
+}
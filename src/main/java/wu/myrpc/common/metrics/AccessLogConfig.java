@@ -0,0 +1,45 @@
+package wu.myrpc.common.metrics;
+
+/*
+ * 访问日志配置
+ * - enabled：是否启用，默认不启用
+ * - sampleRate：成功调用中记录的比例，0~1；失败的调用总是记录
+ * - bufferSize：环形缓冲区的记录数，向上取2的幂；缓冲区满时新的记录被丢弃，不阻塞调用
+ * */
+public class AccessLogConfig {
+    private Boolean enabled = false;
+    private Double sampleRate = 0.01;
+    private Integer bufferSize = 8192;
+
+    public AccessLogConfig() {
+    }
+
+    public AccessLogConfig(Boolean enabled, Double sampleRate) {
+        this.enabled = enabled;
+        this.sampleRate = sampleRate;
+    }
+
+    public Boolean getEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(Boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Double getSampleRate() {
+        return sampleRate;
+    }
+
+    public void setSampleRate(Double sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    public Integer getBufferSize() {
+        return bufferSize;
+    }
+
+    public void setBufferSize(Integer bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+}
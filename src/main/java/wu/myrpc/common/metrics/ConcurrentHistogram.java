@@ -0,0 +1,111 @@
+package wu.myrpc.common.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*
+ * 多线程记录的直方图：分桶方式和LatencyHistogram相同（对数-线性，相对误差不超过12.5%），可以记录时间也可以记录字节数
+ * 按线程分条（stripe）记录，每个线程固定写一个分条，不同线程之间基本不会竞争同一个缓存行；
+ * 分条在第一次被使用时才分配，并发低时只占用一两个分条的内存
+ * 读取时把所有分条合并成一个快照再计算分位数，读取比记录慢得多，只适合按需拉取
+ * */
+public class ConcurrentHistogram {
+    //最大分条数：CPU核数向上取2的幂，最多16个
+    private static final int STRIPES = Math.min(16, Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() - 1)) << 1);
+
+    private final AtomicReferenceArray<AtomicLongArray> stripes = new AtomicReferenceArray<>(STRIPES);
+
+    /*
+     * 记录一个样本，负数按0记录
+     * */
+    public void record(long value) {
+        stripe().incrementAndGet(LatencyHistogram.indexOf(value));
+    }
+
+    //当前线程对应的分条，不存在时创建
+    private AtomicLongArray stripe() {
+        long id = Thread.currentThread().getId();
+        int index = (int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & (STRIPES - 1);
+        AtomicLongArray stripe = stripes.get(index);
+        if (stripe == null) {
+            stripes.compareAndSet(index, null, new AtomicLongArray(LatencyHistogram.BUCKETS));
+            stripe = stripes.get(index);
+        }
+        return stripe;
+    }
+
+    /*
+     * 合并所有分条，得到各个桶的计数
+     * */
+    public Snapshot snapshot() {
+        long[] counts = new long[LatencyHistogram.BUCKETS];
+        long total = 0;
+        for (int s = 0; s < STRIPES; s++) {
+            AtomicLongArray stripe = stripes.get(s);
+            if (stripe == null) {
+                continue;
+            }
+            for (int i = 0; i < counts.length; i++) {
+                long value = stripe.get(i);
+                counts[i] += value;
+                total += value;
+            }
+        }
+        return new Snapshot(counts, total);
+    }
+
+    /*
+     * 衰减：所有桶减半，让旧样本的权重逐渐降低，并发记录时可能丢失少量样本
+     * */
+    public void decay() {
+        for (int s = 0; s < STRIPES; s++) {
+            AtomicLongArray stripe = stripes.get(s);
+            if (stripe == null) {
+                continue;
+            }
+            for (int i = 0; i < stripe.length(); i++) {
+                long value = stripe.get(i);
+                if (value > 0) {
+                    stripe.addAndGet(i, -(value >>> 1));
+                }
+            }
+        }
+    }
+
+    /*
+     * 合并后的快照，计算多个分位数时只合并一次
+     * */
+    public static class Snapshot {
+        private final long[] counts;
+        private final long total;
+
+        Snapshot(long[] counts, long total) {
+            this.counts = counts;
+            this.total = total;
+        }
+
+        public long count() {
+            return total;
+        }
+
+        /*
+         * 分位数
+         * @param percentile 百分位，如99.9
+         * @return 分位数所在桶的上界，没有样本时返回0
+         * */
+        public long percentile(double percentile) {
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(total * Math.min(percentile, 100) / 100);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return LatencyHistogram.upperBound(i);
+                }
+            }
+            return LatencyHistogram.upperBound(counts.length - 1);
+        }
+    }
+}
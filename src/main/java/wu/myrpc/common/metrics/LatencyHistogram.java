@@ -0,0 +1,96 @@
+package wu.myrpc.common.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * 响应时间直方图，单位ns，对数-线性分桶：
+ * - 小于8ns的值每个值一个桶
+ * - 之后每个2的幂区间平均分成8个桶，相对误差不超过12.5%
+ * 记录只是对一个桶原子加1，不加锁；读取分位数时遍历所有桶，结果是近似值（取桶的上界）
+ * decay()把所有桶减半，让旧样本的权重逐渐降低，并发记录时可能丢失少量样本
+ * */
+public class LatencyHistogram {
+    //每个2的幂区间的子桶数 = 2^SUB_BITS
+    private static final int SUB_BITS = 3;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    //可记录的最大指数：2^40ns，约18分钟，更大的值记在最后一个桶
+    private static final int MAX_EXPONENT = 40;
+    static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB_COUNT;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    /*
+     * 记录一个样本，负数按0记录
+     * */
+    public void record(long nanos) {
+        buckets.incrementAndGet(indexOf(nanos));
+    }
+
+    /*
+     * 样本总数
+     * */
+    public long count() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += buckets.get(i);
+        }
+        return count;
+    }
+
+    /*
+     * 分位数
+     * @param percentile 百分位，如99.9
+     * @return 分位数所在桶的上界，没有样本时返回0
+     * */
+    public long percentile(double percentile) {
+        long count = count();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(count * Math.min(percentile, 100) / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(BUCKETS - 1);
+    }
+
+    /*
+     * 衰减：所有桶减半
+     * */
+    public void decay() {
+        for (int i = 0; i < BUCKETS; i++) {
+            long value = buckets.get(i);
+            if (value > 0) {
+                buckets.addAndGet(i, -(value >>> 1));
+            }
+        }
+    }
+
+    //值所在的桶
+    static int indexOf(long nanos) {
+        if (nanos < SUB_COUNT) {
+            return (int) Math.max(nanos, 0);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+        return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+    }
+
+    //桶的上界
+    static long upperBound(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        int exponent = index / SUB_COUNT - 1 + SUB_BITS;
+        int sub = index % SUB_COUNT;
+        long lower = (long) (SUB_COUNT + sub) << (exponent - SUB_BITS);
+        return lower + (1L << (exponent - SUB_BITS)) - 1;
+    }
+}
@@ -0,0 +1,123 @@
+package wu.myrpc.common.metrics;
+
+import wu.myrpc.common.protocol.StatusCode;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * 方法级别的调用统计，客户端按每次代理调用、服务端按每次请求处理记录，按指标名前缀区分，所有调用方共享：
+ * - calls：完成的调用数；qps：最近5秒的平均每秒调用数；inflight：在途调用数
+ * - status.<状态码>：按状态码统计的调用数（只在出现过时注册），errors：非SUCCESS的调用数
+ * - latency-us.p50/p99/p999：响应时间的分位数，单位微秒
+ * - request-bytes.p50/p99、response-bytes.p50/p99：请求、响应消息体大小的分位数，单位字节
+ * 记录只是对LongAdder和按线程分条的直方图累加，不加锁；直方图每分钟衰减一次，分位数主要反映最近几分钟的调用
+ * 同名的重载方法共用一份统计
+ * */
+public class MethodStats {
+    //直方图衰减的间隔
+    private static final long DECAY_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final StatusCode[] STATUSES = StatusCode.values();
+
+    //key=指标名前缀，value=统计
+    private static final ConcurrentMap<String, MethodStats> STATS = new ConcurrentHashMap<>();
+
+    private final String prefix;
+    private final LongAdder calls;
+    private final LongAdder errors;
+    private final LongAdder inflight = new LongAdder();
+    private final RateMeter qps = new RateMeter();
+    //按状态码序号存放计数器，第一次出现时注册
+    private final AtomicReferenceArray<LongAdder> statuses = new AtomicReferenceArray<>(STATUSES.length);
+    private final ConcurrentHistogram latency = new ConcurrentHistogram();
+    private final ConcurrentHistogram requestBytes = new ConcurrentHistogram();
+    private final ConcurrentHistogram responseBytes = new ConcurrentHistogram();
+    private final AtomicLong lastDecay = new AtomicLong(System.nanoTime());
+
+    private MethodStats(String prefix) {
+        this.prefix = prefix;
+        this.calls = RpcMetrics.counter(prefix + ".calls");
+        this.errors = RpcMetrics.counter(prefix + ".errors");
+        RpcMetrics.gauge(prefix + ".qps", qps::rate);
+        RpcMetrics.gauge(prefix + ".inflight", inflight::sum);
+        RpcMetrics.gauge(prefix + ".latency-us.p50", () -> TimeUnit.NANOSECONDS.toMicros(latency.snapshot().percentile(50)));
+        RpcMetrics.gauge(prefix + ".latency-us.p99", () -> TimeUnit.NANOSECONDS.toMicros(latency.snapshot().percentile(99)));
+        RpcMetrics.gauge(prefix + ".latency-us.p999", () -> TimeUnit.NANOSECONDS.toMicros(latency.snapshot().percentile(99.9)));
+        RpcMetrics.gauge(prefix + ".request-bytes.p50", () -> requestBytes.snapshot().percentile(50));
+        RpcMetrics.gauge(prefix + ".request-bytes.p99", () -> requestBytes.snapshot().percentile(99));
+        RpcMetrics.gauge(prefix + ".response-bytes.p50", () -> responseBytes.snapshot().percentile(50));
+        RpcMetrics.gauge(prefix + ".response-bytes.p99", () -> responseBytes.snapshot().percentile(99));
+    }
+
+    /*
+     * 获取指定前缀的统计，不存在时创建
+     * @param prefix 指标名前缀，如server.method.服务名.方法名
+     * */
+    public static MethodStats of(String prefix) {
+        MethodStats stats = STATS.get(prefix);
+        return stats != null ? stats : STATS.computeIfAbsent(prefix, MethodStats::new);
+    }
+
+    /*
+     * 调用开始：在途调用数+1
+     * @return 开始时间，调用结束时传给end
+     * */
+    public long begin() {
+        inflight.increment();
+        return System.nanoTime();
+    }
+
+    /*
+     * 调用结束：在途调用数-1，记录状态码和响应时间
+     * @param startNanos 开始时间（System.nanoTime()），可以早于begin()，如服务端收到请求的时刻
+     * */
+    public void end(long startNanos, StatusCode status) {
+        inflight.decrement();
+        long now = System.nanoTime();
+        calls.increment();
+        qps.mark(now);
+        latency.record(now - startNanos);
+        statusCounter(status).increment();
+        if (status != StatusCode.SUCCESS) {
+            errors.increment();
+        }
+        long last = lastDecay.get();
+        if (now - last > DECAY_NANOS && lastDecay.compareAndSet(last, now)) {
+            latency.decay();
+            requestBytes.decay();
+            responseBytes.decay();
+        }
+    }
+
+    /*
+     * 记录请求消息体大小
+     * */
+    public void requestBytes(int bytes) {
+        requestBytes.record(bytes);
+    }
+
+    /*
+     * 记录响应消息体大小
+     * */
+    public void responseBytes(int bytes) {
+        responseBytes.record(bytes);
+    }
+
+    private LongAdder statusCounter(StatusCode status) {
+        int index = status.ordinal();
+        LongAdder counter = statuses.get(index);
+        if (counter == null) {
+            statuses.compareAndSet(index, null, RpcMetrics.counter(prefix + ".status." + status.name()));
+            counter = statuses.get(index);
+        }
+        return counter;
+    }
+
+    public long getInflight() {
+        return inflight.sum();
+    }
+}
@@ -0,0 +1,55 @@
+package wu.myrpc.common.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * 每秒次数：按秒分槽计数，读取时取最近WINDOW个完整秒的平均值
+ * 槽位循环使用，进入新的一秒时由第一个记录的线程清零；清零和其他线程的累加之间没有同步，可能丢失少量计数
+ * */
+public class RateMeter {
+    private static final int SLOTS = 8;
+    //计算速率使用的完整秒数，不含当前这一秒
+    private static final int WINDOW = 5;
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final LongAdder[] counts = new LongAdder[SLOTS];
+    //每个槽位当前记录的是哪一秒
+    private final AtomicLongArray seconds = new AtomicLongArray(SLOTS);
+
+    public RateMeter() {
+        for (int i = 0; i < SLOTS; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    /*
+     * 记录一次
+     * @param nanos 当前时刻（System.nanoTime()）
+     * */
+    public void mark(long nanos) {
+        long second = Math.floorDiv(nanos, SECOND);
+        int slot = (int) (second & (SLOTS - 1));
+        long current = seconds.get(slot);
+        if (current != second && seconds.compareAndSet(slot, current, second)) {
+            counts[slot].reset();
+        }
+        counts[slot].increment();
+    }
+
+    /*
+     * 最近WINDOW秒的平均每秒次数
+     * */
+    public double rate() {
+        long now = Math.floorDiv(System.nanoTime(), SECOND);
+        long sum = 0;
+        for (int i = 0; i < SLOTS; i++) {
+            long second = seconds.get(i);
+            if (second < now && second >= now - WINDOW) {
+                sum += counts[i].sum();
+            }
+        }
+        return (double) sum / WINDOW;
+    }
+}
@@ -0,0 +1,79 @@
+package wu.myrpc.common.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/*
+ * 指标注册表：客户端、服务端各组件把需要观测的指标注册到这里，按名称拉取
+ * - gauge：读取时才计算的瞬时值，如队列长度、活跃线程数
+ * - counter：只增不减的计数，如拒绝次数
+ * 记录指标只是对LongAdder累加或不做任何事，读取时才遍历计算，不影响请求处理的吞吐
+ * 方法级别的调用统计见MethodStats；引入spring-boot-actuator时还可以通过myrpc端点拉取，见RpcMetricsEndpoint
+ * */
+public class RpcMetrics {
+    //构造器设为私有：只通过静态方法使用
+    private RpcMetrics(){}
+
+    //key=指标名，value=指标值的提供者
+    private static final ConcurrentMap<String, Supplier<? extends Number>> METRICS = new ConcurrentHashMap<>();
+
+    /*
+     * 注册gauge，同名指标会被覆盖
+     * */
+    public static void gauge(String name, Supplier<? extends Number> supplier) {
+        METRICS.put(name, supplier);
+    }
+
+    /*
+     * 获取计数器，不存在时创建并注册
+     * */
+    public static LongAdder counter(String name) {
+        Supplier<? extends Number> supplier = METRICS.computeIfAbsent(name, key -> new Counter());
+        if (!(supplier instanceof Counter)) {
+            throw new IllegalArgumentException("Metric " + name + " is not a counter");
+        }
+        return ((Counter) supplier).adder;
+    }
+
+    /*
+     * 移除指定前缀的所有指标，组件关闭时调用
+     * */
+    public static void remove(String prefix) {
+        METRICS.keySet().removeIf(name -> name.startsWith(prefix));
+    }
+
+    /*
+     * 拉取所有指标的当前值，按名称排序
+     * */
+    public static Map<String, Number> snapshot() {
+        Map<String, Number> snapshot = new TreeMap<>();
+        METRICS.forEach((name, supplier) -> snapshot.put(name, supplier.get()));
+        return snapshot;
+    }
+
+    /*
+     * 拉取指定前缀的指标的当前值，按名称排序，如"server.method."
+     * */
+    public static Map<String, Number> snapshot(String prefix) {
+        Map<String, Number> snapshot = new TreeMap<>();
+        METRICS.forEach((name, supplier) -> {
+            if (name.startsWith(prefix)) {
+                snapshot.put(name, supplier.get());
+            }
+        });
+        return snapshot;
+    }
+
+    private static class Counter implements Supplier<Long> {
+        private final LongAdder adder = new LongAdder();
+
+        @Override
+        public Long get() {
+            return adder.sum();
+        }
+    }
+}
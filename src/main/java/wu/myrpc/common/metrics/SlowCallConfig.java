@@ -0,0 +1,55 @@
+package wu.myrpc.common.metrics;
+
+/*
+ * 慢调用日志配置
+ * - enabled：是否启用，默认不启用
+ * - thresholdMillis：耗时达到这个值的调用算作慢调用，单位ms；服务端处理时间达到这个值时还会把各阶段耗时放进响应首部带回客户端
+ * - sampleRate：慢调用中输出日志的比例，0~1
+ * - maxPerSecond：每秒最多输出的慢调用日志条数，超过的只计数不输出
+ * */
+public class SlowCallConfig {
+    private Boolean enabled = false;
+    private Long thresholdMillis = 500L;
+    private Double sampleRate = 1.0;
+    private Integer maxPerSecond = 10;
+
+    public SlowCallConfig() {
+    }
+
+    public SlowCallConfig(Boolean enabled, Long thresholdMillis) {
+        this.enabled = enabled;
+        this.thresholdMillis = thresholdMillis;
+    }
+
+    public Boolean getEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(Boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Long getThresholdMillis() {
+        return thresholdMillis;
+    }
+
+    public void setThresholdMillis(Long thresholdMillis) {
+        this.thresholdMillis = thresholdMillis;
+    }
+
+    public Double getSampleRate() {
+        return sampleRate;
+    }
+
+    public void setSampleRate(Double sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    public Integer getMaxPerSecond() {
+        return maxPerSecond;
+    }
+
+    public void setMaxPerSecond(Integer maxPerSecond) {
+        this.maxPerSecond = maxPerSecond;
+    }
+}
@@ -0,0 +1,117 @@
+package wu.myrpc.common.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/*
+ * 慢调用日志：耗时超过阈值的调用按阶段输出耗时和消息大小，客户端、服务端各一个实例
+ * 调用过程中只记录各阶段的System.nanoTime()，结束时和阈值比较一次，没有超过阈值的调用不构造任何日志内容
+ * 输出受采样比例和每秒条数上限约束，慢调用大量出现时不会让日志本身成为瓶颈
+ * 服务端的阶段耗时以"阶段=微秒"的形式用逗号连接，放在响应首部HEADER_SERVER_TIMING中带回客户端
+ * 指标：<prefix>.calls（慢调用数）、<prefix>.suppressed（因采样或上限没有输出的慢调用数）
+ * */
+public class SlowCallLog {
+    private static Logger logger = LoggerFactory.getLogger(SlowCallLog.class);
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final long thresholdNanos;
+    private final double sampleRate;
+    private final int maxPerSecond;
+    private final LongAdder calls;
+    private final LongAdder suppressed;
+    //当前这一秒，以及这一秒内已经输出的条数
+    private final AtomicLong second = new AtomicLong();
+    private final AtomicInteger logged = new AtomicInteger();
+
+    /*
+     * @param prefix 指标名前缀，如client.slow
+     * */
+    public SlowCallLog(String prefix, SlowCallConfig config) {
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(config.getThresholdMillis());
+        this.sampleRate = config.getSampleRate();
+        this.maxPerSecond = config.getMaxPerSecond();
+        this.calls = RpcMetrics.counter(prefix + ".calls");
+        this.suppressed = RpcMetrics.counter(prefix + ".suppressed");
+    }
+
+    /*
+     * 是否是慢调用
+     * @param elapsedNanos 调用耗时，单位纳秒
+     * */
+    public boolean isSlow(long elapsedNanos) {
+        return elapsedNanos >= thresholdNanos;
+    }
+
+    /*
+     * 记录一次慢调用：计数，按采样比例和每秒上限决定是否输出，需要输出时才构造日志内容
+     * */
+    public void log(Supplier<String> message) {
+        calls.increment();
+        if (sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            suppressed.increment();
+            return;
+        }
+        long now = System.nanoTime() / SECOND;
+        long current = second.get();
+        if (current != now && second.compareAndSet(current, now)) {
+            logged.set(0);
+        }
+        if (logged.incrementAndGet() > maxPerSecond) {
+            suppressed.increment();
+            return;
+        }
+        logger.warn(message.get());
+    }
+
+    /*
+     * 追加一个阶段的耗时，单位ms
+     * */
+    public static StringBuilder phase(StringBuilder sb, String name, long nanos) {
+        return sb.append(' ').append(name).append('=').append(String.format("%.3f", nanos / 1e6));
+    }
+
+    /*
+     * 服务端各阶段耗时编码成响应首部的值：queue=120,decode=35,service=80500，单位微秒
+     * @param phases 交替的阶段名和耗时（纳秒）
+     * */
+    public static String encodeTiming(Object... phases) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < phases.length; i += 2) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(phases[i]).append('=').append(TimeUnit.NANOSECONDS.toMicros((Long) phases[i + 1]));
+        }
+        return sb.toString();
+    }
+
+    /*
+     * 把响应首部中的服务端阶段耗时追加到日志中
+     * @return 服务端各阶段耗时之和，单位纳秒；首部格式不对时返回已解析部分的和
+     * */
+    public static long appendTiming(StringBuilder sb, String timing) {
+        long total = 0;
+        for (String phase : timing.split(",")) {
+            int i = phase.indexOf('=');
+            if (i <= 0) {
+                continue;
+            }
+            try {
+                long nanos = TimeUnit.MICROSECONDS.toNanos(Long.parseLong(phase.substring(i + 1)));
+                phase(sb, phase.substring(0, i), nanos);
+                total += nanos;
+            } catch (NumberFormatException e) {
+                //忽略无法解析的阶段
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,66 @@
+package wu.myrpc.common.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+
+import java.nio.charset.StandardCharsets;
+
+/*
+ * 消息帧解码器：基于首部中的长度字段拆包，解决粘包半包问题
+ * 读到一个完整的帧后再解析首部，得到RpcFrame交给后续handler
+ * RpcFrame的消息体持有接收缓冲区的一个引用，使用完后需要释放
+ * */
+public class FrameDecoder extends LengthFieldBasedFrameDecoder {
+
+    public FrameDecoder() {
+        this(RpcFrame.MAX_FRAME_LENGTH);
+    }
+
+    public FrameDecoder(int maxFrameLength) {
+        //长度字段只表示消息体长度，所以lengthAdjustment=0，且不剥离首部
+        super(maxFrameLength, RpcFrame.LENGTH_FIELD_OFFSET, 4, 0, 0);
+    }
+
+    @Override
+    protected Object decode(ChannelHandlerContext ctx, ByteBuf in) throws Exception {
+        ByteBuf buf = (ByteBuf) super.decode(ctx, in);
+        if (buf == null) {
+            return null;
+        }
+        try {
+            short magic = buf.readShort();
+            if (magic != RpcFrame.MAGIC) {
+                throw new CorruptedFrameException("Illegal magic number: " + magic);
+            }
+            RpcFrame frame = new RpcFrame();
+            frame.setVersion(buf.readByte());
+            if (frame.getVersion() != RpcFrame.VERSION) {
+                throw new CorruptedFrameException("Unsupported protocol version: " + frame.getVersion());
+            }
+            frame.setSerializerId(buf.readByte());
+            frame.setRequestId(buf.readLong());
+            byte flags = buf.readByte();
+            frame.setServiceId(buf.readInt());
+            frame.setMethodId(buf.readInt());
+            buf.skipBytes(4);
+            if ((flags & RpcFrame.FLAG_NAMES) != 0) {
+                frame.attachNames(readString(buf), readString(buf));
+            }
+            frame.setFlags(flags);
+            //消息体是接收缓冲区的切片，不复制
+            frame.setBody(buf.readRetainedSlice(buf.readableBytes()));
+            return frame;
+        } finally {
+            buf.release();
+        }
+    }
+
+    private static String readString(ByteBuf buf) {
+        int length = buf.readUnsignedShort();
+        String value = buf.toString(buf.readerIndex(), length, StandardCharsets.UTF_8);
+        buf.skipBytes(length);
+        return value;
+    }
+}
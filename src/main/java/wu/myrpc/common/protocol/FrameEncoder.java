@@ -0,0 +1,51 @@
+package wu.myrpc.common.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageEncoder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/*
+ * 消息帧编码器：按RpcFrame定义的格式写出首部和消息体
+ * 首部写入新分配的缓冲区，消息体不复制，和首部一起交给网络层聚集写出；
+ * 编码完成后父类释放RpcFrame，消息体在写出后由网络层释放
+ * */
+public class FrameEncoder extends MessageToMessageEncoder<RpcFrame> {
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, RpcFrame frame, List<Object> out) throws Exception {
+        ByteBuf body = frame.getBody();
+        byte[] serviceName = null;
+        byte[] methodSignature = null;
+        int namesLength = 0;
+        if (frame.hasNames()) {
+            serviceName = frame.getServiceName().getBytes(StandardCharsets.UTF_8);
+            methodSignature = frame.getMethodSignature().getBytes(StandardCharsets.UTF_8);
+            namesLength = 4 + serviceName.length + methodSignature.length;
+        }
+        ByteBuf header = ctx.alloc().buffer(RpcFrame.HEADER_LENGTH + namesLength);
+        header.writeShort(RpcFrame.MAGIC);
+        header.writeByte(frame.getVersion());
+        header.writeByte(frame.getSerializerId());
+        header.writeLong(frame.getRequestId());
+        header.writeByte(frame.getFlags());
+        header.writeInt(frame.getServiceId());
+        header.writeInt(frame.getMethodId());
+        header.writeInt(namesLength + body.readableBytes());
+        if (serviceName != null) {
+            writeString(header, serviceName);
+            writeString(header, methodSignature);
+        }
+        out.add(header);
+        if (body.isReadable()) {
+            out.add(body.retain());
+        }
+    }
+
+    private static void writeString(ByteBuf out, byte[] bytes) {
+        out.writeShort(bytes.length);
+        out.writeBytes(bytes);
+    }
+}
@@ -1,11 +1,14 @@
 package wu.myrpc.common.protocol;
 
+import io.netty.buffer.ByteBuf;
+
 /*
  * 消息协议接口，即对数据报做编解码的规范，包括：（编解码 = 序列化、反序列化）
  * - 编组请求规范：将请求数据报编码成字节数组
  * - 解组请求规范：将字节数组解码成请求数据报
  * - 编组响应规范：将响应数据报编码成字节数组
  * - 解组响应规范：将字节数组解码成响应数据报
+ * 每种操作都有ByteBuf版本，直接读写网络层的缓冲区；默认实现经过字节数组中转
  * */
 public interface MessageProtocol {
     /**
@@ -43,4 +46,56 @@ public interface MessageProtocol {
      * @throws Exception 解组响应异常
      */
     ResponseDatagram unmarshallingResponse(byte[] data) throws Exception;
+
+    /**
+     * 编组请求到缓冲区
+     * @param req 请求信息
+     * @param out 写入的缓冲区
+     * @throws Exception 编组请求异常
+     */
+    default void marshallingRequest(RequestDatagram req, ByteBuf out) throws Exception {
+        out.writeBytes(marshallingRequest(req));
+    }
+
+    /**
+     * 从缓冲区解组请求，不释放缓冲区
+     * @param in 请求缓冲区
+     * @return 请求信息
+     * @throws Exception 解组请求异常
+     */
+    default RequestDatagram unmarshallingRequest(ByteBuf in) throws Exception {
+        byte[] data = new byte[in.readableBytes()];
+        in.readBytes(data);
+        return unmarshallingRequest(data);
+    }
+
+    /**
+     * 编组响应到缓冲区
+     * @param rsp 响应信息
+     * @param out 写入的缓冲区
+     * @throws Exception 编组响应异常
+     */
+    default void marshallingResponse(ResponseDatagram rsp, ByteBuf out) throws Exception {
+        out.writeBytes(marshallingResponse(rsp));
+    }
+
+    /**
+     * 从缓冲区解组响应，不释放缓冲区
+     * @param in 响应缓冲区
+     * @return 响应信息
+     * @throws Exception 解组响应异常
+     */
+    default ResponseDatagram unmarshallingResponse(ByteBuf in) throws Exception {
+        byte[] data = new byte[in.readableBytes()];
+        in.readBytes(data);
+        return unmarshallingResponse(data);
+    }
+
+    /**
+     * 所用序列化算法的id，写入消息帧首部，接收方据此选择相同算法解码
+     * @return 序列化算法id，见Serializer
+     */
+    default byte getSerializerId() {
+        return MessageProtocolSerialize.SERIALIZER.getId();
+    }
 }
@@ -1,22 +1,42 @@
 package wu.myrpc.common.protocol;
 
+import io.netty.buffer.ByteBuf;
 import wu.myrpc.common.constants.RpcConstant.*;
 import wu.myrpc.common.serializer.Serializer;
 
 /*
 * 消息协议接口的实现：选择具体的序列化/反序列化算法做编解码
-* 可通过SERIALIZER选用：jdk自带算法、fastjson
+* 可通过构造参数选用：jdk自带算法、fastjson、kryo，不指定时使用SERIALIZER
+* 服务提供方把"协议名-序列化算法名"作为Service.protocol注册，调用方据此选择相同算法的协议实例，见protocolName
 * */
 public class MessageProtocolSerialize implements MessageProtocol{
 
-    //指定具体的序列化算法
+    //默认的序列化算法
     public static final Serializer SERIALIZER = Serializer.JAVA;
+
+    //指定具体的序列化算法
+    private final Serializer serializer;
+
+    public MessageProtocolSerialize() {
+        this(SERIALIZER);
+    }
+
+    public MessageProtocolSerialize(Serializer serializer) {
+        this.serializer = serializer;
+    }
+
+    /*
+    * 协议名：协议名-序列化算法名，如myprotocol-kryo
+    * */
+    public static String protocolName(String protocol, Serializer serializer) {
+        return protocol + "-" + serializer.name().toLowerCase();
+    }
     /*
     * 请求数据报的编码 = 序列化
     * */
     @Override
     public byte[] marshallingRequest(RequestDatagram req) throws Exception {
-        return SERIALIZER.serialize(req);
+        return serializer.serialize(req);
     }
 
     /*
@@ -24,7 +44,7 @@ public class MessageProtocolSerialize implements MessageProtocol{
     * */
     @Override
     public RequestDatagram unmarshallingRequest(byte[] data) throws Exception {
-        return SERIALIZER.deserialize(RequestDatagram.class, data);
+        return serializer.deserialize(RequestDatagram.class, data);
     }
 
     /*
@@ -32,11 +52,43 @@ public class MessageProtocolSerialize implements MessageProtocol{
      * */
     @Override
     public byte[] marshallingResponse(ResponseDatagram rsp) throws Exception {
-        return SERIALIZER.serialize(rsp);
+        return serializer.serialize(rsp);
     }
 
     @Override
     public ResponseDatagram unmarshallingResponse(byte[] data) throws Exception {
-        return SERIALIZER.deserialize(ResponseDatagram.class, data);
+        return serializer.deserialize(ResponseDatagram.class, data);
+    }
+
+    /*
+    * ByteBuf版本：序列化算法直接读写缓冲区
+    * */
+    @Override
+    public void marshallingRequest(RequestDatagram req, ByteBuf out) throws Exception {
+        serializer.serialize(req, out);
+    }
+
+    @Override
+    public RequestDatagram unmarshallingRequest(ByteBuf in) throws Exception {
+        return serializer.deserialize(RequestDatagram.class, in);
+    }
+
+    @Override
+    public void marshallingResponse(ResponseDatagram rsp, ByteBuf out) throws Exception {
+        serializer.serialize(rsp, out);
+    }
+
+    @Override
+    public ResponseDatagram unmarshallingResponse(ByteBuf in) throws Exception {
+        return serializer.deserialize(ResponseDatagram.class, in);
+    }
+
+    @Override
+    public byte getSerializerId() {
+        return serializer.getId();
+    }
+
+    public Serializer getSerializer() {
+        return serializer;
     }
 }
@@ -0,0 +1,64 @@
+package wu.myrpc.common.protocol;
+
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+
+/*
+ * 服务、方法标识：由服务名、方法签名计算出的32位哈希值，在消息帧首部中代替服务名、方法名、参数类型
+ * 签名格式：方法名(参数类型1,参数类型2,...)，参数类型取全限定名
+ * 哈希算法固定为FNV-1a，与JVM实现无关，客户端和服务端对同一个方法总能算出相同的id
+ * 不同方法的id可能冲突，使用方需要自行处理冲突
+ * */
+public class MethodId {
+    //构造器设为私有：只通过静态方法使用
+    private MethodId(){}
+
+    private static final int FNV_OFFSET_BASIS = 0x811c9dc5;
+    private static final int FNV_PRIME = 0x01000193;
+
+    /*
+     * 计算方法的签名
+     * */
+    public static String signature(Method method) {
+        return signature(method.getName(), method.getParameterTypes());
+    }
+
+    public static String signature(String methodName, Class<?>[] parameterTypes) {
+        StringBuilder sb = new StringBuilder(methodName).append('(');
+        if (parameterTypes != null) {
+            for (int i = 0; i < parameterTypes.length; i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                sb.append(parameterTypes[i].getTypeName());
+            }
+        }
+        return sb.append(')').toString();
+    }
+
+    /*
+     * 计算服务的id
+     * */
+    public static int ofService(String serviceName) {
+        return hash(serviceName);
+    }
+
+    /*
+     * 计算方法的id
+     * */
+    public static int of(Method method) {
+        return hash(signature(method));
+    }
+
+    /*
+     * 对字符串的UTF-8编码做FNV-1a哈希
+     * */
+    public static int hash(String value) {
+        int hash = FNV_OFFSET_BASIS;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,223 @@
+package wu.myrpc.common.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.ReferenceCounted;
+
+/*
+ * 消息帧：网络上传输的最小单位，由定长首部和变长消息体组成
+ * 首部格式（共25字节）：
+ * +-------+---------+------------+------------+-------+------------+-----------+-------------+
+ * | magic | version | serializer | request id | flags | service id | method id | body length |
+ * |   2   |    1    |     1      |     8      |   1   |     4      |     4     |      4      |
+ * +-------+---------+------------+------------+-------+------------+-----------+-------------+
+ * - magic：魔数，用于快速识别非法连接
+ * - serializer：消息体使用的序列化算法id
+ * - request id：请求id，响应帧原样带回，用于在一条连接上复用多个并发请求
+ * - flags：标志位，区分请求帧和响应帧，标识消息体前是否带有服务名和方法签名，
+ *   响应帧标识请求是否没有执行就被拒绝（如服务端过载），调用方不需要解组消息体就能决定是否重试
+ * - service id / method id：请求帧中服务名、方法签名的32位哈希（见MethodId），都为0表示不使用，
+ *   此时服务名、方法名、参数类型由请求报文自己携带；响应帧中都为0
+ * - body length：首部之后的长度，用于基于长度字段的拆包，解决粘包半包问题
+ * 带FLAG_NAMES标志的请求帧在消息体前附带服务名和方法签名（各自为2字节长度+UTF-8字节），
+ * 客户端只在一条连接上第一次使用某个id、或id冲突时附带，服务端据此在该连接上记住id对应的方法
+ * 消息体是ByteBuf：解码时是接收缓冲区的切片，编码时直接写出，不经过中间的字节数组；
+ * 帧的引用计数就是消息体的引用计数，写出后由编码器释放，读入后由最后使用消息体的一方释放
+ * */
+public class RpcFrame implements ReferenceCounted {
+    //魔数："mr"
+    public static final short MAGIC = 0x6d72;
+    //协议版本
+    public static final byte VERSION = 2;
+    //首部长度
+    public static final int HEADER_LENGTH = 25;
+    //长度字段在首部中的偏移量
+    public static final int LENGTH_FIELD_OFFSET = 21;
+    //单帧最大长度：16M
+    public static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+
+    //标志位：响应帧
+    public static final byte FLAG_RESPONSE = 0x01;
+    //标志位：消息体前附带服务名和方法签名
+    public static final byte FLAG_NAMES = 0x02;
+    //标志位：请求没有执行就被拒绝，消息体仍然是完整的状态响应
+    public static final byte FLAG_REJECTED = 0x04;
+
+    private byte version = VERSION;
+    private byte serializerId;
+    private long requestId;
+    private byte flags;
+    private int serviceId;
+    private int methodId;
+    //服务名、方法签名：只在带FLAG_NAMES标志时编码
+    private String serviceName;
+    private String methodSignature;
+    private ByteBuf body = Unpooled.EMPTY_BUFFER;
+    //本地时间戳（System.nanoTime()），不编码：发送方获取到连接、收到响应的时刻，用于分析慢调用的耗时，0表示还没有到达
+    private long acquiredNanos;
+    private long respondedNanos;
+
+    public RpcFrame() {
+    }
+
+    public RpcFrame(byte serializerId, long requestId, byte flags, ByteBuf body) {
+        this.serializerId = serializerId;
+        this.requestId = requestId;
+        this.flags = flags;
+        this.body = body;
+    }
+
+    //字节数组直接包装成消息体，不复制
+    public RpcFrame(byte serializerId, long requestId, byte flags, byte[] body) {
+        this(serializerId, requestId, flags, Unpooled.wrappedBuffer(body));
+    }
+
+    public boolean isResponse() {
+        return (flags & FLAG_RESPONSE) != 0;
+    }
+
+    public boolean isRejected() {
+        return (flags & FLAG_REJECTED) != 0;
+    }
+
+    public boolean hasNames() {
+        return (flags & FLAG_NAMES) != 0;
+    }
+
+    /*
+     * 附带服务名和方法签名
+     * */
+    public void attachNames(String serviceName, String methodSignature) {
+        this.serviceName = serviceName;
+        this.methodSignature = methodSignature;
+        this.flags |= FLAG_NAMES;
+    }
+
+    /*
+     * 去掉服务名和方法签名，只用id标识方法
+     * */
+    public void detachNames() {
+        this.serviceName = null;
+        this.methodSignature = null;
+        this.flags &= ~FLAG_NAMES;
+    }
+
+    public byte getVersion() {
+        return version;
+    }
+
+    public void setVersion(byte version) {
+        this.version = version;
+    }
+
+    public byte getSerializerId() {
+        return serializerId;
+    }
+
+    public void setSerializerId(byte serializerId) {
+        this.serializerId = serializerId;
+    }
+
+    public long getRequestId() {
+        return requestId;
+    }
+
+    public void setRequestId(long requestId) {
+        this.requestId = requestId;
+    }
+
+    public byte getFlags() {
+        return flags;
+    }
+
+    public void setFlags(byte flags) {
+        this.flags = flags;
+    }
+
+    public int getServiceId() {
+        return serviceId;
+    }
+
+    public void setServiceId(int serviceId) {
+        this.serviceId = serviceId;
+    }
+
+    public int getMethodId() {
+        return methodId;
+    }
+
+    public void setMethodId(int methodId) {
+        this.methodId = methodId;
+    }
+
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    public String getMethodSignature() {
+        return methodSignature;
+    }
+
+    public long getAcquiredNanos() {
+        return acquiredNanos;
+    }
+
+    public void setAcquiredNanos(long acquiredNanos) {
+        this.acquiredNanos = acquiredNanos;
+    }
+
+    public long getRespondedNanos() {
+        return respondedNanos;
+    }
+
+    public void setRespondedNanos(long respondedNanos) {
+        this.respondedNanos = respondedNanos;
+    }
+
+    public ByteBuf getBody() {
+        return body;
+    }
+
+    public void setBody(ByteBuf body) {
+        this.body = body;
+    }
+
+    @Override
+    public int refCnt() {
+        return body.refCnt();
+    }
+
+    @Override
+    public RpcFrame retain() {
+        body.retain();
+        return this;
+    }
+
+    @Override
+    public RpcFrame retain(int increment) {
+        body.retain(increment);
+        return this;
+    }
+
+    @Override
+    public RpcFrame touch() {
+        body.touch();
+        return this;
+    }
+
+    @Override
+    public RpcFrame touch(Object hint) {
+        body.touch(hint);
+        return this;
+    }
+
+    @Override
+    public boolean release() {
+        return body.release();
+    }
+
+    @Override
+    public boolean release(int decrement) {
+        return body.release(decrement);
+    }
+}
@@ -5,7 +5,10 @@ package wu.myrpc.common.protocol;
 public enum StatusCode {
     SUCCESS(200, "SUCCESS"),
     ERROR(500, "ERROR"),
-    NOT_FOUND(404, "NOT FOUND");
+    NOT_FOUND(404, "NOT FOUND"),
+    OVERLOADED(503, "OVERLOADED"),
+    LOAD_SHED(429, "LOAD SHED"),
+    DEADLINE_EXCEEDED(504, "DEADLINE EXCEEDED");
 
     //枚举对象的结构
     private int code;
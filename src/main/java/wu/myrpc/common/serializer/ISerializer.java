@@ -1,7 +1,10 @@
 package wu.myrpc.common.serializer;
 
+import io.netty.buffer.ByteBuf;
+
 /*
  * 可扩展的序列化算法接口
+ * ByteBuf版本直接读写网络层的缓冲区，默认实现经过字节数组中转，具体算法可以覆盖以省去中转
  * */
 public interface ISerializer {
     /**
@@ -22,4 +25,29 @@ public interface ISerializer {
      * @return 反序列化后的对象
      */
     <T> T deserialize(Class<T> clazz, byte[] bytes);
+
+    /**
+     * 序列化到缓冲区
+     *
+     * @param object 被序列化的对象
+     * @param out    写入的缓冲区
+     * @param <T>    被序列化对象类型
+     */
+    default <T> void serialize(T object, ByteBuf out) {
+        out.writeBytes(serialize(object));
+    }
+
+    /**
+     * 从缓冲区反序列化，读取缓冲区中全部的可读字节
+     *
+     * @param clazz 反序列化的目标类的Class对象
+     * @param in    被反序列化的缓冲区
+     * @param <T>   反序列化目标类
+     * @return 反序列化后的对象
+     */
+    default <T> T deserialize(Class<T> clazz, ByteBuf in) {
+        byte[] bytes = new byte[in.readableBytes()];
+        in.readBytes(bytes);
+        return deserialize(clazz, bytes);
+    }
 }
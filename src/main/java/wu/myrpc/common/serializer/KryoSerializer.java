@@ -0,0 +1,176 @@
+package wu.myrpc.common.serializer;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.ByteBufferInput;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.serializers.JavaSerializer;
+import com.esotericsoftware.kryo.util.DefaultInstantiatorStrategy;
+import io.netty.buffer.ByteBuf;
+import org.objenesis.strategy.StdInstantiatorStrategy;
+import wu.myrpc.common.protocol.RequestDatagram;
+import wu.myrpc.common.protocol.ResponseDatagram;
+import wu.myrpc.common.protocol.RpcFrame;
+import wu.myrpc.common.protocol.StatusCode;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/*
+ * 基于kryo的二进制序列化算法：
+ * - 类字典：注册过的类只写一个变长整数id，不写类名；两端必须以相同的id注册相同的类
+ *   框架内部的报文类型在这里固定注册，业务类型通过register追加，未注册的类型写类名，仍然可以序列化
+ * - kryo实例不是线程安全的，每个线程一个实例，输出缓冲区、输入对象也按线程复用；
+ *   输出缓冲区最大为单帧最大长度，写出超过MAX_RETAINED_SIZE的消息后换回初始大小，不长期占用峰值内存
+ * - 对象引用：默认开启，和JDK序列化一样支持循环引用和共享对象；关闭后每个对象按值写出，更快，
+ *   但循环引用的对象图会栈溢出，共享的对象反序列化后变成多个副本；两端的设置需要一致，见setReferences
+ * - 读写ByteBuf时：先写入线程复用的输出缓冲区再整体写入ByteBuf，读取时直接包装ByteBuf的底层数组或NIO视图，不分配中间数组
+ * - 异常类型使用JDK序列化，保留完整的异常信息
+ * */
+public class KryoSerializer implements ISerializer {
+    public static final KryoSerializer INSTANCE = new KryoSerializer();
+
+    //业务类型注册id的起始值，小于它的id留给框架内部类型
+    public static final int USER_REGISTRATION_START = 200;
+    //输出缓冲区的初始大小
+    private static final int BUFFER_SIZE = 4096;
+    //输出缓冲区超过这个大小时，写出后换回初始大小的缓冲区
+    private static final int MAX_RETAINED_SIZE = 64 * 1024;
+
+    //业务类型的注册信息：{类，id}
+    private static final List<Object[]> REGISTRATIONS = new CopyOnWriteArrayList<>();
+
+    private static final ThreadLocal<Holder> HOLDER = ThreadLocal.withInitial(Holder::new);
+
+    //是否记录对象引用
+    private static volatile boolean references = true;
+
+    /*
+     * 注册业务类型，id需>=USER_REGISTRATION_START，客户端和服务端需要一致
+     * 已创建的kryo实例在下一次使用时补充注册
+     * */
+    public static void register(Class<?> type, int id) {
+        if (id < USER_REGISTRATION_START) {
+            throw new IllegalArgumentException("Registration id must be >= " + USER_REGISTRATION_START);
+        }
+        REGISTRATIONS.add(new Object[]{type, id});
+    }
+
+    /*
+     * 设置是否记录对象引用，默认开启；关闭时循环引用的对象图无法序列化，客户端和服务端需要一致
+     * 已创建的kryo实例在下一次使用时应用新的设置
+     * */
+    public static void setReferences(boolean enabled) {
+        references = enabled;
+    }
+
+    @Override
+    public <T> byte[] serialize(T object) {
+        Holder holder = holder();
+        Output output = holder.output;
+        output.reset();
+        try {
+            holder.kryo.writeObject(output, object);
+            return output.toBytes();
+        } finally {
+            holder.trim();
+        }
+    }
+
+    @Override
+    public <T> T deserialize(Class<T> clazz, byte[] bytes) {
+        Holder holder = holder();
+        Input input = holder.input;
+        input.setBuffer(bytes);
+        return holder.kryo.readObject(input, clazz);
+    }
+
+    @Override
+    public <T> void serialize(T object, ByteBuf out) {
+        Holder holder = holder();
+        Output output = holder.output;
+        output.reset();
+        try {
+            holder.kryo.writeObject(output, object);
+            out.writeBytes(output.getBuffer(), 0, output.position());
+        } finally {
+            holder.trim();
+        }
+    }
+
+    @Override
+    public <T> T deserialize(Class<T> clazz, ByteBuf in) {
+        Holder holder = holder();
+        T target;
+        if (in.hasArray()) {
+            //堆缓冲区：直接读底层数组
+            Input input = holder.input;
+            int offset = in.arrayOffset() + in.readerIndex();
+            input.setBuffer(in.array(), offset, in.readableBytes());
+            target = holder.kryo.readObject(input, clazz);
+            in.skipBytes(input.position() - offset);
+        } else {
+            //直接缓冲区：读NIO视图
+            ByteBufferInput input = holder.bufferInput;
+            input.setBuffer(in.nioBuffer());
+            int start = input.position();
+            target = holder.kryo.readObject(input, clazz);
+            in.skipBytes(input.position() - start);
+        }
+        return target;
+    }
+
+    //获取当前线程的kryo实例，补充注册新增的业务类型，应用引用设置的变化
+    private static Holder holder() {
+        Holder holder = HOLDER.get();
+        boolean enabled = references;
+        if (holder.references != enabled) {
+            holder.kryo.setReferences(enabled);
+            holder.references = enabled;
+        }
+        int size = REGISTRATIONS.size();
+        while (holder.registered < size) {
+            Object[] registration = REGISTRATIONS.get(holder.registered++);
+            holder.kryo.register((Class<?>) registration[0], (Integer) registration[1]);
+        }
+        return holder;
+    }
+
+    private static class Holder {
+        private final Kryo kryo = new Kryo();
+        private final Output output = new Output(BUFFER_SIZE, RpcFrame.MAX_FRAME_LENGTH);
+        private final Input input = new Input();
+        private final ByteBufferInput bufferInput = new ByteBufferInput();
+        private int registered = 0;
+        private boolean references;
+
+        Holder() {
+            kryo.setRegistrationRequired(false);
+            kryo.setReferences(false);
+            //没有无参构造器的类（如ResponseDatagram）直接创建实例
+            kryo.setInstantiatorStrategy(new DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
+            kryo.addDefaultSerializer(Throwable.class, JavaSerializer.class);
+            //框架内部类型：固定id，不能改动
+            kryo.register(RequestDatagram.class, 100);
+            kryo.register(ResponseDatagram.class, 101);
+            kryo.register(StatusCode.class, 102);
+            kryo.register(Object[].class, 103);
+            kryo.register(Class[].class, 104);
+            kryo.register(Class.class, 105);
+            kryo.register(HashMap.class, 106);
+            kryo.register(LinkedHashMap.class, 107);
+            kryo.register(ArrayList.class, 108);
+            kryo.register(byte[].class, 109);
+        }
+
+        //写出过大的消息后换回初始大小的缓冲区
+        void trim() {
+            if (output.getBuffer().length > MAX_RETAINED_SIZE) {
+                output.setBuffer(new byte[BUFFER_SIZE], RpcFrame.MAX_FRAME_LENGTH);
+            }
+        }
+    }
+}
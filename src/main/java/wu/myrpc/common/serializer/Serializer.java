@@ -1,16 +1,21 @@
 package wu.myrpc.common.serializer;
 
 import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import wu.myrpc.exception.MyRpcException;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 
 /*
-* 枚举序列化算法，现支持：jdk, fastjson
-*
+* 枚举序列化算法，现支持：jdk, fastjson, kryo
+* 每种算法有唯一的id，写入消息帧的首部，接收方据此选择对应的算法解码
 * */
 public enum  Serializer implements ISerializer {
-    JAVA
+    JAVA((byte) 1)
     {
         //使用JDK原生的序列化算法
         @Override
@@ -41,10 +46,31 @@ public enum  Serializer implements ISerializer {
         }
         return target;
     }
+
+        //对象流直接读写缓冲区；失败时抛出MyRpcException，序列化失败时丢弃已写入的部分
+        @Override
+        public <T> void serialize(T object, ByteBuf out) {
+            int start = out.writerIndex();
+            try (ObjectOutputStream oos = new ObjectOutputStream(new ByteBufOutputStream(out))) {
+                oos.writeObject(object);
+            } catch (IOException e) {
+                out.writerIndex(start);
+                throw new MyRpcException("Failed to serialize " + object.getClass().getName(), e);
+            }
+        }
+
+        @Override
+        public <T> T deserialize(Class<T> clazz, ByteBuf in) {
+            try (ObjectInputStream ois = new ObjectInputStream(new ByteBufInputStream(in))) {
+                return (T) ois.readObject();
+            } catch (IOException | ClassNotFoundException e) {
+                throw new MyRpcException("Failed to deserialize " + clazz.getName(), e);
+            }
+        }
     },
 
     // fastjson的序列化和反序列化
-    FASTJSON
+    FASTJSON((byte) 2)
     {
         @Override
         public <T > byte[] serialize (T object){
@@ -59,5 +85,77 @@ public enum  Serializer implements ISerializer {
             // 此处的clazz为具体类型的Class对象，而不是父类Message的
             return JSON.parseObject(s, clazz);
         }
+
+        @Override
+        public <T> void serialize(T object, ByteBuf out) {
+            int start = out.writerIndex();
+            try {
+                JSON.writeJSONString(new ByteBufOutputStream(out), object);
+            } catch (IOException | JSONException e) {
+                out.writerIndex(start);
+                throw new MyRpcException("Failed to serialize " + object.getClass().getName(), e);
+            }
+        }
+
+        @Override
+        public <T> T deserialize(Class<T> clazz, ByteBuf in) {
+            String s = in.toString(StandardCharsets.UTF_8);
+            in.skipBytes(in.readableBytes());
+            return JSON.parseObject(s, clazz);
+        }
+    },
+
+    // kryo二进制序列化：基于类注册，无需schema，见KryoSerializer
+    KRYO((byte) 3)
+    {
+        @Override
+        public <T> byte[] serialize(T object) {
+            return KryoSerializer.INSTANCE.serialize(object);
+        }
+
+        @Override
+        public <T> T deserialize(Class<T> clazz, byte[] bytes) {
+            return KryoSerializer.INSTANCE.deserialize(clazz, bytes);
+        }
+
+        @Override
+        public <T> void serialize(T object, ByteBuf out) {
+            KryoSerializer.INSTANCE.serialize(object, out);
+        }
+
+        @Override
+        public <T> T deserialize(Class<T> clazz, ByteBuf in) {
+            return KryoSerializer.INSTANCE.deserialize(clazz, in);
+        }
     };
+
+    //序列化算法id
+    private final byte id;
+
+    Serializer(byte id) {
+        this.id = id;
+    }
+
+    public byte getId() {
+        return id;
+    }
+
+    /*
+    * 根据名称查找序列化算法，忽略大小写
+    * */
+    public static Serializer of(String name) {
+        return valueOf(name.trim().toUpperCase());
+    }
+
+    /*
+    * 根据id查找序列化算法，找不到返回null
+    * */
+    public static Serializer valueOf(byte id) {
+        for (Serializer serializer : values()) {
+            if (serializer.id == id) {
+                return serializer;
+            }
+        }
+        return null;
+    }
 }
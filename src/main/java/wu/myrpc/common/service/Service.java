@@ -5,6 +5,7 @@ package wu.myrpc.common.service;
  * - 服务名称
  * - 服务协议
  * - 服务地址：ip:port
+ * - 权重：加权负载均衡使用，旧版本注册的服务信息没有权重，按默认值处理
  * */
 public class Service {
     /**
@@ -22,6 +23,11 @@ public class Service {
      */
     private String address;
 
+    /**
+     * 权重，默认100
+     */
+    private int weight = 100;
+
     public String getName() {
         return name;
     }
@@ -45,4 +51,12 @@ public class Service {
     public void setAddress(String address) {
         this.address = address;
     }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    public void setWeight(int weight) {
+        this.weight = weight;
+    }
 }
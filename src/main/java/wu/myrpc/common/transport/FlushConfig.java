@@ -0,0 +1,35 @@
+package wu.myrpc.common.transport;
+
+/*
+ * 刷新合并配置
+ * - maxMessages：一次刷新最多合并的消息数，<=1表示不合并，每次刷新请求都立即刷新
+ * - windowMicros：合并窗口，单位微秒；刷新请求最多推迟这么久，<=0表示只合并同一轮事件循环中的刷新请求
+ * */
+public class FlushConfig {
+    private Integer maxMessages = 1;
+    private Long windowMicros = 0L;
+
+    public FlushConfig() {
+    }
+
+    public FlushConfig(Integer maxMessages, Long windowMicros) {
+        this.maxMessages = maxMessages;
+        this.windowMicros = windowMicros;
+    }
+
+    public Integer getMaxMessages() {
+        return maxMessages;
+    }
+
+    public void setMaxMessages(Integer maxMessages) {
+        this.maxMessages = maxMessages;
+    }
+
+    public Long getWindowMicros() {
+        return windowMicros;
+    }
+
+    public void setWindowMicros(Long windowMicros) {
+        this.windowMicros = windowMicros;
+    }
+}
@@ -0,0 +1,161 @@
+package wu.myrpc.common.transport;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.concurrent.ScheduledFuture;
+import wu.myrpc.common.protocol.RpcFrame;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * 刷新合并：把多个消息的刷新请求合并成一次刷新，减少write系统调用
+ * 放在帧编码器之后（出站方向先经过它），每条连接一个实例，所有方法都在连接的IO线程上执行
+ * - 写入的消息照常交给编码器放进出站缓冲区，只推迟刷新，不改变消息顺序
+ * - 读事件进行中：刷新推迟到读取完事件，一次读到的多个请求的响应一起刷新；
+ *   后面的handler在读取完事件中请求的刷新也算在读事件中，读取完事件传递完后立即刷新
+ * - 否则：未刷新的消息达到maxMessages时立即刷新；
+ *   未达到时在windowMicros后刷新，窗口<=0时在本轮事件循环的任务执行完后刷新（同一时刻从业务线程提交的写出会合并在一起）
+ * - 连接不可写、关闭时立即刷新已推迟的消息
+ * maxMessages<=1时不合并，每次刷新请求都直接刷新，只做统计
+ * */
+public class FlushConsolidationHandler extends ChannelDuplexHandler {
+    private final int maxMessages;
+    private final long windowNanos;
+    private final FlushStats stats;
+
+    //自上次刷新以来写入的消息数、消息帧数
+    private int unflushed;
+    private int unflushedFrames;
+    //是否有被推迟的刷新请求
+    private boolean flushPending;
+    //是否在读事件中
+    private boolean readInProgress;
+    //已提交的刷新任务
+    private boolean taskScheduled;
+    private ScheduledFuture<?> scheduledFlush;
+
+    private ChannelHandlerContext ctx;
+    private final Runnable flushTask = () -> {
+        taskScheduled = false;
+        scheduledFlush = null;
+        if (flushPending) {
+            flushNow(ctx);
+        }
+    };
+
+    public FlushConsolidationHandler(FlushConfig config, FlushStats stats) {
+        this(config.getMaxMessages(), config.getWindowMicros(), stats);
+    }
+
+    public FlushConsolidationHandler(int maxMessages, long windowMicros, FlushStats stats) {
+        this.maxMessages = maxMessages;
+        this.windowNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(windowMicros, 0));
+        this.stats = stats;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        this.ctx = ctx;
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        unflushed++;
+        if (msg instanceof RpcFrame) {
+            unflushedFrames++;
+        }
+        ctx.write(msg, promise);
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) throws Exception {
+        if (maxMessages <= 1) {
+            flushNow(ctx);
+            return;
+        }
+        if (unflushed == 0) {
+            //没有新写入的消息
+            return;
+        }
+        flushPending = true;
+        if (unflushed >= maxMessages || !ctx.channel().isWritable()) {
+            flushNow(ctx);
+        } else if (!readInProgress) {
+            scheduleFlush(ctx);
+        }
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        readInProgress = true;
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+        //先传给后面的handler：它们在读取完事件中请求的刷新（如在IO线程上处理的请求的响应）仍属于这次读事件，
+        //只标记为推迟，随后在这里一起立即刷新，不进入windowMicros的延迟
+        ctx.fireChannelReadComplete();
+        readInProgress = false;
+        if (flushPending) {
+            flushNow(ctx);
+        }
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        if (!ctx.channel().isWritable() && flushPending) {
+            flushNow(ctx);
+        }
+        ctx.fireChannelWritabilityChanged();
+    }
+
+    @Override
+    public void close(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+        if (flushPending) {
+            flushNow(ctx);
+        }
+        ctx.close(promise);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) {
+        if (flushPending) {
+            flushNow(ctx);
+        }
+    }
+
+    private void scheduleFlush(ChannelHandlerContext ctx) {
+        if (taskScheduled) {
+            return;
+        }
+        taskScheduled = true;
+        if (windowNanos > 0) {
+            scheduledFlush = ctx.executor().schedule(flushTask, windowNanos, TimeUnit.NANOSECONDS);
+        } else {
+            ctx.executor().execute(flushTask);
+        }
+    }
+
+    //立即刷新，并按出站缓冲区中待写字节数的变化统计写出的字节数
+    private void flushNow(ChannelHandlerContext ctx) {
+        flushPending = false;
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+            taskScheduled = false;
+        }
+        int frames = unflushedFrames;
+        unflushed = 0;
+        unflushedFrames = 0;
+        ChannelOutboundBuffer buffer = ctx.channel().unsafe().outboundBuffer();
+        long before = buffer == null ? 0 : buffer.totalPendingWriteBytes();
+        ctx.flush();
+        long after = buffer == null ? 0 : buffer.totalPendingWriteBytes();
+        if (frames > 0) {
+            stats.record(frames, before - after);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package wu.myrpc.common.transport;
+
+import wu.myrpc.common.metrics.RpcMetrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * 刷新统计：每次刷新对应一次（或几次，socket写满时）write系统调用
+ * 注册到RpcMetrics的指标，prefix如client.flush、server.flush：
+ * - <prefix>.count：刷新次数
+ * - <prefix>.frames：刷新写出的消息帧数
+ * - <prefix>.bytes：刷新写出的字节数
+ * - <prefix>.flushes-per-frame：平均每个消息帧的刷新次数，即每个请求/响应的系统调用数
+ * - <prefix>.bytes-per-flush：平均每次刷新写出的字节数
+ * */
+public class FlushStats {
+    private final LongAdder flushes;
+    private final LongAdder frames;
+    private final LongAdder bytes;
+
+    public FlushStats(String prefix) {
+        this.flushes = RpcMetrics.counter(prefix + ".count");
+        this.frames = RpcMetrics.counter(prefix + ".frames");
+        this.bytes = RpcMetrics.counter(prefix + ".bytes");
+        RpcMetrics.gauge(prefix + ".flushes-per-frame", () -> ratio(flushes, frames));
+        RpcMetrics.gauge(prefix + ".bytes-per-flush", () -> ratio(bytes, flushes));
+    }
+
+    /*
+     * 记录一次刷新
+     * @param frameCount 写出的消息帧数
+     * @param byteCount  写出的字节数
+     * */
+    public void record(int frameCount, long byteCount) {
+        flushes.increment();
+        frames.add(frameCount);
+        bytes.add(byteCount);
+    }
+
+    private static double ratio(LongAdder numerator, LongAdder denominator) {
+        long d = denominator.sum();
+        return d == 0 ? 0 : (double) numerator.sum() / d;
+    }
+}
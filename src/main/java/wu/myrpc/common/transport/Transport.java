@@ -0,0 +1,99 @@
+package wu.myrpc.common.transport;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.ServerSocketChannel;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * 网络传输实现：客户端和服务端用它创建线程组和channel
+ * - NIO：基于JDK的Selector，所有平台可用
+ * - EPOLL：Linux原生epoll（边缘触发），系统调用更少，支持SO_REUSEPORT，需要加载netty的native库
+ * 通过select按配置选择：auto表示epoll可用时使用epoll，否则使用nio；指定epoll但不可用时退回nio
+ * */
+public enum Transport {
+    NIO {
+        @Override
+        public EventLoopGroup newEventLoopGroup(int threads) {
+            return new NioEventLoopGroup(threads);
+        }
+
+        @Override
+        public Class<? extends SocketChannel> socketChannelClass() {
+            return NioSocketChannel.class;
+        }
+
+        @Override
+        public Class<? extends ServerSocketChannel> serverSocketChannelClass() {
+            return NioServerSocketChannel.class;
+        }
+    },
+
+    EPOLL {
+        @Override
+        public EventLoopGroup newEventLoopGroup(int threads) {
+            return new EpollEventLoopGroup(threads);
+        }
+
+        @Override
+        public Class<? extends SocketChannel> socketChannelClass() {
+            return EpollSocketChannel.class;
+        }
+
+        @Override
+        public Class<? extends ServerSocketChannel> serverSocketChannelClass() {
+            return EpollServerSocketChannel.class;
+        }
+
+        @Override
+        public boolean supportsReusePort() {
+            return true;
+        }
+    };
+
+    private static final Logger logger = LoggerFactory.getLogger(Transport.class);
+
+    /*
+     * 创建线程组
+     * @param threads 线程数，0表示使用netty的默认值（CPU核数*2）
+     * */
+    public abstract EventLoopGroup newEventLoopGroup(int threads);
+
+    public abstract Class<? extends SocketChannel> socketChannelClass();
+
+    public abstract Class<? extends ServerSocketChannel> serverSocketChannelClass();
+
+    //是否支持SO_REUSEPORT：多个监听socket绑定同一端口，由内核分发新连接
+    public boolean supportsReusePort() {
+        return false;
+    }
+
+    /*
+     * 按名称选择传输实现：auto、epoll、nio，忽略大小写
+     * */
+    public static Transport select(String name) {
+        String value = name == null ? "auto" : name.trim().toLowerCase();
+        switch (value) {
+            case "nio":
+                return NIO;
+            case "epoll":
+                if (Epoll.isAvailable()) {
+                    return EPOLL;
+                }
+                logger.warn("Epoll transport is unavailable, fall back to nio", Epoll.unavailabilityCause());
+                return NIO;
+            case "auto":
+                return Epoll.isAvailable() ? EPOLL : NIO;
+            default:
+                throw new IllegalArgumentException("Unknown transport: " + name);
+        }
+    }
+}
@@ -1,23 +1,41 @@
 package wu.myrpc.config;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import wu.myrpc.client.ClientProxyFactory;
+import wu.myrpc.client.balance.LoadBalancer;
+import wu.myrpc.client.balance.LoadBalancers;
 import wu.myrpc.client.discovery.ZookeeperServiceDiscoverer;
+import wu.myrpc.client.hedge.Hedger;
+import wu.myrpc.client.limit.ConcurrencyLimits;
+import wu.myrpc.client.net.ConnectionManager;
 import wu.myrpc.client.net.NettyNetClient;
+import wu.myrpc.client.outlier.OutlierDetector;
+import wu.myrpc.client.retry.Retrier;
+import wu.myrpc.common.metrics.AccessLog;
+import wu.myrpc.common.metrics.SlowCallLog;
 import wu.myrpc.common.protocol.MessageProtocol;
 import wu.myrpc.common.protocol.MessageProtocolSerialize;
+import wu.myrpc.common.serializer.KryoSerializer;
+import wu.myrpc.common.serializer.Serializer;
+import wu.myrpc.common.transport.Transport;
 import wu.myrpc.properties.MyRpcProperties;
 import wu.myrpc.server.NettyRpcServer;
 import wu.myrpc.server.RequestHandler;
 import wu.myrpc.server.RpcServer;
+import wu.myrpc.server.admission.AdmissionControl;
+import wu.myrpc.server.executor.ServiceExecutors;
+import wu.myrpc.server.record.TrafficRecorder;
 import wu.myrpc.server.register.DefaultRpcProcessor;
 import wu.myrpc.server.register.ServiceRegister;
 import wu.myrpc.server.register.ZookeeperServiceRegister;
 
+import javax.annotation.PostConstruct;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /*
@@ -31,6 +49,18 @@ public class AutoConfiguration {
     @Autowired
     MyRpcProperties myRpcProperties;
 
+    /*
+    * 注册kryo类字典中的业务类型：id从USER_REGISTRATION_START开始按配置顺序分配，并应用对象引用设置
+    * */
+    @PostConstruct
+    public void registerSerializerClasses() throws ClassNotFoundException {
+        KryoSerializer.setReferences(myRpcProperties.getSerializerReferences());
+        List<String> registrations = myRpcProperties.getSerializerRegistrations();
+        for (int i = 0; i < registrations.size(); i++) {
+            KryoSerializer.register(Class.forName(registrations.get(i).trim()), KryoSerializer.USER_REGISTRATION_START + i);
+        }
+    }
+
     @Bean
     public DefaultRpcProcessor defaultRpcProcessor(){
         return new DefaultRpcProcessor();
@@ -39,37 +69,118 @@ public class AutoConfiguration {
     /*
     * 初始化ClientProxyFactory
     * 对ClientProxyFactory类里的成员变量做初始化
+    * 容器关闭时调用close，关闭访问日志
     * */
-    @Bean
-    public ClientProxyFactory clientProxyFactory(){
+    @Bean(destroyMethod = "close")
+    public ClientProxyFactory clientProxyFactory(@Autowired NettyNetClient netClient,
+                                                 @Autowired ZookeeperServiceDiscoverer serviceDiscoverer){
         ClientProxyFactory clientProxyFactory = new ClientProxyFactory();
         //设置服务发现者
-        clientProxyFactory.setServiceDiscoverer(new ZookeeperServiceDiscoverer(myRpcProperties.getZkAddresss()));
+        clientProxyFactory.setServiceDiscoverer(serviceDiscoverer);
         //设置支持的通信协议
+        //每种序列化算法一个协议，按服务提供方注册的"协议名-序列化算法名"选择；只有协议名的是旧版本的服务提供方，使用jdk算法
         Map<String , MessageProtocol> supportMessageProtocols = new HashMap<>();
         supportMessageProtocols.put(myRpcProperties.getProtocol(), new MessageProtocolSerialize());
+        for (Serializer serializer : Serializer.values()) {
+            supportMessageProtocols.put(MessageProtocolSerialize.protocolName(myRpcProperties.getProtocol(), serializer),
+                    new MessageProtocolSerialize(serializer));
+        }
         clientProxyFactory.setSupportMessageProtocols(supportMessageProtocols);
+        //设置负载均衡：默认的和按服务名指定的
+        clientProxyFactory.setLoadBalancer(LoadBalancers.of(myRpcProperties.getLoadBalancer()));
+        Map<String, LoadBalancer> serviceLoadBalancers = new HashMap<>();
+        myRpcProperties.getServiceLoadBalancers().forEach((serviceName, loadBalancer) ->
+                serviceLoadBalancers.put(serviceName, LoadBalancers.of(loadBalancer)));
+        clientProxyFactory.setServiceLoadBalancers(serviceLoadBalancers);
+        //设置超时时间：默认的和按服务名、方法名指定的
+        clientProxyFactory.setTimeout(myRpcProperties.getClientTimeout());
+        clientProxyFactory.setTimeouts(myRpcProperties.getTimeouts());
+        //设置对冲请求：和网络层共享时间轮
+        if (myRpcProperties.getHedge().getEnabled()) {
+            clientProxyFactory.setHedger(new Hedger(myRpcProperties.getHedge(), netClient.getTimer()));
+        }
+        //设置重试：退避也在共享的时间轮上等待
+        if (myRpcProperties.getRetry().getMaxRetries() > 0) {
+            clientProxyFactory.setRetrier(new Retrier(myRpcProperties.getRetry(), netClient.getTimer()));
+        }
+        //设置异常提供方检测：在共享的时间轮上定期检测
+        if (myRpcProperties.getOutlier().getEnabled()) {
+            clientProxyFactory.setOutlierDetector(new OutlierDetector(myRpcProperties.getOutlier(), netClient.getTimer()));
+        }
+        //设置自适应并发限制
+        if (myRpcProperties.getLimit().getEnabled()) {
+            clientProxyFactory.setConcurrencyLimits(new ConcurrencyLimits(myRpcProperties.getLimit()));
+        }
+        if (myRpcProperties.getClientSlowCall().getEnabled()) {
+            clientProxyFactory.setSlowCalls(new SlowCallLog("client.slow", myRpcProperties.getClientSlowCall()));
+        }
+        if (myRpcProperties.getClientAccessLog().getEnabled()) {
+            clientProxyFactory.setAccessLog(new AccessLog("client", myRpcProperties.getClientAccessLog()));
+        }
         //设置网络层实现
-        clientProxyFactory.setNetClient(new NettyNetClient());
+        clientProxyFactory.setNetClient(netClient);
         return clientProxyFactory;
     }
+
+    /*
+    * 初始化服务发现者
+    * 容器关闭时调用close，关闭各服务的监听缓存和zookeeper客户端
+    * */
+    @Bean(destroyMethod = "close")
+    public ZookeeperServiceDiscoverer serviceDiscoverer() {
+        return new ZookeeperServiceDiscoverer(myRpcProperties.getZkAddresss());
+    }
+
+    /*
+    * 初始化网络层实现：所有代理对象共享同一个连接管理器
+    * 容器关闭时调用close，释放连接池和线程组
+    * */
+    @Bean(destroyMethod = "close")
+    public NettyNetClient netClient() {
+        ConnectionManager connectionManager = new ConnectionManager(
+                Transport.select(myRpcProperties.getTransport()),
+                myRpcProperties.getClientIoThreads(),
+                myRpcProperties.getClientPoolMaxConnections(),
+                myRpcProperties.getClientPoolAcquireTimeout(),
+                myRpcProperties.getClientIdleTimeout(),
+                myRpcProperties.getClientConnectTimeout());
+        connectionManager.setFlushConfig(myRpcProperties.getClientFlush());
+        connectionManager.setWireLog(myRpcProperties.getWireLog());
+        return new NettyNetClient(connectionManager);
+    }
     /*
     * 初始化服务注册器
     * */
     @Bean
     public ServiceRegister serviceRegister() {
-        return new ZookeeperServiceRegister(
+        String protocol = myRpcProperties.getProtocol();
+        ZookeeperServiceRegister serviceRegister = new ZookeeperServiceRegister(
                 myRpcProperties.getZkAddresss(),
                 myRpcProperties.getServerPort(),
-                myRpcProperties.getProtocol());
+                MessageProtocolSerialize.protocolName(protocol, Serializer.of(myRpcProperties.getSerializer())));
+        //按服务名指定的序列化算法
+        Map<String, String> serviceProtocols = new HashMap<>();
+        myRpcProperties.getServiceSerializers().forEach((serviceName, serializer) ->
+                serviceProtocols.put(serviceName, MessageProtocolSerialize.protocolName(protocol, Serializer.of(serializer))));
+        serviceRegister.setServiceProtocols(serviceProtocols);
+        serviceRegister.setWeight(myRpcProperties.getServerWeight());
+        return serviceRegister;
     }
 
     /*
     * 初始化RequestHandler
+    * 容器关闭时调用close，关闭访问日志
     * */
-    @Bean
+    @Bean(destroyMethod = "close")
     public RequestHandler requestHandler(@Autowired ServiceRegister serviceRegister) {
-        return new RequestHandler(new MessageProtocolSerialize(), serviceRegister);
+        RequestHandler handler = new RequestHandler(new MessageProtocolSerialize(Serializer.of(myRpcProperties.getSerializer())), serviceRegister);
+        if (myRpcProperties.getServerSlowCall().getEnabled()) {
+            handler.setSlowCalls(new SlowCallLog("server.slow", myRpcProperties.getServerSlowCall()));
+        }
+        if (myRpcProperties.getServerAccessLog().getEnabled()) {
+            handler.setAccessLog(new AccessLog("server", myRpcProperties.getServerAccessLog()));
+        }
+        return handler;
     }
 
     /*
@@ -77,7 +188,30 @@ public class AutoConfiguration {
     * */
     @Bean
     public RpcServer rpcServer(@Autowired RequestHandler requestHandler) {
-        return new NettyRpcServer(myRpcProperties.getServerPort(),
-                myRpcProperties.getProtocol(), requestHandler);
+        NettyRpcServer server = new NettyRpcServer(myRpcProperties.getServerPort(),
+                myRpcProperties.getProtocol(), requestHandler,
+                new ServiceExecutors(myRpcProperties.getServerExecutor(), myRpcProperties.getServiceExecutors()));
+        server.setTransport(Transport.select(myRpcProperties.getTransport()));
+        server.setAcceptors(myRpcProperties.getServerAcceptors());
+        server.setIoThreads(myRpcProperties.getServerIoThreads());
+        server.setFlushConfig(myRpcProperties.getServerFlush());
+        server.setWireLog(myRpcProperties.getWireLog());
+        server.setAdmissionControl(new AdmissionControl(myRpcProperties.getServerAdmission(), myRpcProperties.getServiceAdmissions()));
+        if (Boolean.TRUE.equals(myRpcProperties.getServerRecord().getEnabled())) {
+            server.setRecorder(new TrafficRecorder(myRpcProperties.getServerRecord()));
+        }
+        return server;
+    }
+
+    /*
+    * 引入actuator时注册指标端点
+    * */
+    @Configuration
+    @ConditionalOnClass(name = "org.springframework.boot.actuate.endpoint.annotation.Endpoint")
+    static class MetricsEndpointConfiguration {
+        @Bean
+        public RpcMetricsEndpoint rpcMetricsEndpoint() {
+            return new RpcMetricsEndpoint();
+        }
     }
 }
@@ -0,0 +1,28 @@
+package wu.myrpc.config;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import wu.myrpc.common.metrics.RpcMetrics;
+
+import java.util.Map;
+
+/*
+ * actuator端点：拉取RpcMetrics中的所有指标
+ * - GET /actuator/myrpc：所有指标
+ * - GET /actuator/myrpc/{prefix}：指定前缀的指标，如/actuator/myrpc/server.method.com.xx.HelloService
+ * 需要引入spring-boot-starter-actuator，并在management.endpoints.web.exposure.include中包含myrpc
+ * */
+@Endpoint(id = "myrpc")
+public class RpcMetricsEndpoint {
+
+    @ReadOperation
+    public Map<String, Number> metrics() {
+        return RpcMetrics.snapshot();
+    }
+
+    @ReadOperation
+    public Map<String, Number> metrics(@Selector String prefix) {
+        return RpcMetrics.snapshot(prefix);
+    }
+}
@@ -0,0 +1,9 @@
+package wu.myrpc.exception;
+/*
+* 连接异常：没能获取到服务提供方的连接，请求没有发送出去，任何方法都可以换一个提供方重试
+* */
+public class RpcConnectException extends MyRpcException {
+    public RpcConnectException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,10 @@
+package wu.myrpc.exception;
+/*
+* 并发限制异常：调用方的在途请求数超过了自适应并发限制，请求没有发出，直接快速拒绝
+* 按提供方限制时，重试会换一个提供方
+* */
+public class RpcLimitExceededException extends RpcRejectedException {
+    public RpcLimitExceededException(String message) {
+        super(message);
+    }
+}
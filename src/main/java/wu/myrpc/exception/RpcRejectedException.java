@@ -0,0 +1,9 @@
+package wu.myrpc.exception;
+/*
+* 拒绝异常：服务端过载，没有执行请求就直接拒绝（或调用方超过并发限制，没有发出请求），任何方法都可以换一个提供方重试
+* */
+public class RpcRejectedException extends MyRpcException {
+    public RpcRejectedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,9 @@
+package wu.myrpc.exception;
+/*
+* 调用超时异常：超过超时时间没有收到响应，或服务端发现请求的截止时间已过
+* */
+public class RpcTimeoutException extends MyRpcException {
+    public RpcTimeoutException(String message) {
+        super(message);
+    }
+}
@@ -1,6 +1,21 @@
 package wu.myrpc.properties;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import wu.myrpc.client.hedge.HedgeConfig;
+import wu.myrpc.client.limit.LimitConfig;
+import wu.myrpc.client.outlier.OutlierConfig;
+import wu.myrpc.client.retry.RetryConfig;
+import wu.myrpc.common.metrics.AccessLogConfig;
+import wu.myrpc.common.metrics.SlowCallConfig;
+import wu.myrpc.common.transport.FlushConfig;
+import wu.myrpc.server.admission.AdmissionConfig;
+import wu.myrpc.server.executor.ExecutorConfig;
+import wu.myrpc.server.record.RecordConfig;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 @ConfigurationProperties(prefix="my.rpc")//在application.properties里使用该前缀可以配置这个属性类
 public class MyRpcProperties {
@@ -8,6 +23,73 @@ public class MyRpcProperties {
     private String zkAddresss = "127.0.0.1:2181";
     private Integer serverPort = 19000;
     private String protocol = "myprotocol";
+    //客户端连接池：每个服务提供方地址的最大连接数
+    private Integer clientPoolMaxConnections = 8;
+    //客户端连接池：获取连接的超时时间，单位ms
+    private Long clientPoolAcquireTimeout = 3000L;
+    //客户端连接空闲超时时间，超时后关闭连接，单位s，<=0表示不关闭
+    private Integer clientIdleTimeout = 60;
+    //客户端建立连接的超时时间，单位ms
+    private Integer clientConnectTimeout = 3000;
+    //服务端默认业务线程池：线程数、队列长度，线程数<=0时在IO线程上直接调用服务方法
+    private ExecutorConfig serverExecutor = new ExecutorConfig();
+    //服务端按服务名配置的独立业务线程池，key=服务名，如my.rpc.service-executors[com.xx.HelloService].threads=16
+    private Map<String, ExecutorConfig> serviceExecutors = new HashMap<>();
+    //客户端默认的负载均衡：random、p2c、least-active、round-robin、consistent-hash，或LoadBalancer实现类的全限定名
+    private String loadBalancer = "p2c";
+    //客户端按服务名指定的负载均衡，key=服务名，如my.rpc.service-load-balancers[com.xx.HelloService]=round-robin
+    private Map<String, String> serviceLoadBalancers = new HashMap<>();
+    //服务端注册的权重，用于调用方的加权负载均衡（round-robin）
+    private Integer serverWeight = 100;
+    //网络传输实现：auto（Linux上epoll可用时使用epoll，否则nio）、epoll、nio，客户端和服务端共用
+    private String transport = "auto";
+    //服务端accept线程数，>1时以SO_REUSEPORT绑定多个监听channel，需要epoll传输
+    private Integer serverAcceptors = 1;
+    //服务端IO线程数，0表示使用netty的默认值（CPU核数*2）
+    private Integer serverIoThreads = 0;
+    //客户端IO线程数，0表示使用netty的默认值（CPU核数*2）
+    private Integer clientIoThreads = 0;
+    //客户端请求的刷新合并：一次刷新最多合并的请求数、合并窗口（微秒），默认不合并
+    private FlushConfig clientFlush = new FlushConfig();
+    //服务端响应的刷新合并：一次刷新最多合并的响应数、合并窗口（微秒），默认不合并
+    private FlushConfig serverFlush = new FlushConfig();
+    //服务端默认的序列化算法：java、fastjson、kryo，注册到zookeeper的协议名为"协议名-序列化算法名"
+    private String serializer = "java";
+    //服务端按服务名指定的序列化算法，key=服务名，如my.rpc.service-serializers[com.xx.HelloService]=kryo
+    private Map<String, String> serviceSerializers = new HashMap<>();
+    //kryo类字典：按顺序注册的业务类型全限定名，id从200开始依次分配，客户端和服务端的列表需要一致
+    private List<String> serializerRegistrations = new ArrayList<>();
+    //kryo是否记录对象引用：默认开启，和JDK序列化一样支持循环引用和共享对象；
+    //关闭后更快，但循环引用的对象图会栈溢出，共享的对象反序列化后变成多个副本；客户端和服务端需要一致
+    private Boolean serializerReferences = true;
+    //客户端默认的调用超时时间，单位ms，<=0表示不限制；也可以在服务接口、方法上用@Timeout指定
+    private Long clientTimeout = 5000L;
+    //客户端按服务名或"服务名.方法名"指定的超时时间，单位ms，优先于@Timeout，如my.rpc.timeouts[com.xx.HelloService.hello]=200
+    private Map<String, Long> timeouts = new HashMap<>();
+    //客户端对冲请求：只对@Idempotent标记的方法生效，对冲延迟取方法响应时间的百分位，对冲请求数不超过budget比例
+    private HedgeConfig hedge = new HedgeConfig();
+    //客户端重试：连接失败、服务端拒绝时重试，幂等方法的网络失败也重试，每次换一个提供方，重试请求数不超过budget比例
+    private RetryConfig retry = new RetryConfig();
+    //客户端异常提供方检测：按失败率、响应时间暂时摘除异常的提供方，到期后试探恢复
+    private OutlierConfig outlier = new OutlierConfig();
+    //客户端自适应并发限制：按服务（可选按提供方）限制在途请求数，限制随响应时间、超时自动调整，默认不启用
+    private LimitConfig limit = new LimitConfig();
+    //服务端默认的准入控制：限制在途请求数，按排队时间丢弃请求，过载时在反序列化之前快速拒绝，默认不启用
+    private AdmissionConfig serverAdmission = new AdmissionConfig();
+    //服务端按服务名配置的准入控制，key=服务名，如my.rpc.service-admissions[com.xx.HelloService].max-inflight=200
+    private Map<String, AdmissionConfig> serviceAdmissions = new HashMap<>();
+    //服务端流量录制：按比例采样请求帧写入内存映射的滚动文件，供回放压测使用，默认不启用
+    private RecordConfig serverRecord = new RecordConfig();
+    //客户端慢调用日志：耗时超过阈值的调用按阶段（路由、编组、获取连接、网络、服务端、解组）输出耗时，默认不启用
+    private SlowCallConfig clientSlowCall = new SlowCallConfig();
+    //服务端慢调用日志：处理时间超过阈值的请求按阶段输出耗时，并把服务端各阶段耗时带回客户端，默认不启用
+    private SlowCallConfig serverSlowCall = new SlowCallConfig();
+    //客户端访问日志：每次调用一条记录，写入环形缓冲区由后台线程采样输出到logger myrpc.access.client，默认不启用
+    private AccessLogConfig clientAccessLog = new AccessLogConfig();
+    //服务端访问日志：每个请求一条记录，输出到logger myrpc.access.server，默认不启用
+    private AccessLogConfig serverAccessLog = new AccessLogConfig();
+    //是否输出收发的原始字节：客户端、服务端的pipeline中加入DEBUG级别的LoggingHandler，还需要把io.netty.handler.logging.LoggingHandler的日志级别设为DEBUG
+    private Boolean wireLog = false;
 
     public String getZkAddresss() {
         return zkAddresss;
@@ -32,4 +114,268 @@ public class MyRpcProperties {
     public void setProtocol(String protocol) {
         this.protocol = protocol;
     }
+
+    public Integer getClientPoolMaxConnections() {
+        return clientPoolMaxConnections;
+    }
+
+    public void setClientPoolMaxConnections(Integer clientPoolMaxConnections) {
+        this.clientPoolMaxConnections = clientPoolMaxConnections;
+    }
+
+    public Long getClientPoolAcquireTimeout() {
+        return clientPoolAcquireTimeout;
+    }
+
+    public void setClientPoolAcquireTimeout(Long clientPoolAcquireTimeout) {
+        this.clientPoolAcquireTimeout = clientPoolAcquireTimeout;
+    }
+
+    public Integer getClientIdleTimeout() {
+        return clientIdleTimeout;
+    }
+
+    public void setClientIdleTimeout(Integer clientIdleTimeout) {
+        this.clientIdleTimeout = clientIdleTimeout;
+    }
+
+    public Integer getClientConnectTimeout() {
+        return clientConnectTimeout;
+    }
+
+    public void setClientConnectTimeout(Integer clientConnectTimeout) {
+        this.clientConnectTimeout = clientConnectTimeout;
+    }
+
+    public ExecutorConfig getServerExecutor() {
+        return serverExecutor;
+    }
+
+    public void setServerExecutor(ExecutorConfig serverExecutor) {
+        this.serverExecutor = serverExecutor;
+    }
+
+    public Map<String, ExecutorConfig> getServiceExecutors() {
+        return serviceExecutors;
+    }
+
+    public void setServiceExecutors(Map<String, ExecutorConfig> serviceExecutors) {
+        this.serviceExecutors = serviceExecutors;
+    }
+
+    public String getSerializer() {
+        return serializer;
+    }
+
+    public void setSerializer(String serializer) {
+        this.serializer = serializer;
+    }
+
+    public Map<String, String> getServiceSerializers() {
+        return serviceSerializers;
+    }
+
+    public void setServiceSerializers(Map<String, String> serviceSerializers) {
+        this.serviceSerializers = serviceSerializers;
+    }
+
+    public List<String> getSerializerRegistrations() {
+        return serializerRegistrations;
+    }
+
+    public void setSerializerRegistrations(List<String> serializerRegistrations) {
+        this.serializerRegistrations = serializerRegistrations;
+    }
+
+    public Boolean getSerializerReferences() {
+        return serializerReferences;
+    }
+
+    public void setSerializerReferences(Boolean serializerReferences) {
+        this.serializerReferences = serializerReferences;
+    }
+
+    public String getTransport() {
+        return transport;
+    }
+
+    public void setTransport(String transport) {
+        this.transport = transport;
+    }
+
+    public Integer getServerAcceptors() {
+        return serverAcceptors;
+    }
+
+    public void setServerAcceptors(Integer serverAcceptors) {
+        this.serverAcceptors = serverAcceptors;
+    }
+
+    public Integer getServerIoThreads() {
+        return serverIoThreads;
+    }
+
+    public void setServerIoThreads(Integer serverIoThreads) {
+        this.serverIoThreads = serverIoThreads;
+    }
+
+    public Integer getClientIoThreads() {
+        return clientIoThreads;
+    }
+
+    public void setClientIoThreads(Integer clientIoThreads) {
+        this.clientIoThreads = clientIoThreads;
+    }
+
+    public FlushConfig getClientFlush() {
+        return clientFlush;
+    }
+
+    public void setClientFlush(FlushConfig clientFlush) {
+        this.clientFlush = clientFlush;
+    }
+
+    public FlushConfig getServerFlush() {
+        return serverFlush;
+    }
+
+    public void setServerFlush(FlushConfig serverFlush) {
+        this.serverFlush = serverFlush;
+    }
+
+    public String getLoadBalancer() {
+        return loadBalancer;
+    }
+
+    public void setLoadBalancer(String loadBalancer) {
+        this.loadBalancer = loadBalancer;
+    }
+
+    public Map<String, String> getServiceLoadBalancers() {
+        return serviceLoadBalancers;
+    }
+
+    public void setServiceLoadBalancers(Map<String, String> serviceLoadBalancers) {
+        this.serviceLoadBalancers = serviceLoadBalancers;
+    }
+
+    public Integer getServerWeight() {
+        return serverWeight;
+    }
+
+    public void setServerWeight(Integer serverWeight) {
+        this.serverWeight = serverWeight;
+    }
+
+    public Long getClientTimeout() {
+        return clientTimeout;
+    }
+
+    public void setClientTimeout(Long clientTimeout) {
+        this.clientTimeout = clientTimeout;
+    }
+
+    public Map<String, Long> getTimeouts() {
+        return timeouts;
+    }
+
+    public void setTimeouts(Map<String, Long> timeouts) {
+        this.timeouts = timeouts;
+    }
+
+    public HedgeConfig getHedge() {
+        return hedge;
+    }
+
+    public void setHedge(HedgeConfig hedge) {
+        this.hedge = hedge;
+    }
+
+    public RetryConfig getRetry() {
+        return retry;
+    }
+
+    public void setRetry(RetryConfig retry) {
+        this.retry = retry;
+    }
+
+    public OutlierConfig getOutlier() {
+        return outlier;
+    }
+
+    public void setOutlier(OutlierConfig outlier) {
+        this.outlier = outlier;
+    }
+
+    public LimitConfig getLimit() {
+        return limit;
+    }
+
+    public void setLimit(LimitConfig limit) {
+        this.limit = limit;
+    }
+
+    public AdmissionConfig getServerAdmission() {
+        return serverAdmission;
+    }
+
+    public void setServerAdmission(AdmissionConfig serverAdmission) {
+        this.serverAdmission = serverAdmission;
+    }
+
+    public Map<String, AdmissionConfig> getServiceAdmissions() {
+        return serviceAdmissions;
+    }
+
+    public void setServiceAdmissions(Map<String, AdmissionConfig> serviceAdmissions) {
+        this.serviceAdmissions = serviceAdmissions;
+    }
+
+    public RecordConfig getServerRecord() {
+        return serverRecord;
+    }
+
+    public void setServerRecord(RecordConfig serverRecord) {
+        this.serverRecord = serverRecord;
+    }
+
+    public SlowCallConfig getClientSlowCall() {
+        return clientSlowCall;
+    }
+
+    public void setClientSlowCall(SlowCallConfig clientSlowCall) {
+        this.clientSlowCall = clientSlowCall;
+    }
+
+    public SlowCallConfig getServerSlowCall() {
+        return serverSlowCall;
+    }
+
+    public void setServerSlowCall(SlowCallConfig serverSlowCall) {
+        this.serverSlowCall = serverSlowCall;
+    }
+
+    public AccessLogConfig getClientAccessLog() {
+        return clientAccessLog;
+    }
+
+    public void setClientAccessLog(AccessLogConfig clientAccessLog) {
+        this.clientAccessLog = clientAccessLog;
+    }
+
+    public AccessLogConfig getServerAccessLog() {
+        return serverAccessLog;
+    }
+
+    public void setServerAccessLog(AccessLogConfig serverAccessLog) {
+        this.serverAccessLog = serverAccessLog;
+    }
+
+    public Boolean getWireLog() {
+        return wireLog;
+    }
+
+    public void setWireLog(Boolean wireLog) {
+        this.wireLog = wireLog;
+    }
 }
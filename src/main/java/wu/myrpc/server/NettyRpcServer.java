@@ -4,117 +4,449 @@ import io.netty.bootstrap.ServerBootstrap;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.epoll.EpollChannelOption;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.DecoderException;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import wu.myrpc.common.protocol.FrameDecoder;
+import wu.myrpc.common.protocol.FrameEncoder;
+import wu.myrpc.common.protocol.MessageProtocol;
+import wu.myrpc.common.protocol.RequestDatagram;
+import wu.myrpc.common.protocol.ResponseDatagram;
+import wu.myrpc.common.protocol.RpcFrame;
+import wu.myrpc.common.protocol.StatusCode;
+import wu.myrpc.common.transport.FlushConfig;
+import wu.myrpc.common.transport.FlushConsolidationHandler;
+import wu.myrpc.common.transport.FlushStats;
+import wu.myrpc.common.transport.Transport;
+import wu.myrpc.exception.MyRpcException;
+import wu.myrpc.server.admission.AdmissionControl;
+import wu.myrpc.server.admission.AdmissionControl.ServiceAdmission;
+import wu.myrpc.server.executor.ServiceExecutors;
+import wu.myrpc.server.record.TrafficRecorder;
+import wu.myrpc.server.register.MethodInvoker;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 /*
  * netty服务器端，提供netty网络通信能力
  * 包括：服务开启、服务关闭
+ * 传输实现可选nio或Linux原生epoll；epoll下可以开启多个accept线程，
+ * 每个线程一个监听channel，以SO_REUSEPORT绑定同一端口，由内核把新连接分散到各个监听channel
  * */
 public class NettyRpcServer extends RpcServer {
     private static Logger logger = LoggerFactory.getLogger(NettyRpcServer.class);
 
-    private Channel channel;
+    //监听channel：使用SO_REUSEPORT时有多个
+    private volatile List<Channel> channels = Collections.emptyList();
+
+    //传输实现
+    private Transport transport = Transport.NIO;
+    //accept线程数（监听channel数），>1时需要epoll传输支持SO_REUSEPORT
+    private int acceptors = 1;
+    //IO线程数，0表示使用netty的默认值
+    private int ioThreads = 0;
+    //刷新合并配置
+    private FlushConfig flushConfig = new FlushConfig();
+    //准入控制：过载时在反序列化之前快速拒绝请求
+    private AdmissionControl admissionControl = new AdmissionControl();
+    //流量录制：采样收到的请求帧写入录制文件，null表示不录制
+    private TrafficRecorder recorder;
+    //是否在pipeline中加入LoggingHandler，以DEBUG级别输出每条连接上收发的原始字节，只用于排查问题
+    private boolean wireLog;
+
+    //业务线程池：服务方法在这里执行，不占用IO线程
+    private final ServiceExecutors executors;
 
     public NettyRpcServer(int port, String protocol, RequestHandler handler) {
+        this(port, protocol, handler, new ServiceExecutors());
+    }
+
+    public NettyRpcServer(int port, String protocol, RequestHandler handler, ServiceExecutors executors) {
         super(port, protocol, handler);
+        this.executors = executors;
     }
 
     /*
      * 启动服务器：
      * 1. 配置netty服务：
      *  - 设置全连接队列长度SO_BACKLOG
-     *  - 向pipeline注册ChannelRequestHandler
+     *  - 多个accept线程时开启SO_REUSEPORT
+     *  - 向pipeline注册帧编解码器和ChannelRequestHandler，开启wireLog时在最前面注册LoggingHandler
      * 2. 启动后就无限loop，处理客户端连接请求和IO请求
      */
     @Override
     public void start() {
+        int binds = 1;
+        if (acceptors > 1) {
+            if (transport.supportsReusePort()) {
+                binds = acceptors;
+            } else {
+                logger.warn("SO_REUSEPORT is not supported by {} transport, use a single acceptor", transport);
+            }
+        }
 
-        //1个主reactor负责处理accept事件
-        EventLoopGroup bossGroup = new NioEventLoopGroup(1);
-        //默认数量的从reactor负责处理IO事件
-        EventLoopGroup workerGroup = new NioEventLoopGroup();
+        //主reactor负责处理accept事件，每个监听channel一个线程
+        EventLoopGroup bossGroup = transport.newEventLoopGroup(binds);
+        //从reactor负责处理IO事件
+        EventLoopGroup workerGroup = transport.newEventLoopGroup(ioThreads);
+        //所有连接共享的刷新统计
+        FlushStats flushStats = new FlushStats("server.flush");
 
         try {
             ServerBootstrap bootstrap = new ServerBootstrap()
                     .group(bossGroup, workerGroup)
-                    .channel(NioServerSocketChannel.class)
+                    .channel(transport.serverSocketChannelClass())
                     .option(ChannelOption.SO_BACKLOG, 100)//设置全连接队列长度
                     .childHandler(
                             new ChannelInitializer<SocketChannel>() {//接收到的客户端channel
                                 @Override
                                 protected void initChannel(SocketChannel ch) throws Exception {
                                     ChannelPipeline pipeline = ch.pipeline();
-                                    pipeline.addLast(new LoggingHandler(LogLevel.INFO));
+                                    if (wireLog) {
+                                        pipeline.addLast(new LoggingHandler(LogLevel.DEBUG));
+                                    }
+                                    //按长度字段拆包得到完整的请求帧，响应帧编码
+                                    pipeline.addLast(new FrameDecoder());
+                                    pipeline.addLast(new FrameEncoder());
+                                    //合并响应的刷新
+                                    pipeline.addLast(new FlushConsolidationHandler(flushConfig, flushStats));
                                     //读取请求数据，调用服务方法，返回响应数据
                                     pipeline.addLast(new ChannelRequestHandler());
                                 }
                             }
 
                     );
-            //启动服务
-            ChannelFuture cf = bootstrap.bind(port).sync();
-            logger.info("Server started successfully");
-            //对客户端channel赋值
-            channel = cf.channel();
+            if (binds > 1) {
+                bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+            }
+            //启动服务：每次bind创建一个监听channel，依次注册到主reactor的不同线程上
+            List<Channel> bound = new ArrayList<>(binds);
+            for (int i = 0; i < binds; i++) {
+                bound.add(bootstrap.bind(port).sync().channel());
+            }
+            channels = bound;
+            logger.info("Server started successfully, transport: {}, acceptors: {}", transport, binds);
             //等待服务通道关闭
-            cf.channel().closeFuture().sync();
+            for (Channel channel : bound) {
+                channel.closeFuture().sync();
+            }
         } catch (InterruptedException e) {
             e.printStackTrace();
         } finally {
             //释放线程组资源
             bossGroup.shutdownGracefully();
             workerGroup.shutdownGracefully();
+            executors.shutdown();
+            admissionControl.close();
+            if (recorder != null) {
+                recorder.close();
+            }
         }
     }
 
     /*
     * 关闭服务器
-    * 关闭连接的channel，所有连接的channel都关闭服务器就会自动关闭
+    * 关闭监听的channel，所有监听的channel都关闭服务器就会自动关闭
     * */
     @Override
     public void stop() {
-        this.channel.close();
+        for (Channel channel : channels) {
+            channel.close();
+        }
+    }
+
+    public Transport getTransport() {
+        return transport;
+    }
+
+    public void setTransport(Transport transport) {
+        this.transport = transport;
+    }
+
+    public int getAcceptors() {
+        return acceptors;
+    }
+
+    public void setAcceptors(int acceptors) {
+        this.acceptors = acceptors;
+    }
+
+    public FlushConfig getFlushConfig() {
+        return flushConfig;
+    }
+
+    public void setFlushConfig(FlushConfig flushConfig) {
+        this.flushConfig = flushConfig;
+    }
+
+    public AdmissionControl getAdmissionControl() {
+        return admissionControl;
+    }
+
+    public void setAdmissionControl(AdmissionControl admissionControl) {
+        this.admissionControl = admissionControl;
+    }
+
+    public TrafficRecorder getRecorder() {
+        return recorder;
+    }
+
+    public void setRecorder(TrafficRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    public boolean isWireLog() {
+        return wireLog;
+    }
+
+    public void setWireLog(boolean wireLog) {
+        this.wireLog = wireLog;
+    }
+
+    public int getIoThreads() {
+        return ioThreads;
+    }
+
+    public void setIoThreads(int ioThreads) {
+        this.ioThreads = ioThreads;
     }
 
     /*
     * 创建服务器执行的handler：
     * 1. 连接事件：连接建立成功输出日志
-    * 2. read事件：读取客户端发送的数据到字节数组，提交给处理器，获得处理结果字节数组，响应给客户端
+    * 2. read事件：读取客户端发送的请求帧，提交到服务对应的业务线程池处理，获得处理结果字节数组，以相同的请求id响应给客户端
+    *    - 请求帧首部带有服务id、方法id时，在IO线程上按id解析出方法，不需要反序列化就能选择业务线程池，
+    *      反序列化也在业务线程池中进行；帧中附带的服务名、方法签名会记在当前连接上，之后的请求只带id
+    *    - 不带id时，在IO线程上解组请求报文，按报文中的服务名选择业务线程池
+    *    业务线程池队列满时直接以"过载"状态响应；解组请求报文失败、服务调用抛出异常时以ERROR状态响应，每个请求都有响应
+    *    准入控制：带id的请求在IO线程上解析出方法后、不带id的请求在解组后检查在途请求数，
+    *    在业务线程上反序列化之前检查排队时间，拒绝时以"负载丢弃"状态响应
+    *    开启流量录制时，按采样比例把请求帧原样写入录制文件
+    *    请求帧的消息体是接收缓冲区的切片，不自动释放，解组请求报文后（或不需要解组时）立即释放
     * 3. 读取完事件：刷新ctx给下一个handler
+    * 4. 异常事件：帧解码失败（魔数、版本不对）或连接出错时关闭连接，之后的数据无法再按帧划分，
+    *    调用方在连接断开时让该连接上的在途请求立即失败，不需要等到超时
     * */
-    private class ChannelRequestHandler extends ChannelInboundHandlerAdapter{
+    class ChannelRequestHandler extends SimpleChannelInboundHandler<RpcFrame> {
+        //当前连接上已知的方法：key=服务id<<32|方法id，value=方法调用器，只在IO线程上访问
+        private final Map<Long, MethodInvoker> resolved = new HashMap<>();
+
+        ChannelRequestHandler() {
+            super(false);
+        }
+
         //连接事件：连接建立成功输出日志
         @Override
         public void channelActive(ChannelHandlerContext ctx) throws Exception {
-            logger.info("Channel active: {}", ctx);
+            logger.debug("Channel active: {}", ctx.channel());
         }
 
         //read事件
         @Override
-        public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
-            logger.info("The Server receives a message: {}", msg);
-            //读取到的请求数据转存到字节数组上
-            ByteBuf msgBuf = (ByteBuf) msg;
-            byte[] req = new byte[msgBuf.readableBytes()];
-            msgBuf.readBytes(req);
-            //字节数组传递给上一层的处理器去处理，得到返回的响应字节数组
-            byte[] rsp = handler.handleRequest(req);
-            //响应字节数组发送给客户端
-            ByteBuf rspBuf = Unpooled.buffer(rsp.length);
-            rspBuf.writeBytes(rsp);
-            ctx.write(rspBuf);
+        protected void channelRead0(ChannelHandlerContext ctx, RpcFrame frame) throws Exception {
+            //收到请求的时刻：请求的截止时间从这里开始计算，包括在业务线程池中排队的时间
+            long received = System.nanoTime();
+            //录制在解析之前进行，回放时目标服务端以同样的方式处理
+            if (recorder != null) {
+                recorder.record(frame, received);
+            }
+            //按帧首部的序列化算法id选择协议，响应使用相同的算法
+            MessageProtocol protocol = handler.protocolFor(frame.getSerializerId());
+            //请求消息体的大小，解组后消息体被释放，先记下来
+            int size = frame.getBody().readableBytes();
+            if (frame.getServiceId() == 0 && frame.getMethodId() == 0) {
+                //不带id：解组请求报文，按服务名选择业务线程池
+                RequestDatagram req;
+                try {
+                    req = unmarshallingRequest(protocol, frame);
+                } catch (Exception e) {
+                    ctx.write(failure(frame, protocol, e));
+                    return;
+                }
+                dispatch(ctx, frame, protocol, req.getServiceName(), received, () -> handler.handleRequestAsync(protocol, req, received, System.nanoTime(), size));
+                return;
+            }
+            //带id：按id解析方法
+            MethodInvoker invoker = resolve(frame);
+            if (invoker == null) {
+                frame.release();
+                ctx.write(response(frame, handler.statusResponse(protocol, StatusCode.NOT_FOUND)));
+                return;
+            }
+            dispatch(ctx, frame, protocol, invoker.getServiceName(), received, () -> {
+                //开始处理的时刻：在这之前是排队时间，之后是解组、调用服务方法的时间
+                long started = System.nanoTime();
+                return handler.handleRequestAsync(protocol, invoker, unmarshallingRequest(protocol, frame), received, started, size);
+            });
+        }
+
+        //解组请求报文，完成后释放请求帧的消息体，之后请求帧只用来构造响应帧
+        private RequestDatagram unmarshallingRequest(MessageProtocol protocol, RpcFrame frame) throws Exception {
+            try {
+                return handler.unmarshallingRequest(protocol, frame.getBody());
+            } finally {
+                frame.release();
+                frame.setBody(Unpooled.EMPTY_BUFFER);
+            }
+        }
+
+        /*
+        * 解析请求帧对应的方法：
+        * - 附带了服务名、方法签名：按名称查找，并记在当前连接上（id冲突时保留先记下的方法）
+        * - 只有id：先查当前连接上记下的方法，再按全局的服务id、方法id查找
+        * */
+        private MethodInvoker resolve(RpcFrame frame) {
+            long key = ((long) frame.getServiceId() << 32) | (frame.getMethodId() & 0xffffffffL);
+            if (frame.hasNames()) {
+                MethodInvoker invoker = handler.resolve(frame.getServiceName(), frame.getMethodSignature());
+                if (invoker != null) {
+                    resolved.putIfAbsent(key, invoker);
+                }
+                return invoker;
+            }
+            MethodInvoker invoker = resolved.get(key);
+            return invoker != null ? invoker : handler.resolve(frame.getServiceId(), frame.getMethodId());
+        }
+
+        //准入检查后按服务名选择业务线程池执行请求，在途请求过多或队列已满时快速拒绝
+        private void dispatch(ChannelHandlerContext ctx, RpcFrame frame, MessageProtocol protocol,
+                              String serviceName, long received, Invocation invocation) throws Exception {
+            ServiceAdmission admission = admissionControl.forService(serviceName);
+            if (admission != null && !admission.tryAcquire()) {
+                reject(ctx, frame, protocol, StatusCode.LOAD_SHED, false);
+                return;
+            }
+            Executor executor = executors.executorFor(serviceName);
+            if (executor == null) {
+                //未配置线程池：直接在IO线程上处理，读取完事件时统一刷新
+                process(ctx, frame, protocol, admission, received, invocation, false);
+                return;
+            }
+            try {
+                executor.execute(() -> process(ctx, frame, protocol, admission, received, invocation, true));
+            } catch (RejectedExecutionException e) {
+                //队列已满：快速拒绝
+                executors.rejected(serviceName);
+                if (admission != null) {
+                    admission.release();
+                }
+                reject(ctx, frame, protocol, StatusCode.OVERLOADED, false);
+            }
+        }
+
+        /*
+        * 调用服务方法，完成后写出响应帧；不在IO线程上时需要立即刷新
+        * 调用前按排队时间做准入检查，被拒绝的请求不反序列化；处理完成后归还在途名额
+        * */
+        private void process(ChannelHandlerContext ctx, RpcFrame frame, MessageProtocol protocol,
+                             ServiceAdmission admission, long received, Invocation invocation, boolean flush) {
+            CompletableFuture<ByteBuf> future;
+            try {
+                if (admission != null && !admission.admit(received)) {
+                    admission.release();
+                    reject(ctx, frame, protocol, StatusCode.LOAD_SHED, flush);
+                    return;
+                }
+                future = invocation.invoke();
+            } catch (Exception e) {
+                if (admission != null) {
+                    admission.release();
+                }
+                write(ctx, failure(frame, protocol, e), flush);
+                return;
+            }
+            if (admission != null) {
+                future.whenComplete((rsp, cause) -> admission.release());
+            }
+            //已完成时回调在当前线程上同步执行；异常完成时以ERROR状态响应，不在IO线程上抛出
+            boolean immediate = future.isDone() && !flush;
+            future.whenComplete((rsp, cause) -> write(ctx,
+                    cause != null ? failure(frame, protocol, cause) : response(frame, rsp), !immediate));
+        }
+
+        /*
+        * 处理失败（解组请求报文失败、服务调用抛出异常）时的响应帧：以ERROR状态响应，调用方不需要等到超时
+        * 异常包装成MyRpcException带回调用方，调用方不一定能反序列化原始的异常类型；编组失败时只带状态码
+        * */
+        private RpcFrame failure(RpcFrame frame, MessageProtocol protocol, Throwable cause) {
+            if (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            logger.warn("Failed to process request {}", frame.getRequestId(), cause);
+            ByteBuf rsp;
+            try {
+                ResponseDatagram datagram = new ResponseDatagram(StatusCode.ERROR);
+                datagram.setException(new MyRpcException("Server failed to process request: " + cause));
+                rsp = handler.marshallingResponse(protocol, datagram);
+            } catch (Exception e) {
+                try {
+                    rsp = handler.statusResponse(protocol, StatusCode.ERROR);
+                } catch (Exception ex) {
+                    //协议本身无法编组：发送空的消息体，调用方解组失败后同样立即结束调用
+                    rsp = Unpooled.EMPTY_BUFFER;
+                }
+            }
+            return response(frame, rsp);
+        }
+
+        private void write(ChannelHandlerContext ctx, RpcFrame rsp, boolean flush) {
+            if (flush) {
+                ctx.writeAndFlush(rsp);
+            } else {
+                ctx.write(rsp);
+            }
+        }
+
+        //没有执行就拒绝请求：释放请求帧的消息体，以状态响应并带上拒绝标志
+        private void reject(ChannelHandlerContext ctx, RpcFrame frame, MessageProtocol protocol,
+                            StatusCode status, boolean flush) throws Exception {
+            frame.release();
+            write(ctx, response(frame, handler.statusResponse(protocol, status), RpcFrame.FLAG_REJECTED), flush);
+        }
+
+        //以相同的请求id构造响应帧
+        private RpcFrame response(RpcFrame request, ByteBuf rsp) {
+            return response(request, rsp, (byte) 0);
+        }
+
+        //以相同的请求id构造响应帧，附加标志位
+        private RpcFrame response(RpcFrame request, ByteBuf rsp, byte flags) {
+            return new RpcFrame(request.getSerializerId(), request.getRequestId(), (byte) (RpcFrame.FLAG_RESPONSE | flags), rsp);
         }
 
         @Override
         public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
             ctx.flush();
         }
+
+        //异常事件：解码失败、连接出错时关闭连接，其他异常只输出日志
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            if (cause instanceof DecoderException || cause instanceof IOException) {
+                logger.warn("Close channel {}: {}", ctx.channel(), cause.toString());
+                ctx.close();
+                return;
+            }
+            logger.error("Exception occurred on channel {}", ctx.channel(), cause);
+        }
+    }
+
+    //一次请求的处理过程：解组请求报文、调用服务方法、编组响应
+    private interface Invocation {
+        CompletableFuture<ByteBuf> invoke() throws Exception;
     }
 
 }
@@ -1,61 +1,369 @@
 package wu.myrpc.server;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+
+import wu.myrpc.common.context.RpcContext;
+import wu.myrpc.common.metrics.AccessLog;
+import wu.myrpc.common.metrics.MethodStats;
+import wu.myrpc.common.metrics.RpcMetrics;
+import wu.myrpc.common.metrics.SlowCallLog;
 import wu.myrpc.common.protocol.MessageProtocol;
+import wu.myrpc.common.protocol.MessageProtocolSerialize;
+import wu.myrpc.common.protocol.MethodId;
 import wu.myrpc.common.protocol.RequestDatagram;
 import wu.myrpc.common.protocol.ResponseDatagram;
 import wu.myrpc.common.protocol.StatusCode;
+import wu.myrpc.common.serializer.Serializer;
+import wu.myrpc.server.register.DispatchTable;
+import wu.myrpc.server.register.MethodInvoker;
 import wu.myrpc.server.register.ServiceObject;
 import wu.myrpc.server.register.ServiceRegister;
 
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static wu.myrpc.common.constants.RpcConstant.HEADER_SERVER_TIMING;
+import static wu.myrpc.common.constants.RpcConstant.HEADER_TIMEOUT;
 
 /*
 * 请求处理器：从上层的netty服务器上得到请求字节数组，再将响应字节数组返回给netty服务器
 * 基于自定义的通信协议MessageProtocol，提供：
 * 1. 请求字节数组解组为请求报文；
 * 2. 根据请求报文查找服务实例对象
-* 3. 根据反射调用具体的服务方法，得到处理结果
+* 3. 在服务的方法分发表中查找预先生成的方法调用器，调用具体的服务方法，得到处理结果
 * 4. 将处理结果序列化，响应编组等操作
-*
+* 服务方法返回CompletableFuture时，等它完成后再编组响应，不占用调用线程
+* 请求帧首部带有序列化算法id，按id选择相同算法的协议解组请求、编组响应，不同算法的调用方可以同时访问
+* 请求从网络层的缓冲区直接解组，响应直接编组到池化的缓冲区，交给网络层写出后释放
+* 请求首部带有超时时间时，按收到请求的时刻计算截止时间：
+* - 调用服务方法前截止时间已过（如在业务线程池中排队太久），调用方已经不再等待，不调用服务方法，直接以"截止时间已过"状态响应
+* - 调用服务方法期间截止时间放在RpcContext中，服务方法中发起的嵌套调用只能使用剩余的时间
+* 每个请求的状态码、处理时间（从收到请求开始）、请求和响应消息体大小记录到方法的调用统计中，见MethodStats
+* 设置了slowCalls时记录各阶段的时间点：排队（收到请求到开始处理）、解组、服务方法、编组响应，
+* 服务方法返回时处理时间已超过阈值的，各阶段耗时放进响应首部带回客户端；编组完成后超过阈值的输出慢调用日志
+* 设置了accessLog时，每个请求结束时写入一条访问日志记录，由后台线程采样输出
 * */
 public class RequestHandler {
+    //默认协议：不带序列化算法id的调用使用
     private MessageProtocol protocol;
+    //key=序列化算法id，value=使用该算法的协议
+    private Map<Byte, MessageProtocol> protocols = new HashMap<>();
     private ServiceRegister serviceRegister;
+    //响应缓冲区的分配器
+    private ByteBufAllocator allocator = PooledByteBufAllocator.DEFAULT;
+    //截止时间已过、没有调用服务方法的请求数
+    private final LongAdder expired = RpcMetrics.counter("server.deadline.expired");
+    //慢调用日志，null表示不记录
+    private SlowCallLog slowCalls;
+    //访问日志，null表示不记录
+    private AccessLog accessLog;
 
     public RequestHandler(MessageProtocol protocol, ServiceRegister serviceRegister) {
         super();
         this.protocol = protocol;
         this.serviceRegister = serviceRegister;
+        for (Serializer serializer : Serializer.values()) {
+            protocols.put(serializer.getId(), new MessageProtocolSerialize(serializer));
+        }
+        protocols.put(protocol.getSerializerId(), protocol);
     }
 
+    /*
+    * 按序列化算法id选择协议，未知的id使用默认协议
+    * */
+    public MessageProtocol protocolFor(byte serializerId) {
+        MessageProtocol p = protocols.get(serializerId);
+        return p != null ? p : this.protocol;
+    }
+
+    /*
+    * 同步处理请求：等待异步服务方法完成
+    * */
     public byte[] handleRequest(byte[] data) throws Exception {
+        try {
+            return handleRequestAsync(data).get();
+        } catch (ExecutionException e) {
+            throw (Exception) e.getCause();
+        }
+    }
+
+    /*
+    * 异步处理请求：返回的future在响应字节数组编组完成时完成
+    * */
+    public CompletableFuture<byte[]> handleRequestAsync(byte[] data) throws Exception {
         // 1、解组消息：反序列化得到请求报文
-        RequestDatagram req = this.protocol.unmarshallingRequest(data);
+        long received = System.nanoTime();
+        RequestDatagram req = unmarshallingRequest(this.protocol, Unpooled.wrappedBuffer(data));
+        return handleRequestAsync(this.protocol, req, received, System.nanoTime(), data.length).thenApply(rsp -> {
+            try {
+                byte[] bytes = new byte[rsp.readableBytes()];
+                rsp.readBytes(bytes);
+                return bytes;
+            } finally {
+                rsp.release();
+            }
+        });
+    }
 
+    /*
+    * 解组消息：从缓冲区反序列化得到请求报文，不释放缓冲区
+    * */
+    public RequestDatagram unmarshallingRequest(MessageProtocol protocol, ByteBuf data) throws Exception {
+        return protocol.unmarshallingRequest(data);
+    }
+
+    /*
+    * 处理已解组的请求报文：按报文中的服务名、方法名、参数类型查找方法
+    * @param receivedNanos 收到请求的时刻（System.nanoTime()），用于计算截止时间和处理时间
+    * @param startedNanos  开始处理的时刻，请求报文在这之前已经解组，解组时间计入排队时间
+    * @param requestBytes  请求消息体的大小，<0表示未知，不记录
+    * */
+    public CompletableFuture<ByteBuf> handleRequestAsync(MessageProtocol protocol, RequestDatagram req,
+                                                         long receivedNanos, long startedNanos, int requestBytes) throws Exception {
         // 2、查找服务对象
         ServiceObject so = this.serviceRegister.getServiceObject(req.getServiceName());
 
+        if (so == null) {
+            return CompletableFuture.completedFuture(statusResponse(protocol, StatusCode.NOT_FOUND));
+        }
+        MethodInvoker invoker = dispatchTable(so).lookup(req.getMethodName(), req.getParameterTypes());
+        if (invoker == null) {
+            ResponseDatagram rsp = new ResponseDatagram(StatusCode.ERROR);
+            rsp.setException(new NoSuchMethodException(so.getName() + "." + MethodId.signature(req.getMethodName(), req.getParameterTypes())));
+            return CompletableFuture.completedFuture(marshallingResponse(protocol, rsp));
+        }
+        return handleRequestAsync(protocol, invoker, req, receivedNanos, startedNanos, requestBytes);
+    }
+
+    /*
+    * 处理已解组的请求报文：方法已由消息帧首部中的id解析得到
+    * @param receivedNanos 收到请求的时刻（System.nanoTime()）
+    * @param startedNanos  在业务线程上开始处理（解组请求报文之前）的时刻，用于区分排队和解组的耗时
+    * @param requestBytes  请求消息体的大小，<0表示未知，不记录
+    * */
+    public CompletableFuture<ByteBuf> handleRequestAsync(MessageProtocol protocol, MethodInvoker invoker, RequestDatagram req,
+                                                         long receivedNanos, long startedNanos, int requestBytes) throws Exception {
+        Timing timing = slowCalls == null ? null : new Timing(receivedNanos, startedNanos, System.nanoTime());
         ResponseDatagram rsp = null;
+        MethodStats stats = invoker.getStats();
+        stats.begin();
+        if (requestBytes >= 0) {
+            stats.requestBytes(requestBytes);
+        }
 
-        if (so == null) {
-            rsp = new ResponseDatagram(StatusCode.NOT_FOUND);
-        } else {
-            // 3、反射调用对应的过程方法
-            try {
-                Method m = so.getClazz().getMethod(req.getMethodName(), req.getParameterTypes());
-                Object returnValue = m.invoke(so.getObj(), req.getParameters());
-                rsp = new ResponseDatagram(StatusCode.SUCCESS);
-                rsp.setReturnValue(returnValue);
-            } catch (NoSuchMethodException | SecurityException | IllegalAccessException | IllegalArgumentException
-                    | InvocationTargetException e) {
-                rsp = new ResponseDatagram(StatusCode.ERROR);
-                rsp.setException(e);
+        // 截止时间已过：调用方已经不再等待，不调用服务方法
+        long deadline = deadlineOf(req, receivedNanos);
+        if (deadline != 0 && System.nanoTime() - deadline >= 0) {
+            expired.increment();
+            ByteBuf out = statusResponse(protocol, StatusCode.DEADLINE_EXCEEDED);
+            encoded(timing, invoker, StatusCode.DEADLINE_EXCEEDED, requestBytes, out);
+            return CompletableFuture.completedFuture(completed(invoker, receivedNanos, requestBytes, StatusCode.DEADLINE_EXCEEDED, out));
+        }
+
+        // 3、通过分发表调用对应的过程方法，调用期间截止时间对嵌套调用可见
+        long previous = RpcContext.setDeadline(deadline);
+        try {
+            Object returnValue = invoker.invoke(req.getParameters());
+            //异步服务方法：完成后再编组响应
+            if (returnValue instanceof CompletableFuture) {
+                return ((CompletableFuture<?>) returnValue).handle((value, cause) ->
+                        completed(invoker, timing, receivedNanos, requestBytes, protocol, value, cause));
             }
+            rsp = new ResponseDatagram(StatusCode.SUCCESS);
+            rsp.setReturnValue(returnValue);
+        } catch (SecurityException | IllegalAccessException | IllegalArgumentException
+                | InvocationTargetException e) {
+            rsp = new ResponseDatagram(StatusCode.ERROR);
+            rsp.setException(e);
+        } catch (RuntimeException e) {
+            end(invoker, receivedNanos, requestBytes, StatusCode.ERROR, -1);
+            throw e;
+        } finally {
+            RpcContext.setDeadline(previous);
         }
 
         // 4、编组响应消息：将响应报文做序列化
-        return this.protocol.marshallingResponse(rsp);
+        invoked(timing, rsp);
+        ByteBuf out;
+        try {
+            out = marshallingResponse(protocol, rsp);
+        } catch (Exception e) {
+            end(invoker, receivedNanos, requestBytes, StatusCode.ERROR, -1);
+            throw e;
+        }
+        encoded(timing, invoker, rsp.getStatus(), requestBytes, out);
+        return CompletableFuture.completedFuture(completed(invoker, receivedNanos, requestBytes, rsp.getStatus(), out));
+    }
+
+    //请求处理完成：记录状态码、处理时间和响应大小
+    private ByteBuf completed(MethodInvoker invoker, long receivedNanos, int requestBytes, StatusCode status, ByteBuf rsp) {
+        int size = rsp.readableBytes();
+        invoker.getStats().responseBytes(size);
+        end(invoker, receivedNanos, requestBytes, status, size);
+        return rsp;
+    }
+
+    //请求处理结束：记录调用统计和访问日志，responseBytes<0表示没有响应
+    private void end(MethodInvoker invoker, long receivedNanos, int requestBytes, StatusCode status, int responseBytes) {
+        invoker.getStats().end(receivedNanos, status);
+        if (accessLog != null) {
+            accessLog.log(invoker.getServiceName(), invoker.getMethod().getName(), null, status,
+                    System.nanoTime() - receivedNanos, requestBytes, responseBytes);
+        }
+    }
+
+    //异步服务方法完成：编组响应并记录
+    private ByteBuf completed(MethodInvoker invoker, Timing timing, long receivedNanos, int requestBytes,
+                              MessageProtocol protocol, Object returnValue, Throwable cause) {
+        ResponseDatagram rsp = responseOf(returnValue, cause);
+        invoked(timing, rsp);
+        ByteBuf out;
+        try {
+            out = marshallingResponse(protocol, rsp);
+        } catch (Exception e) {
+            end(invoker, receivedNanos, requestBytes, StatusCode.ERROR, -1);
+            throw new CompletionException(e);
+        }
+        encoded(timing, invoker, rsp.getStatus(), requestBytes, out);
+        return completed(invoker, receivedNanos, requestBytes, rsp.getStatus(), out);
+    }
+
+    //服务方法返回：处理时间已经超过阈值时，把排队、解组、服务方法的耗时放进响应首部带回客户端
+    private void invoked(Timing timing, ResponseDatagram rsp) {
+        if (timing == null) {
+            return;
+        }
+        timing.invoked = System.nanoTime();
+        if (slowCalls.isSlow(timing.invoked - timing.received)) {
+            rsp.getHeaders().put(HEADER_SERVER_TIMING, SlowCallLog.encodeTiming(
+                    "queue", timing.started - timing.received,
+                    "decode", timing.decoded - timing.started,
+                    "service", timing.invoked - timing.decoded));
+        }
+    }
+
+    //响应编组完成：处理时间超过阈值时输出慢调用日志，没有调用服务方法（截止时间已过）时只有排队和解组的耗时
+    private void encoded(Timing timing, MethodInvoker invoker, StatusCode status, int requestBytes, ByteBuf rsp) {
+        if (timing == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (!slowCalls.isSlow(now - timing.received)) {
+            return;
+        }
+        int responseBytes = rsp.readableBytes();
+        slowCalls.log(() -> {
+            StringBuilder sb = new StringBuilder("Slow request ")
+                    .append(invoker.getServiceName()).append('.').append(invoker.getMethod().getName())
+                    .append(" took ").append(String.format("%.3f", (now - timing.received) / 1e6))
+                    .append("ms [").append(status).append("], phases(ms):");
+            SlowCallLog.phase(sb, "queue", timing.started - timing.received);
+            SlowCallLog.phase(sb, "decode", timing.decoded - timing.started);
+            if (timing.invoked != 0) {
+                SlowCallLog.phase(sb, "service", timing.invoked - timing.decoded);
+                SlowCallLog.phase(sb, "encode", now - timing.invoked);
+            }
+            return sb.append(", request=").append(requestBytes).append(" bytes, response=")
+                    .append(responseBytes).append(" bytes").toString();
+        });
+    }
+
+    //请求首部中的超时时间换算成本机的截止时间，没有超时时间或超时时间不是整数时返回0（不限制），不在这里抛出异常
+    private static long deadlineOf(RequestDatagram req, long receivedNanos) {
+        String timeout = req.getHeaders() == null ? null : req.getHeaders().get(HEADER_TIMEOUT);
+        if (timeout == null) {
+            return 0;
+        }
+        long timeoutMillis;
+        try {
+            timeoutMillis = Long.parseLong(timeout);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+        long deadline = receivedNanos + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        //0表示没有截止时间，避开这个值
+        return deadline == 0 ? 1 : deadline;
+    }
+
+    /*
+    * 按服务名、方法签名查找方法，找不到返回null
+    * */
+    public MethodInvoker resolve(String serviceName, String methodSignature) {
+        ServiceObject so = this.serviceRegister.getServiceObject(serviceName);
+        return so == null ? null : dispatchTable(so).lookup(methodSignature);
+    }
+
+    /*
+    * 按服务id、方法id查找方法，找不到或id冲突时返回null
+    * */
+    public MethodInvoker resolve(int serviceId, int methodId) {
+        ServiceObject so = this.serviceRegister.getServiceObject(serviceId);
+        return so == null ? null : dispatchTable(so).lookup(methodId);
+    }
+
+    //注册器没有生成分发表时（自定义的ServiceRegister实现），在第一次调用时生成
+    private DispatchTable dispatchTable(ServiceObject so) {
+        DispatchTable table = so.getDispatchTable();
+        if (table == null) {
+            table = new DispatchTable(so.getName(), so.getClazz(), so.getObj());
+            so.setDispatchTable(table);
+        }
+        return table;
+    }
+
+    /*
+    * 编组只有状态码的响应，如服务端过载时的快速拒绝
+    * */
+    public ByteBuf statusResponse(MessageProtocol protocol, StatusCode status) throws Exception {
+        return marshallingResponse(protocol, new ResponseDatagram(status));
+    }
+
+    /*
+    * 编组响应到新分配的池化缓冲区，编组失败时释放缓冲区
+    * */
+    public ByteBuf marshallingResponse(MessageProtocol protocol, ResponseDatagram rsp) throws Exception {
+        ByteBuf out = allocator.buffer();
+        try {
+            protocol.marshallingResponse(rsp, out);
+            return out;
+        } catch (Exception e) {
+            out.release();
+            throw e;
+        }
+    }
+
+    //异步服务方法完成后的响应报文，异常和同步方法一样包装成InvocationTargetException
+    private static ResponseDatagram responseOf(Object returnValue, Throwable cause) {
+        ResponseDatagram rsp;
+        if (cause == null) {
+            rsp = new ResponseDatagram(StatusCode.SUCCESS);
+            rsp.setReturnValue(returnValue);
+        } else {
+            if (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            rsp = new ResponseDatagram(StatusCode.ERROR);
+            rsp.setException(new InvocationTargetException(cause));
+        }
+        return rsp;
+    }
+
+    /*
+    * 关闭访问日志，输出缓冲区中剩余的记录，容器关闭时调用
+    * */
+    public void close() {
+        if (accessLog != null) {
+            accessLog.close();
+        }
     }
 
     public MessageProtocol getProtocol() {
@@ -64,6 +372,31 @@ public class RequestHandler {
 
     public void setProtocol(MessageProtocol protocol) {
         this.protocol = protocol;
+        this.protocols.put(protocol.getSerializerId(), protocol);
+    }
+
+    public ByteBufAllocator getAllocator() {
+        return allocator;
+    }
+
+    public void setAllocator(ByteBufAllocator allocator) {
+        this.allocator = allocator;
+    }
+
+    public SlowCallLog getSlowCalls() {
+        return slowCalls;
+    }
+
+    public void setSlowCalls(SlowCallLog slowCalls) {
+        this.slowCalls = slowCalls;
+    }
+
+    public AccessLog getAccessLog() {
+        return accessLog;
+    }
+
+    public void setAccessLog(AccessLog accessLog) {
+        this.accessLog = accessLog;
     }
 
     public ServiceRegister getServiceRegister() {
@@ -74,4 +407,19 @@ public class RequestHandler {
         this.serviceRegister = serviceRegister;
     }
 
+    /*
+    * 慢调用分析用的服务端时间点（System.nanoTime()）：收到请求、开始处理、解组完成、服务方法返回，只在设置了slowCalls时创建
+    * */
+    private static class Timing {
+        private final long received;
+        private final long started;
+        private final long decoded;
+        private long invoked;
+
+        Timing(long received, long started, long decoded) {
+            this.received = received;
+            this.started = started;
+            this.decoded = decoded;
+        }
+    }
 }
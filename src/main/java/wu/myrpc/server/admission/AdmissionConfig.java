@@ -0,0 +1,55 @@
+package wu.myrpc.server.admission;
+
+/*
+ * 服务端准入控制配置
+ * - enabled：是否启用，默认不启用
+ * - maxInflight：最多同时处理的请求数（包括在业务线程池中排队的），超过时直接拒绝，<=0表示不限制
+ * - targetDelayMillis：目标排队时间，单位ms，一个区间内的最小排队时间都超过它时进入过载状态
+ * - intervalMillis：检测区间，单位ms；不过载时排队超过这个时间的请求也会被丢弃
+ * */
+public class AdmissionConfig {
+    private Boolean enabled = false;
+    private Integer maxInflight = 1000;
+    private Long targetDelayMillis = 5L;
+    private Long intervalMillis = 100L;
+
+    public AdmissionConfig() {
+    }
+
+    public AdmissionConfig(Boolean enabled, Integer maxInflight) {
+        this.enabled = enabled;
+        this.maxInflight = maxInflight;
+    }
+
+    public Boolean getEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(Boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Integer getMaxInflight() {
+        return maxInflight;
+    }
+
+    public void setMaxInflight(Integer maxInflight) {
+        this.maxInflight = maxInflight;
+    }
+
+    public Long getTargetDelayMillis() {
+        return targetDelayMillis;
+    }
+
+    public void setTargetDelayMillis(Long targetDelayMillis) {
+        this.targetDelayMillis = targetDelayMillis;
+    }
+
+    public Long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    public void setIntervalMillis(Long intervalMillis) {
+        this.intervalMillis = intervalMillis;
+    }
+}
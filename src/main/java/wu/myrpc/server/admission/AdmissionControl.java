@@ -0,0 +1,172 @@
+package wu.myrpc.server.admission;
+
+import wu.myrpc.common.metrics.LatencyHistogram;
+import wu.myrpc.common.metrics.RpcMetrics;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * 服务端准入控制：过载时在反序列化请求之前快速拒绝，不让请求堆积成内存压力和所有调用方的超时
+ * 按服务名配置，没有单独配置的服务使用默认配置，分两道检查：
+ * 1. 读到请求时（IO线程）：在途请求数（已接收、还没有写出响应）达到maxInflight时直接拒绝
+ * 2. 开始执行时（业务线程）：按排队时间判断，参考CoDel
+ *    - 每个区间（intervalMillis）结束时，区间内的最小排队时间超过targetDelayMillis，说明队列一直没有排空，进入过载状态；否则退出
+ *    - 过载状态下排队超过targetDelayMillis的请求被丢弃，否则只丢弃排队超过intervalMillis的请求
+ *    排队太久的请求大多已经或即将超时，丢弃它们让后面的请求以较短的排队时间执行，而不是所有请求都慢
+ * 被拒绝的请求以"负载丢弃"状态响应，并带有拒绝标志，调用方可以换一个提供方重试
+ * 指标：server.admission.服务名.inflight（在途请求数）、shed（拒绝数）、overloaded（是否过载）、
+ * queue-delay-us.p50/p99/p999（排队时间的分位数，单位微秒）
+ * */
+public class AdmissionControl {
+    //排队时间样本数超过这个值时衰减，让分位数反映最近的情况
+    private static final long DECAY_SAMPLES = 10000;
+
+    private final AdmissionConfig defaultConfig;
+    private final Map<String, AdmissionConfig> serviceConfigs;
+    //key=服务名，value=该服务的准入状态，只包含启用了准入控制的服务
+    private final ConcurrentMap<String, ServiceAdmission> services = new ConcurrentHashMap<>();
+
+    public AdmissionControl() {
+        this(new AdmissionConfig(), Collections.emptyMap());
+    }
+
+    public AdmissionControl(AdmissionConfig defaultConfig, Map<String, AdmissionConfig> serviceConfigs) {
+        this.defaultConfig = defaultConfig;
+        this.serviceConfigs = new HashMap<>(serviceConfigs);
+    }
+
+    /*
+     * 获取服务的准入状态，不存在时创建
+     * @return 服务没有启用准入控制时返回null
+     * */
+    public ServiceAdmission forService(String serviceName) {
+        ServiceAdmission admission = services.get(serviceName);
+        if (admission != null) {
+            return admission;
+        }
+        AdmissionConfig config = serviceConfigs.getOrDefault(serviceName, defaultConfig);
+        if (!Boolean.TRUE.equals(config.getEnabled())) {
+            return null;
+        }
+        return services.computeIfAbsent(serviceName, name -> new ServiceAdmission(name, config));
+    }
+
+    /*
+     * 移除所有指标，服务器关闭时调用
+     * */
+    public void close() {
+        services.clear();
+        RpcMetrics.remove("server.admission.");
+    }
+
+    /*
+     * 单个服务的准入状态
+     * */
+    public static class ServiceAdmission {
+        private final int maxInflight;
+        private final long targetNanos;
+        private final long intervalNanos;
+        private final AtomicInteger inflight = new AtomicInteger();
+        private final LongAdder shed;
+        private final LatencyHistogram queueDelay = new LatencyHistogram();
+        //当前区间内的最小排队时间
+        private final LongAccumulator minDelay = new LongAccumulator(Math::min, Long.MAX_VALUE);
+        private volatile long intervalEnd;
+        private volatile boolean overloaded;
+
+        ServiceAdmission(String serviceName, AdmissionConfig config) {
+            this.maxInflight = config.getMaxInflight() == null ? 0 : config.getMaxInflight();
+            this.targetNanos = TimeUnit.MILLISECONDS.toNanos(config.getTargetDelayMillis());
+            this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(config.getIntervalMillis());
+            this.intervalEnd = System.nanoTime() + intervalNanos;
+            String prefix = "server.admission." + serviceName;
+            this.shed = RpcMetrics.counter(prefix + ".shed");
+            RpcMetrics.gauge(prefix + ".inflight", inflight::get);
+            RpcMetrics.gauge(prefix + ".overloaded", () -> overloaded ? 1 : 0);
+            RpcMetrics.gauge(prefix + ".queue-delay-us.p50", () -> queueDelayMicros(50));
+            RpcMetrics.gauge(prefix + ".queue-delay-us.p99", () -> queueDelayMicros(99));
+            RpcMetrics.gauge(prefix + ".queue-delay-us.p999", () -> queueDelayMicros(99.9));
+        }
+
+        /*
+         * 读到请求时获取一个在途名额，成功后必须调用release()
+         * @return 在途请求数已达上限时返回false
+         * */
+        public boolean tryAcquire() {
+            if (maxInflight <= 0) {
+                inflight.incrementAndGet();
+                return true;
+            }
+            for (;;) {
+                int current = inflight.get();
+                if (current >= maxInflight) {
+                    shed.increment();
+                    return false;
+                }
+                if (inflight.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        /*
+         * 请求处理完成（或被拒绝）时归还在途名额
+         * */
+        public void release() {
+            inflight.decrementAndGet();
+        }
+
+        /*
+         * 开始执行请求前调用：记录排队时间，判断是否丢弃
+         * @param receivedNanos 收到请求的时刻（System.nanoTime()）
+         * @return 需要丢弃时返回false，在途名额仍由调用方归还
+         * */
+        public boolean admit(long receivedNanos) {
+            long now = System.nanoTime();
+            long delay = now - receivedNanos;
+            queueDelay.record(delay);
+            minDelay.accumulate(delay);
+            if (now - intervalEnd >= 0) {
+                nextInterval(now);
+            }
+            if (delay > (overloaded ? targetNanos : intervalNanos)) {
+                shed.increment();
+                return false;
+            }
+            return true;
+        }
+
+        //区间结束：按区间内的最小排队时间切换过载状态，只有一个线程执行
+        private synchronized void nextInterval(long now) {
+            if (now - intervalEnd < 0) {
+                return;
+            }
+            long min = minDelay.getThenReset();
+            overloaded = min != Long.MAX_VALUE && min > targetNanos;
+            intervalEnd = now + intervalNanos;
+            if (queueDelay.count() > DECAY_SAMPLES) {
+                queueDelay.decay();
+            }
+        }
+
+        private long queueDelayMicros(double percentile) {
+            return TimeUnit.NANOSECONDS.toMicros(queueDelay.percentile(percentile));
+        }
+
+        public int getInflight() {
+            return inflight.get();
+        }
+
+        public boolean isOverloaded() {
+            return overloaded;
+        }
+    }
+}
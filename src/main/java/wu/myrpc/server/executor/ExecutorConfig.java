@@ -0,0 +1,35 @@
+package wu.myrpc.server.executor;
+
+/*
+ * 业务线程池配置
+ * - threads：线程数，<=0表示不使用线程池，直接在netty的IO线程上调用服务方法
+ * - queueSize：等待队列长度，队列满时直接拒绝请求
+ * */
+public class ExecutorConfig {
+    private Integer threads = 200;
+    private Integer queueSize = 1024;
+
+    public ExecutorConfig() {
+    }
+
+    public ExecutorConfig(Integer threads, Integer queueSize) {
+        this.threads = threads;
+        this.queueSize = queueSize;
+    }
+
+    public Integer getThreads() {
+        return threads;
+    }
+
+    public void setThreads(Integer threads) {
+        this.threads = threads;
+    }
+
+    public Integer getQueueSize() {
+        return queueSize;
+    }
+
+    public void setQueueSize(Integer queueSize) {
+        this.queueSize = queueSize;
+    }
+}
@@ -0,0 +1,98 @@
+package wu.myrpc.server.executor;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import wu.myrpc.common.metrics.RpcMetrics;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * 服务端业务线程池：服务方法不在netty的IO线程上执行，避免一个慢方法拖住同一个IO线程上的所有连接
+ * - 默认线程池：所有服务共享
+ * - 服务独立线程池（舱壁隔离）：按服务名单独配置，一个服务耗尽线程不会影响其他服务
+ * 线程池都是有界队列，队列满时抛出RejectedExecutionException，由调用方快速返回"过载"
+ * 每个线程池的队列长度、活跃线程数、线程数、拒绝次数注册到RpcMetrics：
+ * server.executor.<服务名|default>.queue/active/pool/rejected
+ * */
+public class ServiceExecutors {
+    //默认线程池名称
+    public static final String DEFAULT = "default";
+
+    //默认线程池，线程数<=0时为null，表示在IO线程上直接执行
+    private final ThreadPoolExecutor defaultExecutor;
+    //key=服务名，value=服务独立线程池
+    private final Map<String, ThreadPoolExecutor> serviceExecutors = new HashMap<>();
+    //key=线程池名称，value=拒绝次数
+    private final Map<String, LongAdder> rejected = new HashMap<>();
+
+    public ServiceExecutors() {
+        this(new ExecutorConfig(), Collections.emptyMap());
+    }
+
+    public ServiceExecutors(ExecutorConfig defaultConfig, Map<String, ExecutorConfig> serviceConfigs) {
+        this.defaultExecutor = newExecutor(DEFAULT, defaultConfig);
+        for (Map.Entry<String, ExecutorConfig> entry : serviceConfigs.entrySet()) {
+            ThreadPoolExecutor executor = newExecutor(entry.getKey(), entry.getValue());
+            if (executor != null) {
+                serviceExecutors.put(entry.getKey(), executor);
+            }
+        }
+    }
+
+    private ThreadPoolExecutor newExecutor(String name, ExecutorConfig config) {
+        if (config.getThreads() == null || config.getThreads() <= 0) {
+            return null;
+        }
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                config.getThreads(), config.getThreads(),
+                60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(config.getQueueSize()),
+                new DefaultThreadFactory("myrpc-" + name),
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        String prefix = "server.executor." + name + ".";
+        RpcMetrics.gauge(prefix + "queue", () -> executor.getQueue().size());
+        RpcMetrics.gauge(prefix + "active", executor::getActiveCount);
+        RpcMetrics.gauge(prefix + "pool", executor::getPoolSize);
+        rejected.put(name, RpcMetrics.counter(prefix + "rejected"));
+        return executor;
+    }
+
+    /*
+     * 获取服务对应的线程池：优先使用服务独立线程池，没有配置则使用默认线程池
+     * 返回null表示直接在当前线程执行
+     * */
+    public Executor executorFor(String serviceName) {
+        ThreadPoolExecutor executor = serviceExecutors.get(serviceName);
+        return executor != null ? executor : defaultExecutor;
+    }
+
+    /*
+     * 记录一次拒绝
+     * */
+    public void rejected(String serviceName) {
+        LongAdder counter = rejected.get(serviceExecutors.containsKey(serviceName) ? serviceName : DEFAULT);
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+
+    /*
+     * 关闭所有线程池
+     * */
+    public void shutdown() {
+        if (defaultExecutor != null) {
+            defaultExecutor.shutdown();
+        }
+        for (ThreadPoolExecutor executor : serviceExecutors.values()) {
+            executor.shutdown();
+        }
+        RpcMetrics.remove("server.executor.");
+    }
+}
@@ -0,0 +1,60 @@
+package wu.myrpc.server.record;
+
+/*
+ * 服务端流量录制配置
+ * - enabled：是否启用，默认不启用
+ * - directory：录制文件所在目录
+ * - sampleRate：采样比例，0~1，1表示录制所有请求
+ * - fileSizeMb：单个录制文件的大小，单位MB，写满后滚动到下一个文件；1~2047，文件整个映射到内存，单个映射不能超过2GB
+ * - maxFiles：最多保留的录制文件数，超过时删除最早的文件，录制占用的磁盘空间不超过fileSizeMb*maxFiles
+ * */
+public class RecordConfig {
+    private Boolean enabled = false;
+    private String directory = "myrpc-traffic";
+    private Double sampleRate = 0.01;
+    private Integer fileSizeMb = 64;
+    private Integer maxFiles = 4;
+
+    public Boolean getEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(Boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    public Double getSampleRate() {
+        return sampleRate;
+    }
+
+    public void setSampleRate(Double sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    public Integer getFileSizeMb() {
+        return fileSizeMb;
+    }
+
+    public void setFileSizeMb(Integer fileSizeMb) {
+        if (fileSizeMb == null || fileSizeMb < 1 || fileSizeMb > 2047) {
+            throw new IllegalArgumentException("fileSizeMb must be between 1 and 2047: " + fileSizeMb);
+        }
+        this.fileSizeMb = fileSizeMb;
+    }
+
+    public Integer getMaxFiles() {
+        return maxFiles;
+    }
+
+    public void setMaxFiles(Integer maxFiles) {
+        this.maxFiles = maxFiles;
+    }
+}
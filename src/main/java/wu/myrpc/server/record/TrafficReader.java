@@ -0,0 +1,138 @@
+package wu.myrpc.server.record;
+
+import wu.myrpc.common.protocol.RpcFrame;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/*
+ * 读取TrafficRecorder录制的文件：按序号从早到晚依次读取目录下的录制文件，逐条返回记录
+ * 文件末尾不完整或损坏的记录被跳过，继续读下一个文件
+ * */
+public class TrafficReader {
+    static final String FILE_PREFIX = "traffic-";
+    static final String FILE_SUFFIX = ".rec";
+
+    private final List<Path> files;
+    private int next;
+    //当前读取的文件，读完为null
+    private ByteBuffer buffer;
+
+    public TrafficReader(Path directory) throws IOException {
+        this.files = files(directory);
+    }
+
+    /*
+     * 读取下一条记录
+     * @return 所有文件都读完时返回null
+     * */
+    public Record next() throws IOException {
+        while (true) {
+            if (buffer == null) {
+                if (next >= files.size()) {
+                    return null;
+                }
+                buffer = open(files.get(next++));
+                continue;
+            }
+            Record record = read(buffer);
+            if (record != null) {
+                return record;
+            }
+            buffer = null;
+        }
+    }
+
+    /*
+     * 目录下的录制文件，按序号从早到晚排列
+     * */
+    public static List<Path> files(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> stream = Files.list(directory)) {
+            return stream.filter(TrafficReader::isRecordFile)
+                    .sorted(Comparator.comparingLong(TrafficReader::sequenceOf))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    //文件名中的序号：traffic-000012.rec -> 12
+    static long sequenceOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()));
+    }
+
+    private static boolean isRecordFile(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX)
+                && name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()).chars().allMatch(Character::isDigit);
+    }
+
+    //映射文件并校验文件头，不是录制文件时返回空缓冲区
+    private static ByteBuffer open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < TrafficRecorder.FILE_HEADER_LENGTH
+                    || buffer.getInt() != TrafficRecorder.FILE_MAGIC
+                    || buffer.getInt() != TrafficRecorder.FILE_VERSION) {
+                return ByteBuffer.allocate(0);
+            }
+            return buffer;
+        }
+    }
+
+    //读取一条记录，遇到结束标记或不完整的记录时返回null
+    private static Record read(ByteBuffer buffer) {
+        if (buffer.remaining() < 4) {
+            return null;
+        }
+        int length = buffer.getInt();
+        int minLength = TrafficRecorder.RECORD_HEADER_LENGTH - 4 + RpcFrame.HEADER_LENGTH;
+        if (length < minLength || length > buffer.remaining()) {
+            return null;
+        }
+        long timestamp = buffer.getLong();
+        byte[] frame = new byte[length - 8];
+        buffer.get(frame);
+        if (ByteBuffer.wrap(frame).getShort() != RpcFrame.MAGIC) {
+            return null;
+        }
+        return new Record(timestamp, frame);
+    }
+
+    /*
+     * 一条录制记录
+     * - timestampNanos：服务端收到请求的时刻，纪元纳秒，只用于计算请求之间的间隔
+     * - frame：网络格式的完整请求帧，包括首部
+     * */
+    public static class Record {
+        //请求id在帧首部中的偏移量：魔数2字节、版本1字节、序列化算法1字节
+        public static final int REQUEST_ID_OFFSET = 4;
+
+        private final long timestampNanos;
+        private final byte[] frame;
+
+        public Record(long timestampNanos, byte[] frame) {
+            this.timestampNanos = timestampNanos;
+            this.frame = frame;
+        }
+
+        public long getTimestampNanos() {
+            return timestampNanos;
+        }
+
+        public byte[] getFrame() {
+            return frame;
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package wu.myrpc.server.record;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import wu.myrpc.common.metrics.RpcMetrics;
+import wu.myrpc.common.protocol.RpcFrame;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * 服务端流量录制：按比例采样收到的请求帧，连同接收时刻追加到内存映射的录制文件中，用于离线回放压测
+ * 文件格式：
+ * - 文件头8字节：魔数"mrtr"（4字节）+ 格式版本（4字节）
+ * - 之后是连续的记录，每条记录：记录长度（4字节，不含自身）+ 接收时刻（8字节，纪元纳秒）+ 请求帧
+ *   请求帧和网络上传输的格式相同（见RpcFrame），可以直接写到连接上回放
+ * - 记录长度为0或剩余空间不足4字节表示文件结束
+ * 文件按traffic-序号.rec命名，写满fileSizeMb后滚动到下一个文件，超过maxFiles时删除最早的文件
+ * 写入只是对映射内存的复制，不经过系统调用；多个IO线程共用一个文件，追加时加锁，采样比例很低时竞争可以忽略
+ * 文件操作都在后台线程上进行：后台线程预先创建并映射下一个文件，当前文件写满时IO线程只是换上预备好的文件，
+ * 旧文件的写回磁盘、超过maxFiles的文件的删除也交给后台线程；预备文件还没有就绪时丢弃记录，不在IO线程上等待磁盘
+ * 只带id的请求帧不含服务名、方法签名，回放时由目标服务端按全局的服务id、方法id解析
+ * 指标：server.record.recorded（录制的请求数）、dropped（单条记录超过文件大小、下一个文件没有就绪而丢弃的请求数）
+ * */
+public class TrafficRecorder {
+    private static Logger logger = LoggerFactory.getLogger(TrafficRecorder.class);
+
+    //文件头：魔数"mrtr"、格式版本
+    static final int FILE_MAGIC = 0x6d727472;
+    static final int FILE_VERSION = 1;
+    static final int FILE_HEADER_LENGTH = 8;
+    //记录首部：记录长度、接收时刻
+    static final int RECORD_HEADER_LENGTH = 12;
+    //预备文件创建失败后，至少间隔这么久再重试
+    private static final long RETRY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final Path directory;
+    private final double sampleRate;
+    private final long fileSize;
+    private final int maxFiles;
+    //把System.nanoTime()换算成纪元纳秒的基准
+    private final long epochNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+    private final long baseNanos = System.nanoTime();
+    private final LongAdder recorded;
+    private final LongAdder dropped;
+
+    //后台线程：创建、映射、写回、删除录制文件
+    private final ExecutorService fileExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "myrpc-record");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    //以下字段只在持有锁时访问
+    //当前写入的文件，第一次录制时换上预备文件
+    private Segment active;
+    //预备好的下一个文件，还没有就绪时为null
+    private Segment next;
+    //是否有预备文件的任务在后台线程上等待或执行
+    private boolean preparing;
+    //上次预备文件失败的时刻
+    private long failedNanos;
+    private boolean closed;
+
+    //以下字段只在后台线程上访问
+    //已经开始写入的录制文件，从早到晚
+    private Deque<Path> files;
+    private long sequence;
+
+    public TrafficRecorder(RecordConfig config) {
+        this.directory = Paths.get(config.getDirectory());
+        this.sampleRate = config.getSampleRate();
+        this.fileSize = (long) config.getFileSizeMb() * 1024 * 1024;
+        this.maxFiles = Math.max(config.getMaxFiles(), 1);
+        this.recorded = RpcMetrics.counter("server.record.recorded");
+        this.dropped = RpcMetrics.counter("server.record.dropped");
+        synchronized (this) {
+            prepareNext();
+        }
+    }
+
+    /*
+     * 按采样比例录制一个请求帧，在IO线程上、消息体被读取之前调用，不改变消息体的读位置
+     * @param receivedNanos 收到请求的时刻（System.nanoTime()）
+     * */
+    public void record(RpcFrame frame, long receivedNanos) {
+        if (sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return;
+        }
+        byte[] serviceName = null;
+        byte[] methodSignature = null;
+        int namesLength = 0;
+        if (frame.hasNames()) {
+            serviceName = frame.getServiceName().getBytes(StandardCharsets.UTF_8);
+            methodSignature = frame.getMethodSignature().getBytes(StandardCharsets.UTF_8);
+            namesLength = 4 + serviceName.length + methodSignature.length;
+        }
+        int bodyLength = frame.getBody().readableBytes();
+        int length = RECORD_HEADER_LENGTH + RpcFrame.HEADER_LENGTH + namesLength + bodyLength;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            //结束标记需要额外4字节
+            if (active == null || active.buffer.remaining() < length + 4) {
+                if (FILE_HEADER_LENGTH + length + 4 > fileSize || !roll()) {
+                    dropped.increment();
+                    return;
+                }
+            }
+            MappedByteBuffer buffer = active.buffer;
+            //先写内容，最后写记录长度，进程中途退出时不会留下不完整的记录
+            int start = buffer.position();
+            buffer.position(start + 4);
+            buffer.putLong(epochNanos + receivedNanos - baseNanos);
+            buffer.putShort(RpcFrame.MAGIC);
+            buffer.put(frame.getVersion());
+            buffer.put(frame.getSerializerId());
+            buffer.putLong(frame.getRequestId());
+            buffer.put(frame.getFlags());
+            buffer.putInt(frame.getServiceId());
+            buffer.putInt(frame.getMethodId());
+            buffer.putInt(namesLength + bodyLength);
+            if (serviceName != null) {
+                buffer.putShort((short) serviceName.length);
+                buffer.put(serviceName);
+                buffer.putShort((short) methodSignature.length);
+                buffer.put(methodSignature);
+            }
+            //getBytes会写满目标缓冲区的剩余空间，先把limit限制在消息体结尾
+            int limit = buffer.limit();
+            buffer.limit(buffer.position() + bodyLength);
+            frame.getBody().getBytes(frame.getBody().readerIndex(), buffer);
+            buffer.limit(limit);
+            buffer.putInt(start, length - 4);
+            recorded.increment();
+        }
+    }
+
+    /*
+     * 停止录制，把当前文件写回磁盘，删除没有用到的预备文件，移除指标，服务器关闭时调用
+     * */
+    public void close() {
+        Segment last;
+        Segment unused;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            last = active;
+            unused = next;
+            active = null;
+            next = null;
+        }
+        fileExecutor.execute(() -> {
+            if (last != null) {
+                last.buffer.force();
+            }
+            if (unused != null) {
+                delete(unused.path);
+            }
+        });
+        fileExecutor.shutdown();
+        try {
+            fileExecutor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        RpcMetrics.remove("server.record.");
+    }
+
+    /*
+     * 当前文件写满时滚动到预备文件，持有锁时调用：当前文件写入结束标记，交给后台线程写回磁盘，再预备下一个文件
+     * @return 预备文件还没有就绪时返回false，这条记录被丢弃
+     * */
+    private boolean roll() {
+        if (next == null) {
+            //上次预备失败时间隔一段时间再重试
+            if (!preparing && System.nanoTime() - failedNanos >= RETRY_NANOS) {
+                prepareNext();
+            }
+            return false;
+        }
+        Segment previous = active;
+        if (previous != null) {
+            previous.buffer.putInt(0);
+        }
+        active = next;
+        next = null;
+        Segment current = active;
+        fileExecutor.execute(() -> retire(previous, current));
+        prepareNext();
+        return true;
+    }
+
+    //在后台线程上预备下一个文件，持有锁时调用
+    private void prepareNext() {
+        preparing = true;
+        try {
+            fileExecutor.execute(this::prepare);
+        } catch (RejectedExecutionException e) {
+            preparing = false;
+        }
+    }
+
+    //后台线程：创建并映射下一个文件，写入文件头
+    private void prepare() {
+        Segment segment = null;
+        try {
+            if (files == null) {
+                Files.createDirectories(directory);
+                List<Path> existing = TrafficReader.files(directory);
+                files = new ArrayDeque<>(existing);
+                sequence = existing.isEmpty() ? 0 : TrafficReader.sequenceOf(existing.get(existing.size() - 1)) + 1;
+            }
+            Path path = directory.resolve(String.format("%s%06d%s", TrafficReader.FILE_PREFIX, sequence++, TrafficReader.FILE_SUFFIX));
+            //映射建立后关闭文件通道不影响映射
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                segment = new Segment(path, channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize));
+            }
+            segment.buffer.putInt(FILE_MAGIC);
+            segment.buffer.putInt(FILE_VERSION);
+        } catch (IOException | RuntimeException e) {
+            //任何失败都要在下面重置preparing，否则之后不会再预备文件，录制一直停止
+            logger.warn("Failed to open traffic record file in {}", directory, e);
+        }
+        synchronized (this) {
+            preparing = false;
+            if (segment == null) {
+                failedNanos = System.nanoTime();
+                return;
+            }
+            if (!closed) {
+                next = segment;
+                return;
+            }
+        }
+        //已经停止录制：预备文件不再使用
+        delete(segment.path);
+    }
+
+    //后台线程：写满的文件写回磁盘，新文件开始写入，删除超过maxFiles的最早的文件
+    private void retire(Segment previous, Segment current) {
+        if (previous != null) {
+            previous.buffer.force();
+        }
+        files.addLast(current.path);
+        while (files.size() > maxFiles) {
+            delete(files.removeFirst());
+        }
+        logger.info("Recording traffic to {}", current.path);
+    }
+
+    private static void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.warn("Failed to delete traffic record file {}", path, e);
+        }
+    }
+
+    //一个录制文件及其映射
+    private static class Segment {
+        private final Path path;
+        private final MappedByteBuffer buffer;
+
+        Segment(Path path, MappedByteBuffer buffer) {
+            this.path = path;
+            this.buffer = buffer;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package wu.myrpc.server.register;
+
+import wu.myrpc.common.protocol.MethodId;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * 服务方法分发表：注册服务时，为服务接口的每个public方法生成MethodInvoker
+ * - 按方法名索引：方法名 -> 该名称下的所有重载方法，再按参数类型精确匹配
+ * - 按方法签名索引：MethodId.signature -> 方法，用于解析消息帧中附带的方法签名
+ * - 按方法id索引：MethodId -> 方法，id冲突的方法不进入该索引，只能按方法名、方法签名查找
+ * 请求处理时只做一次哈希查找和参数类型比较，不再做反射查找
+ * */
+public class DispatchTable {
+    private final Map<String, MethodInvoker[]> byName;
+    private final Map<String, MethodInvoker> bySignature;
+    private final Map<Integer, MethodInvoker> byId;
+    private final List<MethodInvoker> invokers;
+
+    public DispatchTable(String serviceName, Class<?> clazz, Object target) {
+        Map<String, List<MethodInvoker>> names = new HashMap<>();
+        Map<String, MethodInvoker> signatures = new HashMap<>();
+        Map<Integer, MethodInvoker> ids = new HashMap<>();
+        Map<Integer, Boolean> collided = new HashMap<>();
+        List<MethodInvoker> all = new ArrayList<>();
+        Method[] methods = clazz.getMethods();
+        //按签名排序，保证方法顺序稳定
+        Arrays.sort(methods, (a, b) -> MethodId.signature(a).compareTo(MethodId.signature(b)));
+        for (Method method : methods) {
+            String signature = MethodId.signature(method);
+            MethodInvoker invoker = new MethodInvoker(serviceName, method, MethodId.hash(signature), target);
+            all.add(invoker);
+            signatures.putIfAbsent(signature, invoker);
+            names.computeIfAbsent(method.getName(), k -> new ArrayList<>()).add(invoker);
+            if (ids.putIfAbsent(invoker.getMethodId(), invoker) != null) {
+                collided.put(invoker.getMethodId(), true);
+            }
+        }
+        ids.keySet().removeAll(collided.keySet());
+
+        this.byName = new HashMap<>();
+        names.forEach((name, list) -> byName.put(name, list.toArray(new MethodInvoker[0])));
+        this.bySignature = signatures;
+        this.byId = ids;
+        this.invokers = Collections.unmodifiableList(all);
+    }
+
+    /*
+     * 按方法名和参数类型查找，找不到返回null
+     * */
+    public MethodInvoker lookup(String methodName, Class<?>[] parameterTypes) {
+        MethodInvoker[] candidates = byName.get(methodName);
+        if (candidates == null) {
+            return null;
+        }
+        for (MethodInvoker invoker : candidates) {
+            if (invoker.matches(parameterTypes)) {
+                return invoker;
+            }
+        }
+        return null;
+    }
+
+    /*
+     * 按方法签名查找，找不到返回null
+     * */
+    public MethodInvoker lookup(String methodSignature) {
+        return bySignature.get(methodSignature);
+    }
+
+    /*
+     * 按方法id查找，找不到或id冲突时返回null
+     * */
+    public MethodInvoker lookup(int methodId) {
+        return byId.get(methodId);
+    }
+
+    public List<MethodInvoker> getInvokers() {
+        return invokers;
+    }
+}
@@ -1,16 +1,21 @@
 package wu.myrpc.server.register;
 
+import wu.myrpc.common.protocol.MethodId;
+
 import java.util.HashMap;
 import java.util.Map;
 
 /**
  * 本地服务注册器：服务的本地绑定
  * 将服务名和服务实例对象存入本地map，就可以按服务名获取服务实例对象
+ * 注册时为服务生成方法分发表，请求处理时不再做反射查找
  */
 public class LocalServiceRegister implements ServiceRegister {
 
     //本地map作为注册中心，key=服务名，value=服务类实例对象
     private Map<String, ServiceObject> serviceMap = new HashMap<>();
+    //key=服务id，value=服务类实例对象；服务id冲突时value为null，只能按服务名查找
+    private Map<Integer, ServiceObject> serviceIdMap = new HashMap<>();
 
 
     @Override
@@ -19,11 +24,26 @@ public class LocalServiceRegister implements ServiceRegister {
             throw new IllegalArgumentException("Parameter cannot be empty.");
         }
 
+        if (so.getDispatchTable() == null) {
+            so.setDispatchTable(new DispatchTable(so.getName(), so.getClazz(), so.getObj()));
+        }
         this.serviceMap.put(so.getName(), so);
+        int serviceId = MethodId.ofService(so.getName());
+        ServiceObject existing = this.serviceIdMap.get(serviceId);
+        if (this.serviceIdMap.containsKey(serviceId) && (existing == null || !existing.getName().equals(so.getName()))) {
+            this.serviceIdMap.put(serviceId, null);
+        } else {
+            this.serviceIdMap.put(serviceId, so);
+        }
     }
 
     @Override
     public ServiceObject getServiceObject(String name) {
         return this.serviceMap.get(name);
     }
+
+    @Override
+    public ServiceObject getServiceObject(int serviceId) {
+        return this.serviceIdMap.get(serviceId);
+    }
 }
@@ -0,0 +1,147 @@
+package wu.myrpc.server.register;
+
+import wu.myrpc.common.metrics.MethodStats;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/*
+ * 方法调用器：注册服务时为每个服务方法预先生成一个，调用时不再做反射查找
+ * 服务方法被转换成绑定了服务实例的MethodHandle，类型统一为(Object[])Object，
+ * 参数数组直接展开为方法参数；无法生成MethodHandle时退化为反射调用
+ * 调用前按Method.invoke的规则检查参数个数和类型（基本类型允许拆箱和宽化转换），不匹配时抛出IllegalArgumentException，
+ * 不会和服务方法抛出的ClassCastException混在一起
+ * 每个方法带有服务端的调用统计，指标前缀server.method.服务名.方法名
+ * */
+public class MethodInvoker {
+    private static final Object[] EMPTY_ARGS = new Object[0];
+
+    //所属服务名
+    private final String serviceName;
+    private final Method method;
+    //方法id，见MethodId
+    private final int methodId;
+    private final Class<?>[] parameterTypes;
+    //参数类型，基本类型换成包装类型，用于调用前检查参数
+    private final Class<?>[] boxedTypes;
+    //绑定了服务实例的方法句柄，为null时使用反射调用
+    private final MethodHandle handle;
+    private final Object target;
+    //调用统计
+    private final MethodStats stats;
+
+    public MethodInvoker(String serviceName, Method method, int methodId, Object target) {
+        this.serviceName = serviceName;
+        this.method = method;
+        this.methodId = methodId;
+        this.parameterTypes = method.getParameterTypes();
+        this.boxedTypes = new Class<?>[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            boxedTypes[i] = MethodType.methodType(parameterTypes[i]).wrap().returnType();
+        }
+        this.target = target;
+        this.handle = toHandle(method, target);
+        this.stats = MethodStats.of("server.method." + serviceName + "." + method.getName());
+    }
+
+    private static MethodHandle toHandle(Method method, Object target) {
+        try {
+            method.setAccessible(true);
+            return MethodHandles.lookup().unreflect(method)
+                    .bindTo(target)
+                    .asSpreader(Object[].class, method.getParameterCount())
+                    .asType(MethodType.methodType(Object.class, Object[].class));
+        } catch (RuntimeException | IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    /*
+     * 调用服务方法，服务方法抛出的异常包装成InvocationTargetException，与反射调用保持一致
+     * @throws IllegalArgumentException 参数个数或类型与方法不匹配
+     * */
+    public Object invoke(Object[] args) throws InvocationTargetException, IllegalAccessException {
+        if (args == null) {
+            args = EMPTY_ARGS;
+        }
+        if (handle == null) {
+            return method.invoke(target, args);
+        }
+        checkArguments(args);
+        try {
+            return (Object) handle.invokeExact(args);
+        } catch (Throwable t) {
+            throw new InvocationTargetException(t);
+        }
+    }
+
+    private void checkArguments(Object[] args) {
+        if (args.length != boxedTypes.length) {
+            throw new IllegalArgumentException("wrong number of arguments: " + args.length + " expected " + boxedTypes.length);
+        }
+        for (int i = 0; i < args.length; i++) {
+            Object arg = args[i];
+            if (arg == null ? parameterTypes[i].isPrimitive()
+                    : !boxedTypes[i].isInstance(arg) && !widens(arg.getClass(), parameterTypes[i])) {
+                throw new IllegalArgumentException("argument type mismatch: " + i + " " + method);
+            }
+        }
+    }
+
+    //包装类型拆箱后能否宽化转换成基本类型to，如Integer传给long参数
+    private static boolean widens(Class<?> from, Class<?> to) {
+        if (!to.isPrimitive()) {
+            return false;
+        }
+        if (from == Byte.class) {
+            return to == short.class || to == int.class || to == long.class || to == float.class || to == double.class;
+        }
+        if (from == Short.class || from == Character.class) {
+            return to == int.class || to == long.class || to == float.class || to == double.class;
+        }
+        if (from == Integer.class) {
+            return to == long.class || to == float.class || to == double.class;
+        }
+        if (from == Long.class) {
+            return to == float.class || to == double.class;
+        }
+        return from == Float.class && to == double.class;
+    }
+
+    /*
+     * 参数类型是否与请求中的参数类型完全一致
+     * */
+    public boolean matches(Class<?>[] types) {
+        if (types == null) {
+            return parameterTypes.length == 0;
+        }
+        if (types.length != parameterTypes.length) {
+            return false;
+        }
+        for (int i = 0; i < types.length; i++) {
+            if (types[i] != parameterTypes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public int getMethodId() {
+        return methodId;
+    }
+
+    public MethodStats getStats() {
+        return stats;
+    }
+}
@@ -19,6 +19,11 @@ public class ServiceObject {
      */
     private Object obj;
 
+    /**
+     * 服务方法分发表，注册时生成
+     */
+    private DispatchTable dispatchTable;
+
     public ServiceObject(String name, Class<?> clazz, Object obj) {
         super();
         this.name = name;
@@ -50,4 +55,12 @@ public class ServiceObject {
         this.obj = obj;
     }
 
+    public DispatchTable getDispatchTable() {
+        return dispatchTable;
+    }
+
+    public void setDispatchTable(DispatchTable dispatchTable) {
+        this.dispatchTable = dispatchTable;
+    }
+
 }
@@ -7,4 +7,11 @@ public interface ServiceRegister {
     void register(ServiceObject so);
 
     ServiceObject getServiceObject(String name);
+
+    /*
+    * 按服务id（见MethodId.ofService）查找服务，不支持或id冲突时返回null
+    * */
+    default ServiceObject getServiceObject(int serviceId) {
+        return null;
+    }
 }
@@ -14,6 +14,8 @@ import java.io.UnsupportedEncodingException;
 import java.net.InetAddress;
 import java.net.URLEncoder;
 import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.Map;
 
 import static wu.myrpc.common.constants.RpcConstant.*;
 
@@ -37,6 +39,10 @@ public class ZookeeperServiceRegister extends LocalServiceRegister implements Se
     protected String host;
     //要和服务提供方通信必须采用的通信协议
     protected String protocol;
+    //按服务名指定的通信协议，未指定的服务使用protocol
+    protected Map<String, String> serviceProtocols = new HashMap<>();
+    //服务提供方的权重，用于调用方的加权负载均衡
+    protected int weight = 100;
 
     //zookeeper客户端
     CuratorFramework zkClient;
@@ -73,7 +79,8 @@ public class ZookeeperServiceRegister extends LocalServiceRegister implements Se
         Service service = new Service();
         service.setAddress(host + ":" + port);
         service.setName(so.getClazz().getName());//服务名存放的是服务接口名，支持多态
-        service.setProtocol(protocol);
+        service.setProtocol(serviceProtocols.getOrDefault(service.getName(), protocol));
+        service.setWeight(weight);
         this.exportService(service);
 
     }
@@ -119,4 +126,20 @@ public class ZookeeperServiceRegister extends LocalServiceRegister implements Se
             e.printStackTrace();
         }
     }
+
+    public Map<String, String> getServiceProtocols() {
+        return serviceProtocols;
+    }
+
+    public void setServiceProtocols(Map<String, String> serviceProtocols) {
+        this.serviceProtocols = serviceProtocols;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    public void setWeight(int weight) {
+        this.weight = weight;
+    }
 }
@@ -0,0 +1,94 @@
+package wu.myrpc.client;
+
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * 手动推进的时间轮：tick()在调用线程上执行已提交且没有取消的任务，不考虑延迟
+ * */
+public class ManualTimer implements Timer {
+    private final List<ManualTimeout> timeouts = new ArrayList<>();
+
+    @Override
+    public synchronized Timeout newTimeout(TimerTask task, long delay, TimeUnit unit) {
+        ManualTimeout timeout = new ManualTimeout(task);
+        timeouts.add(timeout);
+        return timeout;
+    }
+
+    @Override
+    public Set<Timeout> stop() {
+        return Set.of();
+    }
+
+    /*
+     * 执行到目前为止提交的任务，任务中新提交的任务留到下一次
+     * */
+    public void tick() {
+        List<ManualTimeout> due;
+        synchronized (this) {
+            due = new ArrayList<>(timeouts);
+            timeouts.clear();
+        }
+        for (ManualTimeout timeout : due) {
+            timeout.expire();
+        }
+    }
+
+    private class ManualTimeout implements Timeout {
+        private final TimerTask task;
+        private volatile boolean cancelled;
+        private volatile boolean expired;
+
+        ManualTimeout(TimerTask task) {
+            this.task = task;
+        }
+
+        void expire() {
+            if (cancelled) {
+                return;
+            }
+            expired = true;
+            try {
+                task.run(this);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public Timer timer() {
+            return ManualTimer.this;
+        }
+
+        @Override
+        public TimerTask task() {
+            return task;
+        }
+
+        @Override
+        public boolean isExpired() {
+            return expired;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public boolean cancel() {
+            if (expired) {
+                return false;
+            }
+            cancelled = true;
+            return true;
+        }
+    }
+}
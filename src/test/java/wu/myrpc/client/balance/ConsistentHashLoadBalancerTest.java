@@ -0,0 +1,125 @@
+package wu.myrpc.client.balance;
+
+import org.junit.jupiter.api.Test;
+import wu.myrpc.common.service.Service;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ConsistentHashLoadBalancerTest {
+    private static final int KEYS = 2000;
+
+    interface Cache {
+        String get(String key);
+
+        int size();
+    }
+
+    private static final Method GET;
+    private static final Method SIZE;
+
+    static {
+        try {
+            GET = Cache.class.getMethod("get", String.class);
+            SIZE = Cache.class.getMethod("size");
+        } catch (NoSuchMethodException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @Test
+    void filteredListMatchesRingRebuiltWithoutMissingOwners() {
+        List<Service> all = providers("A", "B", "C", "D", "E");
+        List<Service> filtered = List.of(all.get(0), all.get(2), all.get(4));
+
+        ConsistentHashLoadBalancer balancer = new ConsistentHashLoadBalancer();
+        //先用完整列表建环，之后的过滤列表走跳过不在列表中的提供方的路径
+        balancer.select(all, GET, new Object[]{"warmup"});
+        ConsistentHashLoadBalancer rebuilt = new ConsistentHashLoadBalancer();
+
+        for (int i = 0; i < KEYS; i++) {
+            Object[] args = {"key-" + i};
+            assertSame(rebuilt.select(filtered, GET, args), balancer.select(filtered, GET, args), "key-" + i);
+        }
+    }
+
+    @Test
+    void keysOfRemainingProvidersStayWhenOneLeaves() {
+        List<Service> all = providers("A", "B", "C", "D");
+        List<Service> remaining = all.subList(0, 3);
+        ConsistentHashLoadBalancer balancer = new ConsistentHashLoadBalancer();
+
+        for (int i = 0; i < KEYS; i++) {
+            Object[] args = {"key-" + i};
+            Service before = balancer.select(all, GET, args);
+            if (!before.getAddress().equals("D")) {
+                assertSame(before, balancer.select(remaining, GET, args), "key-" + i);
+            }
+        }
+    }
+
+    @Test
+    void newSnapshotWithSameAddressesIsRebound() {
+        List<Service> first = providers("A", "B", "C");
+        List<Service> second = providers("C", "A", "B");
+        ConsistentHashLoadBalancer balancer = new ConsistentHashLoadBalancer();
+
+        List<String> addresses = new ArrayList<>();
+        for (int i = 0; i < KEYS; i++) {
+            addresses.add(balancer.select(first, GET, new Object[]{"key-" + i}).getAddress());
+        }
+        for (int i = 0; i < KEYS; i++) {
+            Service selected = balancer.select(second, GET, new Object[]{"key-" + i});
+            assertEquals(addresses.get(i), selected.getAddress(), "key-" + i);
+            //返回的是新列表中的对象
+            assertSame(selected, byAddress(second, selected.getAddress()));
+        }
+    }
+
+    @Test
+    void singleProviderIsSelectedWithoutRing() {
+        List<Service> one = providers("A");
+        assertSame(one.get(0), new ConsistentHashLoadBalancer().select(one, GET, new Object[]{"key"}));
+    }
+
+    @Test
+    void missingOrNullKeySpreadsOverProviders() {
+        List<Service> all = providers("A", "B", "C");
+        ConsistentHashLoadBalancer balancer = new ConsistentHashLoadBalancer();
+
+        Set<String> nullKeys = new HashSet<>();
+        Set<String> noArgs = new HashSet<>();
+        for (int i = 0; i < KEYS; i++) {
+            nullKeys.add(balancer.select(all, GET, new Object[]{null}).getAddress());
+            noArgs.add(balancer.select(all, SIZE, new Object[0]).getAddress());
+        }
+        assertEquals(3, nullKeys.size());
+        assertEquals(3, noArgs.size());
+    }
+
+    private static List<Service> providers(String... addresses) {
+        List<Service> list = new ArrayList<>();
+        for (String address : addresses) {
+            Service service = new Service();
+            service.setName("cache");
+            service.setAddress(address);
+            list.add(service);
+        }
+        return list;
+    }
+
+    private static Service byAddress(List<Service> list, String address) {
+        for (Service service : list) {
+            if (service.getAddress().equals(address)) {
+                return service;
+            }
+        }
+        throw new AssertionError(address);
+    }
+}
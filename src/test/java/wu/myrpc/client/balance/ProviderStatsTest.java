@@ -0,0 +1,34 @@
+package wu.myrpc.client.balance;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ProviderStatsTest {
+
+    @Test
+    void statsSurviveUntilLastUserReleases() {
+        List<String> address = List.of("10.0.0.1:7001");
+        ProviderStats.retain(address);
+        ProviderStats.retain(address);
+        ProviderStats stats = ProviderStats.of(address.get(0));
+
+        //一个工厂不再使用这个地址，另一个工厂的统计不受影响
+        ProviderStats.release(address);
+        assertSame(stats, ProviderStats.of(address.get(0)));
+
+        ProviderStats.release(address);
+        assertNotSame(stats, ProviderStats.of(address.get(0)));
+    }
+
+    @Test
+    void releaseWithoutRetainRemovesStats() {
+        List<String> address = List.of("10.0.0.2:7001");
+        ProviderStats stats = ProviderStats.of(address.get(0));
+        ProviderStats.release(address);
+        assertNotSame(stats, ProviderStats.of(address.get(0)));
+    }
+}
@@ -0,0 +1,101 @@
+package wu.myrpc.client.hedge;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+import wu.myrpc.client.ManualTimer;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HedgerTest {
+    private final ManualTimer timer = new ManualTimer();
+    private final CompletableFuture<ByteBuf> primary = new CompletableFuture<>();
+    private final CompletableFuture<ByteBuf> backup = new CompletableFuture<>();
+    private final AtomicInteger backups = new AtomicInteger();
+    private final AtomicInteger discards = new AtomicInteger();
+
+    @Test
+    void backupResponseWinsAndCancelsPrimary() {
+        CompletableFuture<ByteBuf> result = hedge(hedger(1.0), () -> backup);
+        timer.tick();
+        ByteBuf rsp = Unpooled.buffer();
+        backup.complete(rsp);
+        assertSame(rsp, result.join());
+        assertTrue(primary.isCancelled());
+    }
+
+    @Test
+    void primaryFailureWhileBackupIsBeingSentWaitsForBackup() {
+        CompletableFuture<ByteBuf> result = hedge(hedger(1.0), () -> {
+            //对冲请求发送期间第一个请求失败
+            primary.completeExceptionally(new IOException("reset"));
+            return backup;
+        });
+        timer.tick();
+        assertFalse(result.isDone());
+        assertFalse(backup.isCancelled());
+
+        ByteBuf rsp = Unpooled.buffer();
+        backup.complete(rsp);
+        assertSame(rsp, result.join());
+    }
+
+    @Test
+    void primaryFailureWhileBackupIsNotSentFails() {
+        CompletableFuture<ByteBuf> result = hedge(hedger(1.0), () -> {
+            primary.completeExceptionally(new IOException("reset"));
+            //没有可用的提供方，对冲请求没有发出
+            return null;
+        });
+        timer.tick();
+        assertFailedWith(IOException.class, result);
+    }
+
+    @Test
+    void exhaustedBudgetStopsHedging() {
+        CompletableFuture<ByteBuf> result = hedge(hedger(0.0), () -> backup);
+        timer.tick();
+        assertEquals(0, backups.get());
+        assertEquals(1, discards.get());
+
+        primary.completeExceptionally(new IOException("reset"));
+        assertFailedWith(IOException.class, result);
+    }
+
+    @Test
+    void primaryFailureBeforeDelayFailsWithoutBackup() {
+        CompletableFuture<ByteBuf> result = hedge(hedger(1.0), () -> backup);
+        primary.completeExceptionally(new IOException("reset"));
+        assertFailedWith(IOException.class, result);
+
+        timer.tick();
+        assertEquals(0, backups.get());
+        assertEquals(1, discards.get());
+    }
+
+    private Hedger hedger(double budget) {
+        return new Hedger(new HedgeConfig(true, 95.0, budget, 1), timer);
+    }
+
+    private CompletableFuture<ByteBuf> hedge(Hedger hedger, Supplier<CompletableFuture<ByteBuf>> send) {
+        return hedger.hedge(hedger.newMethodLatency(), 1_000_000, () -> primary, () -> {
+            backups.incrementAndGet();
+            return send.get();
+        }, discards::incrementAndGet);
+    }
+
+    private static void assertFailedWith(Class<? extends Throwable> type, CompletableFuture<ByteBuf> result) {
+        CompletionException e = assertThrows(CompletionException.class, result::join);
+        assertTrue(type.isInstance(e.getCause()), String.valueOf(e.getCause()));
+    }
+}
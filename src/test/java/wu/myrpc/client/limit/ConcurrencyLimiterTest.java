@@ -0,0 +1,65 @@
+package wu.myrpc.client.limit;
+
+import org.junit.jupiter.api.Test;
+import wu.myrpc.exception.RpcLimitExceededException;
+import wu.myrpc.exception.RpcRejectedException;
+import wu.myrpc.exception.RpcTimeoutException;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ConcurrencyLimiterTest {
+    private final ConcurrencyLimiter limiter = new ConcurrencyLimiter("test.limit", new AimdLimit(0.5), 20, 1, 100);
+
+    @Test
+    void serverRejectionBacksOff() {
+        release(new RpcRejectedException("overloaded"));
+        assertEquals(10, limiter.getLimit());
+    }
+
+    @Test
+    void timeoutBacksOff() {
+        release(new RpcTimeoutException("timeout"));
+        assertEquals(10, limiter.getLimit());
+    }
+
+    @Test
+    void localLimitRejectionIsNotASample() {
+        release(new RpcLimitExceededException("provider limit exceeded"));
+        assertEquals(20, limiter.getLimit());
+        assertEquals(0, limiter.getInflight());
+    }
+
+    @Test
+    void cancellationAndOtherFailuresAreNotSamples() {
+        release(new CancellationException());
+        release(new IOException("reset"));
+        assertEquals(20, limiter.getLimit());
+        assertEquals(0, limiter.getInflight());
+    }
+
+    @Test
+    void successNearLimitGrows() {
+        int[] acquired = new int[10];
+        for (int i = 0; i < acquired.length; i++) {
+            acquired[i] = limiter.acquire(0);
+        }
+        limiter.release(System.nanoTime(), acquired[9], null);
+        assertEquals(21, limiter.getLimit());
+    }
+
+    @Test
+    void rejectsOverLimit() {
+        for (int i = 0; i < 20; i++) {
+            limiter.acquire(0);
+        }
+        assertEquals(-1, limiter.acquire(0));
+    }
+
+    private void release(Throwable cause) {
+        int acquired = limiter.acquire(0);
+        limiter.release(System.nanoTime(), acquired, cause);
+    }
+}
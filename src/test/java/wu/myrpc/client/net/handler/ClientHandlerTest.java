@@ -0,0 +1,111 @@
+package wu.myrpc.client.net.handler;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+import wu.myrpc.common.protocol.RpcFrame;
+import wu.myrpc.exception.MyRpcException;
+import wu.myrpc.exception.RpcRejectedException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClientHandlerTest {
+    private final ClientHandler handler = new ClientHandler();
+    private final EmbeddedChannel channel = new EmbeddedChannel(handler);
+
+    @Test
+    void outOfOrderResponsesCompleteTheirOwnRequests() {
+        CompletableFuture<ByteBuf> first = send(1);
+        CompletableFuture<ByteBuf> second = send(2);
+        CompletableFuture<ByteBuf> third = send(3);
+        assertEquals(3, handler.inflightCount());
+
+        respond(3, "three");
+        respond(1, "one");
+        assertFalse(second.isDone());
+        respond(2, "two");
+
+        assertEquals("one", take(first));
+        assertEquals("two", take(second));
+        assertEquals("three", take(third));
+        assertEquals(0, handler.inflightCount());
+    }
+
+    @Test
+    void rejectedResponseFailsWithRejection() {
+        CompletableFuture<ByteBuf> future = send(1);
+        ByteBuf body = Unpooled.copiedBuffer("overloaded", StandardCharsets.UTF_8);
+        channel.writeInbound(new RpcFrame((byte) 1, 1L, (byte) (RpcFrame.FLAG_RESPONSE | RpcFrame.FLAG_REJECTED), body));
+
+        CompletionException e = assertThrows(CompletionException.class, future::join);
+        assertTrue(e.getCause() instanceof RpcRejectedException, e.getCause().toString());
+        assertEquals(0, body.refCnt());
+    }
+
+    @Test
+    void responseOfCancelledRequestIsReleased() {
+        CompletableFuture<ByteBuf> future = send(1);
+        handler.cancel(1);
+        assertTrue(future.isCancelled());
+
+        ByteBuf body = Unpooled.copiedBuffer("late", StandardCharsets.UTF_8);
+        channel.writeInbound(new RpcFrame((byte) 1, 1L, RpcFrame.FLAG_RESPONSE, body));
+        assertEquals(0, body.refCnt());
+    }
+
+    @Test
+    void channelInactiveFailsAllPendingRequests() {
+        CompletableFuture<ByteBuf> first = send(1);
+        CompletableFuture<ByteBuf> second = send(2);
+
+        channel.close();
+
+        for (CompletableFuture<ByteBuf> future : List.of(first, second)) {
+            CompletionException e = assertThrows(CompletionException.class, future::join);
+            assertTrue(e.getCause() instanceof MyRpcException, e.getCause().toString());
+        }
+        assertEquals(0, handler.inflightCount());
+    }
+
+    @Test
+    void drainingChannelClosesAfterLastResponse() {
+        CompletableFuture<ByteBuf> future = send(1);
+        handler.closeWhenDrained(channel);
+        assertTrue(channel.isOpen());
+
+        respond(1, "done");
+        assertEquals("done", take(future));
+        assertFalse(channel.isOpen());
+    }
+
+    private CompletableFuture<ByteBuf> send(long requestId) {
+        CompletableFuture<ByteBuf> future = handler.send(channel, new RpcFrame((byte) 1, requestId, (byte) 0, new byte[0]));
+        RpcFrame written = channel.readOutbound();
+        assertEquals(requestId, written.getRequestId());
+        written.release();
+        return future;
+    }
+
+    private void respond(long requestId, String body) {
+        channel.writeInbound(new RpcFrame((byte) 1, requestId, RpcFrame.FLAG_RESPONSE,
+                Unpooled.copiedBuffer(body, StandardCharsets.UTF_8)));
+    }
+
+    private static String take(CompletableFuture<ByteBuf> future) {
+        ByteBuf body = future.join();
+        try {
+            return body.toString(StandardCharsets.UTF_8);
+        } finally {
+            body.release();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package wu.myrpc.client.net.handler;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+import wu.myrpc.common.protocol.RpcFrame;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MethodIdHandlerTest {
+    private static final String SERVICE = "wu.myrpc.HelloService";
+
+    @Test
+    void namesAreAnnouncedOncePerConnection() {
+        EmbeddedChannel channel = new EmbeddedChannel(new MethodIdHandler());
+        RpcFrame first = write(channel, 1, 2, SERVICE, "hello()");
+        assertTrue(first.hasNames());
+        assertEquals(SERVICE, first.getServiceName());
+        assertEquals("hello()", first.getMethodSignature());
+
+        RpcFrame second = write(channel, 1, 2, SERVICE, "hello()");
+        assertFalse(second.hasNames());
+        assertNull(second.getServiceName());
+        assertEquals(1, second.getServiceId());
+        assertEquals(2, second.getMethodId());
+
+        //新的连接重新附带名称
+        RpcFrame other = write(new EmbeddedChannel(new MethodIdHandler()), 1, 2, SERVICE, "hello()");
+        assertTrue(other.hasNames());
+    }
+
+    @Test
+    void collidingMethodAlwaysCarriesNames() {
+        EmbeddedChannel channel = new EmbeddedChannel(new MethodIdHandler());
+        write(channel, 1, 2, SERVICE, "hello()");
+        for (int i = 0; i < 3; i++) {
+            RpcFrame colliding = write(channel, 1, 2, SERVICE, "bye()");
+            assertTrue(colliding.hasNames());
+            assertEquals("bye()", colliding.getMethodSignature());
+        }
+        //先出现的方法仍然只发送id
+        assertFalse(write(channel, 1, 2, SERVICE, "hello()").hasNames());
+    }
+
+    @Test
+    void framesWithoutIdsKeepNames() {
+        EmbeddedChannel channel = new EmbeddedChannel(new MethodIdHandler());
+        write(channel, 0, 0, SERVICE, "hello()");
+        assertTrue(write(channel, 0, 0, SERVICE, "hello()").hasNames());
+    }
+
+    private static RpcFrame write(EmbeddedChannel channel, int serviceId, int methodId, String service, String signature) {
+        RpcFrame frame = new RpcFrame((byte) 1, 1L, (byte) 0, new byte[0]);
+        frame.setServiceId(serviceId);
+        frame.setMethodId(methodId);
+        frame.attachNames(service, signature);
+        assertTrue(channel.writeOutbound(frame));
+        return channel.readOutbound();
+    }
+}
@@ -0,0 +1,131 @@
+package wu.myrpc.client.outlier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import wu.myrpc.client.ManualTimer;
+import wu.myrpc.common.service.Service;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class OutlierDetectorTest {
+    private static final long BASE_EJECTION_MILLIS = 20;
+
+    private final ManualTimer timer = new ManualTimer();
+    private OutlierDetector detector;
+    private OutlierDetector.ServiceOutliers outliers;
+    private Service a;
+    private Service b;
+    private List<Service> list;
+
+    @BeforeEach
+    void setUp() {
+        OutlierConfig config = new OutlierConfig();
+        config.setMinRequests(10);
+        config.setBaseEjectionMillis(BASE_EJECTION_MILLIS);
+        config.setProbeRequests(2);
+        detector = new OutlierDetector(config, timer);
+        outliers = detector.forService("outlier");
+        a = provider("10.0.0.1:8000");
+        b = provider("10.0.0.2:8000");
+        list = List.of(a, b);
+    }
+
+    @AfterEach
+    void tearDown() {
+        detector.close();
+    }
+
+    @Test
+    void healthyProvidersAreNotFiltered() {
+        record(a, 20, false);
+        record(b, 20, false);
+        timer.tick();
+        assertSame(list, outliers.filter(list));
+    }
+
+    @Test
+    void highErrorRateEjects() {
+        eject();
+        assertEquals(List.of(b), outliers.filter(list));
+    }
+
+    @Test
+    void probeSuccessesRecover() throws InterruptedException {
+        eject();
+        probe();
+        //试探中、没有在途请求时放行
+        assertEquals(list, outliers.filter(list));
+        record(a, 2, false);
+        assertSame(list, outliers.filter(list));
+    }
+
+    @Test
+    void probeFailureEjectsAgain() throws InterruptedException {
+        eject();
+        probe();
+        record(a, 1, true);
+        assertEquals(List.of(b), outliers.filter(list));
+    }
+
+    @Test
+    void ejectedProviderThatLeftDiscoveryIsForgotten() {
+        eject();
+        outliers.retain(List.of(b));
+        //摘除数归零，filter直接返回原列表
+        assertSame(list, outliers.filter(list));
+    }
+
+    @Test
+    void probingProviderThatLeftDiscoveryIsForgotten() throws InterruptedException {
+        eject();
+        probe();
+        outliers.retain(List.of(b));
+        assertSame(list, outliers.filter(list));
+        //之后再记录的结果从健康状态重新统计
+        record(a, 1, true);
+        assertSame(list, outliers.filter(list));
+    }
+
+    @Test
+    void cancellationsAreNotFailures() {
+        for (int i = 0; i < 20; i++) {
+            outliers.record(a.getAddress(), 1000, new CancellationException());
+        }
+        record(b, 20, false);
+        timer.tick();
+        assertSame(list, outliers.filter(list));
+    }
+
+    //a全部失败，b全部成功，检测一次后a被摘除
+    private void eject() {
+        record(a, 20, true);
+        record(b, 20, false);
+        timer.tick();
+    }
+
+    //等待摘除到期，检测一次后进入试探
+    private void probe() throws InterruptedException {
+        Thread.sleep(BASE_EJECTION_MILLIS + 5);
+        timer.tick();
+    }
+
+    private void record(Service service, int n, boolean failure) {
+        for (int i = 0; i < n; i++) {
+            outliers.record(service.getAddress(), TimeUnit.MILLISECONDS.toNanos(1), failure ? new IOException("refused") : null);
+        }
+    }
+
+    private static Service provider(String address) {
+        Service service = new Service();
+        service.setName("outlier");
+        service.setAddress(address);
+        return service;
+    }
+}
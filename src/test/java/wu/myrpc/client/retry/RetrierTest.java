@@ -0,0 +1,145 @@
+package wu.myrpc.client.retry;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+import wu.myrpc.client.ManualTimer;
+import wu.myrpc.common.metrics.RpcMetrics;
+import wu.myrpc.exception.RpcConnectException;
+import wu.myrpc.exception.RpcRejectedException;
+import wu.myrpc.exception.RpcTimeoutException;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RetrierTest {
+    private static final AtomicInteger SERVICES = new AtomicInteger();
+
+    private final ManualTimer timer = new ManualTimer();
+    //每次尝试返回的future，按顺序使用
+    private final List<CompletableFuture<ByteBuf>> attempts = new ArrayList<>();
+    private final String service = "retry-" + SERVICES.incrementAndGet();
+
+    @Test
+    void timeoutIsNotRetried() throws Exception {
+        CompletableFuture<ByteBuf> result = call(retrier(10.0), true);
+        fail(0, new RpcTimeoutException("timeout"));
+        assertFailedWith(RpcTimeoutException.class, result);
+        assertEquals(1, attempts.size());
+    }
+
+    @Test
+    void cancellationIsNotRetried() throws Exception {
+        CompletableFuture<ByteBuf> result = call(retrier(10.0), true);
+        attempts.get(0).cancel(false);
+        timer.tick();
+        assertTrue(result.isCompletedExceptionally());
+        assertEquals(1, attempts.size());
+    }
+
+    @Test
+    void connectFailureIsRetriedForNonIdempotentMethod() throws Exception {
+        CompletableFuture<ByteBuf> result = call(retrier(10.0), false);
+        fail(0, new RpcConnectException("no connection", new ConnectException()));
+        assertEquals(2, attempts.size());
+        ByteBuf rsp = Unpooled.buffer();
+        attempts.get(1).complete(rsp);
+        assertSame(rsp, result.join());
+        assertEquals(1L, metric("retries"));
+    }
+
+    @Test
+    void rejectionIsRetriedForNonIdempotentMethod() throws Exception {
+        CompletableFuture<ByteBuf> result = call(retrier(10.0), false);
+        fail(0, new RpcRejectedException("overloaded"));
+        assertEquals(2, attempts.size());
+        attempts.get(1).complete(Unpooled.buffer());
+        result.join().release();
+    }
+
+    @Test
+    void networkFailureIsRetriedOnlyForIdempotentMethod() throws Exception {
+        CompletableFuture<ByteBuf> result = call(retrier(10.0), false);
+        fail(0, new IOException("reset"));
+        assertFailedWith(IOException.class, result);
+        assertEquals(1, attempts.size());
+
+        attempts.clear();
+        result = call(retrier(10.0), true);
+        fail(0, new IOException("reset"));
+        assertEquals(2, attempts.size());
+    }
+
+    @Test
+    void exhaustedBudgetStopsRetries() throws Exception {
+        CompletableFuture<ByteBuf> result = call(retrier(0.0), false);
+        fail(0, new RpcConnectException("no connection", new ConnectException()));
+        assertFailedWith(RpcConnectException.class, result);
+        assertEquals(1, attempts.size());
+        assertEquals(1L, metric("exhausted"));
+    }
+
+    @Test
+    void retriesStopAtMaxRetries() throws Exception {
+        CompletableFuture<ByteBuf> result = call(retrier(10.0), false);
+        for (int i = 0; i < 3; i++) {
+            fail(i, new RpcRejectedException("overloaded " + i));
+        }
+        assertFailedWith(RpcRejectedException.class, result);
+        //第一次调用 + 2次重试
+        assertEquals(3, attempts.size());
+    }
+
+    @Test
+    void retryAfterDeadlineIsSkipped() throws Exception {
+        Retrier retrier = retrier(10.0);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(1);
+        CompletableFuture<ByteBuf> result = retrier.call(retrier.forService(service), false, deadline, this::send);
+        Thread.sleep(5);
+        fail(0, new RpcRejectedException("overloaded"));
+        assertFailedWith(RpcRejectedException.class, result);
+        assertEquals(1, attempts.size());
+    }
+
+    private Retrier retrier(double budget) {
+        //不退避，重试在下一次tick时发出
+        return new Retrier(new RetryConfig(2, 0L, 0L, budget), timer);
+    }
+
+    private CompletableFuture<ByteBuf> call(Retrier retrier, boolean idempotent) throws Exception {
+        return retrier.call(retrier.forService(service), idempotent, 0, this::send);
+    }
+
+    private CompletableFuture<ByteBuf> send() {
+        CompletableFuture<ByteBuf> future = new CompletableFuture<>();
+        attempts.add(future);
+        return future;
+    }
+
+    //第i次尝试失败，推进时间轮发出可能的重试
+    private void fail(int i, Throwable cause) {
+        attempts.get(i).completeExceptionally(cause);
+        timer.tick();
+    }
+
+    private long metric(String name) {
+        return RpcMetrics.snapshot("client.retry." + service + ".").get("client.retry." + service + "." + name).longValue();
+    }
+
+    private static void assertFailedWith(Class<? extends Throwable> type, CompletableFuture<ByteBuf> result) {
+        CompletionException e = assertThrows(CompletionException.class, result::join);
+        assertTrue(type.isInstance(e.getCause()), String.valueOf(e.getCause()));
+    }
+}
@@ -0,0 +1,48 @@
+package wu.myrpc.common.context;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RpcContextTest {
+
+    @AfterEach
+    void clear() {
+        RpcContext.setDeadline(0);
+    }
+
+    @Test
+    void withoutDeadlineUsesOwnTimeout() {
+        assertEquals(200, RpcContext.timeoutMillis(200));
+        assertEquals(0, RpcContext.timeoutMillis(0));
+        assertEquals(0, RpcContext.timeoutMillis(-1));
+    }
+
+    @Test
+    void nestedCallUsesRemainingTime() {
+        RpcContext.setDeadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100));
+        long timeout = RpcContext.timeoutMillis(5000);
+        assertTrue(timeout > 0 && timeout <= 100, String.valueOf(timeout));
+        //自身的超时时间更短时使用自身的
+        assertEquals(10, RpcContext.timeoutMillis(10));
+        //自身不限制时使用剩余时间
+        assertTrue(RpcContext.timeoutMillis(0) <= 100);
+    }
+
+    @Test
+    void passedDeadlineHasNoTimeLeft() {
+        RpcContext.setDeadline(System.nanoTime() - 1);
+        assertEquals(-1, RpcContext.timeoutMillis(5000));
+    }
+
+    @Test
+    void setDeadlineReturnsPrevious() {
+        assertEquals(0, RpcContext.setDeadline(42));
+        assertEquals(42, RpcContext.setDeadline(0));
+        assertEquals(0, RpcContext.getDeadline());
+    }
+}
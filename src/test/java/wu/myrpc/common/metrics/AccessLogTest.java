@@ -0,0 +1,156 @@
+package wu.myrpc.common.metrics;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.AppenderBase;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import wu.myrpc.common.protocol.StatusCode;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AccessLogTest {
+    private static final AtomicInteger NAMES = new AtomicInteger();
+
+    @Test
+    void recordsAreFormattedInOrder() {
+        String name = name();
+        CapturingAppender appender = attach(name);
+        AccessLog log = new AccessLog(name, config(1.0, 16));
+        log.log("Hello", "hello", "10.0.0.1:8000", StatusCode.SUCCESS, TimeUnit.MICROSECONDS.toNanos(1500), 10, 20);
+        log.log("Hello", "bye", null, StatusCode.DEADLINE_EXCEEDED, TimeUnit.MICROSECONDS.toNanos(7), -1, -1);
+        log.close();
+
+        List<String> lines = appender.messages;
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0).endsWith(" Hello.hello peer=10.0.0.1:8000 status=SUCCESS latency-us=1500 request-bytes=10 response-bytes=20"),
+                lines.get(0));
+        assertTrue(lines.get(1).endsWith(" Hello.bye status=DEADLINE_EXCEEDED latency-us=7"), lines.get(1));
+    }
+
+    @Test
+    void failuresAreLoggedWhenSuccessesAreSampledOut() {
+        String name = name();
+        CapturingAppender appender = attach(name);
+        AccessLog log = new AccessLog(name, config(0.0, 16));
+        for (int i = 0; i < 10; i++) {
+            log.log("Hello", "hello", null, StatusCode.SUCCESS, 1000, -1, -1);
+        }
+        log.log("Hello", "hello", null, StatusCode.ERROR, 1000, -1, -1);
+        log.close();
+
+        assertEquals(1, appender.messages.size());
+        assertTrue(appender.messages.get(0).contains("status=ERROR"), appender.messages.get(0));
+    }
+
+    @Test
+    void fullBufferDropsNewRecords() throws InterruptedException {
+        String name = name();
+        CapturingAppender appender = attach(name);
+        appender.block();
+        AccessLog log = new AccessLog(name, config(1.0, 4));
+        LongAdder logged = RpcMetrics.counter(name + ".access.logged");
+        LongAdder dropped = RpcMetrics.counter(name + ".access.dropped");
+
+        //后台线程阻塞在第一条记录上，这条记录的槽位还没有让出
+        log.log("Hello", "hello", null, StatusCode.SUCCESS, 0, -1, -1);
+        assertTrue(appender.entered.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i <= 4; i++) {
+            log.log("Hello", "m" + i, null, StatusCode.SUCCESS, 0, -1, -1);
+        }
+        assertEquals(1, dropped.sum());
+
+        appender.release();
+        log.close();
+        assertEquals(4, logged.sum());
+        assertEquals(4, appender.messages.size());
+        assertTrue(appender.messages.get(3).contains("Hello.m3 "), appender.messages.get(3));
+    }
+
+    @Test
+    void slotsAreReusedAfterDraining() throws InterruptedException {
+        String name = name();
+        CapturingAppender appender = attach(name);
+        AccessLog log = new AccessLog(name, config(1.0, 4));
+        LongAdder logged = RpcMetrics.counter(name + ".access.logged");
+        LongAdder dropped = RpcMetrics.counter(name + ".access.dropped");
+
+        //每次写满缓冲区，等后台线程取完再写，序号绕环多次
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 4; i++) {
+                log.log("Hello", "m" + (round * 4 + i), null, StatusCode.SUCCESS, 0, -1, -1);
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (logged.sum() < (round + 1) * 4 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+        }
+        log.close();
+
+        assertEquals(0, dropped.sum());
+        assertEquals(40, appender.messages.size());
+        for (int i = 0; i < 40; i++) {
+            assertTrue(appender.messages.get(i).contains("Hello.m" + i + " "), appender.messages.get(i));
+        }
+    }
+
+    private static String name() {
+        return "test" + NAMES.incrementAndGet();
+    }
+
+    private static AccessLogConfig config(double sampleRate, int bufferSize) {
+        AccessLogConfig config = new AccessLogConfig(true, sampleRate);
+        config.setBufferSize(bufferSize);
+        return config;
+    }
+
+    private static CapturingAppender attach(String name) {
+        Logger logger = (Logger) LoggerFactory.getLogger("myrpc.access." + name);
+        logger.setLevel(Level.INFO);
+        logger.setAdditive(false);
+        CapturingAppender appender = new CapturingAppender();
+        appender.start();
+        logger.addAppender(appender);
+        return appender;
+    }
+
+    /*
+     * 收集格式化后的消息；block()之后在第一条消息上阻塞，直到release()
+     * */
+    private static class CapturingAppender extends AppenderBase<ILoggingEvent> {
+        private final List<String> messages = new CopyOnWriteArrayList<>();
+        private final CountDownLatch entered = new CountDownLatch(1);
+        private volatile CountDownLatch gate;
+
+        void block() {
+            gate = new CountDownLatch(1);
+        }
+
+        void release() {
+            gate.countDown();
+        }
+
+        @Override
+        protected void append(ILoggingEvent event) {
+            messages.add(event.getFormattedMessage());
+            entered.countDown();
+            CountDownLatch g = gate;
+            if (g != null) {
+                try {
+                    g.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+}
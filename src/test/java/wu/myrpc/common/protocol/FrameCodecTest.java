@@ -0,0 +1,133 @@
+package wu.myrpc.common.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.DecoderException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FrameCodecTest {
+
+    @Test
+    void roundTripWithIds() {
+        RpcFrame frame = new RpcFrame((byte) 3, 42L, (byte) 0, "hello".getBytes(StandardCharsets.UTF_8));
+        frame.setServiceId(0x12345678);
+        frame.setMethodId(-7);
+
+        RpcFrame decoded = decode(encode(frame));
+        //编码后消息体已经释放
+        assertEquals(0, frame.refCnt());
+        try {
+            assertEquals(RpcFrame.VERSION, decoded.getVersion());
+            assertEquals(3, decoded.getSerializerId());
+            assertEquals(42L, decoded.getRequestId());
+            assertEquals(0, decoded.getFlags());
+            assertEquals(0x12345678, decoded.getServiceId());
+            assertEquals(-7, decoded.getMethodId());
+            assertFalse(decoded.hasNames());
+            assertNull(decoded.getServiceName());
+            assertEquals("hello", decoded.getBody().toString(StandardCharsets.UTF_8));
+        } finally {
+            decoded.release();
+        }
+    }
+
+    @Test
+    void roundTripWithNames() {
+        RpcFrame frame = new RpcFrame((byte) 1, 7L, (byte) 0, "body".getBytes(StandardCharsets.UTF_8));
+        frame.setServiceId(1);
+        frame.setMethodId(2);
+        frame.attachNames("wu.myrpc.HelloService", "hello(java.lang.String)");
+
+        RpcFrame decoded = decode(encode(frame));
+        try {
+            assertTrue(decoded.hasNames());
+            assertEquals("wu.myrpc.HelloService", decoded.getServiceName());
+            assertEquals("hello(java.lang.String)", decoded.getMethodSignature());
+            assertEquals(1, decoded.getServiceId());
+            assertEquals(2, decoded.getMethodId());
+            //服务名、方法签名不算在消息体中
+            assertEquals("body", decoded.getBody().toString(StandardCharsets.UTF_8));
+        } finally {
+            decoded.release();
+        }
+    }
+
+    @Test
+    void responseWithEmptyBody() {
+        RpcFrame frame = new RpcFrame((byte) 1, 9L, (byte) (RpcFrame.FLAG_RESPONSE | RpcFrame.FLAG_REJECTED), Unpooled.EMPTY_BUFFER);
+        RpcFrame decoded = decode(encode(frame));
+        try {
+            assertTrue(decoded.isResponse());
+            assertTrue(decoded.isRejected());
+            assertFalse(decoded.getBody().isReadable());
+        } finally {
+            decoded.release();
+        }
+    }
+
+    @Test
+    void frameSplitAcrossReads() {
+        RpcFrame frame = new RpcFrame((byte) 1, 5L, (byte) 0, "split".getBytes(StandardCharsets.UTF_8));
+        ByteBuf bytes = encode(frame);
+        EmbeddedChannel channel = new EmbeddedChannel(new FrameDecoder());
+        //半包：首部的一部分
+        assertFalse(channel.writeInbound(bytes.readRetainedSlice(10)));
+        assertTrue(channel.writeInbound(bytes));
+        RpcFrame decoded = channel.readInbound();
+        try {
+            assertEquals(5L, decoded.getRequestId());
+            assertEquals("split", decoded.getBody().toString(StandardCharsets.UTF_8));
+        } finally {
+            decoded.release();
+        }
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    void badMagicIsRejected() {
+        ByteBuf bytes = encode(new RpcFrame((byte) 1, 1L, (byte) 0, new byte[]{1}));
+        bytes.setShort(0, 0x1234);
+        DecoderException e = assertThrows(DecoderException.class, () -> new EmbeddedChannel(new FrameDecoder()).writeInbound(bytes));
+        assertTrue(e instanceof CorruptedFrameException, e.toString());
+    }
+
+    @Test
+    void unsupportedVersionIsRejected() {
+        RpcFrame frame = new RpcFrame((byte) 1, 1L, (byte) 0, new byte[]{1});
+        frame.setVersion((byte) (RpcFrame.VERSION + 1));
+        ByteBuf bytes = encode(frame);
+        DecoderException e = assertThrows(DecoderException.class, () -> new EmbeddedChannel(new FrameDecoder()).writeInbound(bytes));
+        assertTrue(e instanceof CorruptedFrameException, e.toString());
+    }
+
+    //编码器输出首部和消息体两个缓冲区，合并成一个便于解码
+    private static ByteBuf encode(RpcFrame frame) {
+        EmbeddedChannel channel = new EmbeddedChannel(new FrameEncoder());
+        assertTrue(channel.writeOutbound(frame));
+        ByteBuf out = Unpooled.buffer();
+        ByteBuf part;
+        while ((part = channel.readOutbound()) != null) {
+            out.writeBytes(part);
+            part.release();
+        }
+        return out;
+    }
+
+    private static RpcFrame decode(ByteBuf bytes) {
+        EmbeddedChannel channel = new EmbeddedChannel(new FrameDecoder());
+        assertTrue(channel.writeInbound(bytes));
+        RpcFrame frame = channel.readInbound();
+        assertFalse(channel.finish());
+        return frame;
+    }
+}
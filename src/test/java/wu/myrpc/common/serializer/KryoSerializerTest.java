@@ -0,0 +1,143 @@
+package wu.myrpc.common.serializer;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+import wu.myrpc.common.protocol.RequestDatagram;
+import wu.myrpc.common.protocol.ResponseDatagram;
+import wu.myrpc.common.protocol.StatusCode;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KryoSerializerTest {
+    private static final KryoSerializer SERIALIZER = KryoSerializer.INSTANCE;
+
+    static {
+        KryoSerializer.register(Node.class, KryoSerializer.USER_REGISTRATION_START + 50);
+    }
+
+    //业务类型
+    public static class Node {
+        private String name;
+        private Node next;
+        private List<Node> children = new ArrayList<>();
+
+        public Node() {
+        }
+
+        Node(String name) {
+            this.name = name;
+        }
+    }
+
+    @Test
+    void requestWithFrameworkTypesRoundTrips() {
+        RequestDatagram req = new RequestDatagram();
+        req.setServiceName("wu.myrpc.HelloService");
+        req.setMethodName("hello");
+        req.getHeaders().put("timeout", "5000");
+        Map<String, Integer> map = new HashMap<>();
+        map.put("a", 1);
+        Map<String, Integer> ordered = new LinkedHashMap<>();
+        ordered.put("z", 26);
+        ordered.put("y", 25);
+        List<String> list = new ArrayList<>(List.of("x", "y"));
+        req.setParameterTypes(new Class<?>[]{Map.class, Map.class, List.class, byte[].class, Object[].class});
+        req.setParameters(new Object[]{map, ordered, list, new byte[]{1, 2, 3}, new Object[]{"s", 1L}});
+
+        RequestDatagram copy = SERIALIZER.deserialize(RequestDatagram.class, SERIALIZER.serialize(req));
+        assertEquals("wu.myrpc.HelloService", copy.getServiceName());
+        assertEquals("hello", copy.getMethodName());
+        assertEquals("5000", copy.getHeaders().get("timeout"));
+        assertArrayEquals(req.getParameterTypes(), copy.getParameterTypes());
+        Object[] args = copy.getParameters();
+        assertEquals(map, args[0]);
+        assertEquals(List.of("z", "y"), new ArrayList<>(((Map<?, ?>) args[1]).keySet()));
+        assertEquals(list, args[2]);
+        assertArrayEquals(new byte[]{1, 2, 3}, (byte[]) args[3]);
+        assertArrayEquals(new Object[]{"s", 1L}, (Object[]) args[4]);
+    }
+
+    @Test
+    void responseWithStatusAndExceptionRoundTrips() {
+        ResponseDatagram rsp = new ResponseDatagram(StatusCode.DEADLINE_EXCEEDED);
+        rsp.setException(new IllegalStateException("too late"));
+
+        ResponseDatagram copy = SERIALIZER.deserialize(ResponseDatagram.class, SERIALIZER.serialize(rsp));
+        assertEquals(StatusCode.DEADLINE_EXCEEDED, copy.getStatus());
+        assertTrue(copy.getException() instanceof IllegalStateException);
+        assertEquals("too late", copy.getException().getMessage());
+    }
+
+    @Test
+    void registeredUserTypeRoundTripsThroughByteBuf() {
+        ResponseDatagram rsp = new ResponseDatagram(StatusCode.SUCCESS);
+        Node root = new Node("root");
+        root.children.add(new Node("child"));
+        rsp.setReturnValue(root);
+
+        for (ByteBuf buf : new ByteBuf[]{Unpooled.buffer(), PooledByteBufAllocator.DEFAULT.directBuffer()}) {
+            try {
+                SERIALIZER.serialize(rsp, buf);
+                Node copy = (Node) SERIALIZER.deserialize(ResponseDatagram.class, buf).getReturnValue();
+                assertEquals("root", copy.name);
+                assertEquals("child", copy.children.get(0).name);
+                assertFalse(buf.isReadable());
+            } finally {
+                buf.release();
+            }
+        }
+    }
+
+    @Test
+    void cyclicAndSharedGraphsRoundTrip() {
+        Node a = new Node("a");
+        Node b = new Node("b");
+        a.next = b;
+        b.next = a;
+        a.children.add(b);
+
+        Node copy = SERIALIZER.deserialize(Node.class, SERIALIZER.serialize(a));
+        assertEquals("b", copy.next.name);
+        assertSame(copy, copy.next.next);
+        assertSame(copy.next, copy.children.get(0));
+    }
+
+    @Test
+    void sharedObjectsAreCopiedWithoutReferences() {
+        Node a = new Node("a");
+        Node shared = new Node("shared");
+        a.next = shared;
+        a.children.add(shared);
+        KryoSerializer.setReferences(false);
+        try {
+            Node copy = SERIALIZER.deserialize(Node.class, SERIALIZER.serialize(a));
+            assertEquals("shared", copy.children.get(0).name);
+            assertNotSame(copy.next, copy.children.get(0));
+        } finally {
+            KryoSerializer.setReferences(true);
+        }
+    }
+
+    @Test
+    void largeMessageDoesNotBreakLaterMessages() {
+        byte[] large = new byte[1024 * 1024];
+        large[large.length - 1] = 7;
+        assertArrayEquals(large, SERIALIZER.deserialize(byte[].class, SERIALIZER.serialize(large)));
+        //换回初始大小的缓冲区后，小消息和再次写出的大消息都正常
+        assertEquals("small", SERIALIZER.deserialize(String.class, SERIALIZER.serialize("small")));
+        assertArrayEquals(large, SERIALIZER.deserialize(byte[].class, SERIALIZER.serialize(large)));
+    }
+}
@@ -0,0 +1,107 @@
+package wu.myrpc.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+import wu.myrpc.common.protocol.MessageProtocolSerialize;
+import wu.myrpc.common.protocol.MethodId;
+import wu.myrpc.common.protocol.RequestDatagram;
+import wu.myrpc.common.protocol.ResponseDatagram;
+import wu.myrpc.common.protocol.RpcFrame;
+import wu.myrpc.common.protocol.StatusCode;
+import wu.myrpc.common.serializer.Serializer;
+import wu.myrpc.server.executor.ExecutorConfig;
+import wu.myrpc.server.executor.ServiceExecutors;
+import wu.myrpc.server.register.CollidingService;
+import wu.myrpc.server.register.LocalServiceRegister;
+import wu.myrpc.server.register.ServiceObject;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class NettyRpcServerTest {
+    private static final String SERVICE = CollidingService.class.getName();
+    private static final int SERVICE_ID = MethodId.ofService(SERVICE);
+    //op444488()和op2301642()的方法id相同
+    private static final int COLLIDING_ID = MethodId.hash("op444488()");
+
+    private final MessageProtocolSerialize protocol = new MessageProtocolSerialize(Serializer.JAVA);
+    private final EmbeddedChannel channel;
+
+    NettyRpcServerTest() {
+        LocalServiceRegister register = new LocalServiceRegister();
+        register.register(new ServiceObject(SERVICE, CollidingService.class, new CollidingService.Impl()));
+        //不配置业务线程池：请求在IO线程上同步处理
+        ServiceExecutors executors = new ServiceExecutors(new ExecutorConfig(0, 0), Map.of());
+        NettyRpcServer server = new NettyRpcServer(0, "myrpc", new RequestHandler(protocol, register), executors);
+        channel = new EmbeddedChannel(server.new ChannelRequestHandler());
+    }
+
+    @Test
+    void idResolvesAfterNamesWereAnnounced() throws Exception {
+        int methodId = MethodId.hash("echo(java.lang.String)");
+        ResponseDatagram first = call(request("echo", "first"), methodId, "echo(java.lang.String)");
+        assertEquals("first", first.getReturnValue());
+
+        ResponseDatagram second = call(request("echo", "second"), methodId, null);
+        assertEquals(StatusCode.SUCCESS, second.getStatus());
+        assertEquals("second", second.getReturnValue());
+    }
+
+    @Test
+    void collidingIdFallsBackToNames() throws Exception {
+        assertEquals("a", call(request("op444488"), COLLIDING_ID, "op444488()").getReturnValue());
+        //同一个id附带了另一个方法的名称：按名称解析，不使用连接上记下的方法
+        assertEquals("b", call(request("op2301642"), COLLIDING_ID, "op2301642()").getReturnValue());
+        //只带id时使用连接上先记下的方法
+        assertEquals("a", call(request("op444488"), COLLIDING_ID, null).getReturnValue());
+    }
+
+    @Test
+    void unknownIdIsNotFound() throws Exception {
+        ResponseDatagram rsp = call(request("echo", "x"), 0x7fff_0001, null);
+        assertEquals(StatusCode.NOT_FOUND, rsp.getStatus());
+    }
+
+    @Test
+    void collidingIdWithoutNamesIsNotFound() throws Exception {
+        //连接上没有记下这个id，全局的id索引中冲突的id已被移除
+        ResponseDatagram rsp = call(request("op444488"), COLLIDING_ID, null);
+        assertEquals(StatusCode.NOT_FOUND, rsp.getStatus());
+    }
+
+    private static RequestDatagram request(String method, Object... args) {
+        RequestDatagram req = new RequestDatagram();
+        req.setServiceName(SERVICE);
+        req.setMethodName(method);
+        Class<?>[] types = new Class<?>[args.length];
+        for (int i = 0; i < args.length; i++) {
+            types[i] = args[i].getClass();
+        }
+        req.setParameterTypes(types);
+        req.setParameters(args);
+        return req;
+    }
+
+    //按id发送请求帧，signature不为null时附带服务名和方法签名
+    private ResponseDatagram call(RequestDatagram req, int methodId, String signature) throws Exception {
+        ByteBuf body = Unpooled.wrappedBuffer(protocol.marshallingRequest(req));
+        RpcFrame frame = new RpcFrame(Serializer.JAVA.getId(), 1L, (byte) 0, body);
+        frame.setServiceId(SERVICE_ID);
+        frame.setMethodId(methodId);
+        if (signature != null) {
+            frame.attachNames(SERVICE, signature);
+        }
+        channel.writeInbound(frame);
+        channel.flush();
+        RpcFrame rsp = channel.readOutbound();
+        try {
+            assertEquals(0, body.refCnt());
+            return protocol.unmarshallingResponse(rsp.getBody());
+        } finally {
+            rsp.release();
+        }
+    }
+}
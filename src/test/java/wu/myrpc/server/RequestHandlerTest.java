@@ -0,0 +1,94 @@
+package wu.myrpc.server;
+
+import io.netty.buffer.ByteBuf;
+import org.junit.jupiter.api.Test;
+import wu.myrpc.common.constants.RpcConstant;
+import wu.myrpc.common.context.RpcContext;
+import wu.myrpc.common.protocol.MessageProtocolSerialize;
+import wu.myrpc.common.protocol.RequestDatagram;
+import wu.myrpc.common.protocol.ResponseDatagram;
+import wu.myrpc.common.protocol.StatusCode;
+import wu.myrpc.common.serializer.Serializer;
+import wu.myrpc.server.register.LocalServiceRegister;
+import wu.myrpc.server.register.ServiceObject;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RequestHandlerTest {
+    private static final String SERVICE = DeadlineService.class.getName();
+
+    public interface DeadlineService {
+        //服务方法中嵌套调用可用的超时时间
+        long nestedTimeout();
+    }
+
+    private final AtomicInteger invocations = new AtomicInteger();
+    private final MessageProtocolSerialize protocol = new MessageProtocolSerialize(Serializer.JAVA);
+    private final RequestHandler handler;
+
+    RequestHandlerTest() {
+        LocalServiceRegister register = new LocalServiceRegister();
+        DeadlineService service = () -> {
+            invocations.incrementAndGet();
+            return RpcContext.timeoutMillis(5000);
+        };
+        register.register(new ServiceObject(SERVICE, DeadlineService.class, service));
+        handler = new RequestHandler(protocol, register);
+    }
+
+    @Test
+    void expiredRequestIsDroppedWithoutInvoking() throws Exception {
+        //收到请求后在队列中等待了50ms，超时时间只有10ms
+        long received = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(50);
+        ResponseDatagram rsp = handle(request("10"), received);
+        assertEquals(StatusCode.DEADLINE_EXCEEDED, rsp.getStatus());
+        assertEquals(0, invocations.get());
+    }
+
+    @Test
+    void deadlineIsVisibleToNestedCalls() throws Exception {
+        ResponseDatagram rsp = handle(request("1000"), System.nanoTime());
+        assertEquals(StatusCode.SUCCESS, rsp.getStatus());
+        long nested = (Long) rsp.getReturnValue();
+        assertTrue(nested > 0 && nested <= 1000, String.valueOf(nested));
+        //调用结束后恢复
+        assertEquals(0, RpcContext.getDeadline());
+    }
+
+    @Test
+    void requestWithoutTimeoutHasNoDeadline() throws Exception {
+        assertEquals(5000L, handle(request(null), System.nanoTime()).getReturnValue());
+    }
+
+    @Test
+    void malformedTimeoutMeansNoDeadline() throws Exception {
+        ResponseDatagram rsp = handle(request("soon"), System.nanoTime() - TimeUnit.SECONDS.toNanos(1));
+        assertEquals(StatusCode.SUCCESS, rsp.getStatus());
+        assertEquals(5000L, rsp.getReturnValue());
+    }
+
+    private static RequestDatagram request(String timeout) {
+        RequestDatagram req = new RequestDatagram();
+        req.setServiceName(SERVICE);
+        req.setMethodName("nestedTimeout");
+        req.setParameterTypes(new Class<?>[0]);
+        req.setParameters(new Object[0]);
+        if (timeout != null) {
+            req.getHeaders().put(RpcConstant.HEADER_TIMEOUT, timeout);
+        }
+        return req;
+    }
+
+    private ResponseDatagram handle(RequestDatagram req, long received) throws Exception {
+        ByteBuf out = handler.handleRequestAsync(protocol, req, received, System.nanoTime(), -1).join();
+        try {
+            return protocol.unmarshallingResponse(out);
+        } finally {
+            out.release();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package wu.myrpc.server.admission;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdmissionControlTest {
+    private AdmissionControl control;
+
+    @AfterEach
+    void close() {
+        if (control != null) {
+            control.close();
+        }
+    }
+
+    @Test
+    void disabledServiceHasNoAdmission() {
+        AdmissionConfig enabled = new AdmissionConfig(true, 0);
+        control = new AdmissionControl(new AdmissionConfig(), Map.of("hot", enabled));
+        assertNull(control.forService("other"));
+        AdmissionControl.ServiceAdmission admission = control.forService("hot");
+        assertSame(admission, control.forService("hot"));
+    }
+
+    @Test
+    void rejectsAtMaxInflightUntilReleased() {
+        AdmissionControl.ServiceAdmission admission = admission(2, 5, 100);
+        assertTrue(admission.tryAcquire());
+        assertTrue(admission.tryAcquire());
+        assertFalse(admission.tryAcquire());
+        assertEquals(2, admission.getInflight());
+
+        admission.release();
+        assertTrue(admission.tryAcquire());
+    }
+
+    @Test
+    void shedsOnlyPastIntervalWhileNotOverloaded() {
+        AdmissionControl.ServiceAdmission admission = admission(0, 5, 1000);
+        //超过目标但没超过区间长度，不过载时仍然执行
+        assertTrue(admission.admit(ago(50)));
+        assertFalse(admission.admit(ago(1500)));
+        assertFalse(admission.isOverloaded());
+    }
+
+    @Test
+    void shedsPastTargetOnceOverloadedAndRecovers() throws InterruptedException {
+        AdmissionControl.ServiceAdmission admission = admission(0, 5, 50);
+        assertTrue(admission.admit(ago(20)));
+        assertFalse(admission.isOverloaded());
+
+        //整个区间的最小排队时间都超过目标，进入过载状态，超过目标的请求被丢弃
+        Thread.sleep(60);
+        assertFalse(admission.admit(ago(20)));
+        assertTrue(admission.isOverloaded());
+        assertTrue(admission.admit(System.nanoTime()));
+
+        //队列排空的区间结束后退出过载状态
+        Thread.sleep(60);
+        assertTrue(admission.admit(System.nanoTime()));
+        assertFalse(admission.isOverloaded());
+        assertTrue(admission.admit(ago(20)));
+    }
+
+    private AdmissionControl.ServiceAdmission admission(int maxInflight, long targetMillis, long intervalMillis) {
+        AdmissionConfig config = new AdmissionConfig(true, maxInflight);
+        config.setTargetDelayMillis(targetMillis);
+        config.setIntervalMillis(intervalMillis);
+        control = new AdmissionControl(config, Map.of());
+        return control.forService("admission-test");
+    }
+
+    private static long ago(long millis) {
+        return System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+}
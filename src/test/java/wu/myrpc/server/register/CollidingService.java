@@ -0,0 +1,36 @@
+package wu.myrpc.server.register;
+
+/*
+ * 测试用服务：op444488()和op2301642()的FNV-1a哈希相同，方法id冲突；echo有两个重载
+ * */
+public interface CollidingService {
+    String op444488();
+
+    String op2301642();
+
+    String echo(String value);
+
+    String echo(int value);
+
+    class Impl implements CollidingService {
+        @Override
+        public String op444488() {
+            return "a";
+        }
+
+        @Override
+        public String op2301642() {
+            return "b";
+        }
+
+        @Override
+        public String echo(String value) {
+            return value;
+        }
+
+        @Override
+        public String echo(int value) {
+            return String.valueOf(value);
+        }
+    }
+}
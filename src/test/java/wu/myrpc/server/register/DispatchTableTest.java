@@ -0,0 +1,41 @@
+package wu.myrpc.server.register;
+
+import org.junit.jupiter.api.Test;
+import wu.myrpc.common.protocol.MethodId;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class DispatchTableTest {
+
+    private final DispatchTable table = new DispatchTable(CollidingService.class.getName(), CollidingService.class, new CollidingService.Impl());
+
+    @Test
+    void collidingIdsAreRemovedFromIdIndex() {
+        int id = MethodId.hash("op444488()");
+        assertEquals(id, MethodId.hash("op2301642()"));
+
+        assertNull(table.lookup(id));
+        //冲突的方法仍然可以按签名和方法名查找
+        assertEquals("op444488", table.lookup("op444488()").getMethod().getName());
+        assertEquals("op2301642", table.lookup("op2301642()").getMethod().getName());
+        assertEquals("op444488", table.lookup("op444488", new Class<?>[0]).getMethod().getName());
+    }
+
+    @Test
+    void idsResolveToTheirMethod() throws Exception {
+        MethodInvoker invoker = table.lookup(MethodId.hash("echo(java.lang.String)"));
+        assertSame(table.lookup("echo(java.lang.String)"), invoker);
+        assertEquals("x", invoker.invoke(new Object[]{"x"}));
+        assertEquals(MethodId.of(CollidingService.class.getMethod("echo", int.class)), table.lookup("echo(int)").getMethodId());
+    }
+
+    @Test
+    void overloadsMatchExactParameterTypes() throws Exception {
+        assertEquals("1", table.lookup("echo", new Class<?>[]{int.class}).invoke(new Object[]{1}));
+        assertEquals("s", table.lookup("echo", new Class<?>[]{String.class}).invoke(new Object[]{"s"}));
+        assertNull(table.lookup("echo", new Class<?>[]{Integer.class}));
+        assertNull(table.lookup("missing", new Class<?>[0]));
+    }
+}
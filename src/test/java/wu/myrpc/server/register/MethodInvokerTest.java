@@ -0,0 +1,61 @@
+package wu.myrpc.server.register;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.InvocationTargetException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MethodInvokerTest {
+
+    public static class Calculator {
+        public long twice(long value) {
+            return value * 2;
+        }
+
+        public String upper(String value) {
+            return value.toUpperCase();
+        }
+
+        public String cast(Object value) {
+            return (String) value;
+        }
+    }
+
+    @Test
+    void wrongArgumentsAreIllegalArguments() throws Exception {
+        MethodInvoker upper = invoker("upper", String.class);
+        assertThrows(IllegalArgumentException.class, () -> upper.invoke(new Object[]{1}));
+        assertThrows(IllegalArgumentException.class, () -> upper.invoke(new Object[]{"a", "b"}));
+        assertThrows(IllegalArgumentException.class, () -> upper.invoke(null));
+
+        MethodInvoker twice = invoker("twice", long.class);
+        assertThrows(IllegalArgumentException.class, () -> twice.invoke(new Object[]{null}));
+        assertThrows(IllegalArgumentException.class, () -> twice.invoke(new Object[]{1.5}));
+    }
+
+    @Test
+    void primitivesAreUnboxedAndWidened() throws Exception {
+        MethodInvoker twice = invoker("twice", long.class);
+        assertEquals(6L, twice.invoke(new Object[]{3L}));
+        assertEquals(6L, twice.invoke(new Object[]{3}));
+        assertEquals("ABC", invoker("upper", String.class).invoke(new Object[]{"abc"}));
+    }
+
+    @Test
+    void exceptionsFromMethodAreWrapped() throws Exception {
+        MethodInvoker cast = invoker("cast", Object.class);
+        InvocationTargetException e = assertThrows(InvocationTargetException.class, () -> cast.invoke(new Object[]{1}));
+        assertTrue(e.getCause() instanceof ClassCastException);
+
+        MethodInvoker upper = invoker("upper", String.class);
+        e = assertThrows(InvocationTargetException.class, () -> upper.invoke(new Object[]{null}));
+        assertTrue(e.getCause() instanceof NullPointerException);
+    }
+
+    private static MethodInvoker invoker(String name, Class<?>... types) throws NoSuchMethodException {
+        return new MethodInvoker("calculator", Calculator.class.getMethod(name, types), 0, new Calculator());
+    }
+}